@@ -19,15 +19,22 @@
 
 package org.apache.cxf.fediz.core;
 
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 
 
 /**
- * This class holds a immutable collection of Claims.
+ * This class holds a immutable collection of Claims. Besides the list of claims in their original order, it
+ * keeps an index of the claims by claim type, which is built on the first lookup.
  */
 public class ClaimCollection extends ArrayList<Claim> {
 
@@ -36,6 +43,11 @@ public class ClaimCollection extends ArrayList<Claim> {
      */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The first claim of each claim type
+     */
+    private transient volatile Map<String, Claim> claimsByType;
+
     public ClaimCollection() {
         super();
     }
@@ -48,6 +60,60 @@ public class ClaimCollection extends ArrayList<Claim> {
         super(initialCapacity);
     }
 
+    /**
+     * Returns the (first) claim of the given type or null.
+     */
+    public Claim getClaim(URI claimType) {
+        return claimType == null ? null : getClaim(claimType.toString());
+    }
+
+    /**
+     * Returns the (first) claim of the given type or null.
+     */
+    public Claim getClaim(String claimType) {
+        Map<String, Claim> index = claimsByType;
+        if (index == null) {
+            // Racing threads build the same index, the collection is immutable
+            index = new HashMap<>(size() * 2);
+            for (Claim c : this) {
+                if (c.getClaimType() != null) {
+                    index.putIfAbsent(c.getClaimType().toString(), c);
+                }
+            }
+            claimsByType = index;
+        }
+        return index.get(claimType);
+    }
+
+    /**
+     * Returns the (first) claim of the given type in a list of claims or null. The lookup uses the index of a
+     * ClaimCollection, other lists are scanned.
+     */
+    public static Claim findClaim(List<Claim> claims, URI claimType) {
+        if (claims == null || claimType == null) {
+            return null;
+        }
+        if (claims instanceof ClaimCollection) {
+            return ((ClaimCollection) claims).getClaim(claimType);
+        }
+        for (Claim c : claims) {
+            if (claimType.equals(c.getClaimType())) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the given list if it is a ClaimCollection already, otherwise a ClaimCollection with its claims.
+     */
+    public static ClaimCollection valueOf(List<Claim> claims) {
+        if (claims instanceof ClaimCollection) {
+            return (ClaimCollection) claims;
+        }
+        return claims == null ? new ClaimCollection() : new ClaimCollection(claims);
+    }
+
     @Override
     public Claim set(int index, Claim element) {
         throw new UnsupportedOperationException();
@@ -98,6 +164,26 @@ public class ClaimCollection extends ArrayList<Claim> {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public boolean removeIf(Predicate<? super Claim> filter) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<Claim> operator) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sort(Comparator<? super Claim> c) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public List<Claim> subList(int fromIndex, int toIndex) {
         return Collections.unmodifiableList(super.subList(fromIndex, toIndex));
@@ -0,0 +1,236 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.cxf.fediz.core.util.SecureIdGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Encodes a RequestState into a compact token, which is sent as wctx or RelayState parameter to the IdP instead
+ * of a random id, and decodes the token sent back with the sign-in response. Nothing has to be saved in the HTTP
+ * session before the user is authenticated.
+ *
+ * The token is the base64url encoding of a version byte and the serialized request state (a random nonce, the
+ * creation time, the target and IdP addresses, the request and issuer ids, the web application context and
+ * domain). It is either protected by a truncated HMAC-SHA256 or encrypted with AES-GCM. A token is only accepted
+ * within the time to live after its creation. The state of a decoded RequestState is the token itself.
+ *
+ * Note that a token isn't bound to the browser which started the login, so the time to live should be short.
+ */
+public class RequestStateCodec {
+
+    public static final long DEFAULT_TIME_TO_LIVE = 5L * 60L * 1000L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestStateCodec.class);
+
+    private static final byte VERSION_MAC = 0x01;
+    private static final byte VERSION_ENCRYPTED = 0x02;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+    private static final int MAC_LENGTH = 16;
+    private static final int IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+    private static final int NONCE_LENGTH = 8;
+    private static final int MAX_TOKEN_LENGTH = 8192;
+
+    private final SecretKeySpec macKey;
+    private final SecretKeySpec encryptionKey;
+    private final boolean encrypt;
+    private final long timeToLive;
+
+    /**
+     * @param secret the secret the keys are derived from, if null a random key is used
+     * @param encrypt whether the token is encrypted or only MAC protected
+     * @param timeToLive how long (in milliseconds) a token is accepted
+     */
+    public RequestStateCodec(String secret, boolean encrypt, long timeToLive) {
+        byte[] secretBytes;
+        if (secret == null || secret.isEmpty()) {
+            LOG.warn("No secret configured for the stateless request state, using a random key. "
+                + "Sign-in responses are only accepted by this instance.");
+            secretBytes = new byte[32];
+            SecureIdGenerator.nextBytes(secretBytes);
+        } else {
+            secretBytes = secret.getBytes(UTF_8);
+        }
+        this.macKey = new SecretKeySpec(deriveKey("mac", secretBytes, 32), MAC_ALGORITHM);
+        this.encryptionKey = new SecretKeySpec(deriveKey("enc", secretBytes, 16), "AES");
+        this.encrypt = encrypt;
+        this.timeToLive = timeToLive;
+    }
+
+    private static byte[] deriveKey(String label, byte[] secret, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(("fediz-request-state-" + label + ':').getBytes(UTF_8));
+            return Arrays.copyOf(digest.digest(secret), length);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns the token of the given request state.
+     */
+    public String encode(RequestState requestState) {
+        try {
+            byte[] payload = serialize(requestState);
+            byte[] token;
+            if (encrypt) {
+                byte[] iv = new byte[IV_LENGTH];
+                SecureIdGenerator.nextBytes(iv);
+                Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+                cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+                cipher.updateAAD(new byte[] {VERSION_ENCRYPTED});
+                byte[] cipherText = cipher.doFinal(payload);
+                token = ByteBuffer.allocate(1 + IV_LENGTH + cipherText.length)
+                    .put(VERSION_ENCRYPTED).put(iv).put(cipherText).array();
+            } else {
+                token = new byte[1 + payload.length + MAC_LENGTH];
+                token[0] = VERSION_MAC;
+                System.arraycopy(payload, 0, token, 1, payload.length);
+                System.arraycopy(mac(token, 1 + payload.length), 0, token, 1 + payload.length, MAC_LENGTH);
+            }
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+        } catch (GeneralSecurityException | IOException ex) {
+            throw new IllegalStateException("Failed to encode the request state", ex);
+        }
+    }
+
+    /**
+     * Returns the request state of the given token, or null if the token is invalid or has expired.
+     */
+    public RequestState decode(String token) {
+        if (token == null || token.isEmpty() || token.length() > MAX_TOKEN_LENGTH) {
+            return null;
+        }
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(token);
+            byte[] payload;
+            if (bytes.length > 1 + MAC_LENGTH && bytes[0] == VERSION_MAC && !encrypt) {
+                int payloadEnd = bytes.length - MAC_LENGTH;
+                byte[] expected = Arrays.copyOf(mac(bytes, payloadEnd), MAC_LENGTH);
+                if (!MessageDigest.isEqual(expected, Arrays.copyOfRange(bytes, payloadEnd, bytes.length))) {
+                    LOG.debug("Invalid MAC of the request state");
+                    return null;
+                }
+                payload = Arrays.copyOfRange(bytes, 1, payloadEnd);
+            } else if (bytes.length > 1 + IV_LENGTH && bytes[0] == VERSION_ENCRYPTED && encrypt) {
+                Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+                cipher.init(Cipher.DECRYPT_MODE, encryptionKey,
+                            new GCMParameterSpec(GCM_TAG_BITS, bytes, 1, IV_LENGTH));
+                cipher.updateAAD(bytes, 0, 1);
+                payload = cipher.doFinal(bytes, 1 + IV_LENGTH, bytes.length - 1 - IV_LENGTH);
+            } else {
+                LOG.debug("Unsupported request state token");
+                return null;
+            }
+
+            RequestState requestState = deserialize(payload);
+            long age = System.currentTimeMillis() - requestState.getCreatedAt();
+            if (age > timeToLive || age < -timeToLive) {
+                LOG.debug("The request state has expired");
+                return null;
+            }
+            requestState.setState(token);
+            return requestState;
+        } catch (IllegalArgumentException | GeneralSecurityException | IOException ex) {
+            LOG.debug("Failed to decode the request state: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] mac(byte[] data, int length) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(macKey);
+        mac.update(data, 0, length);
+        return mac.doFinal();
+    }
+
+    private static byte[] serialize(RequestState requestState) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            // The nonce makes every token unique, even if two requests are created at the same time
+            byte[] nonce = new byte[NONCE_LENGTH];
+            SecureIdGenerator.nextBytes(nonce);
+            out.write(nonce);
+            out.writeLong(requestState.getCreatedAt());
+            writeString(out, requestState.getTargetAddress());
+            writeString(out, requestState.getIdpServiceAddress());
+            writeString(out, requestState.getRequestId());
+            writeString(out, requestState.getIssuerId());
+            writeString(out, requestState.getWebAppContext());
+            writeString(out, requestState.getWebAppDomain());
+        }
+        return bos.toByteArray();
+    }
+
+    private static RequestState deserialize(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            in.skipBytes(NONCE_LENGTH);
+            RequestState requestState = new RequestState();
+            requestState.setCreatedAt(in.readLong());
+            requestState.setTargetAddress(readString(in));
+            requestState.setIdpServiceAddress(readString(in));
+            requestState.setRequestId(readString(in));
+            requestState.setIssuerId(readString(in));
+            requestState.setWebAppContext(readString(in));
+            requestState.setWebAppDomain(readString(in));
+            return requestState;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public boolean isEncrypt() {
+        return encrypt;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+}
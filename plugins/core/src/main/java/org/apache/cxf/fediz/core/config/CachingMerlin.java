@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core.config;
+
+import java.io.IOException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.crypto.Merlin;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.Loader;
+
+/**
+ * A Merlin Crypto which caches the private keys it has unlocked. It is used for the token decryption key, as
+ * WSS4J looks the private key up by the certificate (or public key) of every EncryptedKey it processes.
+ */
+class CachingMerlin extends Merlin {
+
+    private final ConcurrentMap<Object, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+
+    CachingMerlin(Properties properties) throws WSSecurityException, IOException {
+        super(properties, Loader.getClassLoader(CryptoFactory.class), null);
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(X509Certificate certificate, CallbackHandler callbackHandler)
+        throws WSSecurityException {
+        PrivateKey key = privateKeys.get(certificate);
+        if (key == null) {
+            key = super.getPrivateKey(certificate, callbackHandler);
+            if (key != null) {
+                privateKeys.putIfAbsent(certificate, key);
+            }
+        }
+        return key;
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(PublicKey publicKey, CallbackHandler callbackHandler)
+        throws WSSecurityException {
+        PrivateKey key = privateKeys.get(publicKey);
+        if (key == null) {
+            key = super.getPrivateKey(publicKey, callbackHandler);
+            if (key != null) {
+                privateKeys.putIfAbsent(publicKey, key);
+            }
+        }
+        return key;
+    }
+
+    void clearKeyCache() {
+        privateKeys.clear();
+    }
+}
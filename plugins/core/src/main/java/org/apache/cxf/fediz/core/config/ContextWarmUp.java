@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core.config;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.w3c.dom.Element;
+
+import org.apache.cxf.fediz.core.TokenValidator;
+import org.apache.cxf.fediz.core.TokenValidatorRequest;
+import org.apache.cxf.fediz.core.saml.SAMLTokenValidator;
+import org.apache.cxf.fediz.core.util.DOMUtils;
+import org.apache.wss4j.common.saml.OpenSAMLUtil;
+
+/**
+ * Eagerly initializes a FedizContext: the protocol and its callback handlers, the keystores, the replay cache
+ * and the validation plan are otherwise loaded on the first request. A synthetic (unsigned) SAML 2.0 token is
+ * validated without signature enforcement, so that the parsing and claims processing code is loaded as well.
+ * The synthetic token doesn't touch the replay cache nor the processing metrics.
+ */
+final class ContextWarmUp {
+
+    private static final String WARM_UP_TOKEN =
+        "<saml2:Assertion xmlns:saml2=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"_fediz-warm-up\""
+        + " IssueInstant=\"2020-01-01T00:00:00.000Z\" Version=\"2.0\">"
+        + "<saml2:Issuer>urn:org:apache:cxf:fediz:warm-up</saml2:Issuer>"
+        + "<saml2:Subject><saml2:NameID>warm-up</saml2:NameID>"
+        + "<saml2:SubjectConfirmation Method=\"urn:oasis:names:tc:SAML:2.0:cm:bearer\"/></saml2:Subject>"
+        + "<saml2:Conditions NotBefore=\"2020-01-01T00:00:00.000Z\" NotOnOrAfter=\"2020-01-01T01:00:00.000Z\">"
+        + "<saml2:AudienceRestriction><saml2:Audience>urn:org:apache:cxf:fediz:warm-up</saml2:Audience>"
+        + "</saml2:AudienceRestriction></saml2:Conditions>"
+        + "<saml2:AttributeStatement><saml2:Attribute"
+        + " Name=\"http://schemas.xmlsoap.org/ws/2005/05/identity/claims/role\""
+        + " NameFormat=\"urn:oasis:names:tc:SAML:2.0:attrname-format:unspecified\">"
+        + "<saml2:AttributeValue>User</saml2:AttributeValue></saml2:Attribute></saml2:AttributeStatement>"
+        + "</saml2:Assertion>";
+
+    private ContextWarmUp() {
+    }
+
+    /**
+     * Initialize the context and return the duration (in milliseconds) of every step.
+     */
+    static Map<String, Long> warmUp(FedizContext context) throws Exception {
+        Map<String, Long> timings = new LinkedHashMap<>();
+        long start = System.nanoTime();
+
+        Protocol protocol = context.getProtocol();
+        if (protocol != null) {
+            protocol.getIssuer();
+            protocol.getRealm();
+            protocol.getReply();
+            protocol.getSignInQuery();
+            if (protocol instanceof FederationProtocol) {
+                ((FederationProtocol)protocol).getSignInRequestTemplate();
+            } else if (protocol instanceof SAMLProtocol) {
+                ((SAMLProtocol)protocol).getSAMLPRequestBuilder();
+            }
+            context.getRequestRouter();
+        }
+        context.getClaimsProcessor();
+        context.getLogoutRedirectToConstraint();
+        context.getProcessingMetrics();
+        start = record(timings, "protocol", start);
+
+        if (context.getContextConfig().getCertificateStores() != null) {
+            context.getCertificateStores();
+        }
+        context.getValidationPlan();
+        start = record(timings, "certificateStores", start);
+
+        // The private keys can only be unlocked up front if an alias is configured
+        if (context.getContextConfig().getSigningKey() != null) {
+            KeyManager signingKey = context.getSigningKey();
+            if (signingKey.getKeyAlias() != null) {
+                signingKey.getPrivateKey();
+            }
+        }
+        KeyManager decryptionKey = context.getDecryptionKey();
+        if (decryptionKey != null && decryptionKey.getKeyAlias() != null) {
+            decryptionKey.getPrivateKey();
+        }
+        start = record(timings, "keys", start);
+
+        if (context.isDetectReplayedTokens()) {
+            context.getTokenReplayCache();
+        }
+        start = record(timings, "replayCache", start);
+
+        if (protocol != null) {
+            validateSyntheticToken(context, protocol);
+            record(timings, "tokenValidation", start);
+        }
+        return Collections.unmodifiableMap(timings);
+    }
+
+    private static void validateSyntheticToken(FedizContext context, Protocol protocol) throws Exception {
+        OpenSAMLUtil.initSamlEngine();
+        Element token = DOMUtils.readXml(new StringReader(WARM_UP_TOKEN)).getDocumentElement();
+        for (TokenValidator validator : protocol.getTokenValidators()) {
+            // Custom validators might have side effects, e.g. call a remote service
+            if (validator instanceof SAMLTokenValidator && validator.canHandleToken(token)) {
+                TokenValidatorRequest request = new TokenValidatorRequest(token, null);
+                request.setEnforceTokenSigned(false);
+                validator.validateAndProcessToken(request, context);
+                return;
+            }
+        }
+    }
+
+    private static long record(Map<String, Long> timings, String step, long start) {
+        long now = System.nanoTime();
+        timings.put(step, (now - start) / 1000000L);
+        return now;
+    }
+}
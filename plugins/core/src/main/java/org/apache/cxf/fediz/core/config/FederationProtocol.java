@@ -37,6 +37,7 @@ public class FederationProtocol extends Protocol {
     private Object homeRealm;
     private Object freshness;
     private Object signOutQuery;
+    private volatile SignInRequestTemplate signInRequestTemplate;
 
     public FederationProtocol(ProtocolType protocolType) {
         super(protocolType);
@@ -161,6 +162,19 @@ public class FederationProtocol extends Protocol {
         }
     }
 
+    /**
+     * Returns the pre-encoded static parts of the sign-in redirect, compiled once and recompiled when one of
+     * the configured values is replaced.
+     */
+    public SignInRequestTemplate getSignInRequestTemplate() {
+        SignInRequestTemplate template = signInRequestTemplate;
+        if (template == null || !template.isCompiledFrom(this)) {
+            template = new SignInRequestTemplate(this);
+            signInRequestTemplate = template;
+        }
+        return template;
+    }
+
     public String getVersion() {
         return getFederationProtocol().getVersion();
     }
@@ -26,16 +26,36 @@ import java.io.Reader;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 
 import org.apache.cxf.fediz.core.config.jaxb.ContextConfig;
 import org.apache.cxf.fediz.core.config.jaxb.FedizConfig;
+import org.apache.wss4j.common.saml.OpenSAMLUtil;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class FedizConfigurator {
 
+    /**
+     * The default number of threads used to warm up the contexts, the number of processors
+     */
+    public static final int DEFAULT_WARM_UP_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final Logger LOG = LoggerFactory.getLogger(FedizConfigurator.class);
+
     private FedizConfig rootConfig;
 
     private JAXBContext jaxbContext;
@@ -104,6 +124,116 @@ public class FedizConfigurator {
         return null;
     }
 
+    /**
+     * Initialize all contexts eagerly with the default number of threads.
+     * @see #warmUpContexts(int)
+     */
+    public Map<String, Map<String, Long>> warmUpContexts() {
+        return warmUpContexts(DEFAULT_WARM_UP_THREADS);
+    }
+
+    /**
+     * Bootstrap OpenSAML and WSS4J and initialize all contexts eagerly and in parallel (see
+     * {@link FedizContext#warmUp()}), instead of on their first request. The relative path and classloader of the
+     * contexts must be set before. The startup time of every context is logged. A context which fails to
+     * initialize is logged and skipped, it fails again on its first request.
+     *
+     * @return the duration (in milliseconds) of the steps of every initialized context
+     */
+    public Map<String, Map<String, Long>> warmUpContexts(int threads) {
+        if (fedizContextList == null) {
+            throw new IllegalArgumentException("No configuration loaded");
+        }
+        long start = System.nanoTime();
+        bootstrap();
+
+        List<Callable<Map<String, Long>>> tasks = new ArrayList<>(fedizContextList.size());
+        for (FedizContext context : fedizContextList) {
+            tasks.add(() -> {
+                long contextStart = System.nanoTime();
+                Map<String, Long> timings = context.warmUp();
+                LOG.info("Fediz context '{}' initialized in {} ms {}", context.getName(),
+                         (System.nanoTime() - contextStart) / 1000000L, timings);
+                return timings;
+            });
+        }
+
+        Map<String, Map<String, Long>> report = new LinkedHashMap<>();
+        if (tasks.isEmpty()) {
+            return report;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())), r -> {
+            Thread thread = new Thread(r, "fediz-warm-up-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Map<String, Long>>> futures = executor.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                String name = fedizContextList.get(i).getName();
+                try {
+                    report.put(name, futures.get(i).get());
+                } catch (ExecutionException ex) {
+                    LOG.warn("Failed to initialize Fediz context '" + name + "'", ex.getCause());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        LOG.info("{} of {} Fediz contexts initialized in {} ms", report.size(), tasks.size(),
+                 (System.nanoTime() - start) / 1000000L);
+        return Collections.unmodifiableMap(report);
+    }
+
+    /**
+     * Bootstrap OpenSAML and WSS4J and initialize the given context eagerly (see {@link FedizContext#warmUp()}),
+     * e.g. the context of the web application whose authenticator is started. The other contexts of the
+     * configuration, which may belong to other web applications, are not initialized. The relative path and
+     * classloader of the context must be set before. A context which fails to initialize is logged and skipped, it
+     * fails again on its first request.
+     *
+     * @return the duration (in milliseconds) of the steps, or null if the context is unknown or failed
+     */
+    public Map<String, Long> warmUpContext(String contextName) {
+        if (fedizContextList == null) {
+            throw new IllegalArgumentException("No configuration loaded");
+        }
+        String name = contextName == null || contextName.isEmpty() ? "/" : contextName;
+        FedizContext context = null;
+        for (FedizContext fedContext : fedizContextList) {
+            if (fedContext.getName().equals(name)) {
+                context = fedContext;
+                break;
+            }
+        }
+        if (context == null) {
+            LOG.warn("No Fediz context '{}' to initialize", name);
+            return null;
+        }
+
+        long start = System.nanoTime();
+        bootstrap();
+        try {
+            Map<String, Long> timings = context.warmUp();
+            LOG.info("Fediz context '{}' initialized in {} ms {}", name, (System.nanoTime() - start) / 1000000L,
+                     timings);
+            return timings;
+        } catch (Exception ex) {
+            LOG.warn("Failed to initialize Fediz context '" + name + "'", ex);
+            return null;
+        }
+    }
+
+    private static void bootstrap() {
+        long start = System.nanoTime();
+        OpenSAMLUtil.initSamlEngine();
+        WSSConfig.init();
+        LOG.info("OpenSAML and WSS4J bootstrapped in {} ms", (System.nanoTime() - start) / 1000000L);
+    }
+
     public ContextConfig getContextConfig(String contextName) {
         if (contextName == null) {
             throw new IllegalArgumentException("Context Name cannot be 'null'.");
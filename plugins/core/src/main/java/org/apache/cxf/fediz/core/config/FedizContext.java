@@ -31,23 +31,37 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
+import org.apache.cxf.fediz.core.RequestStateCodec;
 import org.apache.cxf.fediz.core.config.jaxb.CallbackType;
 import org.apache.cxf.fediz.core.config.jaxb.CertificateStores;
+import org.apache.cxf.fediz.core.config.jaxb.CertificateTrustCacheType;
 import org.apache.cxf.fediz.core.config.jaxb.ContextConfig;
 import org.apache.cxf.fediz.core.config.jaxb.FederationProtocolType;
 import org.apache.cxf.fediz.core.config.jaxb.KeyManagersType;
 import org.apache.cxf.fediz.core.config.jaxb.KeyStoreType;
 import org.apache.cxf.fediz.core.config.jaxb.ProtocolType;
 import org.apache.cxf.fediz.core.config.jaxb.SamlProtocolType;
+import org.apache.cxf.fediz.core.config.jaxb.StatelessRequestStateType;
 import org.apache.cxf.fediz.core.config.jaxb.TrustManagersType;
 import org.apache.cxf.fediz.core.config.jaxb.TrustedIssuerType;
 import org.apache.cxf.fediz.core.config.jaxb.TrustedIssuers;
 import org.apache.cxf.fediz.core.exception.IllegalConfigurationException;
 import org.apache.cxf.fediz.core.exception.ProcessingException;
+import org.apache.cxf.fediz.core.handler.RequestRouter;
+import org.apache.cxf.fediz.core.metrics.NoOpProcessingMetrics;
+import org.apache.cxf.fediz.core.metrics.ProcessingMetrics;
 import org.apache.cxf.fediz.core.processor.ClaimsProcessor;
+import org.apache.cxf.fediz.core.saml.CertificateTrustCache;
+import org.apache.cxf.fediz.core.samlsso.CompressionUtils;
 import org.apache.cxf.fediz.core.util.CertsUtils;
 import org.apache.wss4j.common.cache.EHCacheReplayCache;
 import org.apache.wss4j.common.cache.ReplayCache;
@@ -63,21 +77,42 @@ public class FedizContext implements Closeable {
 
     public static final String CACHE_KEY_PREFIX = "fediz.replay.cache";
 
+    /**
+     * The default number of threads of the asynchronous executor, the number of processors
+     */
+    public static final int DEFAULT_ASYNC_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The default number of requests waiting for a thread of the asynchronous executor
+     */
+    public static final int DEFAULT_ASYNC_QUEUE_SIZE = 256;
+
     private static final Logger LOG = LoggerFactory.getLogger(FedizContext.class);
 
     private ContextConfig config;
 
     private boolean detectReplayedTokens = true;
+    private boolean validateTokenLifetime = true;
     private String relativePath;
     private ReplayCache replayCache;
     private Protocol protocol;
-    private List<TrustManager> certificateStores = new ArrayList<>();
+    private volatile List<TrustManager> certificateStores;
+    private final CertificateTrustCache certificateTrustCache = new CertificateTrustCache();
     private KeyManager keyManager;
     private KeyManager decryptionKeyManager;
     private ClassLoader classloader;
     private Object logoutRedirectToConstraint;
 
     private List<ClaimsProcessor> claimsProcessor;
+    private volatile ValidationPlan validationPlan;
+    private volatile RequestRouter requestRouter;
+    private volatile ProcessingMetrics processingMetrics;
+    private volatile RequestStateCodec requestStateCodec;
+    private volatile boolean requestStateCodecLoaded;
+    private Executor asyncExecutor;
+    private ThreadPoolExecutor defaultAsyncExecutor;
+    private int asyncPoolSize = DEFAULT_ASYNC_POOL_SIZE;
+    private int asyncQueueSize = DEFAULT_ASYNC_QUEUE_SIZE;
 
 
     public FedizContext(ContextConfig config) {
@@ -85,6 +120,13 @@ public class FedizContext implements Closeable {
             throw new IllegalArgumentException("ContextConfig cannot be null!");
         }
         this.config = config;
+
+        CertificateTrustCacheType trustCacheConfig = config.getCertificateTrustCache();
+        if (trustCacheConfig != null) {
+            certificateTrustCache.setTimeToLive(trustCacheConfig.getTimeToLive());
+            certificateTrustCache.setNegativeTimeToLive(trustCacheConfig.getNegativeTimeToLive());
+            certificateTrustCache.setMaxEntries(trustCacheConfig.getMaxEntries());
+        }
     }
 
     public void init() {
@@ -92,6 +134,20 @@ public class FedizContext implements Closeable {
         getProtocol();
     }
 
+    /**
+     * Eagerly load everything which is otherwise loaded by the first request (protocol, callback handlers,
+     * keystores, replay cache, validation plan) and validate a synthetic token. Returns the duration (in
+     * milliseconds) of every step.
+     */
+    public Map<String, Long> warmUp() throws Exception {
+        init();
+        return ContextWarmUp.warmUp(this);
+    }
+
+    ContextConfig getContextConfig() {
+        return config;
+    }
+
     public List<String> getAudienceUris() {
         if (config.getAudienceUris() == null) {
             return Collections.emptyList();
@@ -109,11 +165,60 @@ public class FedizContext implements Closeable {
         return trustedIssuers;
     }
 
+    /**
+     * Returns the validation plan of this context, compiled on first use. A new plan is compiled when the
+     * configuration it was built from has been replaced.
+     */
+    public ValidationPlan getValidationPlan() {
+        ValidationPlan plan = validationPlan;
+        Protocol p = getProtocol();
+        if (plan == null || !plan.isCompiledFrom(config, p, validateTokenLifetime)) {
+            List<TrustedIssuer> trustedIssuers = config.getTrustedIssuers() == null
+                ? Collections.emptyList() : getTrustedIssuers();
+            plan = new ValidationPlan(config, p, trustedIssuers, certificateTrustCache, validateTokenLifetime);
+            validationPlan = plan;
+        }
+        return plan;
+    }
+
+    /**
+     * Returns the router which classifies the requests of this context, built on first use. A new router is
+     * built when the protocol, the metadata URI or the logout URL has been replaced.
+     */
+    public RequestRouter getRequestRouter() {
+        RequestRouter router = requestRouter;
+        if (router == null || !router.isCompiledFrom(this)) {
+            router = new RequestRouter(this);
+            requestRouter = router;
+        }
+        return router;
+    }
+
+    /**
+     * The cache of trust decisions on the certificates which signed the tokens (configured by the
+     * certificateTrustCache element), see CertificateTrustCache.
+     */
+    public CertificateTrustCache getCertificateTrustCache() {
+        return certificateTrustCache;
+    }
+
     public List<TrustManager> getCertificateStores() {
-        if (!certificateStores.isEmpty()) {
-            return Collections.unmodifiableList(certificateStores);
+        List<TrustManager> stores = certificateStores;
+        if (stores == null) {
+            synchronized (this) {
+                stores = certificateStores;
+                if (stores == null) {
+                    // Published once fully loaded, so concurrent readers never see a partial list
+                    stores = Collections.unmodifiableList(loadCertificateStores());
+                    certificateStores = stores;
+                }
+            }
         }
+        return stores;
+    }
 
+    private List<TrustManager> loadCertificateStores() {
+        List<TrustManager> stores = new ArrayList<>();
         CertificateStores certStores = config.getCertificateStores();
         List<TrustManagersType> trustManagers = certStores.getTrustManager();
         for (TrustManagersType manager : trustManagers) {
@@ -129,7 +234,7 @@ public class FedizContext implements Closeable {
                     crypto = CryptoFactory.getInstance(createCryptoProperties(manager));
                 }
                 tm.setCrypto(crypto);
-                certificateStores.add(tm);
+                stores.add(tm);
             } catch (WSSecurityException e) {
                 LOG.error("Failed to load keystore '" + tm.getName() + "'", e);
                 throw new IllegalConfigurationException("Failed to load keystore '" + tm.getName() + "'");
@@ -138,7 +243,7 @@ public class FedizContext implements Closeable {
                 throw new RuntimeException("Failed to read keystore");
             }
         }
-        return Collections.unmodifiableList(certificateStores);
+        return stores;
     }
 
     public BigInteger getMaximumClockSkew() {
@@ -228,9 +333,10 @@ public class FedizContext implements Closeable {
         decryptionKeyManager = new KeyManager(config.getTokenDecryptionKey());
         Properties decProperties = createCryptoProperties(config.getTokenDecryptionKey());
         try {
-            Crypto crypto = CryptoFactory.getInstance(decProperties);
+            // The decryption key is looked up for every encrypted token, so the unlocked keys are cached
+            Crypto crypto = new CachingMerlin(decProperties);
             decryptionKeyManager.setCrypto(crypto);
-        } catch (WSSecurityException e) {
+        } catch (WSSecurityException | IOException e) {
             String name = decryptionKeyManager.getName();
             decryptionKeyManager = null;
             LOG.error("Failed to load keystore '" + name + "'", e);
@@ -266,6 +372,13 @@ public class FedizContext implements Closeable {
         return replayCache;
     }
 
+    /**
+     * Set the token replay cache instead of the configured one. A previously created cache is not closed.
+     */
+    public void setTokenReplayCache(ReplayCache replayCache) {
+        this.replayCache = replayCache;
+    }
+
     @SuppressWarnings("unchecked")
     public List<ClaimsProcessor> getClaimsProcessor() {
         if (this.claimsProcessor != null) {
@@ -289,6 +402,119 @@ public class FedizContext implements Closeable {
         return this.claimsProcessor;
     }
 
+    /**
+     * Returns the configured ProcessingMetrics of this context, or the NoOpProcessingMetrics if there are none.
+     */
+    public ProcessingMetrics getProcessingMetrics() {
+        ProcessingMetrics metrics = processingMetrics;
+        if (metrics == null) {
+            synchronized (this) {
+                metrics = processingMetrics;
+                if (metrics == null) {
+                    metrics = loadProcessingMetrics();
+                    metrics.init(getName());
+                    processingMetrics = metrics;
+                }
+            }
+        }
+        return metrics;
+    }
+
+    public synchronized void setProcessingMetrics(ProcessingMetrics processingMetrics) {
+        if (this.processingMetrics != null) {
+            this.processingMetrics.close();
+        }
+        if (processingMetrics != null) {
+            processingMetrics.init(getName());
+        }
+        this.processingMetrics = processingMetrics;
+    }
+
+    private ProcessingMetrics loadProcessingMetrics() {
+        CallbackType cbt = config.getProcessingMetrics();
+        Object metrics = ConfigUtils.loadCallbackType(cbt, "ProcessingMetrics", getClassloader());
+        if (metrics == null) {
+            return NoOpProcessingMetrics.INSTANCE;
+        } else if (metrics instanceof ProcessingMetrics) {
+            return (ProcessingMetrics) metrics;
+        } else if (metrics instanceof String) {
+            try {
+                Class<?> metricsClass = Loader.loadClass((String) metrics);
+                return (ProcessingMetrics) metricsClass.getDeclaredConstructor().newInstance();
+            } catch (Exception e) {
+                LOG.error("Failed to instantiate the ProcessingMetrics '" + metrics + "'", e);
+                return NoOpProcessingMetrics.INSTANCE;
+            }
+        }
+        LOG.error("The configured ProcessingMetrics is not an instance of ProcessingMetrics!");
+        return NoOpProcessingMetrics.INSTANCE;
+    }
+
+    /**
+     * Returns the executor which processes the requests of FedizProcessor.processRequestAsync. Unless one has
+     * been set, a bounded thread pool of asyncPoolSize threads and asyncQueueSize waiting requests is created,
+     * which is shut down when the context is closed.
+     */
+    public synchronized Executor getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            final String threadPrefix = "fediz-" + getName() + "-";
+            final AtomicInteger threadNumber = new AtomicInteger();
+            defaultAsyncExecutor = new ThreadPoolExecutor(asyncPoolSize, asyncPoolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(asyncQueueSize), r -> {
+                    Thread thread = new Thread(r, threadPrefix + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            defaultAsyncExecutor.allowCoreThreadTimeOut(true);
+            asyncExecutor = defaultAsyncExecutor;
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * Set the executor of FedizProcessor.processRequestAsync. The executor is not shut down by the context.
+     */
+    public synchronized void setAsyncExecutor(Executor asyncExecutor) {
+        shutdownDefaultAsyncExecutor();
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    public int getAsyncPoolSize() {
+        return asyncPoolSize;
+    }
+
+    /**
+     * The number of threads of the default asynchronous executor. It must be set before the executor is used.
+     */
+    public void setAsyncPoolSize(int asyncPoolSize) {
+        if (asyncPoolSize <= 0) {
+            throw new IllegalArgumentException("asyncPoolSize must be positive");
+        }
+        this.asyncPoolSize = asyncPoolSize;
+    }
+
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
+    /**
+     * The maximum number of requests waiting for a thread of the default asynchronous executor. Further
+     * requests are processed synchronously. It must be set before the executor is used.
+     */
+    public void setAsyncQueueSize(int asyncQueueSize) {
+        if (asyncQueueSize <= 0) {
+            throw new IllegalArgumentException("asyncQueueSize must be positive");
+        }
+        this.asyncQueueSize = asyncQueueSize;
+    }
+
+    private void shutdownDefaultAsyncExecutor() {
+        if (defaultAsyncExecutor != null) {
+            defaultAsyncExecutor.shutdown();
+            defaultAsyncExecutor = null;
+        }
+    }
+
     public String getName() {
         return config.getName();
     }
@@ -311,6 +537,19 @@ public class FedizContext implements Closeable {
         this.detectReplayedTokens = detectReplayedTokens;
     }
 
+    public boolean isValidateTokenLifetime() {
+        return validateTokenLifetime;
+    }
+
+    /**
+     * Whether the lifetime of a token (the RSTR Lifetime, the Conditions and AuthnStatements of an Assertion and
+     * the NotOnOrAfter of a bearer SubjectConfirmation) is checked against the current time. The default is true,
+     * it is only switched off to re-validate archived tokens.
+     */
+    public void setValidateTokenLifetime(boolean validateTokenLifetime) {
+        this.validateTokenLifetime = validateTokenLifetime;
+    }
+
     public void setRelativePath(String relativePath) {
         this.relativePath = relativePath;
     }
@@ -321,9 +560,23 @@ public class FedizContext implements Closeable {
 
     @Override
     public void close() throws IOException {
+        synchronized (this) {
+            shutdownDefaultAsyncExecutor();
+            asyncExecutor = null;
+        }
+        if (processingMetrics != null) {
+            processingMetrics.close();
+        }
         if (replayCache != null) {
             replayCache.close();
         }
+        if (keyManager != null) {
+            keyManager.destroy();
+        }
+        if (decryptionKeyManager != null) {
+            decryptionKeyManager.destroy();
+        }
+        CompressionUtils.endDeflaters();
     }
 
     private Properties createCryptoProperties(TrustManagersType tm) {
@@ -424,4 +677,29 @@ public class FedizContext implements Closeable {
     public boolean isRequestStateValidation() {
         return config.isRequestStateValidation();
     }
+
+    /**
+     * Returns the codec of the request state carried in the wctx/RelayState parameter, or null if the request
+     * state is saved in the HTTP session (statelessRequestState is not configured).
+     */
+    public RequestStateCodec getRequestStateCodec() {
+        if (!requestStateCodecLoaded) {
+            synchronized (this) {
+                if (!requestStateCodecLoaded) {
+                    StatelessRequestStateType stateless = config.getStatelessRequestState();
+                    if (stateless != null) {
+                        requestStateCodec = new RequestStateCodec(stateless.getSecret(), stateless.isEncrypt(),
+                                                                  stateless.getTimeToLive());
+                    }
+                    requestStateCodecLoaded = true;
+                }
+            }
+        }
+        return requestStateCodec;
+    }
+
+    public synchronized void setRequestStateCodec(RequestStateCodec requestStateCodec) {
+        this.requestStateCodec = requestStateCodec;
+        this.requestStateCodecLoaded = true;
+    }
 }
@@ -19,15 +19,41 @@
 
 package org.apache.cxf.fediz.core.config;
 
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.security.auth.DestroyFailedException;
+
 import org.apache.cxf.fediz.core.config.jaxb.KeyManagersType;
+import org.apache.cxf.fediz.core.util.CertsUtils;
 import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.ext.WSSecurityException;
 
+/**
+ * A private key of a keystore. The private key and its certificate are loaded once and cached (unlocking the
+ * keystore and unwrapping the key is expensive), until the KeyManager is destroyed when the context is closed.
+ * Signatures are created with a pool of initialized Signature engines, so that concurrent requests never share
+ * an engine.
+ */
 public class KeyManager {
 
+    private static final int MAX_POOLED_SIGNATURES = 32;
+
     private KeyManagersType keyManagerType;
     private Crypto crypto;
     private String name;
 
+    private final Object keyLock = new Object();
+    private volatile PrivateKey privateKey;
+    private volatile X509Certificate certificate;
+    private final ConcurrentMap<String, Queue<PooledSignature>> signatures = new ConcurrentHashMap<>();
+
     public KeyManager(KeyManagersType keyManager) {
         super();
         this.keyManagerType = keyManager;
@@ -52,6 +78,7 @@ public class KeyManager {
     }
 
     public void setCrypto(Crypto crypto) {
+        destroy();
         this.crypto = crypto;
     }
 
@@ -63,5 +90,96 @@ public class KeyManager {
         return keyManagerType.getKeyPassword();
     }
 
+    /**
+     * Returns the (cached) private key of the key alias, or null if the keystore doesn't contain it.
+     */
+    public PrivateKey getPrivateKey() throws WSSecurityException {
+        PrivateKey key = privateKey;
+        if (key == null) {
+            synchronized (keyLock) {
+                key = privateKey;
+                if (key == null && crypto != null) {
+                    key = crypto.getPrivateKey(getKeyAlias(), getKeyPassword());
+                    privateKey = key;
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Returns the (cached) certificate of the key alias, or of the default identifier if there is no alias.
+     */
+    public X509Certificate getCertificate() throws WSSecurityException {
+        X509Certificate cert = certificate;
+        if (cert == null) {
+            synchronized (keyLock) {
+                cert = certificate;
+                if (cert == null && crypto != null) {
+                    cert = CertsUtils.getX509CertificateFromCrypto(crypto, getKeyAlias());
+                    certificate = cert;
+                }
+            }
+        }
+        return cert;
+    }
 
+    /**
+     * Sign the data with the private key and the given JCE signature algorithm (e.g. "SHA256withRSA").
+     */
+    public byte[] sign(String jceAlgorithm, byte[] data) throws WSSecurityException, GeneralSecurityException {
+        PrivateKey key = getPrivateKey();
+        if (key == null) {
+            throw new IllegalStateException("No private key available in keystore '" + getName() + "'");
+        }
+        Queue<PooledSignature> pool =
+            signatures.computeIfAbsent(jceAlgorithm, algorithm -> new ConcurrentLinkedQueue<>());
+        PooledSignature signature = pool.poll();
+        if (signature == null || signature.key != key) {
+            Signature engine = Signature.getInstance(jceAlgorithm);
+            engine.initSign(key);
+            signature = new PooledSignature(engine, key);
+        }
+
+        signature.engine.update(data);
+        // sign() resets the engine to the state after initSign, so it can be reused
+        byte[] signed = signature.engine.sign();
+        if (privateKey == key && pool.size() < MAX_POOLED_SIGNATURES) {
+            pool.offer(signature);
+        }
+        return signed;
+    }
+
+    /**
+     * Release the cached private key (and destroy it, if supported) and the pooled Signature engines.
+     */
+    public void destroy() {
+        PrivateKey key;
+        synchronized (keyLock) {
+            key = privateKey;
+            privateKey = null;
+            certificate = null;
+            signatures.clear();
+        }
+        if (key != null && !key.isDestroyed()) {
+            try {
+                key.destroy();
+            } catch (DestroyFailedException ex) {
+                // ignore, e.g. not supported by the provider
+            }
+        }
+        if (crypto instanceof CachingMerlin) {
+            ((CachingMerlin) crypto).clearKeyCache();
+        }
+    }
+
+    private static final class PooledSignature {
+        private final Signature engine;
+        private final PrivateKey key;
+
+        PooledSignature(Signature engine, PrivateKey key) {
+            this.engine = engine;
+            this.key = key;
+        }
+    }
 }
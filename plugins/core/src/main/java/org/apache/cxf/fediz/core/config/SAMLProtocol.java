@@ -19,9 +19,13 @@
 
 package org.apache.cxf.fediz.core.config;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.apache.cxf.fediz.core.config.jaxb.ProtocolType;
 import org.apache.cxf.fediz.core.config.jaxb.SamlProtocolType;
 import org.apache.cxf.fediz.core.saml.SAMLTokenValidator;
+import org.apache.cxf.fediz.core.samlsso.AuthnRequestTemplate;
 import org.apache.cxf.fediz.core.samlsso.DefaultSAMLPRequestBuilder;
 import org.apache.cxf.fediz.core.samlsso.SAMLPRequestBuilder;
 import org.apache.wss4j.common.util.Loader;
@@ -32,7 +36,10 @@ public class SAMLProtocol extends Protocol {
 
     private static final Logger LOG = LoggerFactory.getLogger(SAMLProtocol.class);
 
+    private static final int MAX_AUTHN_REQUEST_TEMPLATES = 16;
+
     private SAMLPRequestBuilder samlpRequestBuilder;
+    private final ConcurrentMap<String, AuthnRequestTemplate> authnRequestTemplates = new ConcurrentHashMap<>();
 
     public SAMLProtocol(ProtocolType protocolType) {
         super(protocolType);
@@ -102,6 +109,31 @@ public class SAMLProtocol extends Protocol {
 
     public void setSAMLPRequestBuilder(SAMLPRequestBuilder requestBuilder) {
         this.samlpRequestBuilder = requestBuilder;
+        authnRequestTemplates.clear();
+    }
+
+    /**
+     * Returns the pre-serialized AuthnRequest for the given issuer id and destination (null if the request is
+     * not signed), or null if a custom SAMLPRequestBuilder is configured, which must build every request.
+     */
+    public AuthnRequestTemplate getAuthnRequestTemplate(String issuerId, String destination) throws Exception {
+        SAMLPRequestBuilder builder = getSAMLPRequestBuilder();
+        if (builder.getClass() != DefaultSAMLPRequestBuilder.class) {
+            return null;
+        }
+        DefaultSAMLPRequestBuilder defaultBuilder = (DefaultSAMLPRequestBuilder)builder;
+
+        String key = issuerId + '\n' + destination;
+        AuthnRequestTemplate template = authnRequestTemplates.get(key);
+        if (template == null || !template.isCompiledFrom(defaultBuilder, issuerId, destination)) {
+            template = AuthnRequestTemplate.compile(defaultBuilder, issuerId, destination);
+            // The issuer id may be resolved per request, so only a limited number of templates is kept
+            if (authnRequestTemplates.size() < MAX_AUTHN_REQUEST_TEMPLATES
+                || authnRequestTemplates.containsKey(key)) {
+                authnRequestTemplates.put(key, template);
+            }
+        }
+        return template;
     }
 
     public boolean isDisableDeflateEncoding() {
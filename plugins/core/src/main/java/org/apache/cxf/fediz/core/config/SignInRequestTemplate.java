@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core.config;
+
+import java.io.UnsupportedEncodingException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The static parts of a WS-Federation sign-in redirect, URL-encoded once per context. A value which is
+ * configured as a CallbackHandler (or, for the reply, as a relative URL) depends on the request, so its getter
+ * returns null and the processor resolves and encodes it for every request.
+ *
+ * A template is immutable. FederationProtocol compiles a new template when one of the values is replaced.
+ */
+public final class SignInRequestTemplate {
+
+    private final Object issuerSource;
+    private final Object realmSource;
+    private final Object replySource;
+    private final Object authenticationTypeSource;
+    private final Object requestSource;
+    private final Object homeRealmSource;
+    private final Object freshnessSource;
+    private final Object signInQuerySource;
+
+    private final String issuerURL;
+    private final String encodedRealm;
+    private final String encodedReply;
+    private final String encodedAuthenticationType;
+    private final String encodedRequest;
+    private final String encodedHomeRealm;
+    private final String encodedFreshness;
+    private final String signInQuery;
+
+    SignInRequestTemplate(FederationProtocol protocol) {
+        issuerSource = protocol.getIssuer();
+        realmSource = protocol.getRealm();
+        replySource = protocol.getReply();
+        authenticationTypeSource = protocol.getAuthenticationType();
+        requestSource = protocol.getRequest();
+        homeRealmSource = protocol.getHomeRealm();
+        freshnessSource = protocol.getFreshness();
+        signInQuerySource = protocol.getSignInQuery();
+
+        issuerURL = issuerSource instanceof String && !((String)issuerSource).isEmpty() ? (String)issuerSource : null;
+        encodedRealm = encodeStatic(realmSource);
+        encodedReply = isAbsoluteURL(replySource) ? encodeStatic(replySource) : null;
+        encodedAuthenticationType = encodeStatic(authenticationTypeSource);
+        encodedRequest = encodeStatic(requestSource);
+        encodedHomeRealm = encodeStatic(homeRealmSource);
+        encodedFreshness = encodeStatic(freshnessSource);
+        signInQuery = signInQuerySource instanceof String && !((String)signInQuerySource).isEmpty()
+            ? (String)signInQuerySource : null;
+    }
+
+    boolean isCompiledFrom(FederationProtocol protocol) {
+        return issuerSource == protocol.getIssuer()
+            && realmSource == protocol.getRealm()
+            && replySource == protocol.getReply()
+            && authenticationTypeSource == protocol.getAuthenticationType()
+            && requestSource == protocol.getRequest()
+            && homeRealmSource == protocol.getHomeRealm()
+            && freshnessSource == protocol.getFreshness()
+            && signInQuerySource == protocol.getSignInQuery();
+    }
+
+    private static String encodeStatic(Object value) {
+        if (!(value instanceof String) || ((String)value).isEmpty()) {
+            return null;
+        }
+        try {
+            return URLEncoder.encode((String)value, UTF_8.name());
+        } catch (UnsupportedEncodingException ex) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static boolean isAbsoluteURL(Object value) {
+        if (!(value instanceof String)) {
+            return false;
+        }
+        try {
+            new URL((String)value);
+            return true;
+        } catch (MalformedURLException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * The configured issuer URL, or null if it is resolved per request.
+     */
+    public String getIssuerURL() {
+        return issuerURL;
+    }
+
+    /**
+     * The encoded wtrealm value, or null if it is resolved per request (the default is the context URL).
+     */
+    public String getEncodedRealm() {
+        return encodedRealm;
+    }
+
+    /**
+     * The encoded wreply value if an absolute URL is configured, otherwise null.
+     */
+    public String getEncodedReply() {
+        return encodedReply;
+    }
+
+    public String getEncodedAuthenticationType() {
+        return encodedAuthenticationType;
+    }
+
+    public String getEncodedRequest() {
+        return encodedRequest;
+    }
+
+    /**
+     * The encoded configured home realm. Note that a 'whr' request parameter takes precedence.
+     */
+    public String getEncodedHomeRealm() {
+        return encodedHomeRealm;
+    }
+
+    public String getEncodedFreshness() {
+        return encodedFreshness;
+    }
+
+    /**
+     * The configured sign-in query extension (which is appended as is), or null if it is resolved per request.
+     */
+    public String getSignInQuery() {
+        return signInQuery;
+    }
+}
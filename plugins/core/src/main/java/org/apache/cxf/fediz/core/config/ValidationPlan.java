@@ -0,0 +1,264 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core.config;
+
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.cxf.fediz.core.config.jaxb.AudienceUris;
+import org.apache.cxf.fediz.core.config.jaxb.ClaimTypesRequested;
+import org.apache.cxf.fediz.core.config.jaxb.ContextConfig;
+import org.apache.cxf.fediz.core.config.jaxb.TrustedIssuers;
+import org.apache.cxf.fediz.core.saml.CertificateTrustCache;
+import org.apache.cxf.fediz.core.saml.FedizSignatureTrustValidator;
+import org.apache.cxf.fediz.core.saml.FedizSignatureTrustValidator.TrustType;
+import org.apache.cxf.fediz.core.saml.SamlAssertionValidator;
+import org.apache.wss4j.dom.engine.WSSConfig;
+
+/**
+ * The parts of a FedizContext which are needed to validate every sign-in response, compiled once per context:
+ * the audience URIs as a prefix trie, a pre-configured trust validator per trusted issuer, the parsed role URI
+ * and the set of mandatory claim types.
+ *
+ * A plan is immutable and shared by all requests of a context. FedizContext compiles a new plan when the
+ * role URI, role delimiter, clock skew, lifetime validation or one of the configuration lists is replaced.
+ */
+public final class ValidationPlan {
+
+    private final AudienceTrie audiences;
+    private final List<IssuerTrust> issuerTrusts;
+    private final RuntimeException issuerTrustsError;
+    private final URI roleURI;
+    private final String roleDelimiter;
+    private final Set<String> mandatoryClaimTypes;
+    private final WSSConfig wssConfig;
+
+    // The configuration the plan was compiled from
+    private final String sourceRoleURI;
+    private final BigInteger sourceClockSkew;
+    private final boolean sourceValidateTokenLifetime;
+    private final AudienceUris sourceAudienceUris;
+    private final TrustedIssuers sourceTrustedIssuers;
+    private final ClaimTypesRequested sourceClaimTypes;
+
+    ValidationPlan(ContextConfig config, Protocol protocol, List<TrustedIssuer> trustedIssuers,
+                   CertificateTrustCache trustCache, boolean validateTokenLifetime) {
+        List<String> audienceUris = config.getAudienceUris() == null
+            ? Collections.emptyList() : config.getAudienceUris().getAudienceItem();
+        this.audiences = new AudienceTrie(audienceUris);
+
+        List<IssuerTrust> trusts = new ArrayList<>(trustedIssuers.size());
+        RuntimeException error = null;
+        try {
+            int futureTTL = config.getMaximumClockSkew().intValue();
+            for (TrustedIssuer ti : trustedIssuers) {
+                trusts.add(new IssuerTrust(ti, futureTTL, trustCache, validateTokenLifetime));
+            }
+        } catch (RuntimeException ex) {
+            // Only fail the validations which need the trusted issuers, as before
+            error = ex;
+        }
+        this.issuerTrusts = Collections.unmodifiableList(trusts);
+        this.issuerTrustsError = error;
+
+        String role = protocol == null ? null : protocol.getRoleURI();
+        this.roleURI = role == null || role.isEmpty() ? null : URI.create(role);
+        this.roleDelimiter = protocol == null ? null : protocol.getRoleDelimiter();
+
+        Set<String> mandatory = new LinkedHashSet<>();
+        if (protocol != null) {
+            for (Claim claim : protocol.getClaimTypesRequested()) {
+                if (!claim.isOptional()) {
+                    mandatory.add(claim.getType());
+                }
+            }
+        }
+        this.mandatoryClaimTypes = Collections.unmodifiableSet(mandatory);
+
+        this.wssConfig = WSSConfig.getNewInstance();
+
+        this.sourceRoleURI = role;
+        this.sourceClockSkew = config.getMaximumClockSkew();
+        this.sourceValidateTokenLifetime = validateTokenLifetime;
+        this.sourceAudienceUris = config.getAudienceUris();
+        this.sourceTrustedIssuers = config.getTrustedIssuers();
+        this.sourceClaimTypes = protocol == null ? null : protocol.getProtocolType().getClaimTypesRequested();
+    }
+
+    boolean isCompiledFrom(ContextConfig config, Protocol protocol, boolean validateTokenLifetime) {
+        return sourceClockSkew == config.getMaximumClockSkew()
+            && sourceValidateTokenLifetime == validateTokenLifetime
+            && sourceAudienceUris == config.getAudienceUris()
+            && sourceTrustedIssuers == config.getTrustedIssuers()
+            && (protocol == null
+                || Objects.equals(sourceRoleURI, protocol.getRoleURI())
+                    && Objects.equals(roleDelimiter, protocol.getRoleDelimiter())
+                    && sourceClaimTypes == protocol.getProtocolType().getClaimTypesRequested());
+    }
+
+    /**
+     * Returns true if the given token audience starts with one of the configured audience URIs.
+     */
+    public boolean isAudienceAllowed(String audience) {
+        return audience != null && audiences.matchesPrefix(audience);
+    }
+
+    public boolean hasAudienceUris() {
+        return !audiences.isEmpty();
+    }
+
+    public List<IssuerTrust> getIssuerTrusts() {
+        if (issuerTrustsError != null) {
+            throw issuerTrustsError;
+        }
+        return issuerTrusts;
+    }
+
+    public URI getRoleURI() {
+        return roleURI;
+    }
+
+    public String getRoleDelimiter() {
+        return roleDelimiter;
+    }
+
+    public Set<String> getMandatoryClaimTypes() {
+        return mandatoryClaimTypes;
+    }
+
+    /**
+     * A WSSConfig shared by the requests of this context. It is only read during token validation.
+     */
+    public WSSConfig getWssConfig() {
+        return wssConfig;
+    }
+
+    /**
+     * The trust settings of a trusted issuer with validators configured accordingly. The validators only hold
+     * configuration and can be used concurrently.
+     */
+    public static final class IssuerTrust {
+        private final TrustedIssuer trustedIssuer;
+        private final TrustType trustType;
+        private final List<Pattern> subjectConstraints;
+        private final SamlAssertionValidator assertionValidator;
+        private final FedizSignatureTrustValidator signatureTrustValidator;
+
+        IssuerTrust(TrustedIssuer trustedIssuer, int futureTTL, CertificateTrustCache trustCache,
+                    boolean validateTokenLifetime) {
+            this.trustedIssuer = trustedIssuer;
+            Pattern subjectConstraint = trustedIssuer.getCompiledSubject();
+            CertificateValidationMethod method = trustedIssuer.getCertificateValidationMethod();
+            if (CertificateValidationMethod.CHAIN_TRUST.equals(method)) {
+                trustType = TrustType.CHAIN_TRUST_CONSTRAINTS;
+                subjectConstraints = subjectConstraint == null
+                    ? Collections.emptyList() : Collections.singletonList(subjectConstraint);
+            } else if (CertificateValidationMethod.PEER_TRUST.equals(method)) {
+                trustType = TrustType.PEER_TRUST;
+                subjectConstraints = Collections.emptyList();
+            } else {
+                throw new IllegalStateException("Unsupported certificate validation method: " + method);
+            }
+
+            assertionValidator = new SamlAssertionValidator();
+            assertionValidator.setFutureTTL(futureTTL);
+            assertionValidator.setValidateLifetime(validateTokenLifetime);
+            assertionValidator.setSignatureTrustType(trustType);
+            assertionValidator.setSubjectConstraints(subjectConstraints);
+            assertionValidator.setTrustCache(trustCache);
+
+            signatureTrustValidator = new FedizSignatureTrustValidator();
+            signatureTrustValidator.setSignatureTrustType(trustType);
+            signatureTrustValidator.setSubjectConstraints(subjectConstraints);
+            signatureTrustValidator.setTrustCache(trustCache);
+        }
+
+        public TrustedIssuer getTrustedIssuer() {
+            return trustedIssuer;
+        }
+
+        public TrustType getTrustType() {
+            return trustType;
+        }
+
+        public List<Pattern> getSubjectConstraints() {
+            return subjectConstraints;
+        }
+
+        public SamlAssertionValidator getAssertionValidator() {
+            return assertionValidator;
+        }
+
+        public FedizSignatureTrustValidator getSignatureTrustValidator() {
+            return signatureTrustValidator;
+        }
+    }
+
+    /**
+     * A character trie of the audience URIs, to check in one pass over the token audience whether any
+     * of the URIs is a prefix of it.
+     */
+    static final class AudienceTrie {
+        private final Node root = new Node();
+        private final boolean empty;
+
+        AudienceTrie(List<String> uris) {
+            for (String uri : uris) {
+                Node node = root;
+                for (int i = 0; i < uri.length(); i++) {
+                    node = node.children.computeIfAbsent(uri.charAt(i), c -> new Node());
+                }
+                node.terminal = true;
+            }
+            empty = uris.isEmpty();
+        }
+
+        boolean isEmpty() {
+            return empty;
+        }
+
+        boolean matchesPrefix(String value) {
+            Node node = root;
+            for (int i = 0; !node.terminal; i++) {
+                if (i == value.length()) {
+                    return false;
+                }
+                node = node.children.get(value.charAt(i));
+                if (node == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static final class Node {
+            private final Map<Character, Node> children = new HashMap<>(4);
+            private boolean terminal;
+        }
+    }
+}
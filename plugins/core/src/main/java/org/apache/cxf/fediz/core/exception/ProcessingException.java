@@ -33,7 +33,8 @@ public class ProcessingException extends Exception {
         INVALID_REQUEST,
         ISSUER_NOT_TRUSTED,
         TOKEN_INVALID,
-        TOKEN_NO_SIGNATURE
+        TOKEN_NO_SIGNATURE,
+        TOKEN_SIGNATURE_INVALID
     }
 
     /**
@@ -50,6 +51,7 @@ public class ProcessingException extends Exception {
         TYPE_MAP.put(TYPE.ISSUER_NOT_TRUSTED, "Security token issuer not trusted");
         TYPE_MAP.put(TYPE.TOKEN_INVALID, "Security token has been revoked");
         TYPE_MAP.put(TYPE.TOKEN_NO_SIGNATURE, "Security token has no signature");
+        TYPE_MAP.put(TYPE.TOKEN_SIGNATURE_INVALID, "Security token signature is invalid");
     }
 
     private TYPE type;
@@ -25,9 +25,6 @@ import java.util.Map.Entry;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.security.auth.callback.Callback;
-import javax.security.auth.callback.CallbackHandler;
-import javax.security.auth.callback.UnsupportedCallbackException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -42,7 +39,6 @@ import org.apache.cxf.fediz.core.processor.FedizProcessor;
 import org.apache.cxf.fediz.core.processor.FedizProcessorFactory;
 import org.apache.cxf.fediz.core.processor.FedizRequest;
 import org.apache.cxf.fediz.core.processor.RedirectionResponse;
-import org.apache.cxf.fediz.core.spi.ReplyConstraintCallback;
 import org.apache.cxf.fediz.core.util.StringUtils;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.slf4j.Logger;
@@ -72,9 +68,7 @@ public class LogoutHandler implements RequestHandler<Boolean> {
             return true;
         }
         //Check for custom logout URL
-        String logoutUrl = fedizConfig.getLogoutURL();
-        return logoutUrl != null && !logoutUrl.isEmpty()
-            && servletContextPath != null && request.getRequestURI().equals(servletContextPath + logoutUrl);
+        return fedizConfig.getRequestRouter().isLogoutURL(request.getRequestURI(), servletContextPath);
     }
 
     @Override
@@ -105,7 +99,7 @@ public class LogoutHandler implements RequestHandler<Boolean> {
         if (wreply != null && !wreply.isEmpty()) {
             Pattern logoutRedirectToConstraint = null;
             try {
-                logoutRedirectToConstraint = resolveLogoutRedirectToConstraint(request, fedizConfig);
+                logoutRedirectToConstraint = fedizConfig.getRequestRouter().resolveLogoutRedirectToConstraint(request);
             } catch (Exception e) {
                 LOG.error("Error redirecting user after logout: {}", e.getMessage());
             }
@@ -147,20 +141,6 @@ public class LogoutHandler implements RequestHandler<Boolean> {
         return true;
     }
 
-    private Pattern resolveLogoutRedirectToConstraint(HttpServletRequest request, FedizContext config)
-        throws IOException, UnsupportedCallbackException {
-        Object logoutConstraintObj = config.getLogoutRedirectToConstraint();
-        if (logoutConstraintObj instanceof Pattern) {
-            return (Pattern)logoutConstraintObj;
-        } else if (logoutConstraintObj instanceof CallbackHandler) {
-            CallbackHandler frCB = (CallbackHandler)logoutConstraintObj;
-            ReplyConstraintCallback callback = new ReplyConstraintCallback(request);
-            frCB.handle(new Callback[] {callback});
-            return callback.getReplyConstraint();
-        }
-        return null;
-    }
-
     public void setToken(Element token) {
         this.token = token;
     }
@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core.handler;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.cxf.fediz.core.FederationConstants;
+import org.apache.cxf.fediz.core.SAMLSSOConstants;
+import org.apache.cxf.fediz.core.config.FederationProtocol;
+import org.apache.cxf.fediz.core.config.FedizContext;
+import org.apache.cxf.fediz.core.config.Protocol;
+import org.apache.cxf.fediz.core.config.SAMLProtocol;
+import org.apache.cxf.fediz.core.metadata.MetadataDocumentHandler;
+import org.apache.cxf.fediz.core.spi.ReplyConstraintCallback;
+
+/**
+ * Classifies the requests of a FedizContext, compiled once per context: the metadata path, the custom logout URL
+ * and the protocol are resolved when the router is built, so a request is routed with one lookup of the request
+ * URI and of the protocol parameters. The stateless MetadataDocumentHandler is shared by all requests.
+ *
+ * A router is immutable. FedizContext builds a new router when the protocol, the metadata URI or the logout URL
+ * has been replaced.
+ */
+public final class RequestRouter {
+
+    public enum Route {
+        METADATA,
+        LOGOUT,
+        LOGOUT_CLEANUP,
+        SIGNIN_RESPONSE,
+        PROTECTED_RESOURCE
+    }
+
+    private final Protocol protocol;
+    private final String metadataURI;
+    private final String logoutURL;
+    private final boolean federation;
+    private final boolean saml;
+    private final FedizContext fedizContext;
+    private final MetadataDocumentHandler metadataHandler;
+
+    public RequestRouter(FedizContext fedizContext) {
+        this.fedizContext = fedizContext;
+        this.protocol = fedizContext.getProtocol();
+        this.metadataURI = MetadataDocumentHandler.getMetadataURI(fedizContext);
+        this.logoutURL = emptyToNull(fedizContext.getLogoutURL());
+        this.federation = protocol instanceof FederationProtocol;
+        this.saml = protocol instanceof SAMLProtocol;
+        this.metadataHandler = new MetadataDocumentHandler(fedizContext);
+    }
+
+    public boolean isCompiledFrom(FedizContext context) {
+        Protocol p = context.getProtocol();
+        return protocol == p
+            && metadataURI.equals(MetadataDocumentHandler.getMetadataURI(context))
+            && Objects.equals(logoutURL, emptyToNull(context.getLogoutURL()));
+    }
+
+    /**
+     * Classify the request, the first match wins: metadata document, logout (wa=wsignout1.0 or the custom
+     * logout URL), logout cleanup (wa=wsignoutcleanup1.0), sign-in response, otherwise a protected resource.
+     * The servlet context path is prepended to the configured logout URL.
+     */
+    public Route route(HttpServletRequest request, String servletContextPath) {
+        String uri = request.getRequestURI();
+        if (isMetadataURI(uri)) {
+            return Route.METADATA;
+        }
+        String action = request.getParameter(FederationConstants.PARAM_ACTION);
+        if (FederationConstants.ACTION_SIGNOUT.equals(action)) {
+            return Route.LOGOUT;
+        } else if (FederationConstants.ACTION_SIGNOUT_CLEANUP.equals(action)) {
+            return Route.LOGOUT_CLEANUP;
+        } else if (isLogoutURL(uri, servletContextPath)) {
+            return Route.LOGOUT;
+        } else if (isSigninResponse(action, request)) {
+            return Route.SIGNIN_RESPONSE;
+        }
+        return Route.PROTECTED_RESOURCE;
+    }
+
+    public boolean isMetadataRequest(HttpServletRequest request) {
+        return isMetadataURI(request.getRequestURI());
+    }
+
+    private boolean isMetadataURI(String uri) {
+        return uri != null && uri.contains(metadataURI);
+    }
+
+    /**
+     * Returns true if the request URI is the servlet context path followed by the configured logout URL.
+     */
+    public boolean isLogoutURL(String uri, String servletContextPath) {
+        if (logoutURL == null || uri == null || servletContextPath == null) {
+            return false;
+        }
+        // Same as uri.equals(servletContextPath + logoutURL), without building the string
+        return uri.length() == servletContextPath.length() + logoutURL.length()
+            && uri.startsWith(servletContextPath)
+            && uri.endsWith(logoutURL);
+    }
+
+    public boolean isSigninResponse(HttpServletRequest request) {
+        return isSigninResponse(federation ? request.getParameter(FederationConstants.PARAM_ACTION) : null,
+                                request);
+    }
+
+    /**
+     * @param action the value of the wa parameter, only used for WS-Federation
+     */
+    public boolean isSigninResponse(String action, HttpServletRequest request) {
+        if (federation) {
+            return FederationConstants.ACTION_SIGNIN.equals(action);
+        } else if (saml) {
+            return request.getParameter(SAMLSSOConstants.SAML_RESPONSE) != null;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the constraint the wreply parameter of a logout cleanup request must match, or null if there is
+     * none. A configured Pattern is compiled once by the FedizContext, a CallbackHandler is invoked per request.
+     */
+    public Pattern resolveLogoutRedirectToConstraint(HttpServletRequest request)
+        throws IOException, UnsupportedCallbackException {
+        Object logoutConstraintObj = fedizContext.getLogoutRedirectToConstraint();
+        if (logoutConstraintObj instanceof Pattern) {
+            return (Pattern)logoutConstraintObj;
+        } else if (logoutConstraintObj instanceof CallbackHandler) {
+            CallbackHandler frCB = (CallbackHandler)logoutConstraintObj;
+            ReplyConstraintCallback callback = new ReplyConstraintCallback(request);
+            frCB.handle(new Callback[] {callback});
+            return callback.getReplyConstraint();
+        }
+        return null;
+    }
+
+    public MetadataDocumentHandler getMetadataHandler() {
+        return metadataHandler;
+    }
+
+    public String getMetadataURI() {
+        return metadataURI;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
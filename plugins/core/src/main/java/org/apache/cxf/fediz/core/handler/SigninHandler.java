@@ -19,7 +19,8 @@
 package org.apache.cxf.fediz.core.handler;
 
 import java.security.cert.X509Certificate;
-import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -31,6 +32,7 @@ import org.apache.cxf.fediz.core.SAMLSSOConstants;
 import org.apache.cxf.fediz.core.config.FederationProtocol;
 import org.apache.cxf.fediz.core.config.FedizContext;
 import org.apache.cxf.fediz.core.config.SAMLProtocol;
+import org.apache.cxf.fediz.core.config.ValidationPlan;
 import org.apache.cxf.fediz.core.exception.ProcessingException;
 import org.apache.cxf.fediz.core.processor.FedizProcessor;
 import org.apache.cxf.fediz.core.processor.FedizProcessorFactory;
@@ -54,14 +56,7 @@ public class SigninHandler<T> implements RequestHandler<T> {
 
     @Override
     public boolean canHandleRequest(HttpServletRequest request) {
-        if (fedizContext.getProtocol() instanceof FederationProtocol
-            && FederationConstants.ACTION_SIGNIN.equals(request.getParameter(FederationConstants.PARAM_ACTION))) {
-            return true;
-        } else if (fedizContext.getProtocol() instanceof SAMLProtocol
-            && request.getParameter(SAMLSSOConstants.SAML_RESPONSE) != null) {
-            return true;
-        }
-        return false;
+        return fedizContext.getRequestRouter().isSigninResponse(request);
     }
 
     @Override
@@ -90,6 +85,36 @@ public class SigninHandler<T> implements RequestHandler<T> {
         return null;
     }
 
+    /**
+     * Handle the Sign-In-Response asynchronously, the token is processed by the asynchronous executor of the
+     * FedizContext. The returned stage completes with null if the token is not valid. Note that the caller
+     * must keep the request and response alive (e.g. with startAsync) until the stage is completed.
+     */
+    public CompletionStage<T> handleRequestAsync(HttpServletRequest request, HttpServletResponse response) {
+        if (!"POST".equals(request.getMethod())) {
+            throw new RuntimeException("Incorrect method GET for Sign-In-Response");
+        }
+        LOG.debug("Sign-In-Response received");
+        String responseToken = getResponseToken(request);
+        LOG.debug("Validating RSTR asynchronously...");
+
+        FedizRequest federationRequest = createFedizRequest(responseToken, request);
+        FedizProcessor processor = FedizProcessorFactory.newFedizProcessor(fedizContext.getProtocol());
+        return processor.processRequestAsync(federationRequest, fedizContext).handle((federationResponse, ex) -> {
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                LOG.error("Federation processing failed: " + cause.getMessage());
+                return null;
+            }
+            if (!validateAudienceRestrictions(federationResponse.getAudience(),
+                request.getRequestURL().toString())) {
+                return null;
+            }
+            LOG.debug("RSTR validated successfully");
+            return createPrincipal(request, response, federationResponse);
+        });
+    }
+
     protected T createPrincipal(HttpServletRequest request, HttpServletResponse response,
                               FedizResponse federationResponse) {
         return null;
@@ -100,6 +125,12 @@ public class SigninHandler<T> implements RequestHandler<T> {
         LOG.debug("Process SignIn request");
         LOG.debug("token=\n{}", responseToken);
 
+        FedizRequest federationRequest = createFedizRequest(responseToken, req);
+        FedizProcessor processor = FedizProcessorFactory.newFedizProcessor(fedizContext.getProtocol());
+        return processor.processRequest(federationRequest, fedizContext);
+    }
+
+    protected FedizRequest createFedizRequest(String responseToken, HttpServletRequest req) {
         FedizRequest federationRequest = new FedizRequest();
 
         String wa = req.getParameter(FederationConstants.PARAM_ACTION);
@@ -107,7 +138,14 @@ public class SigninHandler<T> implements RequestHandler<T> {
         federationRequest.setAction(wa);
         federationRequest.setResponseToken(responseToken);
 
-        if (fedizContext.getProtocol() instanceof SAMLProtocol) {
+        if (fedizContext.getRequestStateCodec() != null) {
+            // The RequestState is decoded from the wctx/RelayState by the processor, the session is not used
+            if (fedizContext.getProtocol() instanceof SAMLProtocol) {
+                federationRequest.setState(req.getParameter(SAMLSSOConstants.RELAY_STATE));
+            } else {
+                federationRequest.setState(req.getParameter(FederationConstants.PARAM_CONTEXT));
+            }
+        } else if (fedizContext.getProtocol() instanceof SAMLProtocol) {
             String relayState = req.getParameter("RelayState");
             federationRequest.setState(relayState);
             if (relayState != null) {
@@ -119,29 +157,22 @@ public class SigninHandler<T> implements RequestHandler<T> {
         }
         federationRequest.setRequest(req);
         federationRequest.setCerts((X509Certificate[])req.getAttribute("javax.servlet.request.X509Certificate"));
-
-        FedizProcessor processor = FedizProcessorFactory.newFedizProcessor(fedizContext.getProtocol());
-        return processor.processRequest(federationRequest, fedizContext);
+        return federationRequest;
     }
 
     protected boolean validateAudienceRestrictions(String audience, String requestURL) {
         // Validate the AudienceRestriction in Security Token (e.g. SAML)
         // validate against the configured list of audienceURIs
-        List<String> audienceURIs = fedizContext.getAudienceUris();
-        boolean validAudience = audienceURIs.isEmpty() && audience == null;
+        ValidationPlan plan = fedizContext.getValidationPlan();
+        boolean validAudience = !plan.hasAudienceUris() && audience == null;
         if (!validAudience && audience != null) {
 
-            for (String a : audienceURIs) {
-                if (audience.startsWith(a)) {
-                    validAudience = true;
-                    LOG.debug("Token audience matches with valid URIs.");
-                    break;
-                }
-            }
-
-            if (!validAudience) {
+            validAudience = plan.isAudienceAllowed(audience);
+            if (validAudience) {
+                LOG.debug("Token audience matches with valid URIs.");
+            } else {
                 LOG.warn("Token AudienceRestriction [{}] doesn't match with specified list of URIs.", audience);
-                LOG.debug("Authenticated URIs are: {}", audienceURIs);
+                LOG.debug("Authenticated URIs are: {}", fedizContext.getAudienceUris());
             }
 
             if (LOG.isDebugEnabled() && requestURL != null && requestURL.indexOf(audience) == -1) {
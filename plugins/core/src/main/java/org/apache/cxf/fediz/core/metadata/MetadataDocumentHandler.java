@@ -60,7 +60,7 @@ public class MetadataDocumentHandler implements RequestHandler<Boolean> {
 
     @Override
     public boolean canHandleRequest(HttpServletRequest request) {
-        return request.getRequestURL().indexOf(MetadataDocumentHandler.getMetadataURI(fedizConfig)) != -1;
+        return fedizConfig.getRequestRouter().isMetadataRequest(request);
     }
 
     @Override
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A ProcessingMetrics implementation, which records the latencies of every phase in a LatencyHistogram.
+ * The histograms are registered in the platform MBeanServer as
+ * "org.apache.cxf.fediz:type=ProcessingMetrics,context=&lt;context name&gt;,phase=&lt;phase&gt;" when the
+ * metrics are assigned to a FedizContext, unless JMX registration is disabled.
+ */
+public class HistogramProcessingMetrics implements ProcessingMetrics {
+
+    public static final String JMX_DOMAIN = "org.apache.cxf.fediz";
+
+    private static final Logger LOG = LoggerFactory.getLogger(HistogramProcessingMetrics.class);
+
+    private final Map<ProcessingPhase, LatencyHistogram> histograms = new EnumMap<>(ProcessingPhase.class);
+    private final List<ObjectName> registeredNames = new ArrayList<>();
+    private boolean jmxEnabled = true;
+
+    public HistogramProcessingMetrics() {
+        for (ProcessingPhase phase : ProcessingPhase.values()) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+    }
+
+    @Override
+    public void record(ProcessingPhase phase, long nanos) {
+        histograms.get(phase).record(nanos);
+    }
+
+    public LatencyHistogram getHistogram(ProcessingPhase phase) {
+        return histograms.get(phase);
+    }
+
+    @Override
+    public synchronized void init(String contextName) {
+        if (!jmxEnabled || !registeredNames.isEmpty()) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Map.Entry<ProcessingPhase, LatencyHistogram> entry : histograms.entrySet()) {
+            try {
+                ObjectName name = new ObjectName(JMX_DOMAIN + ":type=ProcessingMetrics,context="
+                    + ObjectName.quote(contextName) + ",phase=" + entry.getKey().name());
+                if (server.isRegistered(name)) {
+                    // e.g. a redeployed context, which hasn't been closed
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(entry.getValue(), name);
+                registeredNames.add(name);
+            } catch (JMException ex) {
+                LOG.warn("Failed to register the processing metrics of context '{}' in JMX: {}",
+                         contextName, ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registeredNames) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException ex) {
+                LOG.debug("Failed to unregister '{}': {}", name, ex.getMessage());
+            }
+        }
+        registeredNames.clear();
+    }
+
+    public boolean isJmxEnabled() {
+        return jmxEnabled;
+    }
+
+    /**
+     * Whether the histograms are registered in the platform MBeanServer. The default is true.
+     */
+    public void setJmxEnabled(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core.metrics;
+
+/**
+ * An SPI to measure the latency of the phases of processing a sign-in response. It is called by the
+ * FederationProcessorImpl and SAMLProcessorImpl for every request, so an implementation must be thread-safe
+ * and must not block.
+ *
+ * The implementation is configured per context with the "processingMetrics" element of the Fediz configuration.
+ * The default is the NoOpProcessingMetrics.
+ */
+public interface ProcessingMetrics {
+
+    /**
+     * Record the duration of a processing phase in nanoseconds.
+     */
+    void record(ProcessingPhase phase, long nanos);
+
+    /**
+     * Returns whether the metrics are recorded at all. The processors don't read the clock if not.
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Called once when the metrics are assigned to the FedizContext with the given name.
+     */
+    default void init(String contextName) {
+    }
+
+    /**
+     * Called when the FedizContext is closed.
+     */
+    default void close() {
+    }
+}
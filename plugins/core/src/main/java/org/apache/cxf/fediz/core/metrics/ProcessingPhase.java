@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core.metrics;
+
+/**
+ * The phases of processing a sign-in response, which are measured by the ProcessingMetrics.
+ */
+public enum ProcessingPhase {
+    /** Parsing the wresult / SAMLResponse into a DOM (or OpenSAML) object */
+    PARSING,
+    /** Decrypting an encrypted token / assertion */
+    DECRYPTION,
+    /** Verifying the signature of the token */
+    SIGNATURE_VERIFICATION,
+    /** Verifying trust in the signing certificate against the trusted issuers */
+    TRUST_VALIDATION,
+    /** The complete validation of the token by the TokenValidator (incl. signature and trust) */
+    TOKEN_VALIDATION,
+    /** Checking and updating the token replay cache */
+    REPLAY_CHECK,
+    /** Checking the mandatory claims and invoking the ClaimsProcessor chain */
+    CLAIMS_PROCESSING,
+    /** The complete processing of the sign-in response */
+    TOTAL
+}
@@ -24,8 +24,10 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.time.Instant;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
@@ -33,9 +35,14 @@ import javax.security.auth.callback.UnsupportedCallbackException;
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.cxf.fediz.core.Claim;
+import org.apache.cxf.fediz.core.ClaimCollection;
+import org.apache.cxf.fediz.core.RequestState;
+import org.apache.cxf.fediz.core.RequestStateCodec;
 import org.apache.cxf.fediz.core.config.FedizContext;
 import org.apache.cxf.fediz.core.exception.ProcessingException;
 import org.apache.cxf.fediz.core.exception.ProcessingException.TYPE;
+import org.apache.cxf.fediz.core.metrics.ProcessingMetrics;
+import org.apache.cxf.fediz.core.metrics.ProcessingPhase;
 import org.apache.cxf.fediz.core.spi.IDPCallback;
 import org.apache.cxf.fediz.core.spi.RealmCallback;
 import org.apache.cxf.fediz.core.spi.ReplyCallback;
@@ -106,6 +113,24 @@ public abstract class AbstractFedizProcessor implements FedizProcessor {
         }
     }
 
+    /**
+     * Returns the RequestState of the request. If it hasn't been restored from the session and the request state
+     * is carried in the wctx/RelayState parameter, it is decoded from the state of the request.
+     */
+    protected RequestState resolveRequestState(FedizRequest request, FedizContext config)
+        throws ProcessingException {
+        RequestState requestState = request.getRequestState();
+        RequestStateCodec codec = config.getRequestStateCodec();
+        if (requestState == null && codec != null) {
+            requestState = codec.decode(request.getState());
+            if (requestState == null && config.isRequestStateValidation()) {
+                LOG.warn("The received wctx/RelayState is invalid or has expired");
+                throw new ProcessingException(TYPE.INVALID_REQUEST);
+            }
+        }
+        return requestState;
+    }
+
     protected String extractFullContextPath(HttpServletRequest request) throws MalformedURLException {
         return StringUtils.extractFullContextPath(request);
     }
@@ -119,25 +144,21 @@ public abstract class AbstractFedizProcessor implements FedizProcessor {
     }
 
     protected List<String> getRoles(List<Claim> claims, URI roleURI) {
-        if (claims == null || roleURI == null) {
+        Claim c = ClaimCollection.findClaim(claims, roleURI);
+        if (c == null) {
             return null;
         }
         List<String> roles = null;
-        for (Claim c : claims) {
-            if (roleURI.equals(c.getClaimType())) {
-                Object oValue = c.getValue();
-                if ((oValue instanceof String) && !"".equals(oValue)) {
-                    roles = Collections.singletonList((String) oValue);
-                } else if ((oValue instanceof List<?>) && !((List<?>) oValue).isEmpty()) {
-                    @SuppressWarnings("unchecked")
-                    List<String> values = (List<String>) oValue;
-                    roles = Collections.unmodifiableList(values);
-                } else if (!((oValue instanceof String) || (oValue instanceof List<?>))) {
-                    LOG.error("Unsupported value type of Claim value");
-                    throw new IllegalStateException("Unsupported value type of Claim value");
-                }
-                break;
-            }
+        Object oValue = c.getValue();
+        if ((oValue instanceof String) && !"".equals(oValue)) {
+            roles = Collections.singletonList((String) oValue);
+        } else if ((oValue instanceof List<?>) && !((List<?>) oValue).isEmpty()) {
+            @SuppressWarnings("unchecked")
+            List<String> values = (List<String>) oValue;
+            roles = Collections.unmodifiableList(values);
+        } else if (!((oValue instanceof String) || (oValue instanceof List<?>))) {
+            LOG.error("Unsupported value type of Claim value");
+            throw new IllegalStateException("Unsupported value type of Claim value");
         }
         return roles;
     }
@@ -166,21 +187,28 @@ public abstract class AbstractFedizProcessor implements FedizProcessor {
                                         List<org.apache.cxf.fediz.core.Claim> receivedClaims
     ) throws ProcessingException {
         if (requestedClaims != null) {
+            Set<String> mandatoryClaimTypes = new LinkedHashSet<>();
             for (org.apache.cxf.fediz.core.config.Claim requestedClaim : requestedClaims) {
                 if (!requestedClaim.isOptional()) {
-                    boolean found = false;
-                    for (org.apache.cxf.fediz.core.Claim receivedClaim : receivedClaims) {
-                        if (requestedClaim.getType().equals(receivedClaim.getClaimType().toString())) {
-                            found = true;
-                            break;
-                        }
-                    }
-                    if (!found) {
-                        LOG.warn("Mandatory claim {} not found in token", requestedClaim.getType());
-                        throw new ProcessingException("Mandatory claim not found in token", TYPE.INVALID_REQUEST);
-                    }
+                    mandatoryClaimTypes.add(requestedClaim.getType());
                 }
             }
+            testForMandatoryClaims(mandatoryClaimTypes, receivedClaims);
+        }
+    }
+
+    protected void testForMandatoryClaims(Set<String> mandatoryClaimTypes,
+                                          List<org.apache.cxf.fediz.core.Claim> receivedClaims)
+        throws ProcessingException {
+        if (mandatoryClaimTypes.isEmpty()) {
+            return;
+        }
+        ClaimCollection claims = ClaimCollection.valueOf(receivedClaims);
+        for (String mandatoryClaimType : mandatoryClaimTypes) {
+            if (claims.getClaim(mandatoryClaimType) == null) {
+                LOG.warn("Mandatory claim {} not found in token", mandatoryClaimType);
+                throw new ProcessingException("Mandatory claim not found in token", TYPE.INVALID_REQUEST);
+            }
         }
     }
 
@@ -211,4 +239,24 @@ public abstract class AbstractFedizProcessor implements FedizProcessor {
         }
         return signInQuery;
     }
+
+    /**
+     * Returns the start time of a processing phase, without reading the clock if the metrics are disabled.
+     */
+    protected static long startPhase(ProcessingMetrics metrics) {
+        return metrics.isEnabled() ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Record a processing phase, which started at the given time, and return the end time as the start time
+     * of the next phase.
+     */
+    protected static long endPhase(ProcessingMetrics metrics, ProcessingPhase phase, long start) {
+        if (!metrics.isEnabled()) {
+            return 0L;
+        }
+        long now = System.nanoTime();
+        metrics.record(phase, now - start);
+        return now;
+    }
 }
@@ -21,6 +21,7 @@ package org.apache.cxf.fediz.core.processor;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.cert.Certificate;
@@ -33,7 +34,6 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -46,17 +46,22 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import org.apache.cxf.fediz.core.Claim;
+import org.apache.cxf.fediz.core.ClaimCollection;
 import org.apache.cxf.fediz.core.FederationConstants;
 import org.apache.cxf.fediz.core.RequestState;
+import org.apache.cxf.fediz.core.RequestStateCodec;
 import org.apache.cxf.fediz.core.TokenValidator;
 import org.apache.cxf.fediz.core.TokenValidatorRequest;
 import org.apache.cxf.fediz.core.TokenValidatorResponse;
 import org.apache.cxf.fediz.core.config.FederationProtocol;
 import org.apache.cxf.fediz.core.config.FedizContext;
 import org.apache.cxf.fediz.core.config.KeyManager;
+import org.apache.cxf.fediz.core.config.SignInRequestTemplate;
 import org.apache.cxf.fediz.core.exception.ProcessingException;
 import org.apache.cxf.fediz.core.exception.ProcessingException.TYPE;
 import org.apache.cxf.fediz.core.metadata.MetadataWriter;
+import org.apache.cxf.fediz.core.metrics.ProcessingMetrics;
+import org.apache.cxf.fediz.core.metrics.ProcessingPhase;
 import org.apache.cxf.fediz.core.spi.FreshnessCallback;
 import org.apache.cxf.fediz.core.spi.HomeRealmCallback;
 import org.apache.cxf.fediz.core.spi.ReplyConstraintCallback;
@@ -64,6 +69,7 @@ import org.apache.cxf.fediz.core.spi.SignOutQueryCallback;
 import org.apache.cxf.fediz.core.spi.WAuthCallback;
 import org.apache.cxf.fediz.core.spi.WReqCallback;
 import org.apache.cxf.fediz.core.util.DOMUtils;
+import org.apache.cxf.fediz.core.util.SecureIdGenerator;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
@@ -88,8 +94,17 @@ public class FederationProcessorImpl extends AbstractFedizProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(FederationProcessorImpl.class);
 
+    /**
+     * The WSSConfig used to decrypt an encrypted RSTR, with the WSS4J processing of the (decrypted) SAML token
+     * disabled. It is only read during decryption, so it is shared by all requests.
+     */
+    private static final WSSConfig DECRYPTION_WSS_CONFIG;
+
     static {
         WSSConfig.init();
+        DECRYPTION_WSS_CONFIG = WSSConfig.getNewInstance();
+        DECRYPTION_WSS_CONFIG.setProcessor(WSConstants.SAML_TOKEN, new NOOpProcessor());
+        DECRYPTION_WSS_CONFIG.setProcessor(WSConstants.SAML2_TOKEN, new NOOpProcessor());
     }
 
     /**
@@ -121,6 +136,14 @@ public class FederationProcessorImpl extends AbstractFedizProcessor {
 
     protected FedizResponse processSignInRequest(FedizRequest request, FedizContext config) throws ProcessingException {
 
+        if (config.getRequestStateCodec() != null) {
+            // Without a session, the plugin can't compare the wctx with the saved one
+            resolveRequestState(request, config);
+        }
+
+        final ProcessingMetrics metrics = config.getProcessingMetrics();
+        final long processingStart = startPhase(metrics);
+
         Element el;
         try {
             final Document doc = DOMUtils.readXml(new StringReader(request.getResponseToken()));
@@ -130,6 +153,7 @@ public class FederationProcessorImpl extends AbstractFedizProcessor {
             LOG.warn("Failed to parse wresult: " + e.getMessage(), e);
             throw new ProcessingException(TYPE.INVALID_REQUEST);
         }
+        long phaseStart = endPhase(metrics, ProcessingPhase.PARSING, processingStart);
 
         if ("RequestSecurityTokenResponseCollection".equals(el.getLocalName())) {
             el = DOMUtils.getFirstElement(el);
@@ -174,7 +198,8 @@ public class FederationProcessorImpl extends AbstractFedizProcessor {
         LifeTime lifeTime = null;
         if (lifetimeElem != null) {
             lifeTime = processLifeTime(lifetimeElem);
-
+        }
+        if (lifeTime != null && config.isValidateTokenLifetime()) {
             Instant rightNow = Instant.now();
             if (rightNow.isAfter(lifeTime.getExpires())) {
                 LOG.warn("RSTR Lifetime expired");
@@ -191,13 +216,17 @@ public class FederationProcessorImpl extends AbstractFedizProcessor {
 
         // Check to see if RST is encrypted
         if ("EncryptedData".equals(rst.getLocalName()) && WSConstants.ENC_NS.equals(rst.getNamespaceURI())) {
+            phaseStart = startPhase(metrics);
             Element decryptedRST = decryptEncryptedRST(rst, config);
             if (decryptedRST != null) {
                 rst = decryptedRST;
             }
+            endPhase(metrics, ProcessingPhase.DECRYPTION, phaseStart);
         }
 
+        phaseStart = startPhase(metrics);
         TokenValidatorResponse validatorResponse = validateToken(rst, tt, config, request.getCerts());
+        phaseStart = endPhase(metrics, ProcessingPhase.TOKEN_VALIDATION, phaseStart);
 
         // Check whether token already used for signin
         final Instant expires;
@@ -207,6 +236,7 @@ public class FederationProcessorImpl extends AbstractFedizProcessor {
             expires = validatorResponse.getExpires();
         }
         testForReplayAttack(validatorResponse.getUniqueTokenId(), config, expires);
+        phaseStart = endPhase(metrics, ProcessingPhase.REPLAY_CHECK, phaseStart);
 
         Instant created = validatorResponse.getCreated();
         if (lifeTime != null && lifeTime.getCreated() != null) {
@@ -215,9 +245,7 @@ public class FederationProcessorImpl extends AbstractFedizProcessor {
 
         List<Claim> claims = validatorResponse.getClaims();
         
-        testForMandatoryClaims(config.getProtocol().getRoleURI(),
-                config.getProtocol().getClaimTypesRequested(),
-                claims);
+        testForMandatoryClaims(config.getValidationPlan().getMandatoryClaimTypes(), claims);
 
         List<ClaimsProcessor> processors = config.getClaimsProcessor();
         if (processors != null) {
@@ -226,14 +254,18 @@ public class FederationProcessorImpl extends AbstractFedizProcessor {
                 claims = cp.processClaims(claims);
             }
         }
+        endPhase(metrics, ProcessingPhase.CLAIMS_PROCESSING, phaseStart);
 
-        List<String> roles = getRoles(claims, config.getProtocol().getRoleURI());
+        // Index the claims by type for the role lookup and the consumers of the response
+        claims = ClaimCollection.valueOf(claims);
+        List<String> roles = getRoles(claims, config.getValidationPlan().getRoleURI());
         
         FedizResponse fedResponse = new FedizResponse(validatorResponse.getUsername(), validatorResponse.getIssuer(),
                                                       roles, claims,
                                                       validatorResponse.getAudience(), created, expires, rst,
                                                       validatorResponse.getUniqueTokenId());
 
+        endPhase(metrics, ProcessingPhase.TOTAL, processingStart);
         return fedResponse;
     }
 
@@ -284,12 +316,9 @@ public class FederationProcessorImpl extends AbstractFedizProcessor {
         RequestData data = new RequestData();
         data.setWsDocInfo(docInfo);
 
-        // Disable WSS4J processing of the (decrypted) SAML Token
-        WSSConfig wssConfig = WSSConfig.getNewInstance();
-        wssConfig.setProcessor(WSConstants.SAML_TOKEN, new NOOpProcessor());
-        wssConfig.setProcessor(WSConstants.SAML2_TOKEN, new NOOpProcessor());
-        data.setWssConfig(wssConfig);
+        data.setWssConfig(DECRYPTION_WSS_CONFIG);
 
+        // The private key is cached by the Crypto of the decryption KeyManager
         data.setDecCrypto(decryptionKeyManager.getCrypto());
         data.setCallbackHandler(new DecryptionCallbackHandler(keyPassword));
         try {
@@ -354,28 +383,19 @@ public class FederationProcessorImpl extends AbstractFedizProcessor {
                 throw new IllegalStateException("Unsupported protocol");
             }
 
-            String issuerURL = resolveIssuer(request, config);
+            // The static parts of the redirect are encoded once per context
+            SignInRequestTemplate template = ((FederationProtocol)config.getProtocol()).getSignInRequestTemplate();
+
+            String issuerURL = template.getIssuerURL();
+            if (issuerURL == null) {
+                issuerURL = resolveIssuer(request, config);
+            }
             LOG.debug("Issuer url: {}", issuerURL);
             if (issuerURL != null && !issuerURL.isEmpty()) {
                 redirectURL = issuerURL;
             }
 
-            String wAuth = resolveAuthenticationType(request, config);
-            LOG.debug("WAuth: {}", wAuth);
-
-            String wReq = resolveRequest(request, config);
-            LOG.debug("WReq: {}", wReq);
-
-            String homeRealm = resolveHomeRealm(request, config);
-            LOG.debug("HomeRealm: {}", homeRealm);
-
-            String freshness = resolveFreshness(request, config);
-            LOG.debug("Freshness: {}", freshness);
-
-            String signInQuery = resolveSignInQuery(request, config);
-            LOG.debug("SignIn Query: {}", signInQuery);
-
-            String wctx = encode(UUID.randomUUID().toString(), UTF_8.name());
+            String wctx = SecureIdGenerator.generateUUID();
             StringBuffer requestURL = request.getRequestURL();
             String params = request.getQueryString();
             if (params != null && !params.isEmpty()) {
@@ -387,59 +407,69 @@ public class FederationProcessorImpl extends AbstractFedizProcessor {
             requestState.setIdpServiceAddress(redirectURL);
             requestState.setState(wctx);
             requestState.setCreatedAt(System.currentTimeMillis());
+            RequestStateCodec codec = config.getRequestStateCodec();
+            if (codec != null) {
+                // The request state is carried in wctx instead of the session
+                wctx = codec.encode(requestState);
+                requestState.setState(wctx);
+            }
 
-            StringBuilder sb = new StringBuilder();
+            StringBuilder sb = new StringBuilder(256);
             sb.append(FederationConstants.PARAM_ACTION).append('=').append(FederationConstants.ACTION_SIGNIN);
 
-            String reply = resolveReply(request, config);
-            if (reply == null || reply.isEmpty()) {
-                reply = request.getRequestURL().toString();
-            } else {
-                try {
-                    new URL(reply);
-                } catch (MalformedURLException ex) {
-                    if (reply.startsWith("/")) {
-                        reply = extractFullContextPath(request).concat(reply.substring(1));
-                    } else {
-                        reply = extractFullContextPath(request).concat(reply);
-                    }
-                }
+            String reply = template.getEncodedReply();
+            if (reply == null) {
+                reply = encode(resolveReplyURL(request, config), UTF_8.name());
             }
-
             LOG.debug("wreply={}", reply);
-            sb.append('&').append(FederationConstants.PARAM_REPLY).append('=')
-                .append(encode(reply, UTF_8.name()));
+            sb.append('&').append(FederationConstants.PARAM_REPLY).append('=').append(reply);
 
-            String realm = resolveWTRealm(request, config);
+            String realm = template.getEncodedRealm();
+            if (realm == null) {
+                realm = encode(resolveWTRealm(request, config), UTF_8.name());
+            }
             LOG.debug("wtrealm={}", realm);
 
             // add wtrealm parameter
-            sb.append('&').append(FederationConstants.PARAM_TREALM).append('=')
-                .append(encode(realm, UTF_8.name()));
+            sb.append('&').append(FederationConstants.PARAM_TREALM).append('=').append(realm);
 
             // add authentication type parameter wauth if set
-            if (wAuth != null && !wAuth.isEmpty()) {
-                sb.append('&').append(FederationConstants.PARAM_AUTH_TYPE).append('=')
-                    .append(encode(wAuth, UTF_8.name()));
+            String wAuth = template.getEncodedAuthenticationType();
+            if (wAuth == null) {
+                wAuth = encodeIfSet(resolveAuthenticationType(request, config));
             }
+            LOG.debug("WAuth: {}", wAuth);
+            appendIfSet(sb, FederationConstants.PARAM_AUTH_TYPE, wAuth);
 
             // add tokenRequest parameter wreq if set
-            if (wReq != null && !wReq.isEmpty()) {
-                sb.append('&').append(FederationConstants.PARAM_REQUEST).append('=')
-                    .append(encode(wReq, UTF_8.name()));
+            String wReq = template.getEncodedRequest();
+            if (wReq == null) {
+                wReq = encodeIfSet(resolveRequest(request, config));
             }
+            LOG.debug("WReq: {}", wReq);
+            appendIfSet(sb, FederationConstants.PARAM_REQUEST, wReq);
 
-            // add home realm parameter whr if set
+            // add home realm parameter whr if set, a 'whr' request parameter takes precedence
+            String homeRealm = request.getParameter(FederationConstants.PARAM_HOME_REALM);
             if (homeRealm != null && !homeRealm.isEmpty()) {
-                sb.append('&').append(FederationConstants.PARAM_HOME_REALM).append('=')
-                    .append(encode(homeRealm, UTF_8.name()));
+                LOG.debug("HomeRealm was defined as 'whr' request parameter and will be used for IDP redirect");
+                homeRealm = encode(homeRealm, UTF_8.name());
+            } else {
+                homeRealm = template.getEncodedHomeRealm();
+                if (homeRealm == null) {
+                    homeRealm = encodeIfSet(resolveHomeRealm(request, config));
+                }
             }
+            LOG.debug("HomeRealm: {}", homeRealm);
+            appendIfSet(sb, FederationConstants.PARAM_HOME_REALM, homeRealm);
 
             // add freshness parameter wfresh if set
-            if (freshness != null && !freshness.isEmpty()) {
-                sb.append('&').append(FederationConstants.PARAM_FRESHNESS).append('=')
-                    .append(encode(freshness, UTF_8.name()));
+            String freshness = template.getEncodedFreshness();
+            if (freshness == null) {
+                freshness = encodeIfSet(resolveFreshness(request, config));
             }
+            LOG.debug("Freshness: {}", freshness);
+            appendIfSet(sb, FederationConstants.PARAM_FRESHNESS, freshness);
 
             // add current time parameter wct
             Instant now = Instant.now();
@@ -448,11 +478,16 @@ public class FederationProcessorImpl extends AbstractFedizProcessor {
             sb.append('&').append(FederationConstants.PARAM_CURRENT_TIME).append('=')
                 .append(encode(wct, UTF_8.name()));
 
+            // the generated context id doesn't need to be encoded
             LOG.debug("wctx={}", wctx);
-            sb.append('&').append(FederationConstants.PARAM_CONTEXT).append('=')
-                .append(encode(wctx, UTF_8.name()));
+            sb.append('&').append(FederationConstants.PARAM_CONTEXT).append('=').append(wctx);
 
             // add signin query extensions
+            String signInQuery = template.getSignInQuery();
+            if (signInQuery == null) {
+                signInQuery = resolveSignInQuery(request, config);
+            }
+            LOG.debug("SignIn Query: {}", signInQuery);
             if (signInQuery != null && signInQuery.length() > 0) {
                 sb.append('&').append(signInQuery);
             }
@@ -469,6 +504,33 @@ public class FederationProcessorImpl extends AbstractFedizProcessor {
         return response;
     }
 
+    private String resolveReplyURL(HttpServletRequest request, FedizContext config) throws IOException,
+        UnsupportedCallbackException {
+        String reply = resolveReply(request, config);
+        if (reply == null || reply.isEmpty()) {
+            return request.getRequestURL().toString();
+        }
+        try {
+            new URL(reply);
+            return reply;
+        } catch (MalformedURLException ex) {
+            if (reply.startsWith("/")) {
+                return extractFullContextPath(request).concat(reply.substring(1));
+            }
+            return extractFullContextPath(request).concat(reply);
+        }
+    }
+
+    private static String encodeIfSet(String value) throws UnsupportedEncodingException {
+        return value == null || value.isEmpty() ? null : encode(value, UTF_8.name());
+    }
+
+    private static void appendIfSet(StringBuilder sb, String param, String encodedValue) {
+        if (encodedValue != null && !encodedValue.isEmpty()) {
+            sb.append('&').append(param).append('=').append(encodedValue);
+        }
+    }
+
     @Override
     public RedirectionResponse createSignOutRequest(HttpServletRequest request, SamlAssertionWrapper token,
         FedizContext config) throws ProcessingException {
@@ -611,27 +673,23 @@ public class FederationProcessorImpl extends AbstractFedizProcessor {
         return freshness;
     }
 
+    /**
+     * Resolve the home realm set in the configuration (the 'whr' request parameter is checked by the caller).
+     */
     private String resolveHomeRealm(HttpServletRequest request, FedizContext config) {
-        // Check if whr parameter was provided in request
-        String homeRealm = request.getParameter(FederationConstants.PARAM_HOME_REALM);
-
-        if (homeRealm != null && !homeRealm.isEmpty()) {
-            LOG.debug("HomeRealm was defined as 'whr' request parameter and will be used for IDP redirect");
-        } else {
-            // Check if home realm is set in configuration
-            Object homeRealmObj = ((FederationProtocol)config.getProtocol()).getHomeRealm();
-            if (homeRealmObj != null) {
-                if (homeRealmObj instanceof String) {
-                    homeRealm = (String)homeRealmObj;
-                } else if (homeRealmObj instanceof CallbackHandler) {
-                    homeRealm = resolveHomeRealm(homeRealmObj, request);
-                } else if (homeRealmObj instanceof List<?>) {
-                    for (Object cbh : (List<?>)homeRealmObj) {
-                        homeRealm = resolveHomeRealm(cbh, request);
-                        if (homeRealm != null) {
-                            LOG.debug("Home realm was found by {}", cbh.getClass());
-                            break;
-                        }
+        String homeRealm = null;
+        Object homeRealmObj = ((FederationProtocol)config.getProtocol()).getHomeRealm();
+        if (homeRealmObj != null) {
+            if (homeRealmObj instanceof String) {
+                homeRealm = (String)homeRealmObj;
+            } else if (homeRealmObj instanceof CallbackHandler) {
+                homeRealm = resolveHomeRealm(homeRealmObj, request);
+            } else if (homeRealmObj instanceof List<?>) {
+                for (Object cbh : (List<?>)homeRealmObj) {
+                    homeRealm = resolveHomeRealm(cbh, request);
+                    if (homeRealm != null) {
+                        LOG.debug("Home realm was found by {}", cbh.getClass());
+                        break;
                     }
                 }
             }
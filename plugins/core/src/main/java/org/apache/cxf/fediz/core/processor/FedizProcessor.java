@@ -19,6 +19,11 @@
 
 package org.apache.cxf.fediz.core.processor;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 import javax.servlet.http.HttpServletRequest;
 
 import org.w3c.dom.Document;
@@ -34,6 +39,37 @@ public interface FedizProcessor {
         FedizRequest request, FedizContext config
     ) throws ProcessingException;
 
+    /**
+     * Process the request on the asynchronous executor of the FedizContext, so that the calling (container)
+     * thread is not blocked by the decryption and validation of the token.
+     */
+    default CompletionStage<FedizResponse> processRequestAsync(FedizRequest request, FedizContext config) {
+        return processRequestAsync(request, config, config.getAsyncExecutor());
+    }
+
+    /**
+     * Process the request on the given executor. The returned stage completes exceptionally with the
+     * ProcessingException (or RuntimeException) of processRequest. If the executor rejects the task (e.g. its
+     * queue is full) the request is processed synchronously by the calling thread.
+     */
+    default CompletionStage<FedizResponse> processRequestAsync(FedizRequest request, FedizContext config,
+                                                               Executor executor) {
+        CompletableFuture<FedizResponse> future = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                future.complete(processRequest(request, config));
+            } catch (ProcessingException | RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            task.run();
+        }
+        return future;
+    }
+
     RedirectionResponse createSignInRequest(
         HttpServletRequest request, FedizContext config
     ) throws ProcessingException;
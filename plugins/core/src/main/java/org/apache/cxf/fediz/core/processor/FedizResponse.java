@@ -36,6 +36,7 @@ import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
 import org.apache.cxf.fediz.core.Claim;
+import org.apache.cxf.fediz.core.ClaimCollection;
 import org.apache.cxf.fediz.core.util.DOMUtils;
 import org.apache.wss4j.common.util.DOM2Writer;
 
@@ -68,7 +69,7 @@ public class FedizResponse implements Serializable {
         this.username = username;
         this.issuer = issuer;
         this.roles = roles;
-        this.claims = claims;
+        this.claims = claims == null ? null : ClaimCollection.valueOf(claims);
         this.audience = audience;
         this.tokenCreated = created;
         this.tokenExpires = expires;
@@ -103,6 +104,10 @@ public class FedizResponse implements Serializable {
         if (claims == null) {
             return null;
         }
+        if (claims instanceof ClaimCollection) {
+            // already immutable and indexed by claim type
+            return claims;
+        }
         return Collections.unmodifiableList(claims);
     }
 
@@ -26,23 +26,22 @@ import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.security.PrivateKey;
-import java.security.Signature;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
-import java.util.UUID;
 import java.util.zip.DataFormatException;
 
-import javax.security.auth.DestroyFailedException;
 import javax.servlet.http.HttpServletRequest;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import org.apache.cxf.fediz.core.Claim;
+import org.apache.cxf.fediz.core.ClaimCollection;
 import org.apache.cxf.fediz.core.RequestState;
+import org.apache.cxf.fediz.core.RequestStateCodec;
 import org.apache.cxf.fediz.core.SAMLSSOConstants;
 import org.apache.cxf.fediz.core.TokenValidator;
 import org.apache.cxf.fediz.core.TokenValidatorRequest;
@@ -53,14 +52,16 @@ import org.apache.cxf.fediz.core.config.SAMLProtocol;
 import org.apache.cxf.fediz.core.exception.ProcessingException;
 import org.apache.cxf.fediz.core.exception.ProcessingException.TYPE;
 import org.apache.cxf.fediz.core.metadata.MetadataWriter;
+import org.apache.cxf.fediz.core.metrics.ProcessingMetrics;
+import org.apache.cxf.fediz.core.metrics.ProcessingPhase;
+import org.apache.cxf.fediz.core.samlsso.AuthnRequestTemplate;
 import org.apache.cxf.fediz.core.samlsso.CompressionUtils;
 import org.apache.cxf.fediz.core.samlsso.SAMLPRequestBuilder;
 import org.apache.cxf.fediz.core.samlsso.SAMLProtocolResponseValidator;
 import org.apache.cxf.fediz.core.samlsso.SAMLSSOResponseValidator;
 import org.apache.cxf.fediz.core.samlsso.SSOValidatorResponse;
-import org.apache.cxf.fediz.core.util.CertsUtils;
 import org.apache.cxf.fediz.core.util.DOMUtils;
-import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.cxf.fediz.core.util.SecureIdGenerator;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.saml.OpenSAMLUtil;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
@@ -130,31 +131,44 @@ public class SAMLProcessorImpl extends AbstractFedizProcessor {
         return new MetadataWriter().getMetaData(request, config);
     }
 
-    private RequestState processRelayState(
-        String relayState, RequestState requestState, FedizContext config
-    ) throws ProcessingException {
+    private RequestState processRelayState(FedizRequest request, FedizContext config) throws ProcessingException {
+        String relayState = request.getState();
+        if (config.getRequestStateCodec() != null) {
+            // The RelayState is a token longer than 80 bytes, which is verified instead
+            return resolveRequestState(request, config);
+        }
         if (config.isRequestStateValidation() 
             && (relayState.getBytes().length <= 0 || relayState.getBytes().length > 80)) {
             LOG.error("Invalid RelayState");
             throw new ProcessingException(TYPE.INVALID_REQUEST);
         }
-        return requestState;
+        return request.getRequestState();
     }
 
     protected FedizResponse processSignInRequest(FedizRequest request, FedizContext config) throws ProcessingException {
         
+        final ProcessingMetrics metrics = config.getProcessingMetrics();
+        final long processingStart = startPhase(metrics);
+
         SAMLProtocol protocol = (SAMLProtocol)config.getProtocol();
-        RequestState requestState =
-            processRelayState(request.getState(), request.getRequestState(), config);
+        RequestState requestState = processRelayState(request, config);
 
         final XMLObject responseObject = getXMLObjectFromToken(request.getResponseToken(),
             protocol.isDisableDeflateEncoding());
         if (!(responseObject instanceof org.opensaml.saml.saml2.core.Response)) {
             throw new ProcessingException(TYPE.INVALID_REQUEST);
         }
+        long phaseStart = endPhase(metrics, ProcessingPhase.PARSING, processingStart);
 
         // Decrypt encrypted assertions
+        List<EncryptedAssertion> encryptedAssertions =
+            ((org.opensaml.saml.saml2.core.Response) responseObject).getEncryptedAssertions();
+        boolean encrypted = encryptedAssertions != null && !encryptedAssertions.isEmpty();
         decryptEncryptedAssertions((org.opensaml.saml.saml2.core.Response) responseObject, config);
+        if (encrypted) {
+            endPhase(metrics, ProcessingPhase.DECRYPTION, phaseStart);
+        }
+        phaseStart = startPhase(metrics);
 
         // Validate the Response
         validateSamlResponseProtocol((org.opensaml.saml.saml2.core.Response)responseObject, config);
@@ -203,6 +217,7 @@ public class SAMLProcessorImpl extends AbstractFedizProcessor {
             LOG.warn("No token validation response was available");
             throw new ProcessingException(TYPE.BAD_REQUEST);
         }
+        phaseStart = endPhase(metrics, ProcessingPhase.TOKEN_VALIDATION, phaseStart);
 
         // Check whether token already used for signin
         Instant expires = validatorResponse.getExpires();
@@ -210,12 +225,11 @@ public class SAMLProcessorImpl extends AbstractFedizProcessor {
             expires = ssoValidatorResponse.getSessionNotOnOrAfter();
         }
         testForReplayAttack(validatorResponse.getUniqueTokenId(), config, expires);
+        phaseStart = endPhase(metrics, ProcessingPhase.REPLAY_CHECK, phaseStart);
 
         List<Claim> claims = validatorResponse.getClaims();
 
-        testForMandatoryClaims(config.getProtocol().getRoleURI(),
-                               config.getProtocol().getClaimTypesRequested(),
-                               claims);
+        testForMandatoryClaims(config.getValidationPlan().getMandatoryClaimTypes(), claims);
 
         if (config.getClaimsProcessor() != null) {
             List<ClaimsProcessor> processors = config.getClaimsProcessor();
@@ -226,8 +240,11 @@ public class SAMLProcessorImpl extends AbstractFedizProcessor {
                 }
             }
         }
+        endPhase(metrics, ProcessingPhase.CLAIMS_PROCESSING, phaseStart);
 
-        List<String> roles = getRoles(claims, config.getProtocol().getRoleURI());
+        // Index the claims by type for the role lookup and the consumers of the response
+        claims = ClaimCollection.valueOf(claims);
+        List<String> roles = getRoles(claims, config.getValidationPlan().getRoleURI());
         
         FedizResponse fedResponse = new FedizResponse(
                 validatorResponse.getUsername(), validatorResponse.getIssuer(),
@@ -238,6 +255,7 @@ public class SAMLProcessorImpl extends AbstractFedizProcessor {
                 token,
                 validatorResponse.getUniqueTokenId());
 
+        endPhase(metrics, ProcessingPhase.TOTAL, processingStart);
         return fedResponse;
     }
 
@@ -263,14 +281,13 @@ public class SAMLProcessorImpl extends AbstractFedizProcessor {
             
             try {
                 // Get the private key
-                PrivateKey privateKey = decryptionKeyManager.getCrypto().getPrivateKey(keyAlias, keyPassword);
+                PrivateKey privateKey = decryptionKeyManager.getPrivateKey();
                 if (privateKey == null) {
                     LOG.debug("No private key available");
                     throw new ProcessingException(TYPE.BAD_REQUEST);
                 }
                 
-                BasicX509Credential cred = new BasicX509Credential(
-                    CertsUtils.getX509CertificateFromCrypto(decryptionKeyManager.getCrypto(), keyAlias));
+                BasicX509Credential cred = new BasicX509Credential(decryptionKeyManager.getCertificate());
                 cred.setPrivateKey(privateKey);
                 
                 StaticKeyInfoCredentialResolver resolver = new StaticKeyInfoCredentialResolver(cred);
@@ -401,34 +418,52 @@ public class SAMLProcessorImpl extends AbstractFedizProcessor {
         FedizContext config
     ) throws ProcessingException {
         try {
-            SAMLSSOResponseValidator ssoResponseValidator = new SAMLSSOResponseValidator();
+            SAMLSSOResponseValidator ssoResponseValidator =
+                createSSOResponseValidator(samlResponse, request, requestState, config);
+            return ssoResponseValidator.validateSamlResponse(samlResponse, false);
+        } catch (WSSecurityException ex) {
+            LOG.debug(ex.getMessage(), ex);
+            throw new ProcessingException(TYPE.INVALID_REQUEST);
+        }
+    }
+
+    /**
+     * Create the validator of the SAML SSO Response. The assertion consumer URL and the client address are
+     * taken from the HTTP request, if there is one.
+     */
+    protected SAMLSSOResponseValidator createSSOResponseValidator(
+        org.opensaml.saml.saml2.core.Response samlResponse,
+        HttpServletRequest request,
+        RequestState requestState,
+        FedizContext config
+    ) throws ProcessingException {
+        SAMLSSOResponseValidator ssoResponseValidator = new SAMLSSOResponseValidator();
+        if (request != null) {
             String requestURL = request.getRequestURL().toString();
             ssoResponseValidator.setAssertionConsumerURL(requestURL);
             boolean disableClientAddressCheck = ((SAMLProtocol)config.getProtocol()).isDisableClientAddressCheck();
             if (!disableClientAddressCheck) {
                 ssoResponseValidator.setClientAddress(request.getRemoteAddr());
             }
+        }
 
-            boolean doNotEnforceKnownIssuer =
-                ((SAMLProtocol)config.getProtocol()).isDoNotEnforceKnownIssuer();
-            ssoResponseValidator.setEnforceKnownIssuer(!doNotEnforceKnownIssuer);
+        boolean doNotEnforceKnownIssuer =
+            ((SAMLProtocol)config.getProtocol()).isDoNotEnforceKnownIssuer();
+        ssoResponseValidator.setEnforceKnownIssuer(!doNotEnforceKnownIssuer);
+        ssoResponseValidator.setValidateLifetime(config.isValidateTokenLifetime());
 
-            ssoResponseValidator.setIssuerIDP(requestState != null ? requestState.getIdpServiceAddress() : null);
-            ssoResponseValidator.setRequestId(requestState != null ? requestState.getRequestId() : null);
-            ssoResponseValidator.setSpIdentifier(requestState != null ? requestState.getIssuerId() : null);
-            
-            boolean doNotEnforceAssertionsSigned =
-                    ((SAMLProtocol)config.getProtocol()).isDoNotEnforceEncryptedAssertionsSigned()
-                    && !samlResponse.getEncryptedAssertions().isEmpty();
-            ssoResponseValidator.setEnforceAssertionsSigned(!doNotEnforceAssertionsSigned);
-            
-            ssoResponseValidator.setReplayCache(config.getTokenReplayCache());
+        ssoResponseValidator.setIssuerIDP(requestState != null ? requestState.getIdpServiceAddress() : null);
+        ssoResponseValidator.setRequestId(requestState != null ? requestState.getRequestId() : null);
+        ssoResponseValidator.setSpIdentifier(requestState != null ? requestState.getIssuerId() : null);
+        
+        boolean doNotEnforceAssertionsSigned =
+                ((SAMLProtocol)config.getProtocol()).isDoNotEnforceEncryptedAssertionsSigned()
+                && !samlResponse.getEncryptedAssertions().isEmpty();
+        ssoResponseValidator.setEnforceAssertionsSigned(!doNotEnforceAssertionsSigned);
+        
+        ssoResponseValidator.setReplayCache(config.getTokenReplayCache());
 
-            return ssoResponseValidator.validateSamlResponse(samlResponse, false);
-        } catch (WSSecurityException ex) {
-            LOG.debug(ex.getMessage(), ex);
-            throw new ProcessingException(TYPE.INVALID_REQUEST);
-        }
+        return ssoResponseValidator;
     }
 
     @Override
@@ -448,11 +483,7 @@ public class SAMLProcessorImpl extends AbstractFedizProcessor {
                 redirectURL = issuerURL;
             }
 
-            SAMLPRequestBuilder samlpRequestBuilder =
-                ((SAMLProtocol)config.getProtocol()).getSAMLPRequestBuilder();
-
-            Document doc = DOMUtils.createDocument();
-            doc.appendChild(doc.createElement("root"));
+            SAMLProtocol protocol = (SAMLProtocol)config.getProtocol();
 
             // Create the AuthnRequest
             String reply = resolveReply(request, config);
@@ -470,25 +501,50 @@ public class SAMLProcessorImpl extends AbstractFedizProcessor {
                 }
             }
             String realm = resolveWTRealm(request, config);
-            AuthnRequest authnRequest =
-                samlpRequestBuilder.createAuthnRequest(realm, reply);
+            String destination = protocol.isSignRequest() ? redirectURL : null;
+
+            final String requestId;
+            final String issuerId;
+            final String authnRequestEncoded;
+            AuthnRequestTemplate template = protocol.getAuthnRequestTemplate(realm, destination);
+            if (template != null) {
+                // Splice the variable values into the pre-serialized request of the default builder
+                requestId = "_" + SecureIdGenerator.generateUUID();
+                issuerId = template.getIssuerId();
+                authnRequestEncoded =
+                    encodeRequestMessage(template.createRequest(requestId, Instant.now(), reply));
+            } else {
+                AuthnRequest authnRequest =
+                    protocol.getSAMLPRequestBuilder().createAuthnRequest(realm, reply);
+                if (destination != null) {
+                    authnRequest.setDestination(destination);
+                }
 
-            if (((SAMLProtocol)config.getProtocol()).isSignRequest()) {
-                authnRequest.setDestination(redirectURL);
+                Document doc = DOMUtils.createDocument();
+                doc.appendChild(doc.createElement("root"));
+                Element authnRequestElement = OpenSAMLUtil.toDom(authnRequest, doc);
+                requestId = authnRequest.getID();
+                issuerId = authnRequest.getIssuer().getValue();
+                authnRequestEncoded = encodeAuthnRequest(authnRequestElement);
             }
 
-            Element authnRequestElement = OpenSAMLUtil.toDom(authnRequest, doc);
-            String authnRequestEncoded = encodeAuthnRequest(authnRequestElement);
-
-            String relayState = URLEncoder.encode(UUID.randomUUID().toString(), "UTF-8");
+            // The generated relay state doesn't need to be encoded
+            String relayState = SecureIdGenerator.generateUUID();
             RequestState requestState = new RequestState();
             requestState.setTargetAddress(reply);
             requestState.setIdpServiceAddress(redirectURL);
-            requestState.setRequestId(authnRequest.getID());
+            requestState.setRequestId(requestId);
             requestState.setIssuerId(realm);
-            requestState.setWebAppContext(authnRequest.getIssuer().getValue());
+            requestState.setWebAppContext(issuerId);
             requestState.setState(relayState);
             requestState.setCreatedAt(System.currentTimeMillis());
+            RequestStateCodec codec = config.getRequestStateCodec();
+            if (codec != null) {
+                // The request state is carried in the RelayState instead of the session. The base64url
+                // encoded token doesn't need to be encoded either.
+                relayState = codec.encode(requestState);
+                requestState.setState(relayState);
+            }
 
             String urlEncodedRequest =
                 URLEncoder.encode(authnRequestEncoded, "UTF-8");
@@ -498,7 +554,7 @@ public class SAMLProcessorImpl extends AbstractFedizProcessor {
             StringBuilder sb = new StringBuilder(SAMLSSOConstants.SAML_REQUEST).append('=').append(urlEncodedRequest)
                 .append('&').append(SAMLSSOConstants.RELAY_STATE).append('=').append(relayState);
 
-            if (((SAMLProtocol)config.getProtocol()).isSignRequest()) {
+            if (protocol.isSignRequest()) {
                 String signature = signRequest(config, sb);
                 sb.append('&').append(SAMLSSOConstants.SIGNATURE).append('=').append(signature);
             }
@@ -529,24 +585,24 @@ public class SAMLProcessorImpl extends AbstractFedizProcessor {
         FedizContext config,
         StringBuilder sb
     ) throws Exception {
-        Crypto crypto = config.getSigningKey().getCrypto();
-        if (crypto == null) {
+        KeyManager signingKey = config.getSigningKey();
+        if (signingKey.getCrypto() == null) {
             LOG.debug("No crypto instance of properties file configured for signature");
             throw new ProcessingException("Failed to Sign Request");
         }
-        String signatureUser = config.getSigningKey().getKeyAlias();
+        String signatureUser = signingKey.getKeyAlias();
         if (signatureUser == null) {
             LOG.debug("No user configured for signature");
             throw new ProcessingException("Failed to Sign Request");
         }
-        String signaturePassword = config.getSigningKey().getKeyPassword();
+        String signaturePassword = signingKey.getKeyPassword();
         if (signaturePassword == null) {
             LOG.debug("No signature password available");
             throw new ProcessingException("Failed to Sign Request");
         }
 
-        // Get the private key
-        PrivateKey privateKey = crypto.getPrivateKey(signatureUser, signaturePassword);
+        // Get the (cached) private key
+        PrivateKey privateKey = signingKey.getPrivateKey();
         if (privateKey == null) {
             LOG.debug("No private key available");
             throw new ProcessingException("Failed to Sign Request");
@@ -574,31 +630,25 @@ public class SAMLProcessorImpl extends AbstractFedizProcessor {
         }
         LOG.debug("Using Signature algorithm " + sigAlgo);
 
-        // Sign the request
-        Signature signature = Signature.getInstance(jceSigAlgo);
-        signature.initSign(privateKey);
-
         sb.append('&').append(SAMLSSOConstants.SIG_ALG).append('=').append(URLEncoder.encode(sigAlgo, "UTF-8"));
         String requestToSign = sb.toString();
 
-        signature.update(requestToSign.getBytes(StandardCharsets.UTF_8));
-        byte[] signBytes = signature.sign();
+        // Sign the request, the private key is destroyed when the context is closed
+        byte[] signBytes = signingKey.sign(jceSigAlgo, requestToSign.getBytes(StandardCharsets.UTF_8));
 
         String encodedSignature = Base64.getEncoder().encodeToString(signBytes);
-        
-        // Clean the private key from memory when we're done
-        try {
-            privateKey.destroy();
-        } catch (DestroyFailedException ex) {
-            // ignore
-        }
 
         return URLEncoder.encode(encodedSignature, "UTF-8");
     }
 
     protected String encodeAuthnRequest(Element authnRequest) {
-        String requestMessage = DOM2Writer.nodeToString(authnRequest);
+        return encodeRequestMessage(DOM2Writer.nodeToString(authnRequest));
+    }
 
+    /**
+     * Deflate and Base64 encode a serialized request for the redirect binding.
+     */
+    protected String encodeRequestMessage(String requestMessage) {
         byte[] deflatedBytes = CompressionUtils.deflate(requestMessage.getBytes(StandardCharsets.UTF_8));
 
         return Base64.getEncoder().encodeToString(deflatedBytes);
@@ -648,7 +698,7 @@ public class SAMLProcessorImpl extends AbstractFedizProcessor {
             Element logoutRequestElement = OpenSAMLUtil.toDom(logoutRequest, doc);
             String logoutRequestEncoded = encodeAuthnRequest(logoutRequestElement);
 
-            String relayState = URLEncoder.encode(UUID.randomUUID().toString(), "UTF-8");
+            String relayState = SecureIdGenerator.generateUUID();
 
             String urlEncodedRequest =
                 URLEncoder.encode(logoutRequestEncoded, "UTF-8");
@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core.saml;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import org.apache.cxf.fediz.core.saml.FedizSignatureTrustValidator.TrustType;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded cache of the trust decisions made by the FedizSignatureTrustValidator. Verifying trust in a
+ * certificate chain (PKIX path building or peer trust matching) is expensive, while the IdP signs millions of
+ * tokens with the same certificate.
+ *
+ * A decision is keyed by the fingerprint of the certificate chain, the trust type, the subject constraints and
+ * the trust store (Crypto instance) it was made against, so a reloaded trust store never reuses a decision of the
+ * previous one. A positive decision expires after the time to live or when a certificate of the chain expires,
+ * whatever comes first. A negative decision only lives for the (short) negative time to live.
+ *
+ * A cached positive decision would skip the revocation check, so the FedizSignatureTrustValidator does not use
+ * the cache if revocation is checked.
+ */
+public class CertificateTrustCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CertificateTrustCache.class);
+
+    private static final long DEFAULT_TIME_TO_LIVE = 3600L * 1000L;
+    private static final long DEFAULT_NEGATIVE_TIME_TO_LIVE = 10L * 1000L;
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    private final ConcurrentMap<Key, Decision> decisions = new ConcurrentHashMap<>();
+    private long timeToLive = DEFAULT_TIME_TO_LIVE;
+    private long negativeTimeToLive = DEFAULT_NEGATIVE_TIME_TO_LIVE;
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    /**
+     * Create the cache key of a trust decision, or null if the certificates can't be encoded.
+     */
+    public Key createKey(X509Certificate[] certs, TrustType trustType, Collection<Pattern> subjectConstraints,
+                         Crypto crypto) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (X509Certificate cert : certs) {
+                digest.update(cert.getEncoded());
+            }
+            StringBuilder constraints = new StringBuilder();
+            for (Pattern pattern : subjectConstraints) {
+                constraints.append(pattern.pattern()).append('\n');
+            }
+            return new Key(Base64.getEncoder().encodeToString(digest.digest()), trustType,
+                           constraints.toString(), crypto);
+        } catch (NoSuchAlgorithmException | CertificateEncodingException ex) {
+            LOG.debug("Failed to create the trust cache key", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Returns Boolean.TRUE or Boolean.FALSE for a cached decision, null if there is none.
+     */
+    public Boolean getDecision(Key key) {
+        Decision decision = decisions.get(key);
+        if (decision == null) {
+            return null;
+        }
+        if (decision.expires <= System.currentTimeMillis()) {
+            decisions.remove(key, decision);
+            return null;
+        }
+        return decision.trusted;
+    }
+
+    public void putTrusted(Key key, X509Certificate[] certs) {
+        long expires = System.currentTimeMillis() + timeToLive;
+        for (X509Certificate cert : certs) {
+            expires = Math.min(expires, cert.getNotAfter().getTime());
+        }
+        put(key, new Decision(Boolean.TRUE, expires));
+    }
+
+    public void putUntrusted(Key key) {
+        put(key, new Decision(Boolean.FALSE, System.currentTimeMillis() + negativeTimeToLive));
+    }
+
+    private void put(Key key, Decision decision) {
+        long now = System.currentTimeMillis();
+        if (decision.expires <= now) {
+            return;
+        }
+        if (decisions.size() >= maxEntries) {
+            purgeExpiredDecisions(now);
+        }
+        if (decisions.size() < maxEntries) {
+            decisions.put(key, decision);
+        }
+    }
+
+    private void purgeExpiredDecisions(long now) {
+        for (Iterator<Decision> it = decisions.values().iterator(); it.hasNext();) {
+            if (it.next().expires <= now) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all cached decisions, e.g. when the trust stores are reloaded.
+     */
+    public void clear() {
+        decisions.clear();
+    }
+
+    public int size() {
+        return decisions.size();
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * How long (in milliseconds) a positive trust decision is cached at most. The default is one hour.
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public long getNegativeTimeToLive() {
+        return negativeTimeToLive;
+    }
+
+    /**
+     * How long (in milliseconds) a negative trust decision is cached. The default is 10 seconds, 0 disables
+     * the caching of negative decisions.
+     */
+    public void setNegativeTimeToLive(long negativeTimeToLive) {
+        this.negativeTimeToLive = negativeTimeToLive;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * The maximum number of cached decisions. The default is 1000, 0 disables the cache.
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public static final class Key {
+        private final String fingerprint;
+        private final TrustType trustType;
+        private final String subjectConstraints;
+        private final Crypto crypto;
+        private final int hashCode;
+
+        Key(String fingerprint, TrustType trustType, String subjectConstraints, Crypto crypto) {
+            this.fingerprint = fingerprint;
+            this.trustType = trustType;
+            this.subjectConstraints = subjectConstraints;
+            this.crypto = crypto;
+            this.hashCode = Objects.hash(fingerprint, trustType, subjectConstraints, System.identityHashCode(crypto));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            // The trust store is compared by identity, a reloaded store is a new Crypto instance
+            return crypto == other.crypto
+                && trustType == other.trustType
+                && fingerprint.equals(other.fingerprint)
+                && subjectConstraints.equals(other.subjectConstraints);
+        }
+    }
+
+    private static final class Decision {
+        private final Boolean trusted;
+        private final long expires;
+
+        Decision(Boolean trusted, long expires) {
+            this.trusted = trusted;
+            this.expires = expires;
+        }
+    }
+}
@@ -56,6 +56,11 @@ public class FedizSignatureTrustValidator implements Validator {
      */
     private Collection<Pattern> subjectDNPatterns = new ArrayList<>();
 
+    /**
+     * an optional cache of trust decisions
+     */
+    private CertificateTrustCache trustCache;
+
 
     /**
      * Set the kind of trust. The default is CHAIN_TRUST.
@@ -75,6 +80,18 @@ public class FedizSignatureTrustValidator implements Validator {
         }
     }
 
+    /**
+     * Set a cache for the trust decisions on certificate chains. By default no decisions are cached. The cache is
+     * not used if revocation is checked.
+     */
+    public void setTrustCache(CertificateTrustCache trustCache) {
+        this.trustCache = trustCache;
+    }
+
+    public CertificateTrustCache getTrustCache() {
+        return trustCache;
+    }
+
     /**
      * Validate the credential argument. It must contain either some Certificates or a PublicKey.
      *
@@ -116,16 +133,31 @@ public class FedizSignatureTrustValidator implements Validator {
 
         if (certs != null && certs.length > 0) {
             validateCertificates(certs);
-            verifyTrustInCerts(certs, crypto, data, data.isRevocationEnabled());
-            if (signatureTrustType.equals(TrustType.CHAIN_TRUST_CONSTRAINTS)) {
-                if (matches(certs[0])) {
+            // A cached decision would skip the revocation check
+            CertificateTrustCache.Key key = trustCache == null || data.isRevocationEnabled() ? null
+                : trustCache.createKey(certs, signatureTrustType, subjectDNPatterns, crypto);
+            if (key != null) {
+                Boolean trusted = trustCache.getDecision(key);
+                if (Boolean.TRUE.equals(trusted)) {
+                    LOG.debug("Trust in certificate {} found in cache", certs[0].getSubjectX500Principal());
                     return credential;
-                } else {
+                } else if (Boolean.FALSE.equals(trusted)) {
+                    LOG.debug("Missing trust in certificate {} found in cache", certs[0].getSubjectX500Principal());
                     throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
                 }
-            } else {
-                return credential;
             }
+            try {
+                verifyTrustInChain(certs, crypto, data);
+            } catch (WSSecurityException ex) {
+                if (key != null) {
+                    trustCache.putUntrusted(key);
+                }
+                throw ex;
+            }
+            if (key != null) {
+                trustCache.putTrusted(key, certs);
+            }
+            return credential;
         }
         if (publicKey != null) {
             validatePublicKey(publicKey, crypto);
@@ -134,6 +166,14 @@ public class FedizSignatureTrustValidator implements Validator {
         throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
     }
 
+    private void verifyTrustInChain(X509Certificate[] certs, Crypto crypto, RequestData data)
+        throws WSSecurityException {
+        verifyTrustInCerts(certs, crypto, data, data.isRevocationEnabled());
+        if (signatureTrustType.equals(TrustType.CHAIN_TRUST_CONSTRAINTS) && !matches(certs[0])) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
+        }
+    }
+
     protected Crypto getCrypto(RequestData data) {
         return data.getSigVerCrypto();
     }
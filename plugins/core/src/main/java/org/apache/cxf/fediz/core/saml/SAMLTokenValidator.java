@@ -29,11 +29,10 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
-import java.util.regex.Pattern;
 
 import org.w3c.dom.Element;
 
@@ -43,15 +42,17 @@ import org.apache.cxf.fediz.core.ClaimTypes;
 import org.apache.cxf.fediz.core.TokenValidator;
 import org.apache.cxf.fediz.core.TokenValidatorRequest;
 import org.apache.cxf.fediz.core.TokenValidatorResponse;
-import org.apache.cxf.fediz.core.config.CertificateValidationMethod;
 import org.apache.cxf.fediz.core.config.FedizContext;
-import org.apache.cxf.fediz.core.config.Protocol;
 import org.apache.cxf.fediz.core.config.TrustManager;
 import org.apache.cxf.fediz.core.config.TrustedIssuer;
+import org.apache.cxf.fediz.core.config.ValidationPlan;
+import org.apache.cxf.fediz.core.config.ValidationPlan.IssuerTrust;
 import org.apache.cxf.fediz.core.exception.ProcessingException;
 import org.apache.cxf.fediz.core.exception.ProcessingException.TYPE;
-import org.apache.cxf.fediz.core.saml.FedizSignatureTrustValidator.TrustType;
+import org.apache.cxf.fediz.core.metrics.ProcessingMetrics;
+import org.apache.cxf.fediz.core.metrics.ProcessingPhase;
 import org.apache.cxf.fediz.core.util.CertsUtils;
+import org.apache.cxf.fediz.core.util.ClaimTypeUtils;
 import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.principal.SAMLTokenPrincipal;
@@ -60,7 +61,6 @@ import org.apache.wss4j.common.saml.SAMLKeyInfo;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
-import org.apache.wss4j.dom.engine.WSSConfig;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.saml.WSSSAMLKeyInfoProcessor;
 import org.apache.wss4j.dom.validate.Credential;
@@ -140,8 +140,7 @@ public class SAMLTokenValidator implements TokenValidator {
         Element token = request.getToken();
         try {
             RequestData requestData = new RequestData();
-            WSSConfig wssConfig = WSSConfig.getNewInstance();
-            requestData.setWssConfig(wssConfig);
+            requestData.setWssConfig(config.getValidationPlan().getWssConfig());
             requestData.setWsDocInfo(new WSDocInfo(token.getOwnerDocument()));
             // not needed as no private key must be read
             // requestData.setCallbackHandler(new
@@ -160,6 +159,9 @@ public class SAMLTokenValidator implements TokenValidator {
             }
 
             if (assertion.isSigned()) {
+                ProcessingMetrics metrics = config.getProcessingMetrics();
+                long phaseStart = metrics.isEnabled() ? System.nanoTime() : 0L;
+
                 // Verify the signature
                 Signature sig = assertion.getSignature();
                 KeyInfo keyInfo = sig.getKeyInfo();
@@ -170,7 +172,12 @@ public class SAMLTokenValidator implements TokenValidator {
                             keyInfo.getDOM(), new WSSSAMLKeyInfoProcessor(requestData),
                             requestData.getSigVerCrypto()
                         );
-                    assertion.verifySignature(samlKeyInfo);
+                    try {
+                        assertion.verifySignature(samlKeyInfo);
+                    } catch (WSSecurityException ex) {
+                        LOG.warn("Signature of the security token is invalid: {}", ex.getMessage());
+                        throw new ProcessingException(TYPE.TOKEN_SIGNATURE_INVALID);
+                    }
                 } else {
                     samlKeyInfo = validateInCertificatesStore(assertion, config);
                 }
@@ -181,32 +188,22 @@ public class SAMLTokenValidator implements TokenValidator {
                     requestData.getCallbackHandler()
                 );
 
+                if (metrics.isEnabled()) {
+                    long now = System.nanoTime();
+                    metrics.record(ProcessingPhase.SIGNATURE_VERIFICATION, now - phaseStart);
+                    phaseStart = now;
+                }
+
                 // Now verify trust on the signature
                 Credential trustCredential = new Credential();
                 trustCredential.setPublicKey(samlKeyInfo.getPublicKey());
                 trustCredential.setCertificates(samlKeyInfo.getCerts());
                 trustCredential.setSamlAssertion(assertion);
 
-                SamlAssertionValidator trustValidator = new SamlAssertionValidator();
-                trustValidator.setFutureTTL(config.getMaximumClockSkew().intValue());
-           
-                List<TrustedIssuer> trustedIssuers = config.getTrustedIssuers();
-                for (TrustedIssuer ti : trustedIssuers) {
-                    Pattern subjectConstraint = ti.getCompiledSubject();
-                    List<Pattern> subjectConstraints = new ArrayList<>(1);
-                    if (subjectConstraint != null) {
-                        subjectConstraints.add(subjectConstraint);
-                    }
-                
-                    if (ti.getCertificateValidationMethod().equals(CertificateValidationMethod.CHAIN_TRUST)) {
-                        trustValidator.setSubjectConstraints(subjectConstraints);
-                        trustValidator.setSignatureTrustType(TrustType.CHAIN_TRUST_CONSTRAINTS);
-                    } else if (ti.getCertificateValidationMethod().equals(CertificateValidationMethod.PEER_TRUST)) {
-                        trustValidator.setSignatureTrustType(TrustType.PEER_TRUST);
-                    } else {
-                        throw new IllegalStateException("Unsupported certificate validation method: "
-                                                        + ti.getCertificateValidationMethod());
-                    }
+                ValidationPlan plan = config.getValidationPlan();
+                for (IssuerTrust issuerTrust : plan.getIssuerTrusts()) {
+                    TrustedIssuer ti = issuerTrust.getTrustedIssuer();
+                    SamlAssertionValidator trustValidator = issuerTrust.getAssertionValidator();
                     try {
                         for (TrustManager tm: config.getCertificateStores()) {
                             try {
@@ -222,7 +219,7 @@ public class SAMLTokenValidator implements TokenValidator {
                         if (trusted) {
                             break;
                         }
-                
+
                     } catch (Exception ex) {
                         if (LOG.isInfoEnabled()) {
                             LOG.info("Issuer '" + assertionIssuer + "' doesn't match trusted issuer '" + ti.getName()
@@ -230,12 +227,16 @@ public class SAMLTokenValidator implements TokenValidator {
                         }
                     }
                 }
+                if (metrics.isEnabled()) {
+                    metrics.record(ProcessingPhase.TRUST_VALIDATION, System.nanoTime() - phaseStart);
+                }
             }
 
             if (!trusted) {
                 // Condition already checked in SamlAssertionValidator
                 // Minor performance impact on untrusted and expired tokens
-                if (!isConditionValid(assertion, config.getMaximumClockSkew().intValue())) {
+                if (config.isValidateTokenLifetime()
+                    && !isConditionValid(assertion, config.getMaximumClockSkew().intValue())) {
                     LOG.warn("Security token expired");
                     throw new ProcessingException(TYPE.TOKEN_EXPIRED);
                 } else {
@@ -281,10 +282,10 @@ public class SAMLTokenValidator implements TokenValidator {
     }
 
     protected List<Claim> parseRoleClaim(FedizContext config, List<Claim> claims) {
-        Protocol protocol = config.getProtocol();
-        if (protocol.getRoleURI() != null) {
-            URI roleURI = URI.create(protocol.getRoleURI());
-            String delim = protocol.getRoleDelimiter();
+        ValidationPlan plan = config.getValidationPlan();
+        URI roleURI = plan.getRoleURI();
+        if (roleURI != null) {
+            String delim = plan.getRoleDelimiter();
             for (Claim c : claims) {
                 if (roleURI.equals(c.getClaimType())) {
                     final List<String> roles;
@@ -321,7 +322,7 @@ public class SAMLTokenValidator implements TokenValidator {
             return Collections.emptyList();
         }
         List<Claim> collection = new ArrayList<>();
-        Map<String, Claim> claimsMap = new HashMap<>();
+        Map<String, Claim> claimsMap = new LinkedHashMap<>();
 
         for (org.opensaml.saml.saml1.core.AttributeStatement statement : attributeStatements) {
             LOG.debug("parsing statement: {}", statement.getElementQName());
@@ -348,10 +349,10 @@ public class SAMLTokenValidator implements TokenValidator {
                         }
                     } else {
                         if (attribute.getAttributeNamespace().endsWith("/")) {
-                            c.setClaimType(URI.create(attribute.getAttributeNamespace()
+                            c.setClaimType(ClaimTypeUtils.internClaimType(attribute.getAttributeNamespace()
                                                       + attrName.toString()));
                         } else {
-                            c.setClaimType(URI.create(attribute.getAttributeNamespace()
+                            c.setClaimType(ClaimTypeUtils.internClaimType(attribute.getAttributeNamespace()
                                                       + "/" + attrName.toString()));
                         }
                     }
@@ -374,7 +375,7 @@ public class SAMLTokenValidator implements TokenValidator {
     
     private URI parseAttributeName(String attributeName) {
         try {
-            return URI.create(attributeName);
+            return ClaimTypeUtils.internClaimType(attributeName);
         } catch (IllegalArgumentException ex) {
             // Maybe the string has a space in it...
             try {
@@ -395,7 +396,7 @@ public class SAMLTokenValidator implements TokenValidator {
         }
 
         List<Claim> collection = new ArrayList<>();
-        Map<String, Claim> claimsMap = new HashMap<>();
+        Map<String, Claim> claimsMap = new LinkedHashMap<>();
 
         for (org.opensaml.saml.saml2.core.AttributeStatement statement : attributeStatements) {
             LOG.debug("parsing statement: {}", statement.getElementQName());
@@ -411,7 +412,7 @@ public class SAMLTokenValidator implements TokenValidator {
                 URI attrName = parseAttributeName(attribute.getName());
                 if (ClaimTypes.URI_BASE.toString().equals(attribute.getNameFormat())
                     && !attrName.isAbsolute()) {
-                    c.setClaimType(URI.create(ClaimTypes.URI_BASE + "/" + attrName.toString()));
+                    c.setClaimType(ClaimTypeUtils.internClaimType(ClaimTypes.URI_BASE + "/" + attrName.toString()));
                 } else {
                     c.setClaimType(attrName);
                 }
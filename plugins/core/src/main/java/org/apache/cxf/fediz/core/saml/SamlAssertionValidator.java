@@ -19,7 +19,6 @@
 
 package org.apache.cxf.fediz.core.saml;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.regex.Pattern;
 
@@ -37,29 +36,55 @@ import org.apache.wss4j.dom.validate.Credential;
  */
 public class SamlAssertionValidator extends org.apache.wss4j.dom.validate.SamlAssertionValidator {
 
-    private TrustType signatureTrustType = TrustType.CHAIN_TRUST;
-
     /**
-     * a collection of compiled regular expression patterns for the subject DN
+     * Only holds configuration, so it is created once and shared by all validations
      */
-    private Collection<Pattern> subjectDNPatterns = new ArrayList<>();
+    private final FedizSignatureTrustValidator trustValidator = new FedizSignatureTrustValidator();
+
+    private boolean validateLifetime = true;
 
     /**
      * Set a list of Strings corresponding to regular expression constraints on
      * the subject DN of a certificate
      */
     public void setSubjectConstraints(Collection<Pattern> constraints) {
-        if (constraints != null) {
-            subjectDNPatterns.clear();
-            subjectDNPatterns.addAll(constraints);
-        }
+        trustValidator.setSubjectConstraints(constraints);
     }
 
     /**
      * Set the kind of trust. The default is CHAIN_TRUST.
      */
     public void setSignatureTrustType(TrustType trustType) {
-        this.signatureTrustType = trustType;
+        trustValidator.setSignatureTrustType(trustType);
+    }
+
+    /**
+     * Set a cache for the trust decisions on the signing certificates.
+     */
+    public void setTrustCache(CertificateTrustCache trustCache) {
+        trustValidator.setTrustCache(trustCache);
+    }
+
+    /**
+     * Whether the Conditions, the IssueInstant and the AuthnStatements of the Assertion are checked against
+     * the current time. The default is true. The audience restrictions are checked either way.
+     */
+    public void setValidateLifetime(boolean validateLifetime) {
+        this.validateLifetime = validateLifetime;
+    }
+
+    @Override
+    protected void checkConditions(SamlAssertionWrapper samlAssertion) throws WSSecurityException {
+        if (validateLifetime) {
+            super.checkConditions(samlAssertion);
+        }
+    }
+
+    @Override
+    protected void checkAuthnStatements(SamlAssertionWrapper samlAssertion) throws WSSecurityException {
+        if (validateLifetime) {
+            super.checkAuthnStatements(samlAssertion);
+        }
     }
 
     /**
@@ -80,10 +105,6 @@ public class SamlAssertionValidator extends org.apache.wss4j.dom.validate.SamlAs
         credential.setPublicKey(samlKeyInfo.getPublicKey());
         credential.setCertificates(samlKeyInfo.getCerts());
 
-        FedizSignatureTrustValidator trustValidator = new FedizSignatureTrustValidator();
-        trustValidator.setSignatureTrustType(signatureTrustType);
-        trustValidator.setSubjectConstraints(subjectDNPatterns);
-
         return trustValidator.validate(credential, data);
     }
 
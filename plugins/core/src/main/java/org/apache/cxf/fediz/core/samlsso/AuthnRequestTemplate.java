@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core.samlsso;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.apache.cxf.fediz.core.util.DOMUtils;
+import org.apache.wss4j.common.saml.OpenSAMLUtil;
+import org.apache.wss4j.common.util.DOM2Writer;
+import org.opensaml.saml.saml2.core.AuthnRequest;
+
+/**
+ * A serialized AuthnRequest created by the DefaultSAMLPRequestBuilder, with the attributes which change between
+ * requests (ID, IssueInstant and AssertionConsumerServiceURL) cut out. Creating a request only splices the
+ * (escaped) values into the serialized form, instead of building, marshalling and serializing the OpenSAML
+ * objects again.
+ *
+ * A template is immutable and compiled for an issuer id, a destination and the settings of the builder.
+ */
+public final class AuthnRequestTemplate {
+
+    private static final String[] VARIABLE_ATTRIBUTES = {"ID", "IssueInstant", "AssertionConsumerServiceURL"};
+    private static final String PLACEHOLDER_URL = "urn:fediz:placeholder";
+
+    // The format of the SAML dateTime marshaller
+    private static final DateTimeFormatter ISSUE_INSTANT_FORMATTER =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    private final String issuerId;
+    private final String destination;
+    private final boolean forceAuthn;
+    private final boolean passive;
+    private final String protocolBinding;
+    private final String nameIDFormat;
+
+    // segments[0] value[slots[0]] segments[1] value[slots[1]] ... segments[n]
+    private final String[] segments;
+    private final int[] slots;
+    private final int length;
+
+    private AuthnRequestTemplate(DefaultSAMLPRequestBuilder builder, String issuerId, String destination,
+                                 String serialized) {
+        this.issuerId = issuerId;
+        this.destination = destination;
+        this.forceAuthn = builder.isForceAuthn();
+        this.passive = builder.isPassive();
+        this.protocolBinding = builder.getProtocolBinding();
+        this.nameIDFormat = builder.getNameIDFormat();
+
+        // The variable attributes of the root element, ordered by their position
+        int tagEnd = serialized.indexOf('>');
+        int[][] positions = new int[VARIABLE_ATTRIBUTES.length][];
+        for (int i = 0; i < VARIABLE_ATTRIBUTES.length; i++) {
+            String marker = " " + VARIABLE_ATTRIBUTES[i] + "=\"";
+            int start = serialized.indexOf(marker);
+            if (start < 0 || start > tagEnd) {
+                throw new IllegalStateException("No " + VARIABLE_ATTRIBUTES[i] + " attribute in the AuthnRequest");
+            }
+            start += marker.length();
+            positions[i] = new int[] {start, serialized.indexOf('"', start), i};
+        }
+        Arrays.sort(positions, (a, b) -> Integer.compare(a[0], b[0]));
+
+        segments = new String[positions.length + 1];
+        slots = new int[positions.length];
+        int offset = 0;
+        for (int i = 0; i < positions.length; i++) {
+            segments[i] = serialized.substring(offset, positions[i][0]);
+            slots[i] = positions[i][2];
+            offset = positions[i][1];
+        }
+        segments[positions.length] = serialized.substring(offset);
+
+        int len = 0;
+        for (String segment : segments) {
+            len += segment.length();
+        }
+        length = len;
+    }
+
+    /**
+     * Compile a template by serializing an AuthnRequest of the given builder.
+     */
+    public static AuthnRequestTemplate compile(DefaultSAMLPRequestBuilder builder, String issuerId,
+                                               String destination) throws Exception {
+        AuthnRequest authnRequest = builder.createAuthnRequest(issuerId, PLACEHOLDER_URL);
+        if (destination != null) {
+            authnRequest.setDestination(destination);
+        }
+
+        Document doc = DOMUtils.createDocument();
+        doc.appendChild(doc.createElement("root"));
+        Element authnRequestElement = OpenSAMLUtil.toDom(authnRequest, doc);
+        return new AuthnRequestTemplate(builder, issuerId, destination,
+                                        DOM2Writer.nodeToString(authnRequestElement));
+    }
+
+    /**
+     * Returns true if the template was compiled for the given issuer id, destination and builder settings.
+     */
+    public boolean isCompiledFrom(DefaultSAMLPRequestBuilder builder, String issuer, String dest) {
+        return forceAuthn == builder.isForceAuthn()
+            && passive == builder.isPassive()
+            && Objects.equals(protocolBinding, builder.getProtocolBinding())
+            && Objects.equals(nameIDFormat, builder.getNameIDFormat())
+            && Objects.equals(issuerId, issuer)
+            && Objects.equals(destination, dest);
+    }
+
+    /**
+     * Create the serialized AuthnRequest with the given values.
+     */
+    public String createRequest(String id, Instant issueInstant, String assertionConsumerServiceURL) {
+        String[] values = {
+            id, ISSUE_INSTANT_FORMATTER.format(issueInstant), assertionConsumerServiceURL
+        };
+        StringBuilder sb = new StringBuilder(length + 128 + assertionConsumerServiceURL.length());
+        for (int i = 0; i < slots.length; i++) {
+            sb.append(segments[i]);
+            appendEscaped(sb, values[slots[i]]);
+        }
+        return sb.append(segments[slots.length]).toString();
+    }
+
+    private static void appendEscaped(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '>':
+                sb.append("&gt;");
+                break;
+            case '"':
+                sb.append("&quot;");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+    }
+
+    public String getIssuerId() {
+        return issuerId;
+    }
+}
@@ -21,11 +21,24 @@ package org.apache.cxf.fediz.core.samlsso;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
 public final class CompressionUtils {
+    /**
+     * The Deflater (of the nowrap format of the SAML redirect binding) reused by a thread, it holds native memory
+     * until it is ended (see endDeflaters). The Deflater of a terminated thread is not kept.
+     */
+    private static final ThreadLocal<ReusableDeflater> DEFLATER = new ThreadLocal<>();
+    private static final Set<ReusableDeflater> DEFLATERS =
+        Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
     private CompressionUtils() {
 
     }
@@ -36,35 +49,39 @@ public final class CompressionUtils {
     public static InputStream inflate(byte[] deflatedToken, boolean nowrap)
         throws DataFormatException {
         Inflater inflater = new Inflater(nowrap);
-        inflater.setInput(deflatedToken);
-
-        byte[] input = new byte[deflatedToken.length * 2];
-        int inflatedLen = 0;
-        int inputLen = 0;
-        byte[] inflatedToken = input;
-        while (!inflater.finished()) {
-            inputLen = inflater.inflate(input);
-            if (!inflater.finished()) {
-
-                if (inputLen == 0) {
-                    if (inflater.needsInput()) {
-                        throw new DataFormatException("Inflater can not inflate all the token bytes");
-                    } else {
-                        break;
+        try {
+            inflater.setInput(deflatedToken);
+
+            byte[] input = new byte[deflatedToken.length * 2];
+            int inflatedLen = 0;
+            int inputLen = 0;
+            byte[] inflatedToken = input;
+            while (!inflater.finished()) {
+                inputLen = inflater.inflate(input);
+                if (!inflater.finished()) {
+
+                    if (inputLen == 0) {
+                        if (inflater.needsInput()) {
+                            throw new DataFormatException("Inflater can not inflate all the token bytes");
+                        } else {
+                            break;
+                        }
                     }
-                }
 
-                inflatedToken = new byte[input.length + inflatedLen];
-                System.arraycopy(input, 0, inflatedToken, inflatedLen, inputLen);
-                inflatedLen += inputLen;
+                    inflatedToken = new byte[input.length + inflatedLen];
+                    System.arraycopy(input, 0, inflatedToken, inflatedLen, inputLen);
+                    inflatedLen += inputLen;
+                }
             }
+            InputStream is = new ByteArrayInputStream(input, 0, inputLen);
+            if (inflatedToken != input) {
+                is = new SequenceInputStream(new ByteArrayInputStream(inflatedToken, 0, inflatedLen),
+                                             is);
+            }
+            return is;
+        } finally {
+            inflater.end();
         }
-        InputStream is = new ByteArrayInputStream(input, 0, inputLen);
-        if (inflatedToken != input) {
-            is = new SequenceInputStream(new ByteArrayInputStream(inflatedToken, 0, inflatedLen),
-                                         is);
-        }
-        return is;
     }
 
     public static byte[] deflate(byte[] tokenBytes) {
@@ -72,8 +89,30 @@ public final class CompressionUtils {
     }
 
     public static byte[] deflate(byte[] tokenBytes, boolean nowrap) {
-        Deflater compresser = new Deflater(Deflater.DEFLATED, nowrap);
+        if (!nowrap) {
+            Deflater compresser = new Deflater(Deflater.DEFLATED, false);
+            try {
+                return deflate(compresser, tokenBytes);
+            } finally {
+                compresser.end();
+            }
+        }
 
+        ReusableDeflater reusable = DEFLATER.get();
+        if (reusable == null || !reusable.acquire()) {
+            reusable = new ReusableDeflater();
+            reusable.acquire();
+            DEFLATER.set(reusable);
+            DEFLATERS.add(reusable);
+        }
+        try {
+            return deflate(reusable.deflater, tokenBytes);
+        } finally {
+            reusable.release();
+        }
+    }
+
+    private static byte[] deflate(Deflater compresser, byte[] tokenBytes) {
         compresser.setInput(tokenBytes);
         compresser.finish();
 
@@ -85,4 +124,49 @@ public final class CompressionUtils {
         System.arraycopy(output, 0, result, 0, compressedDataLength);
         return result;
     }
+
+    /**
+     * End the Deflaters reused by the threads, e.g. when a web application is undeployed. A Deflater in use is
+     * ended by its thread when it is done, a thread that deflates again afterwards creates a new one.
+     */
+    public static void endDeflaters() {
+        List<ReusableDeflater> deflaters;
+        synchronized (DEFLATERS) {
+            deflaters = new ArrayList<>(DEFLATERS);
+            DEFLATERS.clear();
+        }
+        for (ReusableDeflater reusable : deflaters) {
+            reusable.end();
+        }
+        DEFLATER.remove();
+    }
+
+    private static final class ReusableDeflater {
+        private final Deflater deflater = new Deflater(Deflater.DEFLATED, true);
+        private boolean inUse;
+        private boolean ended;
+
+        synchronized boolean acquire() {
+            inUse = !ended;
+            return inUse;
+        }
+
+        synchronized void release() {
+            inUse = false;
+            if (ended) {
+                deflater.end();
+            } else {
+                deflater.reset();
+            }
+        }
+
+        synchronized void end() {
+            if (!ended) {
+                ended = true;
+                if (!inUse) {
+                    deflater.end();
+                }
+            }
+        }
+    }
 }
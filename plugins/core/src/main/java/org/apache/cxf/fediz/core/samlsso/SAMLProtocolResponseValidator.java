@@ -18,23 +18,17 @@
  */
 package org.apache.cxf.fediz.core.samlsso;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Pattern;
-
 import org.w3c.dom.Document;
 
-import org.apache.cxf.fediz.core.config.CertificateValidationMethod;
 import org.apache.cxf.fediz.core.config.FedizContext;
 import org.apache.cxf.fediz.core.config.TrustManager;
 import org.apache.cxf.fediz.core.config.TrustedIssuer;
+import org.apache.cxf.fediz.core.config.ValidationPlan.IssuerTrust;
 import org.apache.cxf.fediz.core.saml.FedizSignatureTrustValidator;
-import org.apache.cxf.fediz.core.saml.FedizSignatureTrustValidator.TrustType;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.saml.SAMLKeyInfo;
 import org.apache.wss4j.common.saml.SAMLUtil;
 import org.apache.wss4j.dom.WSDocInfo;
-import org.apache.wss4j.dom.engine.WSSConfig;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.saml.WSSSAMLKeyInfoProcessor;
 import org.apache.wss4j.dom.validate.Credential;
@@ -158,8 +152,7 @@ public class SAMLProtocolResponseValidator {
         FedizContext config
     ) throws WSSecurityException {
         RequestData requestData = new RequestData();
-        WSSConfig wssConfig = WSSConfig.getNewInstance();
-        requestData.setWssConfig(wssConfig);
+        requestData.setWssConfig(config.getValidationPlan().getWssConfig());
         requestData.setWsDocInfo(new WSDocInfo(doc));
 
         SAMLKeyInfo samlKeyInfo = null;
@@ -190,27 +183,11 @@ public class SAMLProtocolResponseValidator {
         trustCredential.setPublicKey(samlKeyInfo.getPublicKey());
         trustCredential.setCertificates(samlKeyInfo.getCerts());
 
-        FedizSignatureTrustValidator trustValidator = new FedizSignatureTrustValidator();
-
         boolean trusted = false;
 
-        List<TrustedIssuer> trustedIssuers = config.getTrustedIssuers();
-        for (TrustedIssuer ti : trustedIssuers) {
-            Pattern subjectConstraint = ti.getCompiledSubject();
-            List<Pattern> subjectConstraints = new ArrayList<>(1);
-            if (subjectConstraint != null) {
-                subjectConstraints.add(subjectConstraint);
-            }
-
-            if (ti.getCertificateValidationMethod().equals(CertificateValidationMethod.CHAIN_TRUST)) {
-                trustValidator.setSubjectConstraints(subjectConstraints);
-                trustValidator.setSignatureTrustType(TrustType.CHAIN_TRUST_CONSTRAINTS);
-            } else if (ti.getCertificateValidationMethod().equals(CertificateValidationMethod.PEER_TRUST)) {
-                trustValidator.setSignatureTrustType(TrustType.PEER_TRUST);
-            } else {
-                throw new IllegalStateException("Unsupported certificate validation method: "
-                                                + ti.getCertificateValidationMethod());
-            }
+        for (IssuerTrust issuerTrust : config.getValidationPlan().getIssuerTrusts()) {
+            TrustedIssuer ti = issuerTrust.getTrustedIssuer();
+            FedizSignatureTrustValidator trustValidator = issuerTrust.getSignatureTrustValidator();
             try {
                 for (TrustManager tm: config.getCertificateStores()) {
                     try {
@@ -268,7 +245,7 @@ public class SAMLProtocolResponseValidator {
             SignatureValidator.validate(signature, credential);
         } catch (SignatureException ex) {
             LOG.debug("Error in validating the SAML Signature: " + ex.getMessage(), ex);
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity");
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK);
         }
     }
 
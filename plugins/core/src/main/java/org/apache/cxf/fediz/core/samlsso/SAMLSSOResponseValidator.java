@@ -48,6 +48,7 @@ public class SAMLSSOResponseValidator {
     private boolean enforceResponseSigned;
     private boolean enforceAssertionsSigned = true;
     private boolean enforceKnownIssuer = true;
+    private boolean validateLifetime = true;
     private ReplayCache replayCache;
 
     /**
@@ -65,6 +66,14 @@ public class SAMLSSOResponseValidator {
         this.enforceKnownIssuer = enforceKnownIssuer;
     }
 
+    /**
+     * Whether a bearer SubjectConfirmation must not have expired. It must have a NotOnOrAfter timestamp either
+     * way. The default is true.
+     */
+    public void setValidateLifetime(boolean validateLifetime) {
+        this.validateLifetime = validateLifetime;
+    }
+
     /**
      * Validate a SAML 2 Protocol Response
      * @param samlResponse
@@ -219,7 +228,7 @@ public class SAMLSSOResponseValidator {
 
         // We must have a NotOnOrAfter timestamp
         if (subjectConfData.getNotOnOrAfter() == null
-            || subjectConfData.getNotOnOrAfter().isBeforeNow()) {
+            || (validateLifetime && subjectConfData.getNotOnOrAfter().isBeforeNow())) {
             LOG.debug("Subject Conf Data does not contain NotOnOrAfter or it has expired");
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity");
         }
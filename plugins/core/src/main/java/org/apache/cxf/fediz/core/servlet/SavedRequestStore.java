@@ -0,0 +1,356 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core.servlet;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cxf.fediz.core.util.SecureIdGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the bodies of the requests which are saved while the user is authenticated at the IdP, so that only a
+ * small entry id has to be stored in the session. The store is bounded: a single session may not save more
+ * than maxBytesPerSession and all sessions together not more than maxTotalBytes. Bodies larger than the spill
+ * threshold are written to temporary files instead of being kept on the heap. The files are deleted when their
+ * entry is restored or purged, or by clear() when the authenticator is stopped.
+ *
+ * An entry is removed when it is restored, or purged when it is older than the time to live (the time the
+ * user has to log on at the IdP), which also covers the sessions which were never resumed.
+ */
+public class SavedRequestStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SavedRequestStore.class);
+
+    private static final int DEFAULT_SPILL_THRESHOLD = 16 * 1024;
+    private static final long DEFAULT_MAX_BYTES_PER_SESSION = 1024L * 1024L;
+    private static final long DEFAULT_MAX_TOTAL_BYTES = 64L * 1024L * 1024L;
+    private static final long DEFAULT_TIME_TO_LIVE = 5L * 60L * 1000L;
+    private static final long PURGE_INTERVAL = 30L * 1000L;
+    private static final String SPILL_FILE_PREFIX = "fediz-saved-";
+    private static final String SPILL_FILE_SUFFIX = ".body";
+
+    private final ConcurrentMap<String, SavedBody> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> sessionBytes = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong nextPurge = new AtomicLong();
+
+    private int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+    private long maxBytesPerSession = DEFAULT_MAX_BYTES_PER_SESSION;
+    private long maxTotalBytes = DEFAULT_MAX_TOTAL_BYTES;
+    private long timeToLive = DEFAULT_TIME_TO_LIVE;
+    private Path spillDirectory;
+    private Path tempSpillDirectory;
+
+    /**
+     * Save the body of a request and return the id of the entry.
+     *
+     * @param sessionId the session the body is saved for, used to enforce the per session budget
+     * @param createdAt the creation time of the RequestState of the sign-in request, the entry expires after
+     *                  createdAt + timeToLive
+     * @throws IOException if a budget is exceeded or the body can't be spilled to disk
+     */
+    public String save(String sessionId, byte[] body, int offset, int length, long createdAt) throws IOException {
+        long now = System.currentTimeMillis();
+        purgeExpiredIfDue(now);
+
+        AtomicLong sessionCount = sessionBytes.computeIfAbsent(sessionId, k -> new AtomicLong());
+        if (sessionCount.addAndGet(length) > maxBytesPerSession) {
+            release(sessionId, sessionCount, length);
+            throw new IOException("Saved request budget of the session exceeded");
+        }
+        if (totalBytes.addAndGet(length) > maxTotalBytes) {
+            // Make room by purging the expired entries before giving up
+            if (purgeExpired(now) == 0 || totalBytes.get() > maxTotalBytes) {
+                totalBytes.addAndGet(-length);
+                release(sessionId, sessionCount, length);
+                throw new IOException("Saved request budget exceeded");
+            }
+        }
+
+        SavedBody entry;
+        try {
+            entry = length > spillThreshold
+                ? new SavedBody(sessionId, spill(body, offset, length), length, createdAt)
+                : new SavedBody(sessionId, copy(body, offset, length), length, createdAt);
+        } catch (IOException ex) {
+            totalBytes.addAndGet(-length);
+            release(sessionId, sessionCount, length);
+            throw ex;
+        }
+        String id = SecureIdGenerator.generateUUID();
+        entries.put(id, entry);
+        return id;
+    }
+
+    public String save(String sessionId, byte[] body, long createdAt) throws IOException {
+        return save(sessionId, body, 0, body.length, createdAt);
+    }
+
+    /**
+     * Remove the entry and return the saved body, or null if the entry is unknown or has expired.
+     */
+    public byte[] restore(String id) throws IOException {
+        SavedBody entry = id == null ? null : entries.remove(id);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            if (entry.isExpired(System.currentTimeMillis(), timeToLive)) {
+                LOG.debug("Saved request {} has expired", id);
+                return null;
+            }
+            return entry.file != null ? Files.readAllBytes(entry.file) : entry.body;
+        } finally {
+            discard(entry);
+        }
+    }
+
+    /**
+     * Remove the entry without restoring it.
+     */
+    public void remove(String id) {
+        SavedBody entry = id == null ? null : entries.remove(id);
+        if (entry != null) {
+            discard(entry);
+        }
+    }
+
+    /**
+     * Remove all entries which are older than the time to live and return their number.
+     */
+    public int purgeExpired() {
+        return purgeExpired(System.currentTimeMillis());
+    }
+
+    private void purgeExpiredIfDue(long now) {
+        long due = nextPurge.get();
+        if (now >= due && nextPurge.compareAndSet(due, now + PURGE_INTERVAL)) {
+            purgeExpired(now);
+        }
+    }
+
+    private int purgeExpired(long now) {
+        int purged = 0;
+        for (Map.Entry<String, SavedBody> mapEntry : entries.entrySet()) {
+            SavedBody entry = mapEntry.getValue();
+            if (entry.isExpired(now, timeToLive) && entries.remove(mapEntry.getKey(), entry)) {
+                discard(entry);
+                purged++;
+            }
+        }
+        if (purged > 0) {
+            LOG.debug("Purged {} expired saved requests", purged);
+        }
+        return purged;
+    }
+
+    /**
+     * Remove all entries, e.g. when the authenticator is stopped.
+     */
+    public void clear() {
+        for (String id : entries.keySet()) {
+            remove(id);
+        }
+        Path tempDirectory;
+        synchronized (this) {
+            tempDirectory = tempSpillDirectory;
+            tempSpillDirectory = null;
+        }
+        if (tempDirectory != null) {
+            deleteSpillFiles(tempDirectory);
+            try {
+                Files.deleteIfExists(tempDirectory);
+            } catch (IOException ex) {
+                LOG.warn("Failed to delete the saved request directory {}: {}", tempDirectory, ex.getMessage());
+            }
+        }
+    }
+
+    private void discard(SavedBody entry) {
+        totalBytes.addAndGet(-entry.length);
+        AtomicLong sessionCount = sessionBytes.get(entry.sessionId);
+        if (sessionCount != null) {
+            release(entry.sessionId, sessionCount, entry.length);
+        }
+        if (entry.file != null) {
+            try {
+                Files.deleteIfExists(entry.file);
+            } catch (IOException ex) {
+                LOG.warn("Failed to delete the saved request body {}: {}", entry.file, ex.getMessage());
+            }
+        }
+    }
+
+    private void release(String sessionId, AtomicLong sessionCount, long length) {
+        if (sessionCount.addAndGet(-length) <= 0) {
+            sessionBytes.remove(sessionId, sessionCount);
+        }
+    }
+
+    private Path spill(byte[] body, int offset, int length) throws IOException {
+        Path file = Files.createTempFile(getSpillFileDirectory(), SPILL_FILE_PREFIX, SPILL_FILE_SUFFIX);
+        try {
+            Files.write(file, copy(body, offset, length));
+        } catch (IOException ex) {
+            Files.deleteIfExists(file);
+            throw ex;
+        }
+        return file;
+    }
+
+    /**
+     * The configured spill directory, or a temporary directory of this store which is deleted by clear().
+     */
+    private synchronized Path getSpillFileDirectory() throws IOException {
+        if (spillDirectory != null) {
+            return spillDirectory;
+        }
+        if (tempSpillDirectory == null) {
+            tempSpillDirectory = Files.createTempDirectory(SPILL_FILE_PREFIX);
+        }
+        return tempSpillDirectory;
+    }
+
+    /**
+     * Delete the spilled bodies in the given directory, e.g. the ones left behind when the JVM was killed.
+     */
+    private static void deleteSpillFiles(Path directory) {
+        try (DirectoryStream<Path> files =
+            Files.newDirectoryStream(directory, SPILL_FILE_PREFIX + "*" + SPILL_FILE_SUFFIX)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException ex) {
+            LOG.warn("Failed to delete the saved request bodies in {}: {}", directory, ex.getMessage());
+        }
+    }
+
+    private static byte[] copy(byte[] body, int offset, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(body, offset, copy, 0, length);
+        return copy;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * The number of bytes of all saved bodies, in memory and on disk.
+     */
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * Bodies larger than the threshold (in bytes) are written to temporary files. The default is 16 KB.
+     */
+    public void setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    public long getMaxBytesPerSession() {
+        return maxBytesPerSession;
+    }
+
+    /**
+     * The maximum number of bytes saved for a single session. The default is 1 MB.
+     */
+    public void setMaxBytesPerSession(long maxBytesPerSession) {
+        this.maxBytesPerSession = maxBytesPerSession;
+    }
+
+    public long getMaxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    /**
+     * The maximum number of bytes saved for all sessions. The default is 64 MB.
+     */
+    public void setMaxTotalBytes(long maxTotalBytes) {
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * How long (in milliseconds) a saved request is kept. The default is 5 minutes.
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * The directory of the temporary files. It must not be shared with another store, as the bodies left behind
+     * by a previous run are deleted when it is set. If not set, a new temporary directory is created for the
+     * store on the first spill.
+     */
+    public void setSpillDirectory(Path spillDirectory) {
+        if (spillDirectory != null && Files.isDirectory(spillDirectory)) {
+            deleteSpillFiles(spillDirectory);
+        }
+        this.spillDirectory = spillDirectory;
+    }
+
+    private static final class SavedBody {
+        private final String sessionId;
+        private final byte[] body;
+        private final Path file;
+        private final int length;
+        private final long createdAt;
+
+        SavedBody(String sessionId, byte[] body, int length, long createdAt) {
+            this(sessionId, body, null, length, createdAt);
+        }
+
+        SavedBody(String sessionId, Path file, int length, long createdAt) {
+            this(sessionId, null, file, length, createdAt);
+        }
+
+        private SavedBody(String sessionId, byte[] body, Path file, int length, long createdAt) {
+            this.sessionId = sessionId;
+            this.body = body;
+            this.file = file;
+            this.length = length;
+            this.createdAt = createdAt;
+        }
+
+        boolean isExpired(long now, long timeToLive) {
+            return createdAt + timeToLive <= now;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.cxf.fediz.core.FederationConstants;
+import org.apache.cxf.fediz.core.RequestState;
+import org.apache.cxf.fediz.core.RequestStateCodec;
+import org.apache.cxf.fediz.core.config.FederationProtocol;
+import org.apache.cxf.fediz.core.config.FedizConfigurator;
+import org.apache.cxf.fediz.core.config.FedizContext;
+import org.apache.cxf.fediz.core.config.SAMLProtocol;
+import org.apache.cxf.fediz.core.config.jaxb.ContextConfig;
+import org.apache.cxf.fediz.core.exception.ProcessingException;
+import org.apache.cxf.fediz.core.exception.ProcessingException.TYPE;
+import org.apache.cxf.fediz.core.processor.FedizProcessor;
+import org.apache.cxf.fediz.core.processor.FedizProcessorFactory;
+import org.apache.cxf.fediz.core.processor.FedizRequest;
+import org.apache.cxf.fediz.core.processor.SAMLProcessorImpl;
+import org.apache.cxf.fediz.core.samlsso.SAMLProtocolResponseValidator;
+import org.apache.cxf.fediz.core.samlsso.SAMLSSOResponseValidator;
+import org.apache.wss4j.common.cache.ReplayCache;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.opensaml.saml.saml2.core.StatusResponseType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Re-validates archived sign-in responses (a WS-Federation RSTR or a SAML SSO Response, one per file, exactly
+ * as received in the wresult / SAMLResponse parameter) against a FedizContext, e.g. after a signing key has been
+ * compromised or the trust stores have been changed.
+ *
+ * The tokens are streamed from the given files and directories and validated in parallel on a fork-join pool,
+ * every worker thread uses its own FedizProcessor. The tokens are validated against a FedizContext of their own,
+ * created from the given configuration, without replay detection, request state validation and lifetime
+ * validation, so a token which has expired since it was archived passes if it is still trusted. A running
+ * context of the same configuration is not affected. A token whose signature cannot be verified fails as
+ * TOKEN_SIGNATURE_INVALID and a token signed by a key which is no longer trusted as ISSUER_NOT_TRUSTED, for
+ * SAML SSO both for the signature of the Assertion and of the Response.
+ *
+ * Usage: BulkTokenValidator -config &lt;fediz config&gt; -context &lt;context name&gt; [-threads &lt;n&gt;]
+ * [-acs &lt;assertion consumer URL&gt;] &lt;file or directory&gt;...
+ * The assertion consumer URL is required for SAML SSO.
+ */
+public class BulkTokenValidator implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkTokenValidator.class);
+
+    private final FedizContext context;
+    private final ThreadLocal<FedizProcessor> processors = ThreadLocal.withInitial(this::createProcessor);
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private String assertionConsumerURL;
+
+    public BulkTokenValidator(ContextConfig config) {
+        this.context = new ArchiveContext(config);
+    }
+
+    /**
+     * The context the tokens are validated against, e.g. to set its relative path or classloader.
+     */
+    public FedizContext getContext() {
+        return context;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * The number of worker threads. The default is the number of processors.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    public String getAssertionConsumerURL() {
+        return assertionConsumerURL;
+    }
+
+    /**
+     * The assertion consumer URL the SAML SSO Responses were sent to, which the Destination of a signed Response
+     * and the Recipient of its bearer SubjectConfirmation must match. It is required for SAML SSO.
+     */
+    public void setAssertionConsumerURL(String assertionConsumerURL) {
+        this.assertionConsumerURL = assertionConsumerURL;
+    }
+
+    /**
+     * Validate all tokens in the given files and (recursively) directories.
+     */
+    public BulkValidationSummary validate(List<Path> paths) throws IOException {
+        if (context.getProtocol() instanceof SAMLProtocol && assertionConsumerURL == null) {
+            throw new IllegalStateException("The assertion consumer URL is required to validate SAML SSO Responses");
+        }
+        BulkValidationSummary summary = new BulkValidationSummary();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Path path : paths) {
+                try (Stream<Path> tokens = Files.walk(path)) {
+                    pool.submit(() -> tokens.parallel().filter(Files::isRegularFile)
+                        .forEach(token -> validate(token, summary))).get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while validating " + path, ex);
+                } catch (ExecutionException ex) {
+                    throw new IOException("Failed to validate " + path, ex.getCause());
+                }
+            }
+        } finally {
+            pool.shutdown();
+            summary.finish();
+        }
+        return summary;
+    }
+
+    private void validate(Path token, BulkValidationSummary summary) {
+        String reason;
+        try {
+            String responseToken = new String(Files.readAllBytes(token), StandardCharsets.UTF_8).trim();
+            processors.get().processRequest(createRequest(responseToken), context);
+            summary.addPassed();
+            return;
+        } catch (ProcessingException ex) {
+            reason = ex.getType() != null ? ex.getType().name() : "PROCESSING_FAILED";
+        } catch (IOException ex) {
+            reason = "UNREADABLE";
+        } catch (RuntimeException ex) {
+            reason = ex.getClass().getSimpleName();
+        }
+        LOG.debug("Token '{}' failed: {}", token, reason);
+        summary.addFailed(token, reason);
+    }
+
+    private FedizRequest createRequest(String responseToken) {
+        FedizRequest request = new FedizRequest();
+        if (context.getProtocol() instanceof FederationProtocol) {
+            request.setAction(FederationConstants.ACTION_SIGNIN);
+        }
+        request.setResponseToken(responseToken);
+        return request;
+    }
+
+    private FedizProcessor createProcessor() {
+        if (context.getProtocol() instanceof SAMLProtocol) {
+            return new ArchivedSAMLProcessor();
+        }
+        return FedizProcessorFactory.newFedizProcessor(context.getProtocol());
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String configFile = null;
+        String contextName = null;
+        String acs = null;
+        int threads = 0;
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-config".equals(args[i]) && i + 1 < args.length) {
+                configFile = args[++i];
+            } else if ("-context".equals(args[i]) && i + 1 < args.length) {
+                contextName = args[++i];
+            } else if ("-threads".equals(args[i]) && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if ("-acs".equals(args[i]) && i + 1 < args.length) {
+                acs = args[++i];
+            } else {
+                paths.add(Paths.get(args[i]));
+            }
+        }
+        if (configFile == null || contextName == null || paths.isEmpty()) {
+            System.err.println("Usage: BulkTokenValidator -config <fediz config> -context <context name> "
+                + "[-threads <n>] [-acs <assertion consumer URL>] <file or directory>...");
+            System.exit(2);
+            return;
+        }
+
+        FedizConfigurator configurator = new FedizConfigurator();
+        configurator.loadConfig(new File(configFile));
+        ContextConfig config = configurator.getContextConfig(contextName);
+        if (config == null) {
+            System.err.println("No Fediz configuration for context " + contextName);
+            System.exit(2);
+            return;
+        }
+
+        BulkValidationSummary summary;
+        try (BulkTokenValidator validator = new BulkTokenValidator(config)) {
+            if (validator.getContext().getProtocol() instanceof SAMLProtocol && acs == null) {
+                System.err.println("The assertion consumer URL (-acs) is required for SAML SSO");
+                System.exit(2);
+                return;
+            }
+            if (threads > 0) {
+                validator.setParallelism(threads);
+            }
+            validator.setAssertionConsumerURL(acs);
+            summary = validator.validate(paths);
+        }
+
+        Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        summary.write(out);
+        out.flush();
+        System.exit(summary.getFailed() == 0 ? 0 : 1);
+    }
+
+    /**
+     * Validates a SAML SSO Response without the HTTP request it was received with.
+     */
+    private final class ArchivedSAMLProcessor extends SAMLProcessorImpl {
+        @Override
+        protected SAMLSSOResponseValidator createSSOResponseValidator(
+            org.opensaml.saml.saml2.core.Response samlResponse, HttpServletRequest request,
+            RequestState requestState, FedizContext config) throws ProcessingException {
+            SAMLSSOResponseValidator validator =
+                super.createSSOResponseValidator(samlResponse, request, requestState, config);
+            validator.setAssertionConsumerURL(assertionConsumerURL);
+            return validator;
+        }
+
+        @Override
+        protected void validateSamlResponseProtocol(StatusResponseType samlResponse, FedizContext config)
+            throws ProcessingException {
+            try {
+                new SAMLProtocolResponseValidator().validateSamlResponse(samlResponse, config);
+            } catch (WSSecurityException ex) {
+                LOG.debug(ex.getMessage(), ex);
+                if (ex.getErrorCode() == WSSecurityException.ErrorCode.FAILED_AUTHENTICATION) {
+                    throw new ProcessingException(TYPE.ISSUER_NOT_TRUSTED);
+                } else if (ex.getErrorCode() == WSSecurityException.ErrorCode.FAILED_CHECK) {
+                    throw new ProcessingException(TYPE.TOKEN_SIGNATURE_INVALID);
+                }
+                throw new ProcessingException(TYPE.INVALID_REQUEST);
+            }
+        }
+    }
+
+    /**
+     * A context without replay detection, request state validation and lifetime validation, as the archived
+     * tokens have been used before, there is no request state of their sign-in requests and they have expired
+     * in the meantime.
+     */
+    private static final class ArchiveContext extends FedizContext {
+        ArchiveContext(ContextConfig config) {
+            super(config);
+            setDetectReplayedTokens(false);
+            setValidateTokenLifetime(false);
+            setTokenReplayCache(new NoOpReplayCache());
+        }
+
+        @Override
+        public boolean isRequestStateValidation() {
+            return false;
+        }
+
+        @Override
+        public RequestStateCodec getRequestStateCodec() {
+            return null;
+        }
+    }
+
+    private static final class NoOpReplayCache implements ReplayCache {
+        @Override
+        public void add(String identifier) {
+            // do nothing
+        }
+
+        @Override
+        public void add(String identifier, Instant expiry) {
+            // do nothing
+        }
+
+        @Override
+        public boolean contains(String identifier) {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // do nothing
+        }
+    }
+}
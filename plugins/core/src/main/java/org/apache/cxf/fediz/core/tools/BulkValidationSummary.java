@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core.tools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The result of a BulkTokenValidator run: the number of passed and failed tokens, the failures by reason (with
+ * a few sample files per reason) and the throughput.
+ */
+public class BulkValidationSummary {
+
+    private static final int MAX_SAMPLES_PER_REASON = 10;
+
+    private final LongAdder passed = new LongAdder();
+    private final ConcurrentMap<String, Failures> failures = new ConcurrentHashMap<>();
+    private final long started = System.nanoTime();
+    private volatile long finished;
+
+    void addPassed() {
+        passed.increment();
+    }
+
+    void addFailed(Path token, String reason) {
+        failures.computeIfAbsent(reason, r -> new Failures()).add(token);
+    }
+
+    void finish() {
+        finished = System.nanoTime();
+    }
+
+    public long getTotal() {
+        return getPassed() + getFailed();
+    }
+
+    public long getPassed() {
+        return passed.sum();
+    }
+
+    public long getFailed() {
+        long failed = 0;
+        for (Failures f : failures.values()) {
+            failed += f.count.sum();
+        }
+        return failed;
+    }
+
+    /**
+     * Returns the number of failed tokens by reason, i.e. the ProcessingException type or the exception class.
+     */
+    public Map<String, Long> getFailureReasons() {
+        Map<String, Long> reasons = new TreeMap<>();
+        for (Map.Entry<String, Failures> entry : failures.entrySet()) {
+            reasons.put(entry.getKey(), entry.getValue().count.sum());
+        }
+        return reasons;
+    }
+
+    /**
+     * Returns some of the files which failed for the given reason.
+     */
+    public List<Path> getFailureSamples(String reason) {
+        Failures f = failures.get(reason);
+        if (f == null) {
+            return Collections.emptyList();
+        }
+        synchronized (f.samples) {
+            return new ArrayList<>(f.samples);
+        }
+    }
+
+    public long getElapsedMillis() {
+        long end = finished != 0 ? finished : System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(end - started);
+    }
+
+    /**
+     * Returns the number of validated tokens per second.
+     */
+    public double getThroughput() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? getTotal() * 1000.0 : getTotal() * 1000.0 / elapsed;
+    }
+
+    public void write(Appendable out) throws IOException {
+        out.append(String.format("Tokens: %d, passed: %d, failed: %d%n", getTotal(), getPassed(), getFailed()));
+        out.append(String.format("Elapsed: %d ms, throughput: %.1f tokens/s%n", getElapsedMillis(), getThroughput()));
+        for (Map.Entry<String, Long> entry : getFailureReasons().entrySet()) {
+            out.append(String.format("  %s: %d%n", entry.getKey(), entry.getValue()));
+            for (Path sample : getFailureSamples(entry.getKey())) {
+                out.append("    ").append(sample.toString()).append(System.lineSeparator());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            write(sb);
+        } catch (IOException ex) {
+            // StringBuilder doesn't throw
+        }
+        return sb.toString();
+    }
+
+    private static final class Failures {
+        private final LongAdder count = new LongAdder();
+        private final List<Path> samples = new ArrayList<>();
+
+        void add(Path token) {
+            count.increment();
+            synchronized (samples) {
+                if (samples.size() < MAX_SAMPLES_PER_REASON) {
+                    samples.add(token);
+                }
+            }
+        }
+    }
+}
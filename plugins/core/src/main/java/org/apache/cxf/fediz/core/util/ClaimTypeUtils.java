@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core.util;
+
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.cxf.fediz.core.ClaimTypes;
+
+/**
+ * Interns the claim type URIs, so that parsing the attributes of a token doesn't create a new URI for every
+ * attribute. The ClaimTypes constants are always interned, other claim types up to a fixed number.
+ */
+public final class ClaimTypeUtils {
+
+    private static final int MAX_INTERNED_CLAIM_TYPES = 1024;
+
+    private static final ConcurrentMap<String, URI> CLAIM_TYPES = new ConcurrentHashMap<>();
+
+    static {
+        for (Field field : ClaimTypes.class.getFields()) {
+            if (URI.class.equals(field.getType())) {
+                try {
+                    URI claimType = (URI) field.get(null);
+                    CLAIM_TYPES.put(claimType.toString(), claimType);
+                } catch (IllegalAccessException ex) {
+                    // interface constants are always accessible
+                }
+            }
+        }
+    }
+
+    private ClaimTypeUtils() {
+    }
+
+    /**
+     * Returns the interned URI of the given claim type.
+     * @throws IllegalArgumentException if the claim type is not a valid URI
+     */
+    public static URI internClaimType(String claimType) {
+        URI uri = CLAIM_TYPES.get(claimType);
+        if (uri == null) {
+            uri = URI.create(claimType);
+            if (CLAIM_TYPES.size() < MAX_INTERNED_CLAIM_TYPES) {
+                URI existing = CLAIM_TYPES.putIfAbsent(claimType, uri);
+                if (existing != null) {
+                    uri = existing;
+                }
+            }
+        }
+        return uri;
+    }
+}
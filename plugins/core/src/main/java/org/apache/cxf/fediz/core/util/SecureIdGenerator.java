@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.core.util;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Generates random (version 4) UUIDs like UUID.randomUUID(), but with a SecureRandom per thread instead of the
+ * one shared by all callers of UUID.randomUUID(), which contends when many sign-in redirects are created
+ * concurrently. A per-thread generator is seeded once from the platform SecureRandom.
+ */
+public final class SecureIdGenerator {
+
+    private static final SecureRandom SEED_SOURCE = new SecureRandom();
+
+    private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureIdGenerator::createRandom);
+
+    private SecureIdGenerator() {
+    }
+
+    private static SecureRandom createRandom() {
+        byte[] seed = new byte[32];
+        SEED_SOURCE.nextBytes(seed);
+        try {
+            // setSeed before the first nextBytes replaces the self-seeding, so this never blocks
+            SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+            random.setSeed(seed);
+            return random;
+        } catch (NoSuchAlgorithmException ex) {
+            return new SecureRandom(seed);
+        }
+    }
+
+    /**
+     * Returns a random UUID string, e.g. for the wctx or RelayState of a sign-in request.
+     */
+    public static String generateUUID() {
+        byte[] bytes = new byte[16];
+        nextBytes(bytes);
+        bytes[6] = (byte)((bytes[6] & 0x0f) | 0x40);  // version 4
+        bytes[8] = (byte)((bytes[8] & 0x3f) | 0x80);  // IETF variant
+        long msb = 0;
+        long lsb = 0;
+        for (int i = 0; i < 8; i++) {
+            msb = (msb << 8) | (bytes[i] & 0xff);
+        }
+        for (int i = 8; i < 16; i++) {
+            lsb = (lsb << 8) | (bytes[i] & 0xff);
+        }
+        return new UUID(msb, lsb).toString();
+    }
+
+    /**
+     * Fills the given array with random bytes of the SecureRandom of the current thread.
+     */
+    public static void nextBytes(byte[] bytes) {
+        RANDOM.get().nextBytes(bytes);
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.cxf.fediz.core.util.ClaimTypeUtils;
+
+import org.junit.jupiter.api.Assertions;
+
+public class ClaimCollectionTest {
+
+    private static Claim createClaim(URI claimType, Object value) {
+        Claim claim = new Claim();
+        claim.setClaimType(claimType);
+        claim.setValue(value);
+        return claim;
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testLookupByType() {
+        List<Claim> claims = new ArrayList<>();
+        claims.add(createClaim(ClaimTypes.FIRSTNAME, "alice"));
+        claims.add(createClaim(ClaimTypes.LASTNAME, "smith"));
+        claims.add(createClaim(ClaimTypes.FIRSTNAME, "other"));
+
+        ClaimCollection collection = new ClaimCollection(claims);
+        Assertions.assertEquals(3, collection.size());
+        Assertions.assertEquals("alice", collection.getClaim(ClaimTypes.FIRSTNAME).getValue());
+        Assertions.assertEquals("smith", collection.getClaim(ClaimTypes.LASTNAME.toString()).getValue());
+        Assertions.assertNull(collection.getClaim(ClaimTypes.EMAILADDRESS));
+        Assertions.assertNull(collection.getClaim((URI) null));
+
+        // Plain lists are scanned
+        Assertions.assertEquals("alice", ClaimCollection.findClaim(claims, ClaimTypes.FIRSTNAME).getValue());
+        Assertions.assertSame(collection, ClaimCollection.valueOf(collection));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testImmutable() {
+        List<Claim> claims = new ArrayList<>();
+        claims.add(createClaim(ClaimTypes.FIRSTNAME, "alice"));
+        ClaimCollection collection = new ClaimCollection(claims);
+
+        Assertions.assertThrows(UnsupportedOperationException.class,
+            () -> collection.add(createClaim(ClaimTypes.LASTNAME, "smith")));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> collection.removeIf(c -> true));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> {
+            Iterator<Claim> it = collection.iterator();
+            it.next();
+            it.remove();
+        });
+        Assertions.assertEquals("alice", collection.getClaim(ClaimTypes.FIRSTNAME).getValue());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testInternedClaimTypes() {
+        Assertions.assertSame(ClaimTypes.FIRSTNAME, ClaimTypeUtils.internClaimType(ClaimTypes.FIRSTNAME.toString()));
+        URI custom = ClaimTypeUtils.internClaimType("http://example.com/claims/custom");
+        Assertions.assertSame(custom, ClaimTypeUtils.internClaimType("http://example.com/claims/custom"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ClaimTypeUtils.internClaimType("not a uri"));
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Assertions;
+
+public class RequestStateCodecTest {
+
+    private static final String TARGET = "https://localhost/fedizhelloworld/secure/fedservlet?a=b";
+
+    private static RequestState createRequestState() {
+        RequestState requestState = new RequestState();
+        requestState.setTargetAddress(TARGET);
+        requestState.setIdpServiceAddress("https://localhost:9443/fediz-idp/federation");
+        requestState.setRequestId("_4fa3b3a0-1d2c");
+        requestState.setState("ignored");
+        requestState.setCreatedAt(System.currentTimeMillis());
+        return requestState;
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testMacRoundTrip() {
+        RequestStateCodec codec = new RequestStateCodec("secret", false, 60000L);
+        RequestState requestState = createRequestState();
+        String token = codec.encode(requestState);
+        Assertions.assertFalse(token.contains("="));
+        Assertions.assertNotEquals(token, codec.encode(requestState));
+
+        RequestState decoded = codec.decode(token);
+        Assertions.assertNotNull(decoded);
+        Assertions.assertEquals(TARGET, decoded.getTargetAddress());
+        Assertions.assertEquals(requestState.getIdpServiceAddress(), decoded.getIdpServiceAddress());
+        Assertions.assertEquals(requestState.getRequestId(), decoded.getRequestId());
+        Assertions.assertNull(decoded.getIssuerId());
+        Assertions.assertEquals(requestState.getCreatedAt(), decoded.getCreatedAt());
+        Assertions.assertEquals(token, decoded.getState());
+
+        // Another node with the same secret accepts the token
+        Assertions.assertNotNull(new RequestStateCodec("secret", false, 60000L).decode(token));
+        Assertions.assertNull(new RequestStateCodec("other", false, 60000L).decode(token));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testEncryptedRoundTrip() {
+        RequestStateCodec codec = new RequestStateCodec("secret", true, 60000L);
+        String token = codec.encode(createRequestState());
+        String plain = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.ISO_8859_1);
+        Assertions.assertFalse(plain.contains("fedizhelloworld"));
+
+        RequestState decoded = codec.decode(token);
+        Assertions.assertNotNull(decoded);
+        Assertions.assertEquals(TARGET, decoded.getTargetAddress());
+
+        // A MAC-only codec doesn't accept an encrypted token and vice versa
+        Assertions.assertNull(new RequestStateCodec("secret", false, 60000L).decode(token));
+        Assertions.assertNull(codec.decode(new RequestStateCodec("secret", false, 60000L)
+            .encode(createRequestState())));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testTamperedToken() {
+        for (boolean encrypt : new boolean[] {false, true}) {
+            RequestStateCodec codec = new RequestStateCodec("secret", encrypt, 60000L);
+            byte[] bytes = Base64.getUrlDecoder().decode(codec.encode(createRequestState()));
+            bytes[bytes.length / 2] ^= 0x01;
+            Assertions.assertNull(codec.decode(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes)));
+            Assertions.assertNull(codec.decode("not-a-token"));
+            Assertions.assertNull(codec.decode("%%%"));
+            Assertions.assertNull(codec.decode(""));
+            Assertions.assertNull(codec.decode(null));
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testExpiredToken() {
+        RequestStateCodec codec = new RequestStateCodec("secret", false, 60000L);
+        RequestState requestState = createRequestState();
+        requestState.setCreatedAt(System.currentTimeMillis() - 120000L);
+        Assertions.assertNull(codec.decode(codec.encode(requestState)));
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core.config;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Map;
+
+import org.apache.cxf.fediz.common.SecurityTestUtil;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * Some tests for the eager initialization of the contexts of a FedizConfigurator.
+ */
+public class ContextWarmUpTest {
+
+    private static final String CONFIG_FILE = "fediz_test_config.xml";
+
+    @AfterAll
+    public static void cleanup() {
+        SecurityTestUtil.cleanup();
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testWarmUpContexts() throws Exception {
+        FedizConfigurator configurator = new FedizConfigurator();
+        final URL resource = Thread.currentThread().getContextClassLoader().getResource(CONFIG_FILE);
+        configurator.loadConfig(new File(resource.toURI()));
+
+        try {
+            Map<String, Map<String, Long>> report = configurator.warmUpContexts(4);
+
+            Map<String, Long> timings = report.get("ROOT");
+            Assertions.assertNotNull(timings);
+            Assertions.assertTrue(timings.containsKey("certificateStores"));
+            Assertions.assertTrue(timings.containsKey("tokenValidation"));
+            Assertions.assertTrue(report.containsKey("ROOT_DECRYPTION"));
+
+            // The missing keystore fails on the first request as before
+            Assertions.assertFalse(report.containsKey("BAD_KEYSTORE"));
+
+            // The warmed up state is used by the requests
+            FedizContext context = configurator.getFedizContext("ROOT");
+            Assertions.assertFalse(context.getCertificateStores().isEmpty());
+        } finally {
+            for (FedizContext context : configurator.getFedizContextList()) {
+                context.close();
+            }
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testWarmUpContext() throws Exception {
+        FedizConfigurator configurator = new FedizConfigurator();
+        final URL resource = Thread.currentThread().getContextClassLoader().getResource(CONFIG_FILE);
+        configurator.loadConfig(new File(resource.toURI()));
+
+        try {
+            Map<String, Long> timings = configurator.warmUpContext("ROOT");
+            Assertions.assertNotNull(timings);
+            Assertions.assertTrue(timings.containsKey("tokenValidation"));
+
+            Assertions.assertNull(configurator.warmUpContext("BAD_KEYSTORE"));
+            Assertions.assertNull(configurator.warmUpContext("/unknown"));
+        } finally {
+            for (FedizContext context : configurator.getFedizContextList()) {
+                context.close();
+            }
+        }
+    }
+}
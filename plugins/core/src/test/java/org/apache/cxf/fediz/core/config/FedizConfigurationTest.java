@@ -37,6 +37,7 @@ import org.apache.cxf.fediz.core.config.jaxb.ArgumentType;
 import org.apache.cxf.fediz.core.config.jaxb.AudienceUris;
 import org.apache.cxf.fediz.core.config.jaxb.CallbackType;
 import org.apache.cxf.fediz.core.config.jaxb.CertificateStores;
+import org.apache.cxf.fediz.core.config.jaxb.CertificateTrustCacheType;
 import org.apache.cxf.fediz.core.config.jaxb.ClaimType;
 import org.apache.cxf.fediz.core.config.jaxb.ClaimTypesRequested;
 import org.apache.cxf.fediz.core.config.jaxb.ContextConfig;
@@ -426,6 +427,25 @@ public class FedizConfigurationTest {
         Assertions.assertTrue(config.isRequestStateValidation());
     }
     
+    @org.junit.jupiter.api.Test
+    public void testCertificateTrustCache() throws JAXBException, IOException {
+        final JAXBContext jaxbContext = JAXBContext.newInstance(FedizConfig.class);
+        FedizConfig configOut = createConfiguration(true);
+        CertificateTrustCacheType trustCache = new CertificateTrustCacheType();
+        trustCache.setTimeToLive(60000L);
+        trustCache.setMaxEntries(0);
+        configOut.getContextConfig().get(0).setCertificateTrustCache(trustCache);
+        StringWriter writer = new StringWriter();
+        jaxbContext.createMarshaller().marshal(configOut, writer);
+        FedizConfigurator configurator = new FedizConfigurator();
+        configurator.loadConfig(new StringReader(writer.toString()));
+
+        FedizContext fedContext = configurator.getFedizContext(CONFIG_NAME);
+        Assertions.assertEquals(60000L, fedContext.getCertificateTrustCache().getTimeToLive());
+        Assertions.assertEquals(10000L, fedContext.getCertificateTrustCache().getNegativeTimeToLive());
+        Assertions.assertEquals(0, fedContext.getCertificateTrustCache().getMaxEntries());
+    }
+
     @org.junit.jupiter.api.Test
     public void testClaimProcessor() throws JAXBException, IOException {
         final JAXBContext jaxbContext = JAXBContext.newInstance(FedizConfig.class);
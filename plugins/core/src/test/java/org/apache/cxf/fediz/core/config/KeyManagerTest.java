@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core.config;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.security.Signature;
+
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * Some tests for the caching of the private key handles in the KeyManager.
+ */
+public class KeyManagerTest {
+
+    private static final String CONFIG_FILE = "fediz_meta_test_config.xml";
+
+    private static KeyManager loadSigningKey() throws Exception {
+        FedizConfigurator configurator = new FedizConfigurator();
+        final URL resource = Thread.currentThread().getContextClassLoader().getResource(CONFIG_FILE);
+        configurator.loadConfig(new File(resource.toURI()));
+        return configurator.getFedizContext("ROOT").getSigningKey();
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testPrivateKeyCached() throws Exception {
+        KeyManager signingKey = loadSigningKey();
+        PrivateKey privateKey = signingKey.getPrivateKey();
+        Assertions.assertNotNull(privateKey);
+        Assertions.assertSame(privateKey, signingKey.getPrivateKey());
+        Assertions.assertSame(signingKey.getCertificate(), signingKey.getCertificate());
+
+        // The key is reloaded after it has been destroyed
+        signingKey.destroy();
+        PrivateKey reloaded = signingKey.getPrivateKey();
+        Assertions.assertNotNull(reloaded);
+        Assertions.assertNotSame(privateKey, reloaded);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testSign() throws Exception {
+        KeyManager signingKey = loadSigningKey();
+        Signature verifier = Signature.getInstance("SHA256withRSA");
+        for (int i = 0; i < 3; i++) {
+            byte[] data = ("SAMLRequest=" + i).getBytes(StandardCharsets.UTF_8);
+            // The pooled Signature engines are reused
+            byte[] signature = signingKey.sign("SHA256withRSA", data);
+
+            verifier.initVerify(signingKey.getCertificate().getPublicKey());
+            verifier.update(data);
+            Assertions.assertTrue(verifier.verify(signature));
+        }
+
+        signingKey.destroy();
+        byte[] data = "SAMLRequest".getBytes(StandardCharsets.UTF_8);
+        byte[] signature = signingKey.sign("SHA256withRSA", data);
+        verifier.initVerify(signingKey.getCertificate().getPublicKey());
+        verifier.update(data);
+        Assertions.assertTrue(verifier.verify(signature));
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core.config;
+
+import java.math.BigInteger;
+import java.net.URI;
+
+import org.apache.cxf.fediz.core.ClaimTypes;
+import org.apache.cxf.fediz.core.config.jaxb.AudienceUris;
+import org.apache.cxf.fediz.core.config.jaxb.ClaimType;
+import org.apache.cxf.fediz.core.config.jaxb.ClaimTypesRequested;
+import org.apache.cxf.fediz.core.config.jaxb.ContextConfig;
+import org.apache.cxf.fediz.core.config.jaxb.FederationProtocolType;
+import org.apache.cxf.fediz.core.config.jaxb.TrustedIssuerType;
+import org.apache.cxf.fediz.core.config.jaxb.TrustedIssuers;
+import org.apache.cxf.fediz.core.config.jaxb.ValidationType;
+import org.apache.cxf.fediz.core.saml.FedizSignatureTrustValidator.TrustType;
+
+import org.junit.jupiter.api.Assertions;
+
+public class ValidationPlanTest {
+
+    private static final String ROLE_URI = "http://schemas.xmlsoap.org/ws/2005/05/identity/claims/role";
+
+    private static FedizContext createContext() {
+        ContextConfig config = new ContextConfig();
+        config.setName("ROOT");
+        config.setMaximumClockSkew(BigInteger.valueOf(1000L));
+
+        AudienceUris audienceUris = new AudienceUris();
+        audienceUris.getAudienceItem().add("https://localhost/fedizhelloworld");
+        audienceUris.getAudienceItem().add("https://localhost/fedizhelloworld/secure");
+        audienceUris.getAudienceItem().add("urn:org:apache:cxf:fediz:app");
+        config.setAudienceUris(audienceUris);
+
+        TrustedIssuers trustedIssuers = new TrustedIssuers();
+        TrustedIssuerType chainTrust = new TrustedIssuerType();
+        chainTrust.setCertificateValidation(ValidationType.CHAIN_TRUST);
+        chainTrust.setSubject(".*CN=www.sts.com.*");
+        trustedIssuers.getIssuer().add(chainTrust);
+        TrustedIssuerType peerTrust = new TrustedIssuerType();
+        peerTrust.setCertificateValidation(ValidationType.PEER_TRUST);
+        trustedIssuers.getIssuer().add(peerTrust);
+        config.setTrustedIssuers(trustedIssuers);
+
+        FederationProtocolType protocol = new FederationProtocolType();
+        protocol.setRoleURI(ROLE_URI);
+        protocol.setRoleDelimiter(",");
+        ClaimTypesRequested claimTypes = new ClaimTypesRequested();
+        ClaimType optional = new ClaimType();
+        optional.setType(ClaimTypes.EMAILADDRESS.toString());
+        optional.setOptional(true);
+        claimTypes.getClaimType().add(optional);
+        ClaimType mandatory = new ClaimType();
+        mandatory.setType(ClaimTypes.LASTNAME.toString());
+        mandatory.setOptional(false);
+        claimTypes.getClaimType().add(mandatory);
+        protocol.setClaimTypesRequested(claimTypes);
+        config.setProtocol(protocol);
+
+        FedizContext context = new FedizContext(config);
+        context.init();
+        return context;
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testAudiencePrefixes() {
+        ValidationPlan plan = createContext().getValidationPlan();
+        Assertions.assertTrue(plan.hasAudienceUris());
+        Assertions.assertTrue(plan.isAudienceAllowed("https://localhost/fedizhelloworld"));
+        Assertions.assertTrue(plan.isAudienceAllowed("https://localhost/fedizhelloworld/secure/fedservlet"));
+        Assertions.assertTrue(plan.isAudienceAllowed("urn:org:apache:cxf:fediz:app:other"));
+        Assertions.assertFalse(plan.isAudienceAllowed("https://localhost/fediz"));
+        Assertions.assertFalse(plan.isAudienceAllowed("https://localhost/other"));
+        Assertions.assertFalse(plan.isAudienceAllowed(""));
+        Assertions.assertFalse(plan.isAudienceAllowed(null));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testCompiledConfiguration() {
+        ValidationPlan plan = createContext().getValidationPlan();
+        Assertions.assertEquals(URI.create(ROLE_URI), plan.getRoleURI());
+        Assertions.assertEquals(",", plan.getRoleDelimiter());
+        Assertions.assertEquals(1, plan.getMandatoryClaimTypes().size());
+        Assertions.assertTrue(plan.getMandatoryClaimTypes().contains(ClaimTypes.LASTNAME.toString()));
+
+        Assertions.assertEquals(2, plan.getIssuerTrusts().size());
+        Assertions.assertEquals(TrustType.CHAIN_TRUST_CONSTRAINTS, plan.getIssuerTrusts().get(0).getTrustType());
+        Assertions.assertEquals(1, plan.getIssuerTrusts().get(0).getSubjectConstraints().size());
+        Assertions.assertEquals(TrustType.PEER_TRUST, plan.getIssuerTrusts().get(1).getTrustType());
+        Assertions.assertTrue(plan.getIssuerTrusts().get(1).getSubjectConstraints().isEmpty());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testRecompiledOnChange() {
+        FedizContext context = createContext();
+        ValidationPlan plan = context.getValidationPlan();
+        Assertions.assertSame(plan, context.getValidationPlan());
+
+        context.getProtocol().setRoleURI(null);
+        ValidationPlan recompiled = context.getValidationPlan();
+        Assertions.assertNotSame(plan, recompiled);
+        Assertions.assertNull(recompiled.getRoleURI());
+
+        context.setMaximumClockSkew(BigInteger.valueOf(60L));
+        Assertions.assertNotSame(recompiled, context.getValidationPlan());
+    }
+}
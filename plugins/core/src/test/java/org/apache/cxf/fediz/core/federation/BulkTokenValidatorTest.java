@@ -0,0 +1,219 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core.federation;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.apache.cxf.fediz.common.STSUtil;
+import org.apache.cxf.fediz.common.SecurityTestUtil;
+import org.apache.cxf.fediz.core.FederationConstants;
+import org.apache.cxf.fediz.core.KeystoreCallbackHandler;
+import org.apache.cxf.fediz.core.SAML2CallbackHandler;
+import org.apache.cxf.fediz.core.config.FedizConfigurator;
+import org.apache.cxf.fediz.core.config.FedizContext;
+import org.apache.cxf.fediz.core.issuer.SyntheticTokenIssuer;
+import org.apache.cxf.fediz.core.issuer.SyntheticTokenIssuer.TokenType;
+import org.apache.cxf.fediz.core.tools.BulkTokenValidator;
+import org.apache.cxf.fediz.core.tools.BulkValidationSummary;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.ext.WSPasswordCallback;
+import org.apache.wss4j.common.saml.SAMLCallback;
+import org.apache.wss4j.common.saml.SAMLUtil;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.saml.bean.AudienceRestrictionBean;
+import org.apache.wss4j.common.saml.bean.ConditionsBean;
+import org.apache.wss4j.common.saml.builder.SAML2Constants;
+import org.apache.wss4j.common.util.DOM2Writer;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.joda.time.DateTime;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Some tests for the re-validation of archived tokens with the BulkTokenValidator.
+ */
+public class BulkTokenValidatorTest {
+
+    private static final String TEST_ACS = "https://localhost/fedizhelloworld/";
+    private static final String TEST_IDP_ISSUER = "http://url_to_the_issuer";
+
+    @TempDir
+    Path archive;
+
+    @AfterAll
+    public static void cleanup() {
+        SecurityTestUtil.cleanup();
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testValidateArchive() throws Exception {
+        String signedToken = createToken(true, false);
+        Files.write(archive.resolve("token1.xml"), signedToken.getBytes(StandardCharsets.UTF_8));
+        // The same token again is not a replay for the re-validation
+        Path subdir = Files.createDirectory(archive.resolve("subdir"));
+        Files.write(subdir.resolve("token2.xml"), signedToken.getBytes(StandardCharsets.UTF_8));
+        Files.write(subdir.resolve("unsigned.xml"), createToken(false, false).getBytes(StandardCharsets.UTF_8));
+        // A token which has expired since it was archived is still valid
+        Files.write(subdir.resolve("expired.xml"), createToken(true, true).getBytes(StandardCharsets.UTF_8));
+        // An expired token of a key which is not trusted is told apart from a trusted one
+        String untrustedToken = createToken("client-crypto.properties", "myclientkey", true);
+        Files.write(subdir.resolve("untrusted.xml"), untrustedToken.getBytes(StandardCharsets.UTF_8));
+        // A token which has been modified after it was signed
+        String modifiedToken = signedToken.replace(">" + FederationResponseTest.TEST_USER + "<", ">mallory<");
+        Assertions.assertNotEquals(signedToken, modifiedToken);
+        Files.write(subdir.resolve("modified.xml"), modifiedToken.getBytes(StandardCharsets.UTF_8));
+        Files.write(archive.resolve("garbage.xml"), "no token".getBytes(StandardCharsets.UTF_8));
+
+        FedizConfigurator configurator = loadConfig("fediz_test_config.xml");
+        // The context of a running RP with the same configuration
+        FedizContext context = configurator.getFedizContext("ROOT");
+
+        BulkValidationSummary summary;
+        try (BulkTokenValidator validator = new BulkTokenValidator(configurator.getContextConfig("ROOT"))) {
+            validator.setParallelism(2);
+            summary = validator.validate(Collections.singletonList(archive));
+        }
+
+        Assertions.assertEquals(7L, summary.getTotal());
+        Assertions.assertEquals(3L, summary.getPassed());
+        Assertions.assertEquals(4L, summary.getFailed());
+        Assertions.assertEquals(Long.valueOf(1L), summary.getFailureReasons().get("TOKEN_NO_SIGNATURE"));
+        Assertions.assertNull(summary.getFailureReasons().get("TOKEN_EXPIRED"));
+        Assertions.assertEquals(Long.valueOf(1L), summary.getFailureReasons().get("ISSUER_NOT_TRUSTED"));
+        Assertions.assertEquals(subdir.resolve("untrusted.xml"),
+            summary.getFailureSamples("ISSUER_NOT_TRUSTED").get(0));
+        Assertions.assertEquals(Long.valueOf(1L), summary.getFailureReasons().get("TOKEN_SIGNATURE_INVALID"));
+        Assertions.assertEquals(subdir.resolve("modified.xml"),
+            summary.getFailureSamples("TOKEN_SIGNATURE_INVALID").get(0));
+        Assertions.assertEquals(Long.valueOf(1L), summary.getFailureReasons().get("INVALID_REQUEST"));
+        Assertions.assertEquals(archive.resolve("garbage.xml"), summary.getFailureSamples("INVALID_REQUEST").get(0));
+        Assertions.assertTrue(summary.toString().startsWith("Tokens: 7, passed: 3, failed: 4"));
+
+        // The replay detection and lifetime validation of the running context are still enabled
+        Assertions.assertTrue(context.isDetectReplayedTokens());
+        Assertions.assertTrue(context.isValidateTokenLifetime());
+        Assertions.assertTrue(context.isRequestStateValidation());
+        context.close();
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testValidateSAMLSSOArchive() throws Exception {
+        SyntheticTokenIssuer issuer = new SyntheticTokenIssuer();
+        issuer.setTokenType(TokenType.SAMLSSO);
+        issuer.setIssuer(TEST_IDP_ISSUER);
+        issuer.setAudience(TEST_ACS);
+        Files.write(archive.resolve("response1.txt"), issuer.issue().getToken().getBytes(StandardCharsets.UTF_8));
+        // The bearer SubjectConfirmation of an archived Response expires after a few minutes, which is fine
+        issuer.setClockSkew(-600);
+        Files.write(archive.resolve("response2.txt"), issuer.issue().getToken().getBytes(StandardCharsets.UTF_8));
+        // An expired Response of a key which is not trusted
+        SyntheticTokenIssuer untrustedIssuer = new SyntheticTokenIssuer(
+            CryptoFactory.getInstance("client-crypto.properties"), "myclientkey", new KeystoreCallbackHandler());
+        untrustedIssuer.setTokenType(TokenType.SAMLSSO);
+        untrustedIssuer.setIssuer(TEST_IDP_ISSUER);
+        untrustedIssuer.setAudience(TEST_ACS);
+        untrustedIssuer.setClockSkew(-600);
+        Files.write(archive.resolve("response3.txt"),
+            untrustedIssuer.issue().getToken().getBytes(StandardCharsets.UTF_8));
+        // A Response sent to another relying party
+        issuer.setClockSkew(0);
+        issuer.setAudience("https://localhost/other/");
+        Files.write(archive.resolve("response4.txt"), issuer.issue().getToken().getBytes(StandardCharsets.UTF_8));
+
+        FedizConfigurator configurator = loadConfig("fediz_test_config_saml.xml");
+        BulkValidationSummary summary;
+        try (BulkTokenValidator validator = new BulkTokenValidator(configurator.getContextConfig("ROOT"))) {
+            // The assertion consumer URL is required to check the Recipient
+            Assertions.assertThrows(IllegalStateException.class,
+                () -> validator.validate(Collections.singletonList(archive)));
+
+            validator.setAssertionConsumerURL(TEST_ACS);
+            summary = validator.validate(Collections.singletonList(archive));
+        }
+
+        Assertions.assertEquals(4L, summary.getTotal());
+        Assertions.assertEquals(2L, summary.getPassed());
+        Assertions.assertEquals(Long.valueOf(1L), summary.getFailureReasons().get("ISSUER_NOT_TRUSTED"));
+        Assertions.assertEquals(archive.resolve("response3.txt"),
+            summary.getFailureSamples("ISSUER_NOT_TRUSTED").get(0));
+        Assertions.assertEquals(Long.valueOf(1L), summary.getFailureReasons().get("INVALID_REQUEST"));
+        Assertions.assertEquals(archive.resolve("response4.txt"), summary.getFailureSamples("INVALID_REQUEST").get(0));
+    }
+
+    private FedizConfigurator loadConfig(String configFile) throws Exception {
+        FedizConfigurator configurator = new FedizConfigurator();
+        configurator.loadConfig(new File(getClass().getClassLoader().getResource(configFile).toURI()));
+        return configurator;
+    }
+
+    private static void signAssertion(SamlAssertionWrapper assertion, String cryptoProperties, String alias)
+        throws Exception {
+        Crypto crypto = CryptoFactory.getInstance(cryptoProperties);
+        WSPasswordCallback[] cb = {
+            new WSPasswordCallback(alias, WSPasswordCallback.SIGNATURE)
+        };
+        new KeystoreCallbackHandler().handle(cb);
+        assertion.signAssertion(alias, cb[0].getPassword(), crypto, false);
+    }
+
+    private static String createToken(boolean sign, boolean expired) throws Exception {
+        return createToken(sign ? "signature.properties" : null, "mystskey", expired);
+    }
+
+    private static String createToken(String cryptoProperties, String alias, boolean expired) throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.ATTR);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_BEARER);
+        callbackHandler.setIssuer(FederationResponseTest.TEST_RSTR_ISSUER);
+        callbackHandler.setSubjectName(FederationResponseTest.TEST_USER);
+        ConditionsBean cp = new ConditionsBean();
+        if (expired) {
+            cp.setNotBefore(new DateTime().minusMinutes(10));
+            cp.setNotAfter(new DateTime().minusMinutes(5));
+        }
+        AudienceRestrictionBean audienceRestriction = new AudienceRestrictionBean();
+        audienceRestriction.getAudienceURIs().add(FederationResponseTest.TEST_AUDIENCE);
+        cp.setAudienceRestrictions(Collections.singletonList(audienceRestriction));
+        callbackHandler.setConditions(cp);
+
+        SAMLCallback samlCallback = new SAMLCallback();
+        SAMLUtil.doSAMLCallback(callbackHandler, samlCallback);
+        SamlAssertionWrapper assertion = new SamlAssertionWrapper(samlCallback);
+
+        if (cryptoProperties != null) {
+            signAssertion(assertion, cryptoProperties, alias);
+        }
+        Document doc = STSUtil.toSOAPPart(STSUtil.SAMPLE_RSTR_COLL_MSG);
+        Element token = assertion.toDOM(doc);
+        Element e = XMLUtils.findElement(doc, "RequestedSecurityToken", FederationConstants.WS_TRUST_13_NS);
+        e.appendChild(token);
+        return DOM2Writer.nodeToString(doc);
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core.federation;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+import org.apache.cxf.fediz.core.saml.CertificateTrustCache;
+import org.apache.cxf.fediz.core.saml.FedizSignatureTrustValidator;
+import org.apache.cxf.fediz.core.saml.FedizSignatureTrustValidator.TrustType;
+import org.apache.wss4j.common.crypto.CertificateStore;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.validate.Credential;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+
+/**
+ * Some tests for caching the trust decisions of the FedizSignatureTrustValidator.
+ */
+public class CertificateTrustCacheTest {
+
+    private static X509Certificate cert;
+
+    @BeforeAll
+    public static void init() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream is = CertificateTrustCacheTest.class.getClassLoader().getResourceAsStream("ststrust.jks")) {
+            keyStore.load(is, "storepass".toCharArray());
+        }
+        cert = (X509Certificate) keyStore.getCertificate("realma");
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testTrustedCertificateCached() throws Exception {
+        CertificateTrustCache cache = new CertificateTrustCache();
+        CountingTrustValidator validator = new CountingTrustValidator();
+        validator.setTrustCache(cache);
+        RequestData data = createRequestData(new CertificateStore(new X509Certificate[] {cert}));
+
+        validator.validate(createCredential(), data);
+        validator.validate(createCredential(), data);
+        Assertions.assertEquals(1, validator.calls);
+        Assertions.assertEquals(1, cache.size());
+
+        // A reloaded trust store doesn't reuse the decision
+        validator.validate(createCredential(), createRequestData(new CertificateStore(new X509Certificate[] {cert})));
+        Assertions.assertEquals(2, validator.calls);
+
+        cache.clear();
+        validator.validate(createCredential(), data);
+        Assertions.assertEquals(3, validator.calls);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testSubjectConstraintsInKey() throws Exception {
+        CertificateTrustCache cache = new CertificateTrustCache();
+        RequestData data = createRequestData(new CertificateStore(new X509Certificate[] {cert}));
+
+        CountingTrustValidator validator = new CountingTrustValidator();
+        validator.setTrustCache(cache);
+        validator.setSignatureTrustType(TrustType.CHAIN_TRUST_CONSTRAINTS);
+        validator.setSubjectConstraints(Collections.singletonList(Pattern.compile(".*CN=other.*")));
+        for (int i = 0; i < 2; i++) {
+            try {
+                validator.validate(createCredential(), data);
+                Assertions.fail("Failure expected on a subject not matching the constraints");
+            } catch (WSSecurityException ex) {
+                // expected
+            }
+        }
+        // The negative decision is cached
+        Assertions.assertEquals(1, validator.calls);
+
+        validator.setSubjectConstraints(Collections.singletonList(Pattern.compile(".*")));
+        validator.validate(createCredential(), data);
+        Assertions.assertEquals(2, validator.calls);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testNegativeDecisionNotCached() throws Exception {
+        CertificateTrustCache cache = new CertificateTrustCache();
+        cache.setNegativeTimeToLive(0L);
+        RequestData data = createRequestData(new CertificateStore(new X509Certificate[] {cert}));
+
+        CountingTrustValidator validator = new CountingTrustValidator();
+        validator.setTrustCache(cache);
+        validator.setSignatureTrustType(TrustType.CHAIN_TRUST_CONSTRAINTS);
+        validator.setSubjectConstraints(Collections.singletonList(Pattern.compile(".*CN=other.*")));
+        for (int i = 0; i < 2; i++) {
+            try {
+                validator.validate(createCredential(), data);
+                Assertions.fail("Failure expected on a subject not matching the constraints");
+            } catch (WSSecurityException ex) {
+                // expected
+            }
+        }
+        Assertions.assertEquals(2, validator.calls);
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testNotCachedWithRevocation() throws Exception {
+        CertificateTrustCache cache = new CertificateTrustCache();
+        CountingTrustValidator validator = new CountingTrustValidator();
+        validator.setTrustCache(cache);
+        RequestData data = createRequestData(new CertificateStore(new X509Certificate[] {cert}));
+        data.setEnableRevocation(true);
+
+        // The revocation check is made on every validation, whatever its outcome
+        for (int i = 0; i < 2; i++) {
+            try {
+                validator.validate(createCredential(), data);
+            } catch (WSSecurityException ex) {
+                // no CRL available
+            }
+        }
+        Assertions.assertEquals(2, validator.calls);
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    private static Credential createCredential() {
+        Credential credential = new Credential();
+        credential.setCertificates(new X509Certificate[] {cert});
+        return credential;
+    }
+
+    private static RequestData createRequestData(Crypto crypto) {
+        RequestData data = new RequestData();
+        data.setSigVerCrypto(crypto);
+        return data;
+    }
+
+    private static final class CountingTrustValidator extends FedizSignatureTrustValidator {
+        private int calls;
+
+        @Override
+        protected void verifyTrustInCerts(X509Certificate[] certificates, Crypto crypto, RequestData data,
+                                          boolean enableRevocation) throws WSSecurityException {
+            calls++;
+            super.verifyTrustInCerts(certificates, crypto, data, enableRevocation);
+        }
+    }
+}
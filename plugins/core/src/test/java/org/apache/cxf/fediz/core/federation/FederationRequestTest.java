@@ -28,6 +28,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.apache.cxf.fediz.common.SecurityTestUtil;
 import org.apache.cxf.fediz.core.FederationConstants;
+import org.apache.cxf.fediz.core.config.FederationProtocol;
 import org.apache.cxf.fediz.core.config.FedizConfigurator;
 import org.apache.cxf.fediz.core.config.FedizContext;
 import org.apache.cxf.fediz.core.processor.FederationProcessorImpl;
@@ -142,6 +143,41 @@ public class FederationRequestTest {
                                                 + URLEncoder.encode("urn:org:apache:cxf:fediz:idp:realm-A", "UTF-8")));
     }
 
+    @org.junit.jupiter.api.Test
+    public void createFederationSignInRequestAfterConfigChange() throws Exception {
+        FedizContext config = getFederationConfigurator().getFedizContext("ROOT");
+        FederationProtocol protocol = (FederationProtocol)config.getProtocol();
+        Object freshness = protocol.getFreshness();
+
+        String redirectionURL = createSignInRedirect(config);
+        Assertions.assertTrue(redirectionURL.contains("wfresh=10000"));
+        Assertions.assertNotEquals(redirectionURL, createSignInRedirect(config));
+
+        // The pre-encoded template is recompiled
+        protocol.setFreshness("0");
+        try {
+            redirectionURL = createSignInRedirect(config);
+            Assertions.assertTrue(redirectionURL.contains("wfresh=0"));
+            Assertions.assertFalse(redirectionURL.contains("wfresh=10000"));
+        } finally {
+            protocol.setFreshness(freshness);
+        }
+    }
+
+    private static String createSignInRedirect(FedizContext config) throws Exception {
+        HttpServletRequest req = EasyMock.createMock(HttpServletRequest.class);
+        EasyMock.expect(req.getParameter(FederationConstants.PARAM_HOME_REALM)).andReturn(null);
+        EasyMock.expect(req.getRequestURL()).andReturn(new StringBuffer(TEST_REQUEST_URL)).times(1, 2);
+        EasyMock.expect(req.getContextPath()).andReturn(TEST_REQUEST_URI);
+        EasyMock.expect(req.getQueryString()).andReturn(null);
+        EasyMock.replay(req);
+
+        RedirectionResponse response = new FederationProcessorImpl().createSignInRequest(req, config);
+        String redirectionURL = response.getRedirectionURL();
+        Assertions.assertTrue(redirectionURL.contains("wctx=" + response.getRequestState().getState()));
+        return redirectionURL;
+    }
+
     @org.junit.jupiter.api.Test
     public void createFederationSignOutRequest() throws Exception {
         // Mock up a Request
@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core.handler;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.cxf.fediz.core.FederationConstants;
+import org.apache.cxf.fediz.core.SAMLSSOConstants;
+import org.apache.cxf.fediz.core.config.FedizContext;
+import org.apache.cxf.fediz.core.config.jaxb.ContextConfig;
+import org.apache.cxf.fediz.core.config.jaxb.FederationProtocolType;
+import org.apache.cxf.fediz.core.config.jaxb.ProtocolType;
+import org.apache.cxf.fediz.core.config.jaxb.SamlProtocolType;
+import org.apache.cxf.fediz.core.handler.RequestRouter.Route;
+
+import org.easymock.EasyMock;
+import org.junit.jupiter.api.Assertions;
+
+public class RequestRouterTest {
+
+    private static final String LOGOUT_URL = "secure/logout";
+
+    private static ContextConfig createConfig(ProtocolType protocol) {
+        ContextConfig config = new ContextConfig();
+        config.setName("ROOT");
+        config.setLogoutURL(LOGOUT_URL);
+        config.setProtocol(protocol);
+        return config;
+    }
+
+    private static HttpServletRequest createRequest(String uri, String action, String samlResponse) {
+        HttpServletRequest req = EasyMock.createMock(HttpServletRequest.class);
+        EasyMock.expect(req.getRequestURI()).andReturn(uri).anyTimes();
+        EasyMock.expect(req.getParameter(FederationConstants.PARAM_ACTION)).andReturn(action).anyTimes();
+        EasyMock.expect(req.getParameter(SAMLSSOConstants.SAML_RESPONSE)).andReturn(samlResponse).anyTimes();
+        EasyMock.replay(req);
+        return req;
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testFederationRoutes() {
+        FedizContext context = new FedizContext(createConfig(new FederationProtocolType()));
+        RequestRouter router = context.getRequestRouter();
+
+        Assertions.assertEquals(Route.METADATA,
+            router.route(createRequest("/fedizhelloworld/" + FederationConstants.METADATA_PATH_URI, null, null),
+                         "/fedizhelloworld"));
+        Assertions.assertEquals(Route.LOGOUT,
+            router.route(createRequest("/fedizhelloworld/secure/fedservlet", FederationConstants.ACTION_SIGNOUT,
+                                       null), "/fedizhelloworld"));
+        Assertions.assertEquals(Route.LOGOUT_CLEANUP,
+            router.route(createRequest("/fedizhelloworld/secure/fedservlet",
+                                       FederationConstants.ACTION_SIGNOUT_CLEANUP, null), "/fedizhelloworld"));
+        Assertions.assertEquals(Route.LOGOUT,
+            router.route(createRequest("/fedizhelloworld/" + LOGOUT_URL, null, null), "/fedizhelloworld/"));
+        Assertions.assertEquals(Route.SIGNIN_RESPONSE,
+            router.route(createRequest("/fedizhelloworld/secure/fedservlet", FederationConstants.ACTION_SIGNIN,
+                                       null), "/fedizhelloworld"));
+        // A SAMLResponse is not a sign-in response of WS-Federation
+        Assertions.assertEquals(Route.PROTECTED_RESOURCE,
+            router.route(createRequest("/fedizhelloworld/secure/fedservlet", null, "response"),
+                         "/fedizhelloworld"));
+        Assertions.assertEquals(Route.PROTECTED_RESOURCE,
+            router.route(createRequest("/fedizhelloworld/secure/logout", null, null), "/other/"));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testSAMLRoutes() {
+        FedizContext context = new FedizContext(createConfig(new SamlProtocolType()));
+        RequestRouter router = context.getRequestRouter();
+
+        Assertions.assertEquals(Route.METADATA,
+            router.route(createRequest("/app/" + SAMLSSOConstants.FEDIZ_SAML_METADATA_PATH_URI, null, null),
+                         "/app"));
+        Assertions.assertEquals(Route.SIGNIN_RESPONSE,
+            router.route(createRequest("/app/secure", null, "response"), "/app"));
+        // The SAML logout response is sent to the logout URL
+        Assertions.assertEquals(Route.LOGOUT,
+            router.route(createRequest("/app/" + LOGOUT_URL, null, "response"), "/app/"));
+        Assertions.assertEquals(Route.PROTECTED_RESOURCE,
+            router.route(createRequest("/app/secure", FederationConstants.ACTION_SIGNIN, null), "/app"));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testHandlersUseRouter() {
+        FedizContext context = new FedizContext(createConfig(new FederationProtocolType()));
+        HttpServletRequest req = createRequest("/" + LOGOUT_URL, null, null);
+        Assertions.assertTrue(new LogoutHandler(context).canHandleRequest(req));
+        Assertions.assertFalse(new SigninHandler<Object>(context).canHandleRequest(req));
+        Assertions.assertFalse(context.getRequestRouter().getMetadataHandler().canHandleRequest(req));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testRebuiltOnChange() {
+        FederationProtocolType protocol = new FederationProtocolType();
+        ContextConfig config = createConfig(protocol);
+        FedizContext context = new FedizContext(config);
+        RequestRouter router = context.getRequestRouter();
+        Assertions.assertSame(router, context.getRequestRouter());
+
+        config.setLogoutURL(null);
+        RequestRouter rebuilt = context.getRequestRouter();
+        Assertions.assertNotSame(router, rebuilt);
+        Assertions.assertFalse(rebuilt.isLogoutURL("/" + LOGOUT_URL, "/"));
+
+        protocol.setMetadataURI("metadata.xml");
+        Assertions.assertNotSame(rebuilt, context.getRequestRouter());
+        Assertions.assertEquals("metadata.xml", context.getRequestRouter().getMetadataURI());
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core.issuer;
+
+/**
+ * A token issued by the SyntheticTokenIssuer: the wresult of a WS-Federation sign in response, or the
+ * (encoded) SAMLResponse of a SAML SSO response.
+ */
+public final class SyntheticToken {
+
+    private final String id;
+    private final String token;
+    private final boolean replay;
+
+    SyntheticToken(String id, String token, boolean replay) {
+        this.id = id;
+        this.token = token;
+        this.replay = replay;
+    }
+
+    /**
+     * The ID of the (signed) assertion, which is what the relying party uses to detect replayed tokens.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Whether this is a token that was already handed out, i.e. the relying party should reject it
+     * as a replay attack.
+     */
+    public boolean isReplay() {
+        return replay;
+    }
+
+    SyntheticToken asReplay() {
+        return new SyntheticToken(id, token, true);
+    }
+
+    @Override
+    public String toString() {
+        return "SyntheticToken[" + id + (replay ? ", replay]" : "]");
+    }
+}
@@ -0,0 +1,383 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core.issuer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.apache.cxf.fediz.common.STSUtil;
+import org.apache.cxf.fediz.core.AbstractSAMLCallbackHandler;
+import org.apache.cxf.fediz.core.FederationConstants;
+import org.apache.cxf.fediz.core.KeystoreCallbackHandler;
+import org.apache.cxf.fediz.core.SAML1CallbackHandler;
+import org.apache.cxf.fediz.core.SAML2CallbackHandler;
+import org.apache.cxf.fediz.core.samlsso.CompressionUtils;
+import org.apache.cxf.fediz.core.samlsso.SAML2PResponseComponentBuilder;
+import org.apache.cxf.fediz.core.util.DOMUtils;
+import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.common.ext.WSPasswordCallback;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.OpenSAMLUtil;
+import org.apache.wss4j.common.saml.SAMLCallback;
+import org.apache.wss4j.common.saml.SAMLUtil;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.saml.bean.AudienceRestrictionBean;
+import org.apache.wss4j.common.saml.bean.ConditionsBean;
+import org.apache.wss4j.common.saml.bean.SubjectConfirmationDataBean;
+import org.apache.wss4j.common.saml.builder.SAML1Constants;
+import org.apache.wss4j.common.saml.builder.SAML2Constants;
+import org.apache.wss4j.common.util.DOM2Writer;
+import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.message.WSSecEncrypt;
+import org.apache.xml.security.encryption.EncryptedData;
+import org.apache.xml.security.encryption.EncryptedKey;
+import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.keys.KeyInfo;
+import org.apache.xml.security.keys.content.X509Data;
+import org.joda.time.DateTime;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.core.Status;
+
+/**
+ * A stand-in IdP for benchmarks of the relying party plugins. It issues validly signed WS-Federation sign in
+ * responses (an RSTR with a SAML 1.1 or SAML 2.0 token) or SAML SSO responses, built with the same token
+ * builders as the tests (SAML2CallbackHandler, SAML2PResponseComponentBuilder, STSUtil).
+ *
+ * The subjects, roles and the size of the custom claim, the encryption, the lifetime and the clock of the
+ * tokens can be configured. Once configured, an issuer can be used by several threads at the same time, see
+ * TokenPool which signs the tokens ahead of a benchmark.
+ */
+public class SyntheticTokenIssuer {
+
+    public enum TokenType {
+        WSFED_SAML1, WSFED_SAML2, SAMLSSO
+    }
+
+    public static final String DEFAULT_ISSUER = "FedizSTSIssuer";
+
+    private static final String SIGNATURE_PROPERTIES = "signature.properties";
+    private static final String SIGNATURE_ALIAS = "mystskey";
+
+    private final Crypto crypto;
+    private final String alias;
+    private final String password;
+    private final AtomicInteger issued = new AtomicInteger();
+
+    private TokenType tokenType = TokenType.WSFED_SAML2;
+    private String issuer = DEFAULT_ISSUER;
+    private String audience;
+    private List<String> subjects = Collections.singletonList("alice");
+    private List<String> roles = Arrays.asList("User", "Admin");
+    private List<String> customClaimValues;
+    private int lifetime = 300;
+    private int clockSkew;
+    private String encryptionAlias;
+    private String requestId;
+    private String clientAddress;
+    private boolean deflate = true;
+
+    /**
+     * An issuer that signs with the STS key of the tests (stsstore.jks).
+     */
+    public SyntheticTokenIssuer() throws WSSecurityException, IOException, UnsupportedCallbackException {
+        this(CryptoFactory.getInstance(SIGNATURE_PROPERTIES), SIGNATURE_ALIAS, new KeystoreCallbackHandler());
+    }
+
+    public SyntheticTokenIssuer(Crypto crypto, String alias, CallbackHandler passwordCallbackHandler)
+        throws IOException, UnsupportedCallbackException {
+        this.crypto = crypto;
+        this.alias = alias;
+
+        WSPasswordCallback[] cb = {
+            new WSPasswordCallback(alias, WSPasswordCallback.SIGNATURE)
+        };
+        passwordCallbackHandler.handle(cb);
+        this.password = cb[0].getPassword();
+    }
+
+    public TokenType getTokenType() {
+        return tokenType;
+    }
+
+    public void setTokenType(TokenType tokenType) {
+        this.tokenType = tokenType;
+    }
+
+    public void setIssuer(String issuer) {
+        this.issuer = issuer;
+    }
+
+    /**
+     * The audience restriction of the tokens. For SAML SSO it is also the recipient, i.e. the request URL of
+     * the relying party.
+     */
+    public void setAudience(String audience) {
+        this.audience = audience;
+    }
+
+    /**
+     * The subjects of the tokens, which are used in turn.
+     */
+    public void setSubjects(List<String> subjects) {
+        this.subjects = Collections.unmodifiableList(new ArrayList<>(subjects));
+    }
+
+    public void setRoles(List<String> roles) {
+        this.roles = Collections.unmodifiableList(new ArrayList<>(roles));
+    }
+
+    /**
+     * Pad the custom (language) claim of the tokens with the given number of values of the given length, to
+     * benchmark the relying party with large tokens.
+     */
+    public void setCustomClaimValues(int count, int length) {
+        char[] value = new char[length];
+        Arrays.fill(value, 'x');
+        this.customClaimValues = Collections.nCopies(count, new String(value));
+    }
+
+    /**
+     * The lifetime (seconds) of the tokens. Pooled tokens must be used within their lifetime.
+     */
+    public void setLifetime(int lifetime) {
+        this.lifetime = lifetime;
+    }
+
+    /**
+     * The offset (seconds) of the clock of the issuer, the validity of the tokens starts in the future if it
+     * is positive. An offset beyond the maximumClockSkew of the relying party yields tokens it must reject.
+     */
+    public void setClockSkew(int clockSkew) {
+        this.clockSkew = clockSkew;
+    }
+
+    /**
+     * Encrypt the tokens for the certificate with this alias (of the signature keystore), i.e. the
+     * tokenDecryptionKey of the relying party. The tokens are not encrypted if it is null.
+     */
+    public void setEncryptionAlias(String encryptionAlias) {
+        this.encryptionAlias = encryptionAlias;
+    }
+
+    /**
+     * The ID of the SAML SSO AuthnRequest, that the responses and their SubjectConfirmationData are
+     * InResponseTo.
+     */
+    public void setRequestId(String requestId) {
+        this.requestId = requestId;
+    }
+
+    /**
+     * The address of the client of the SubjectConfirmationData of SAML SSO responses.
+     */
+    public void setClientAddress(String clientAddress) {
+        this.clientAddress = clientAddress;
+    }
+
+    /**
+     * Whether SAML SSO responses are deflated (redirect binding), see disableDeflateEncoding of the relying
+     * party.
+     */
+    public void setDeflate(boolean deflate) {
+        this.deflate = deflate;
+    }
+
+    /**
+     * The number of tokens issued so far.
+     */
+    public int getIssued() {
+        return issued.get();
+    }
+
+    /**
+     * Create and sign a new token.
+     */
+    public SyntheticToken issue() throws Exception {
+        int count = issued.getAndIncrement();
+        DateTime now = new DateTime().plusSeconds(clockSkew);
+
+        AbstractSAMLCallbackHandler callbackHandler;
+        if (tokenType == TokenType.WSFED_SAML1) {
+            callbackHandler = new SAML1CallbackHandler();
+            callbackHandler.setConfirmationMethod(SAML1Constants.CONF_BEARER);
+        } else {
+            callbackHandler = new SAML2CallbackHandler();
+            callbackHandler.setConfirmationMethod(SAML2Constants.CONF_BEARER);
+        }
+        callbackHandler.setStatement(AbstractSAMLCallbackHandler.Statement.ATTR);
+        callbackHandler.setIssuer(issuer);
+        callbackHandler.setSubjectName(subjects.get(count % subjects.size()));
+        callbackHandler.setRoles(roles);
+        callbackHandler.setCustomAttributeValues(customClaimValues);
+
+        ConditionsBean cp = new ConditionsBean();
+        cp.setNotBefore(now);
+        cp.setNotAfter(now.plusSeconds(lifetime));
+        if (audience != null) {
+            AudienceRestrictionBean audienceRestriction = new AudienceRestrictionBean();
+            audienceRestriction.getAudienceURIs().add(audience);
+            cp.setAudienceRestrictions(Collections.singletonList(audienceRestriction));
+        }
+        callbackHandler.setConditions(cp);
+
+        if (tokenType == TokenType.SAMLSSO) {
+            callbackHandler.setAlsoAddAuthnStatement(true);
+
+            SubjectConfirmationDataBean subjectConfirmationData = new SubjectConfirmationDataBean();
+            subjectConfirmationData.setAddress(clientAddress);
+            subjectConfirmationData.setInResponseTo(requestId);
+            subjectConfirmationData.setNotAfter(now.plusSeconds(lifetime));
+            subjectConfirmationData.setRecipient(audience);
+            callbackHandler.setSubjectConfirmationData(subjectConfirmationData);
+        }
+
+        SAMLCallback samlCallback = new SAMLCallback();
+        SAMLUtil.doSAMLCallback(callbackHandler, samlCallback);
+        SamlAssertionWrapper assertion = new SamlAssertionWrapper(samlCallback);
+        assertion.signAssertion(alias, password, crypto, false);
+
+        String token = tokenType == TokenType.SAMLSSO
+            ? createSamlResponse(assertion, now) : createRSTR(assertion);
+        return new SyntheticToken(assertion.getId(), token, false);
+    }
+
+    private String createRSTR(SamlAssertionWrapper assertion) throws Exception {
+        Document doc = STSUtil.toSOAPPart(STSUtil.SAMPLE_RSTR_COLL_MSG);
+        Element token = assertion.toDOM(doc);
+
+        Element e = XMLUtils.findElement(doc, "RequestedSecurityToken", FederationConstants.WS_TRUST_13_NS);
+        e.appendChild(token);
+
+        if (encryptionAlias != null) {
+            WSSecEncrypt builder = new WSSecEncrypt(doc);
+            builder.setUserInfo(encryptionAlias);
+            builder.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+            builder.setSymmetricEncAlgorithm(WSConstants.AES_128);
+            builder.setKeyEncAlgo(WSConstants.KEYTRANSPORT_RSAOAEP);
+            builder.setEmbedEncryptedKey(true);
+
+            WSEncryptionPart encryptionPart = new WSEncryptionPart(assertion.getId(), "Element");
+            encryptionPart.setElement(token);
+
+            KeyGenerator keyGen = KeyUtils.getKeyGenerator(builder.getSymmetricEncAlgorithm());
+            SecretKey symmetricKey = keyGen.generateKey();
+
+            builder.prepare(crypto, symmetricKey);
+            builder.encryptForRef(null, Collections.singletonList(encryptionPart), symmetricKey);
+        }
+
+        return DOM2Writer.nodeToString(doc);
+    }
+
+    private String createSamlResponse(SamlAssertionWrapper assertion, DateTime now) throws Exception {
+        Status status =
+            SAML2PResponseComponentBuilder.createStatus("urn:oasis:names:tc:SAML:2.0:status:Success", null);
+        Response response =
+            SAML2PResponseComponentBuilder.createSAMLResponse(requestId, assertion.getIssuerString(), status);
+        response.setIssueInstant(now);
+
+        Document doc = DOMUtils.createDocument();
+        Element responseElement;
+        if (encryptionAlias == null) {
+            response.getAssertions().add(assertion.getSaml2());
+            responseElement = OpenSAMLUtil.toDom(response, doc);
+        } else {
+            responseElement = OpenSAMLUtil.toDom(response, doc);
+            responseElement.appendChild(doc.importNode(createEncryptedAssertion(assertion), true));
+        }
+        doc.appendChild(responseElement);
+
+        byte[] responseBytes = DOM2Writer.nodeToString(responseElement).getBytes(StandardCharsets.UTF_8);
+        if (deflate) {
+            responseBytes = CompressionUtils.deflate(responseBytes);
+        }
+        return Base64.getEncoder().encodeToString(responseBytes);
+    }
+
+    private Element createEncryptedAssertion(SamlAssertionWrapper assertion) throws Exception {
+        Document assertionDoc = DOMUtils.createDocument();
+        Element elem = assertion.toDOM(assertionDoc);
+
+        Element encryptedAssertionElement =
+            assertionDoc.createElementNS(WSConstants.SAML2_NS, WSConstants.ENCRYPED_ASSERTION_LN);
+        encryptedAssertionElement.setAttributeNS(WSConstants.XMLNS_NS, "xmlns", WSConstants.SAML2_NS);
+        encryptedAssertionElement.appendChild(elem);
+        assertionDoc.appendChild(encryptedAssertionElement);
+
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias(encryptionAlias);
+        X509Certificate[] certs = crypto.getX509Certificates(cryptoType);
+        if (certs == null || certs.length == 0) {
+            throw new IllegalStateException("No certificate for alias " + encryptionAlias);
+        }
+        X509Certificate wrappingCert = certs[0];
+
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(256);
+        SecretKey secretKey = keygen.generateKey();
+
+        XMLCipher cipher = XMLCipher.getInstance(WSConstants.AES_256);
+        cipher.init(XMLCipher.ENCRYPT_MODE, secretKey);
+
+        XMLCipher keyCipher = XMLCipher.getInstance(WSConstants.KEYTRANSPORT_RSAOAEP);
+        keyCipher.init(XMLCipher.WRAP_MODE, wrappingCert.getPublicKey());
+        EncryptedKey encryptedKey = keyCipher.encryptKey(assertionDoc, secretKey);
+
+        KeyInfo encryptedKeyKeyInfo = encryptedKey.getKeyInfo();
+        if (encryptedKeyKeyInfo == null) {
+            encryptedKeyKeyInfo = new KeyInfo(assertionDoc);
+            encryptedKey.setKeyInfo(encryptedKeyKeyInfo);
+        }
+        X509Data x509Data = new X509Data(assertionDoc);
+        x509Data.addIssuerSerial(wrappingCert.getIssuerX500Principal().getName(), wrappingCert.getSerialNumber());
+        encryptedKeyKeyInfo.add(x509Data);
+
+        EncryptedData encryptedData = cipher.getEncryptedData();
+        KeyInfo encryptedDataKeyInfo = encryptedData.getKeyInfo();
+        if (encryptedDataKeyInfo == null) {
+            encryptedDataKeyInfo = new KeyInfo(assertionDoc);
+            encryptedData.setKeyInfo(encryptedDataKeyInfo);
+        }
+        encryptedDataKeyInfo.add(encryptedKey);
+
+        cipher.doFinal(assertionDoc, elem, false);
+        return encryptedAssertionElement;
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core.issuer;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.cxf.fediz.common.SecurityTestUtil;
+import org.apache.cxf.fediz.core.FederationConstants;
+import org.apache.cxf.fediz.core.RequestState;
+import org.apache.cxf.fediz.core.config.FedizConfigurator;
+import org.apache.cxf.fediz.core.config.FedizContext;
+import org.apache.cxf.fediz.core.exception.ProcessingException;
+import org.apache.cxf.fediz.core.exception.ProcessingException.TYPE;
+import org.apache.cxf.fediz.core.issuer.SyntheticTokenIssuer.TokenType;
+import org.apache.cxf.fediz.core.processor.FederationProcessorImpl;
+import org.apache.cxf.fediz.core.processor.FedizRequest;
+import org.apache.cxf.fediz.core.processor.FedizResponse;
+import org.apache.cxf.fediz.core.processor.SAMLProcessorImpl;
+import org.apache.wss4j.common.saml.OpenSAMLUtil;
+
+import org.easymock.EasyMock;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The tokens of the SyntheticTokenIssuer must be accepted (or rejected) by the processors of the relying party.
+ */
+public class SyntheticTokenIssuerTest {
+    static final String TEST_AUDIENCE = "https://localhost/fedizhelloworld";
+    static final String TEST_REQUEST_URL = "https://localhost/fedizhelloworld/";
+    static final String TEST_IDP_ISSUER = "http://url_to_the_issuer";
+    static final String TEST_CLIENT_ADDRESS = "https://127.0.0.1";
+
+    private static FedizConfigurator configurator;
+    private static FedizConfigurator samlConfigurator;
+
+    static {
+        OpenSAMLUtil.initSamlEngine();
+    }
+
+    @BeforeAll
+    public static void init() throws Exception {
+        configurator = loadConfig("/fediz_test_config.xml");
+        samlConfigurator = loadConfig("/fediz_test_config_saml.xml");
+    }
+
+    @AfterAll
+    public static void cleanup() {
+        SecurityTestUtil.cleanup();
+    }
+
+    private static FedizConfigurator loadConfig(String configFile) throws Exception {
+        try (Reader r = new InputStreamReader(SyntheticTokenIssuerTest.class.getResourceAsStream(configFile))) {
+            FedizConfigurator fedizConfigurator = new FedizConfigurator();
+            fedizConfigurator.loadConfig(r);
+            return fedizConfigurator;
+        }
+    }
+
+    @Test
+    public void validatePooledTokens() throws Exception {
+        SyntheticTokenIssuer issuer = new SyntheticTokenIssuer();
+        issuer.setAudience(TEST_AUDIENCE);
+        issuer.setSubjects(Arrays.asList("alice", "bob"));
+        FedizContext config = configurator.getFedizContext("ROOT");
+
+        try (TokenPool pool = new TokenPool(issuer, 20, 2)) {
+            pool.awaitFull(60L, TimeUnit.SECONDS);
+            for (int i = 0; i < 20; i++) {
+                SyntheticToken token = pool.take();
+                assertFalse(token.isReplay());
+                FedizResponse wfRes = processSignInResponse(token, config);
+                assertEquals(i % 2 == 0 ? "alice" : "bob", wfRes.getUsername(), "Principal name wrong");
+                assertEquals(SyntheticTokenIssuer.DEFAULT_ISSUER, wfRes.getIssuer(), "Issuer wrong");
+                assertEquals(2, wfRes.getRoles().size());
+                assertEquals(token.getId(), wfRes.getUniqueTokenId());
+            }
+            assertEquals(0, pool.getMisses());
+        }
+    }
+
+    @Test
+    public void validateLargeSAML1Token() throws Exception {
+        SyntheticTokenIssuer issuer = new SyntheticTokenIssuer();
+        issuer.setTokenType(TokenType.WSFED_SAML1);
+        issuer.setAudience(TEST_AUDIENCE);
+        issuer.setRoles(Arrays.asList("User", "Admin", "Manager", "Auditor"));
+        issuer.setCustomClaimValues(20, 1024);
+
+        SyntheticToken token = issuer.issue();
+        assertTrue(token.getToken().length() > 20 * 1024);
+
+        FedizResponse wfRes = processSignInResponse(token, configurator.getFedizContext("ROOT"));
+        assertEquals("alice", wfRes.getUsername(), "Principal name wrong");
+        assertEquals(4, wfRes.getRoles().size());
+    }
+
+    @Test
+    public void validateEncryptedToken() throws Exception {
+        SyntheticTokenIssuer issuer = new SyntheticTokenIssuer();
+        issuer.setAudience(TEST_AUDIENCE);
+        issuer.setEncryptionAlias("mystskey");
+
+        SyntheticToken token = issuer.issue();
+        assertTrue(token.getToken().contains("EncryptedData"));
+
+        FedizResponse wfRes = processSignInResponse(token, configurator.getFedizContext("ROOT_DECRYPTION"));
+        assertEquals("alice", wfRes.getUsername(), "Principal name wrong");
+    }
+
+    @Test
+    public void rejectReplayedTokens() throws Exception {
+        SyntheticTokenIssuer issuer = new SyntheticTokenIssuer();
+        issuer.setAudience(TEST_AUDIENCE);
+        FedizContext config = configurator.getFedizContext("ROOT");
+
+        try (TokenPool pool = new TokenPool(issuer, 5, 1)) {
+            SyntheticToken token = pool.take();
+            processSignInResponse(token, config);
+
+            pool.setReplayRatio(1.0);
+            SyntheticToken replay = pool.take();
+            assertTrue(replay.isReplay());
+            assertEquals(token.getId(), replay.getId());
+            assertEquals(1, pool.getReplays());
+
+            ProcessingException ex =
+                assertThrows(ProcessingException.class, () -> processSignInResponse(replay, config));
+            assertEquals(TYPE.TOKEN_REPLAY, ex.getType());
+        }
+    }
+
+    @Test
+    public void rejectSkewedToken() throws Exception {
+        SyntheticTokenIssuer issuer = new SyntheticTokenIssuer();
+        issuer.setAudience(TEST_AUDIENCE);
+        // Beyond the maximumClockSkew of 1000 seconds
+        issuer.setClockSkew(3600);
+
+        SyntheticToken token = issuer.issue();
+        assertThrows(ProcessingException.class,
+            () -> processSignInResponse(token, configurator.getFedizContext("ROOT")));
+    }
+
+    @Test
+    public void validateSAMLSSOResponses() throws Exception {
+        String requestId = UUID.randomUUID().toString();
+        SyntheticTokenIssuer issuer = new SyntheticTokenIssuer();
+        issuer.setTokenType(TokenType.SAMLSSO);
+        issuer.setIssuer(TEST_IDP_ISSUER);
+        issuer.setAudience(TEST_REQUEST_URL);
+        issuer.setRequestId(requestId);
+        issuer.setClientAddress(TEST_CLIENT_ADDRESS);
+
+        FedizResponse wfRes =
+            processSAMLResponse(issuer.issue(), samlConfigurator.getFedizContext("ROOT"), requestId);
+        assertEquals("alice", wfRes.getUsername(), "Principal name wrong");
+        assertEquals(TEST_IDP_ISSUER, wfRes.getIssuer(), "Issuer wrong");
+        assertEquals(2, wfRes.getRoles().size());
+
+        issuer.setEncryptionAlias("mystskey");
+        wfRes = processSAMLResponse(issuer.issue(), samlConfigurator.getFedizContext("ROOT_DECRYPTION"), requestId);
+        assertEquals("alice", wfRes.getUsername(), "Principal name wrong");
+    }
+
+    private static FedizResponse processSignInResponse(SyntheticToken token, FedizContext config)
+        throws ProcessingException {
+        FedizRequest wfReq = new FedizRequest();
+        wfReq.setAction(FederationConstants.ACTION_SIGNIN);
+        wfReq.setResponseToken(token.getToken());
+        return new FederationProcessorImpl().processRequest(wfReq, config);
+    }
+
+    private static FedizResponse processSAMLResponse(SyntheticToken token, FedizContext config,
+                                                     String requestId) throws ProcessingException {
+        String relayState = UUID.randomUUID().toString();
+        RequestState requestState = new RequestState(TEST_REQUEST_URL,
+                                                     TEST_IDP_ISSUER,
+                                                     requestId,
+                                                     TEST_REQUEST_URL,
+                                                     (String)config.getProtocol().getIssuer(),
+                                                     null,
+                                                     relayState,
+                                                     System.currentTimeMillis());
+
+        HttpServletRequest req = EasyMock.createMock(HttpServletRequest.class);
+        EasyMock.expect(req.getRequestURL()).andReturn(new StringBuffer(TEST_REQUEST_URL)).anyTimes();
+        EasyMock.expect(req.getRemoteAddr()).andReturn(TEST_CLIENT_ADDRESS).anyTimes();
+        EasyMock.replay(req);
+
+        FedizRequest wfReq = new FedizRequest();
+        wfReq.setResponseToken(token.getToken());
+        wfReq.setState(relayState);
+        wfReq.setRequest(req);
+        wfReq.setRequestState(requestState);
+        return new SAMLProcessorImpl().processRequest(wfReq, config);
+    }
+}
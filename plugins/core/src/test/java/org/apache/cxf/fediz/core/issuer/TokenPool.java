@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core.issuer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of tokens signed ahead of time by the SyntheticTokenIssuer, so that the issuer is not the bottleneck
+ * of a benchmark of the relying party. The pool is filled by background threads as soon as it is created, and
+ * topped up while the tokens are taken. If it runs empty, a token is signed by the taking thread, which is
+ * counted as a miss (the pool is too small, or has too few threads, for the benchmark).
+ *
+ * With a replay ratio, some of the tokens taken are one of the recently taken tokens again (flagged as
+ * replay), to verify that the relying party detects replayed tokens under load. Note that the relying party
+ * only rejects the replay if it processed the original before.
+ */
+public class TokenPool implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenPool.class);
+
+    private static final int RECENT_TOKENS = 64;
+
+    private final SyntheticTokenIssuer issuer;
+    private final BlockingQueue<SyntheticToken> tokens;
+    private final ExecutorService executor;
+    private final AtomicReferenceArray<SyntheticToken> recent = new AtomicReferenceArray<>(RECENT_TOKENS);
+    private final AtomicLong taken = new AtomicLong();
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile double replayRatio;
+    private volatile Exception failure;
+
+    /**
+     * @param issuer the (configured) issuer of the tokens
+     * @param capacity the number of tokens signed ahead
+     * @param threads the number of threads that sign the tokens
+     */
+    public TokenPool(SyntheticTokenIssuer issuer, int capacity, int threads) {
+        this.issuer = issuer;
+        this.tokens = new ArrayBlockingQueue<>(capacity);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "fediz-token-pool-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < threads; i++) {
+            executor.execute(this::fill);
+        }
+    }
+
+    private void fill() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                tokens.put(issuer.issue());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            LOG.warn("Failed to issue a token", ex);
+            failure = ex;
+        }
+    }
+
+    /**
+     * The ratio (0 - 1) of the tokens taken that are a replay of a recently taken token.
+     */
+    public void setReplayRatio(double replayRatio) {
+        this.replayRatio = replayRatio;
+    }
+
+    /**
+     * Wait until the pool is full, i.e. all the tokens are signed ahead.
+     */
+    public TokenPool awaitFull(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (tokens.remainingCapacity() > 0) {
+            if (failure != null) {
+                throw new IllegalStateException("Failed to issue a token", failure);
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new TimeoutException(tokens.size() + " tokens issued");
+            }
+            Thread.sleep(10L);
+        }
+        return this;
+    }
+
+    /**
+     * Take a token, which is a (new) pre-signed token or a replayed one.
+     */
+    public SyntheticToken take() throws Exception {
+        double ratio = replayRatio;
+        if (ratio > 0.0 && ThreadLocalRandom.current().nextDouble() < ratio) {
+            long count = Math.min(taken.get(), RECENT_TOKENS);
+            if (count > 0) {
+                SyntheticToken token = recent.get(ThreadLocalRandom.current().nextInt((int) count));
+                if (token != null) {
+                    replays.increment();
+                    return token.asReplay();
+                }
+            }
+        }
+
+        SyntheticToken token = tokens.poll();
+        if (token == null) {
+            misses.increment();
+            token = issuer.issue();
+        }
+        recent.set((int) (taken.getAndIncrement() % RECENT_TOKENS), token);
+        return token;
+    }
+
+    /**
+     * The number of pre-signed tokens in the pool.
+     */
+    public int size() {
+        return tokens.size();
+    }
+
+    public long getReplays() {
+        return replays.sum();
+    }
+
+    /**
+     * The number of tokens that were signed on demand, as the pool was empty.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the overhead of recording a phase, i.e. reading the clock and recording the duration, as the
+ * processors do it, compared to the NoOpProcessingMetrics. It is not run by Surefire (it doesn't match the
+ * *Test pattern) and doesn't assert anything, as the numbers depend on the machine. Run it after a
+ * test-compile with
+ *
+ * mvn exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=org.apache.cxf.fediz.core.metrics.LatencyHistogramBenchmark
+ *     -Dexec.args="&lt;threads&gt; &lt;records per thread&gt;"
+ *
+ * The default is 1 thread and 10 million records. Every run is repeated, the first rounds warm up the JIT.
+ */
+public final class LatencyHistogramBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    private LatencyHistogramBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int records = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 1; round <= WARMUP_ROUNDS + ROUNDS; round++) {
+                HistogramProcessingMetrics metrics = new HistogramProcessingMetrics();
+                double noOp = run(executor, threads, records, NoOpProcessingMetrics.INSTANCE);
+                double histogram = run(executor, threads, records, metrics);
+                System.out.printf("%s %d: no-op %.1f ns, histogram %.1f ns per record, overhead %.1f ns"
+                    + " (%d records)%n",
+                    round <= WARMUP_ROUNDS ? "warm-up" : "round", round, noOp, histogram, histogram - noOp,
+                    metrics.getHistogram(ProcessingPhase.PARSING).getCount());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Returns the mean duration (ns) of a record, including reading the clock.
+     */
+    private static double run(ExecutorService executor, int threads, int records, ProcessingMetrics metrics)
+        throws Exception {
+        List<Future<Long>> futures = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                long start = System.nanoTime();
+                long phaseStart = start;
+                for (int i = 0; i < records; i++) {
+                    long now = System.nanoTime();
+                    metrics.record(ProcessingPhase.PARSING, now - phaseStart);
+                    phaseStart = now;
+                }
+                return System.nanoTime() - start;
+            }));
+        }
+        long nanos = 0;
+        for (Future<Long> future : futures) {
+            nanos += future.get();
+        }
+        return (double)nanos / ((long)threads * records);
+    }
+}
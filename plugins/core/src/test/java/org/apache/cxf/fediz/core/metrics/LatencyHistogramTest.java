@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.cxf.fediz.core.config.FedizContext;
+import org.apache.cxf.fediz.core.config.jaxb.ContextConfig;
+
+import org.junit.jupiter.api.Assertions;
+
+public class LatencyHistogramTest {
+
+    @org.junit.jupiter.api.Test
+    public void testBuckets() {
+        long previous = -1;
+        for (long value : new long[] {0L, 1L, 15L, 16L, 17L, 31L, 32L, 1000L, 123456789L, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.bucketIndex(value);
+            long highest = LatencyHistogram.highestValueInBucket(index);
+            Assertions.assertTrue(highest >= value);
+            // relative error of at most 1/16
+            Assertions.assertTrue(highest - value <= value / 16, "value " + value);
+            Assertions.assertTrue(highest > previous);
+            previous = highest;
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assertions.assertEquals(0L, histogram.getPercentile99());
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        histogram.record(-1L);
+
+        Assertions.assertEquals(1000L, histogram.getCount());
+        Assertions.assertEquals(500.5, histogram.getMean(), 0.01);
+        Assertions.assertEquals(1000L, histogram.getMax());
+        assertWithin(500L, histogram.getPercentile50());
+        assertWithin(900L, histogram.getPercentile90());
+        assertWithin(990L, histogram.getPercentile99());
+        assertWithin(999L, histogram.getPercentile999());
+
+        histogram.reset();
+        Assertions.assertEquals(0L, histogram.getCount());
+        Assertions.assertEquals(0L, histogram.getMax());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testConcurrentRecording() throws Exception {
+        HistogramProcessingMetrics metrics = new HistogramProcessingMetrics();
+        int threads = 4;
+        int iterations = 10000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 1; i <= iterations; i++) {
+                        metrics.record(ProcessingPhase.PARSING, TimeUnit.MICROSECONDS.toNanos(i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        LatencyHistogram histogram = metrics.getHistogram(ProcessingPhase.PARSING);
+        Assertions.assertEquals((long)threads * iterations, histogram.getCount());
+        Assertions.assertEquals((long)iterations, histogram.getMax());
+        Assertions.assertEquals((iterations + 1) / 2.0, histogram.getMean(), 0.01);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testJmxRegistration() throws Exception {
+        ContextConfig config = new ContextConfig();
+        config.setName("/metrics");
+        config.setMaximumClockSkew(BigInteger.valueOf(1000L));
+        FedizContext context = new FedizContext(config);
+        Assertions.assertFalse(context.getProcessingMetrics().isEnabled());
+
+        HistogramProcessingMetrics metrics = new HistogramProcessingMetrics();
+        context.setProcessingMetrics(metrics);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(HistogramProcessingMetrics.JMX_DOMAIN
+            + ":type=ProcessingMetrics,context=" + ObjectName.quote("/metrics") + ",phase=TOTAL");
+        Assertions.assertTrue(server.isRegistered(name));
+
+        metrics.record(ProcessingPhase.TOTAL, TimeUnit.MILLISECONDS.toNanos(2L));
+        Assertions.assertEquals(1L, server.getAttribute(name, "Count"));
+
+        context.close();
+        Assertions.assertFalse(server.isRegistered(name));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        Assertions.assertTrue(actual >= expected && actual <= expected + expected / 16,
+                              "expected about " + expected + " but was " + actual);
+    }
+}
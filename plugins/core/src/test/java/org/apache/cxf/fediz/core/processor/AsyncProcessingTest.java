@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core.processor;
+
+import java.math.BigInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.w3c.dom.Document;
+
+import org.apache.cxf.fediz.core.config.FedizContext;
+import org.apache.cxf.fediz.core.config.jaxb.ContextConfig;
+import org.apache.cxf.fediz.core.exception.ProcessingException;
+import org.apache.cxf.fediz.core.exception.ProcessingException.TYPE;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+
+import org.junit.jupiter.api.Assertions;
+
+/**
+ * Some tests for FedizProcessor.processRequestAsync
+ */
+public class AsyncProcessingTest {
+
+    private static FedizContext createContext() {
+        ContextConfig config = new ContextConfig();
+        config.setName("/async");
+        config.setMaximumClockSkew(BigInteger.valueOf(1000L));
+        return new FedizContext(config);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testProcessedOnExecutor() throws Exception {
+        FedizContext context = createContext();
+        context.setAsyncPoolSize(2);
+        AtomicReference<String> thread = new AtomicReference<>();
+        TestProcessor processor = new TestProcessor(() -> {
+            thread.set(Thread.currentThread().getName());
+            return null;
+        });
+
+        FedizResponse response = processor.processRequestAsync(new FedizRequest(), context)
+            .toCompletableFuture().get(10L, TimeUnit.SECONDS);
+        Assertions.assertEquals("alice", response.getUsername());
+        Assertions.assertTrue(thread.get().startsWith("fediz-/async-"));
+        context.close();
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testProcessingException() throws Exception {
+        FedizContext context = createContext();
+        TestProcessor processor = new TestProcessor(() -> {
+            throw new ProcessingException(TYPE.TOKEN_EXPIRED);
+        });
+
+        CompletableFuture<FedizResponse> future =
+            processor.processRequestAsync(new FedizRequest(), context).toCompletableFuture();
+        try {
+            future.get(10L, TimeUnit.SECONDS);
+            Assertions.fail("Failure expected on an expired token");
+        } catch (ExecutionException ex) {
+            Assertions.assertTrue(ex.getCause() instanceof ProcessingException);
+            Assertions.assertEquals(TYPE.TOKEN_EXPIRED, ((ProcessingException) ex.getCause()).getType());
+        }
+        context.close();
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testRejectedProcessedSynchronously() throws Exception {
+        FedizContext context = createContext();
+        Executor rejecting = command -> {
+            throw new RejectedExecutionException();
+        };
+        context.setAsyncExecutor(rejecting);
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        TestProcessor processor = new TestProcessor(() -> {
+            thread.set(Thread.currentThread());
+            return null;
+        });
+
+        CompletableFuture<FedizResponse> future =
+            processor.processRequestAsync(new FedizRequest(), context).toCompletableFuture();
+        Assertions.assertTrue(future.isDone());
+        Assertions.assertSame(Thread.currentThread(), thread.get());
+        Assertions.assertSame(rejecting, context.getAsyncExecutor());
+    }
+
+    private interface Step {
+        Object run() throws ProcessingException;
+    }
+
+    private static final class TestProcessor implements FedizProcessor {
+        private final Step step;
+
+        TestProcessor(Step step) {
+            this.step = step;
+        }
+
+        @Override
+        public FedizResponse processRequest(FedizRequest request, FedizContext config)
+            throws ProcessingException {
+            step.run();
+            return new FedizResponse("alice", "issuer", null, null, null, null, null, null, null);
+        }
+
+        @Override
+        public RedirectionResponse createSignInRequest(HttpServletRequest request, FedizContext config) {
+            return null;
+        }
+
+        @Override
+        public RedirectionResponse createSignOutRequest(HttpServletRequest request, SamlAssertionWrapper token,
+                                                        FedizContext config) {
+            return null;
+        }
+
+        @Override
+        public Document getMetaData(HttpServletRequest request, FedizContext config) {
+            return null;
+        }
+    }
+}
@@ -19,12 +19,15 @@
 
 package org.apache.cxf.fediz.core.samlsso;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.Base64;
 import java.util.Map;
 
@@ -184,6 +187,56 @@ public class SAMLRequestTest {
         Assertions.assertEquals("2.0",  request.getVersion().toString());
     }
 
+    @org.junit.jupiter.api.Test
+    public void testAuthnRequestTemplate() throws Exception {
+        OpenSAMLUtil.initSamlEngine();
+
+        DefaultSAMLPRequestBuilder builder = new DefaultSAMLPRequestBuilder();
+        AuthnRequestTemplate template = AuthnRequestTemplate.compile(builder, TEST_REQUEST_URL, TEST_IDP_ISSUER);
+        Assertions.assertTrue(template.isCompiledFrom(builder, TEST_REQUEST_URL, TEST_IDP_ISSUER));
+
+        Instant issueInstant = Instant.parse("2024-03-01T10:15:30.123Z");
+        String consumerURL = TEST_REQUEST_URL + "secure?a=1&b=\"2\"";
+        String serialized = template.createRequest("_4711", issueInstant, consumerURL);
+
+        Document requestDoc = DOMUtils.readXml(new StringReader(serialized));
+        AuthnRequest request =
+            (AuthnRequest)OpenSAMLUtil.fromDom(requestDoc.getDocumentElement());
+        Assertions.assertEquals("_4711", request.getID());
+        Assertions.assertEquals(issueInstant.toEpochMilli(), request.getIssueInstant().getMillis());
+        Assertions.assertEquals(consumerURL, request.getAssertionConsumerServiceURL());
+        Assertions.assertEquals(TEST_IDP_ISSUER, request.getDestination());
+        Assertions.assertEquals(TEST_REQUEST_URL, request.getIssuer().getValue());
+        Assertions.assertEquals(TEST_REQUEST_URL, request.getNameIDPolicy().getSPNameQualifier());
+        Assertions.assertFalse(request.isForceAuthn());
+
+        // A changed builder setting needs a new template
+        builder.setForceAuthn(true);
+        Assertions.assertFalse(template.isCompiledFrom(builder, TEST_REQUEST_URL, TEST_IDP_ISSUER));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testReusedDeflater() throws Exception {
+        byte[] message = "<samlp:AuthnRequest ID=\"_4711\"/>".getBytes(StandardCharsets.UTF_8);
+        byte[] deflated = CompressionUtils.deflate(message);
+        // The Deflater of this thread is reset after each use
+        Assertions.assertArrayEquals(deflated, CompressionUtils.deflate(message));
+
+        // A new Deflater is created after the reused ones are ended
+        CompressionUtils.endDeflaters();
+        Assertions.assertArrayEquals(deflated, CompressionUtils.deflate(message));
+        Assertions.assertArrayEquals(message, readAll(CompressionUtils.inflate(deflated)));
+    }
+
+    private static byte[] readAll(InputStream is) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[256];
+        for (int n = is.read(buf); n != -1; n = is.read(buf)) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
     @org.junit.jupiter.api.Test
     public void testSignedSAMLAuthnRequest() throws Exception {
         // Mock up a Request
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.core.servlet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Some tests for the bounded store of the saved request bodies.
+ */
+public class SavedRequestStoreTest {
+
+    @TempDir
+    Path spillDirectory;
+
+    private SavedRequestStore createStore() {
+        SavedRequestStore store = new SavedRequestStore();
+        store.setSpillDirectory(spillDirectory);
+        store.setSpillThreshold(8);
+        return store;
+    }
+
+    private long countSpilledFiles() throws IOException {
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            return files.count();
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testSaveAndRestore() throws Exception {
+        SavedRequestStore store = createStore();
+        long now = System.currentTimeMillis();
+
+        String small = store.save("session", "a=b".getBytes(StandardCharsets.UTF_8), now);
+        byte[] body = "first=alice&last=smith".getBytes(StandardCharsets.UTF_8);
+        String large = store.save("session", body, 6, body.length - 6, now);
+        Assertions.assertEquals(2, store.size());
+        Assertions.assertEquals(3 + body.length - 6, store.getTotalBytes());
+        // Only the large body is spilled to disk
+        Assertions.assertEquals(1, countSpilledFiles());
+
+        Assertions.assertEquals("alice&last=smith", new String(store.restore(large), StandardCharsets.UTF_8));
+        Assertions.assertEquals("a=b", new String(store.restore(small), StandardCharsets.UTF_8));
+        Assertions.assertEquals(0, countSpilledFiles());
+        Assertions.assertEquals(0, store.getTotalBytes());
+
+        // An entry can only be restored once
+        Assertions.assertNull(store.restore(small));
+        Assertions.assertNull(store.restore(null));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testBudgets() throws Exception {
+        SavedRequestStore store = createStore();
+        store.setMaxBytesPerSession(10);
+        store.setMaxTotalBytes(15);
+        long now = System.currentTimeMillis();
+
+        String first = store.save("session1", new byte[8], now);
+        Assertions.assertThrows(IOException.class, () -> store.save("session1", new byte[3], now));
+        store.save("session2", new byte[7], now);
+        Assertions.assertThrows(IOException.class, () -> store.save("session3", new byte[1], now));
+        Assertions.assertEquals(15, store.getTotalBytes());
+
+        // Restoring an entry releases its bytes
+        store.remove(first);
+        store.save("session1", new byte[8], now);
+        Assertions.assertEquals(15, store.getTotalBytes());
+        Assertions.assertEquals(2, store.size());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testExpiredEntries() throws Exception {
+        SavedRequestStore store = createStore();
+        store.setTimeToLive(60_000L);
+        store.setMaxTotalBytes(20);
+        long now = System.currentTimeMillis();
+
+        String expired = store.save("session1", new byte[16], now - 120_000L);
+        String valid = store.save("session2", new byte[4], now);
+        Assertions.assertNull(store.restore(expired));
+
+        store.save("session1", new byte[16], now - 120_000L);
+        // The expired entry is purged to make room
+        store.save("session3", new byte[10], now);
+        Assertions.assertEquals(14, store.getTotalBytes());
+        Assertions.assertEquals(1, countSpilledFiles());
+
+        store.save("session4", new byte[2], now - 120_000L);
+        Assertions.assertEquals(1, store.purgeExpired());
+        Assertions.assertNotNull(store.restore(valid));
+
+        store.clear();
+        Assertions.assertEquals(0, store.size());
+        Assertions.assertEquals(0, countSpilledFiles());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testLeftoverBodiesDeleted() throws Exception {
+        Path leftover = Files.createTempFile(spillDirectory, "fediz-saved-", ".body");
+        Path other = Files.createTempFile(spillDirectory, "other-", ".txt");
+
+        SavedRequestStore store = createStore();
+        Assertions.assertFalse(Files.exists(leftover));
+        Assertions.assertTrue(Files.exists(other));
+
+        store.save("session", new byte[16], System.currentTimeMillis());
+        Assertions.assertEquals(2, countSpilledFiles());
+        store.clear();
+        Assertions.assertEquals(1, countSpilledFiles());
+    }
+}
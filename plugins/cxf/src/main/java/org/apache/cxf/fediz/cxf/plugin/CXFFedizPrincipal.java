@@ -50,7 +50,7 @@ public class CXFFedizPrincipal implements FedizPrincipal {
 
     @Override
     public ClaimCollection getClaims() {
-        return new ClaimCollection(claims);
+        return ClaimCollection.valueOf(claims);
     }
 
     @Override
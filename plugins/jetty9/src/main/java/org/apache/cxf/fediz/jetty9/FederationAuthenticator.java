@@ -23,11 +23,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.security.cert.X509Certificate;
 import java.time.Instant;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletionStage;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
@@ -44,12 +47,13 @@ import org.apache.cxf.fediz.core.config.FedizConfigurator;
 import org.apache.cxf.fediz.core.config.FedizContext;
 import org.apache.cxf.fediz.core.config.SAMLProtocol;
 import org.apache.cxf.fediz.core.exception.ProcessingException;
-import org.apache.cxf.fediz.core.metadata.MetadataDocumentHandler;
+import org.apache.cxf.fediz.core.handler.RequestRouter;
 import org.apache.cxf.fediz.core.processor.FedizProcessor;
 import org.apache.cxf.fediz.core.processor.FedizProcessorFactory;
 import org.apache.cxf.fediz.core.processor.FedizRequest;
 import org.apache.cxf.fediz.core.processor.FedizResponse;
 import org.apache.cxf.fediz.core.processor.RedirectionResponse;
+import org.apache.cxf.fediz.core.servlet.SavedRequestStore;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.security.ServerAuthException;
@@ -61,8 +65,10 @@ import org.eclipse.jetty.server.Authentication;
 import org.eclipse.jetty.server.Authentication.User;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.UserIdentity;
+import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.util.MultiMap;
 import org.eclipse.jetty.util.URIUtil;
+import org.eclipse.jetty.util.UrlEncoded;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
@@ -92,6 +98,11 @@ public class FederationAuthenticator extends LoginAuthenticator {
     private String configFile;
     private FedizConfigurator configurator;
     private String encoding = "UTF-8";
+    private boolean asyncSignin;
+    private int asyncPoolSize = FedizContext.DEFAULT_ASYNC_POOL_SIZE;
+    private int asyncQueueSize = FedizContext.DEFAULT_ASYNC_QUEUE_SIZE;
+    private boolean warmUp;
+    private final SavedRequestStore savedRequestStore = new SavedRequestStore();
 
     public FederationAuthenticator() {
     }
@@ -123,6 +134,27 @@ public class FederationAuthenticator extends LoginAuthenticator {
             //throw new ServerAuthException("Failed to load Fediz configuration",
             //                              e);
         }
+        if (asyncSignin && configurator.getFedizContextList() != null) {
+            for (FedizContext fedContext : configurator.getFedizContextList()) {
+                fedContext.setAsyncPoolSize(asyncPoolSize);
+                fedContext.setAsyncQueueSize(asyncQueueSize);
+            }
+        }
+        if (warmUp && configurator.getFedizContextList() != null) {
+            String jettyHome = System.getProperty("jetty.home");
+            if (jettyHome != null && jettyHome.length() > 0) {
+                for (FedizContext fedContext : configurator.getFedizContextList()) {
+                    fedContext.setRelativePath(jettyHome);
+                }
+            }
+            // Only the context of this web application, the configuration may be shared with others
+            ContextHandler.Context servletContext = ContextHandler.getCurrentContext();
+            if (servletContext != null) {
+                configurator.warmUpContext(servletContext.getContextPath());
+            } else {
+                LOG.warn("Fediz context not initialized, the web application is not known yet");
+            }
+        }
 
     }
 
@@ -147,6 +179,82 @@ public class FederationAuthenticator extends LoginAuthenticator {
         this.encoding = encoding;
     }
 
+    public boolean isAsyncSignin() {
+        return asyncSignin;
+    }
+
+    /**
+     * Process the Sign-In-Response asynchronously (Servlet 3 async), so that the connector thread is not blocked
+     * by the validation of the token
+     */
+    public void setAsyncSignin(boolean asyncSignin) {
+        this.asyncSignin = asyncSignin;
+    }
+
+    public int getAsyncPoolSize() {
+        return asyncPoolSize;
+    }
+
+    public void setAsyncPoolSize(int asyncPoolSize) {
+        this.asyncPoolSize = asyncPoolSize;
+    }
+
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
+    public void setAsyncQueueSize(int asyncQueueSize) {
+        this.asyncQueueSize = asyncQueueSize;
+    }
+
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    /**
+     * Initialize the Fediz context of the web application when the configuration is set, instead of on its first
+     * request
+     */
+    public void setWarmUp(boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    public long getMaxSavedRequestBytesPerSession() {
+        return savedRequestStore.getMaxBytesPerSession();
+    }
+
+    /**
+     * The parameters of a POST request saved before redirecting to the IdP are kept in a bounded store, only the
+     * id of the entry is kept in the session. See SavedRequestStore.
+     */
+    public void setMaxSavedRequestBytesPerSession(long maxBytesPerSession) {
+        savedRequestStore.setMaxBytesPerSession(maxBytesPerSession);
+    }
+
+    public long getMaxSavedRequestBytes() {
+        return savedRequestStore.getMaxTotalBytes();
+    }
+
+    public void setMaxSavedRequestBytes(long maxTotalBytes) {
+        savedRequestStore.setMaxTotalBytes(maxTotalBytes);
+    }
+
+    public int getSavedRequestSpillThreshold() {
+        return savedRequestStore.getSpillThreshold();
+    }
+
+    public void setSavedRequestSpillThreshold(int spillThreshold) {
+        savedRequestStore.setSpillThreshold(spillThreshold);
+    }
+
+    public long getSavedRequestTimeToLive() {
+        return savedRequestStore.getTimeToLive();
+    }
+
+    public void setSavedRequestTimeToLive(long timeToLive) {
+        savedRequestStore.setTimeToLive(timeToLive);
+    }
+
     /* ------------------------------------------------------------ */
     public Authentication validateRequest(ServletRequest req, ServletResponse res, boolean mandatory)
         throws ServerAuthException {
@@ -163,10 +271,10 @@ public class FederationAuthenticator extends LoginAuthenticator {
         FedizContext fedConfig = getContextConfiguration(contextName);
 
         // Check to see if it is a metadata request
-        MetadataDocumentHandler mdHandler = new MetadataDocumentHandler(fedConfig);
-        if (mdHandler.canHandleRequest(request)) {
+        RequestRouter router = fedConfig.getRequestRouter();
+        if (router.isMetadataRequest(request)) {
             Authentication authentication = Authentication.SEND_FAILURE;
-            if (mdHandler.handleRequest(request, response)) {
+            if (router.getMetadataHandler().handleRequest(request, response)) {
                 authentication = Authentication.SEND_CONTINUE;
             }
             return authentication;
@@ -187,7 +295,7 @@ public class FederationAuthenticator extends LoginAuthenticator {
             Authentication authentication = null;
 
             // Handle a request for authentication.
-            if (isSignInRequest(request, fedConfig)) {
+            if (router.isSigninResponse(action, request)) {
                 authentication = handleSignInRequest(request, response, session, fedConfig);
             } else if (FederationConstants.ACTION_SIGNOUT_CLEANUP.equals(action)) {
                 authentication = handleSignOutCleanup(response, session);
@@ -222,6 +330,12 @@ public class FederationAuthenticator extends LoginAuthenticator {
                         buf.append('?').append(request.getQueryString());
                     }
                     session.setAttribute(J_URI, buf.toString());
+                    // Discard the body of an earlier POST request which was never restored
+                    String previousPost = (String)session.getAttribute(J_POST);
+                    if (previousPost != null) {
+                        session.removeAttribute(J_POST);
+                        savedRequestStore.remove(previousPost);
+                    }
 
                     if (MimeTypes.Type.FORM_ENCODED.asString().equals(req.getContentType())
                         && HttpMethod.POST.asString().equals(request.getMethod())) {
@@ -229,7 +343,15 @@ public class FederationAuthenticator extends LoginAuthenticator {
                             //(req instanceof Request)?(Request)req:HttpConnection.getCurrentConnection().getRequest();
                         // Load the parameters (previously extractParameters)
                         baseRequest.getParameterMap();
-                        session.setAttribute(J_POST, new MultiMap<String>(baseRequest.getQueryParameters()));
+                        try {
+                            session.setAttribute(J_POST,
+                                saveRequestParameters(session, baseRequest.getQueryParameters()));
+                        } catch (IOException ex) {
+                            LOG.warn("Request parameters too big to save during authentication: " + ex.getMessage());
+                            session.removeAttribute(J_URI);
+                            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+                            return Authentication.SEND_FAILURE;
+                        }
                     }
                 }
             }
@@ -250,7 +372,6 @@ public class FederationAuthenticator extends LoginAuthenticator {
 
     private Authentication handleSignInRequest(HttpServletRequest request, HttpServletResponse response,
                                                HttpSession session, FedizContext fedConfig) throws IOException {
-        FedizResponse wfRes = null;
         if (LOG.isDebugEnabled()) {
             LOG.debug("SignIn request found");
         }
@@ -277,50 +398,87 @@ public class FederationAuthenticator extends LoginAuthenticator {
             wfReq.setCerts(certs);
 
             FederationLoginService fedLoginService = (FederationLoginService)this._loginService;
+            if (asyncSignin && request.isAsyncSupported()) {
+                handleSignInAsync(request, response, fedLoginService, wfReq, fedConfig);
+                return Authentication.SEND_CONTINUE;
+            }
             UserIdentity user = fedLoginService.login(null, wfReq, fedConfig);
-            if (user != null) {
-                session = renewSession(request, response);
+            return completeSignIn(request, response, user);
+        }
+    }
 
-                // Redirect to original request
-                String nuri;
-                synchronized (session) {
-                    // Check the context
-                    RequestState savedRequestState = (RequestState) session.getAttribute(J_CONTEXT);
-                    String receivedContext = getState(request);
-                    if (savedRequestState == null || !savedRequestState.getState().equals(receivedContext)) {
-                        LOG.warn("The received wctx/RelayState parameter does not match the saved value");
-                        response.sendError(HttpServletResponse.SC_FORBIDDEN);
-                        return Authentication.UNAUTHENTICATED;
-                    }
+    /**
+     * Validate the token of the Sign-In-Response on the asynchronous executor of the FedizContext. The request is
+     * put into asynchronous mode, so the connector thread is released, and completed after the authentication
+     * has been stored in the session and the redirect to the original request has been sent.
+     */
+    private void handleSignInAsync(final HttpServletRequest request, final HttpServletResponse response,
+                                   FederationLoginService fedLoginService, FedizRequest wfReq,
+                                   FedizContext fedConfig) {
+        final AsyncContext asyncContext = request.startAsync();
+        final CompletionStage<UserIdentity> login;
+        try {
+            login = fedLoginService.loginAsync(wfReq, fedConfig);
+        } catch (RuntimeException ex) {
+            asyncContext.complete();
+            throw ex;
+        }
+        login.whenComplete((user, ex) -> {
+            try {
+                completeSignIn(request, response, ex == null ? user : null);
+            } catch (Exception e) {
+                LOG.warn("Failed to complete the asynchronous sign-in: " + e.getMessage());
+            } finally {
+                asyncContext.complete();
+            }
+        });
+    }
 
-                    nuri = (String) session.getAttribute(J_URI);
+    private Authentication completeSignIn(HttpServletRequest request, HttpServletResponse response,
+                                          UserIdentity user) throws IOException {
+        FedizResponse wfRes = null;
+        if (user != null) {
+            HttpSession session = renewSession(request, response);
 
-                    if (nuri == null || nuri.length() == 0) {
-                        nuri = request.getContextPath();
-                        if (nuri.length() == 0) {
-                            nuri = URIUtil.SLASH;
-                        }
+            // Redirect to original request
+            String nuri;
+            synchronized (session) {
+                // Check the context
+                RequestState savedRequestState = (RequestState) session.getAttribute(J_CONTEXT);
+                String receivedContext = getState(request);
+                if (savedRequestState == null || !savedRequestState.getState().equals(receivedContext)) {
+                    LOG.warn("The received wctx/RelayState parameter does not match the saved value");
+                    response.sendError(HttpServletResponse.SC_FORBIDDEN);
+                    return Authentication.UNAUTHENTICATED;
+                }
+
+                nuri = (String) session.getAttribute(J_URI);
+
+                if (nuri == null || nuri.length() == 0) {
+                    nuri = request.getContextPath();
+                    if (nuri.length() == 0) {
+                        nuri = URIUtil.SLASH;
                     }
-                    Authentication cached = new SessionAuthentication(getAuthMethod(), user, wfRes);
-                    session.setAttribute(SessionAuthentication.__J_AUTHENTICATED, cached);
                 }
+                Authentication cached = new SessionAuthentication(getAuthMethod(), user, wfRes);
+                session.setAttribute(SessionAuthentication.__J_AUTHENTICATED, cached);
+            }
 
-                FederationUserIdentity fui = (FederationUserIdentity)user;
-                session.setAttribute(SECURITY_TOKEN_ATTR, fui.getToken());
+            FederationUserIdentity fui = (FederationUserIdentity)user;
+            session.setAttribute(SECURITY_TOKEN_ATTR, fui.getToken());
 
-                response.setContentLength(0);
-                response.sendRedirect(response.encodeRedirectURL(nuri));
+            response.setContentLength(0);
+            response.sendRedirect(response.encodeRedirectURL(nuri));
 
-                return new FederationAuthentication(getAuthMethod(), user);
-            }
+            return new FederationAuthentication(getAuthMethod(), user);
+        }
 
-            // not authenticated
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("WSFED authentication FAILED");
-            }
-            response.sendError(HttpServletResponse.SC_FORBIDDEN);
-            return Authentication.UNAUTHENTICATED;
+        // not authenticated
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("WSFED authentication FAILED");
         }
+        response.sendError(HttpServletResponse.SC_FORBIDDEN);
+        return Authentication.UNAUTHENTICATED;
     }
 
     private Authentication handleSignOutCleanup(HttpServletResponse response, HttpSession session) throws IOException {
@@ -359,7 +517,6 @@ public class FederationAuthenticator extends LoginAuthenticator {
                 //logout
                 String action = request.getParameter(FederationConstants.PARAM_ACTION);
                 boolean logout = FederationConstants.ACTION_SIGNOUT.equals(action);
-                String logoutUrl = fedConfig.getLogoutURL();
 
                 String uri = request.getRequestURI();
                 if (uri == null) {
@@ -371,7 +528,7 @@ public class FederationAuthenticator extends LoginAuthenticator {
                     contextName = "/";
                 }
 
-                if (logout || logoutUrl != null && !logoutUrl.isEmpty() && uri.equals(contextName + logoutUrl)) {
+                if (logout || fedConfig.getRequestRouter().isLogoutURL(uri, contextName)) {
                     session.invalidate();
 
                     FedizProcessor wfProc =
@@ -382,8 +539,7 @@ public class FederationAuthenticator extends LoginAuthenticator {
                 }
 
                 String jUri = (String)session.getAttribute(J_URI);
-                @SuppressWarnings("unchecked")
-                MultiMap<String> jPost = (MultiMap<String>)session.getAttribute(J_POST);
+                String jPost = (String)session.getAttribute(J_POST);
                 if (jUri != null && jPost != null) {
                     StringBuffer buf = request.getRequestURL();
                     if (request.getQueryString() != null) {
@@ -395,11 +551,22 @@ public class FederationAuthenticator extends LoginAuthenticator {
                         // so restore method and parameters
 
                         session.removeAttribute(J_POST);
-                        Request baseRequest = (Request)request;
-                        // (req instanceof Request)?(Request)
-                        // req:HttpConnection.getCurrentConnection().getRequest();
-                        baseRequest.setMethod(HttpMethod.POST.asString());
-                        baseRequest.setQueryParameters(jPost);
+                        MultiMap<String> parameters = null;
+                        try {
+                            parameters = restoreRequestParameters(jPost);
+                        } catch (IOException ex) {
+                            LOG.warn("Failed to restore the parameters of the original POST request: "
+                                + ex.getMessage());
+                        }
+                        if (parameters != null) {
+                            Request baseRequest = (Request)request;
+                            // (req instanceof Request)?(Request)
+                            // req:HttpConnection.getCurrentConnection().getRequest();
+                            baseRequest.setMethod(HttpMethod.POST.asString());
+                            baseRequest.setQueryParameters(parameters);
+                        } else {
+                            LOG.warn("The parameters of the original POST request are no longer available");
+                        }
                     }
                 } else if (jUri != null) {
                     session.removeAttribute(J_URI);
@@ -411,6 +578,22 @@ public class FederationAuthenticator extends LoginAuthenticator {
         return null;
     }
 
+    private String saveRequestParameters(HttpSession session, MultiMap<String> parameters) throws IOException {
+        MultiMap<String> params = parameters == null ? new MultiMap<>() : parameters;
+        byte[] encoded = UrlEncoded.encode(params, StandardCharsets.UTF_8, false).getBytes(StandardCharsets.UTF_8);
+        return savedRequestStore.save(session.getId(), encoded, System.currentTimeMillis());
+    }
+
+    private MultiMap<String> restoreRequestParameters(String id) throws IOException {
+        byte[] encoded = savedRequestStore.restore(id);
+        if (encoded == null) {
+            return null;
+        }
+        MultiMap<String> parameters = new MultiMap<>();
+        UrlEncoded.decodeTo(new String(encoded, StandardCharsets.UTF_8), parameters, StandardCharsets.UTF_8);
+        return parameters;
+    }
+
     private boolean isTokenExpired(FedizContext fedConfig, UserIdentity userIdentity) {
         if (fedConfig.isDetectExpiredTokens()) {
             try {
@@ -438,19 +621,6 @@ public class FederationAuthenticator extends LoginAuthenticator {
         return false;
     }
 
-    private boolean isSignInRequest(ServletRequest request, FedizContext fedConfig) {
-        if (fedConfig.getProtocol() instanceof FederationProtocol
-            && FederationConstants.ACTION_SIGNIN.equals(
-                request.getParameter(FederationConstants.PARAM_ACTION))) {
-            return true;
-        } else if (fedConfig.getProtocol() instanceof SAMLProtocol
-            && request.getParameter(SAMLSSOConstants.SAML_RESPONSE) != null) {
-            return true;
-        }
-
-        return false;
-    }
-
     private String getResponseToken(ServletRequest request, FedizContext fedConfig) {
         if (fedConfig.getProtocol() instanceof FederationProtocol) {
             return request.getParameter(FederationConstants.PARAM_RESULT);
@@ -23,6 +23,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 import javax.security.auth.Subject;
 import javax.servlet.ServletRequest;
@@ -96,50 +97,79 @@ public class FederationLoginService extends AbstractLifeCycle implements LoginSe
                 return null;
             }
 
+            return createUserIdentity(wfRes, config);
 
-            // Validate the AudienceRestriction in Security Token (e.g. SAML)
-            // against the configured list of audienceURIs
-            if (wfRes.getAudience() != null) {
-                List<String> audienceURIs = config.getAudienceUris();
-                boolean validAudience = false;
-                for (String a : audienceURIs) {
-                    if (wfRes.getAudience().startsWith(a)) {
-                        validAudience = true;
-                        break;
-                    }
-                }
+        } catch (Exception ex) {
+            LOG.warn(ex);
+        }
 
-                if (!validAudience) {
-                    LOG.warn("Token AudienceRestriction [" + wfRes.getAudience()
-                             + "] doesn't match with specified list of URIs.");
-                    return null;
-                }
+        return null;
+    }
+
+    /**
+     * Process the FedizRequest on the asynchronous executor of the FedizContext. The returned stage completes
+     * with null if the authentication failed.
+     */
+    public CompletionStage<UserIdentity> loginAsync(FedizRequest wfReq, FedizContext config) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Process SignIn request asynchronously");
+            LOG.debug("token=\n" + wfReq.getResponseToken());
+        }
+
+        FedizProcessor wfProc =
+            FedizProcessorFactory.newFedizProcessor(config.getProtocol());
+        return wfProc.processRequestAsync(wfReq, config).handle((wfRes, ex) -> {
+            if (ex != null) {
+                LOG.warn("Federation processing failed: " + ex.getMessage());
+                return null;
             }
+            try {
+                return createUserIdentity(wfRes, config);
+            } catch (Exception e) {
+                LOG.warn(e);
+                return null;
+            }
+        });
+    }
 
-            // Add "Authenticated" role
-            List<String> roles = wfRes.getRoles();
-            if (roles == null || roles.isEmpty()) {
-                roles = Collections.singletonList("Authenticated");
-            } else if (config.isAddAuthenticatedRole()) {
-                roles = new ArrayList<>(roles);
-                roles.add("Authenticated");
+    protected UserIdentity createUserIdentity(FedizResponse wfRes, FedizContext config) {
+        // Validate the AudienceRestriction in Security Token (e.g. SAML)
+        // against the configured list of audienceURIs
+        if (wfRes.getAudience() != null) {
+            List<String> audienceURIs = config.getAudienceUris();
+            boolean validAudience = false;
+            for (String a : audienceURIs) {
+                if (wfRes.getAudience().startsWith(a)) {
+                    validAudience = true;
+                    break;
+                }
             }
 
-            FederationUserPrincipal user = new FederationUserPrincipal(wfRes.getUsername(), wfRes);
+            if (!validAudience) {
+                LOG.warn("Token AudienceRestriction [" + wfRes.getAudience()
+                         + "] doesn't match with specified list of URIs.");
+                return null;
+            }
+        }
 
-            Subject subject = new Subject();
-            subject.getPrincipals().add(user);
+        // Add "Authenticated" role
+        List<String> roles = wfRes.getRoles();
+        if (roles == null || roles.isEmpty()) {
+            roles = Collections.singletonList("Authenticated");
+        } else if (config.isAddAuthenticatedRole()) {
+            roles = new ArrayList<>(roles);
+            roles.add("Authenticated");
+        }
 
-            String[] aRoles = new String[roles.size()];
-            roles.toArray(aRoles);
+        FederationUserPrincipal user = new FederationUserPrincipal(wfRes.getUsername(), wfRes);
 
-            return identityService.newUserIdentity(subject, user, aRoles);
+        Subject subject = new Subject();
+        subject.getPrincipals().add(user);
 
-        } catch (Exception ex) {
-            LOG.warn(ex);
-        }
+        String[] aRoles = new String[roles.size()];
+        roles.toArray(aRoles);
 
-        return null;
+        return identityService.newUserIdentity(subject, user, aRoles);
     }
 
     public boolean validate(UserIdentity user) {
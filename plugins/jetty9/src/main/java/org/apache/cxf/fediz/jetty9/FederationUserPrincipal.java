@@ -37,7 +37,7 @@ public class FederationUserPrincipal implements FedizPrincipal {
     public FederationUserPrincipal(String name, FedizResponse response) {
         this.name = name;
         this.response = response;
-        this.claims = new ClaimCollection(response.getClaims());
+        this.claims = ClaimCollection.valueOf(response.getClaims());
         if (response.getRoles() != null) {
             this.roles = response.getRoles();
         }
@@ -39,6 +39,7 @@ public class FederationConfigImpl implements FederationConfig, ServletContextAwa
     private Resource configFile;
     private String contextName;
     private String relativePath;
+    private boolean warmUp;
 
     private ServletContext servletContext;
     private FedizConfigurator configurator = new FedizConfigurator();
@@ -68,6 +69,18 @@ public class FederationConfigImpl implements FederationConfig, ServletContextAwa
             LOG.error("Failed to parse '" + configFile.getDescription() + "'", e);
             throw new BeanCreationException("Failed to parse '" + configFile.getDescription() + "'", e);
         }
+        if (warmUp) {
+            // Only the context of this web application, the configuration may be shared with others
+            String name = servletContext != null ? servletContext.getContextPath() : contextName;
+            if (name == null) {
+                LOG.warn("Fediz context not initialized, neither the ServletContext nor 'contextName' is set");
+                return;
+            }
+            for (FedizContext ctx : configurator.getFedizContextList()) {
+                initializeRelativePath(ctx);
+            }
+            configurator.warmUpContext(name);
+        }
     }
 
     @Override
@@ -124,4 +137,15 @@ public class FederationConfigImpl implements FederationConfig, ServletContextAwa
     public void setRelativePath(String relativePath) {
         this.relativePath = relativePath;
     }
+
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    /**
+     * Initialize the Fediz context of the web application in init(), instead of on its first request
+     */
+    public void setWarmUp(boolean warmUp) {
+        this.warmUp = warmUp;
+    }
 }
@@ -20,6 +20,8 @@
 package org.apache.cxf.fediz.spring;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.SortedSet;
 
 import org.apache.cxf.fediz.core.ClaimCollection;
 import org.springframework.security.core.GrantedAuthority;
@@ -30,6 +32,7 @@ public class FederationUser extends User {
     private static final long serialVersionUID = -2231762973730849416L;
 
     private ClaimCollection claims;
+    private SortedSet<GrantedAuthority> sharedAuthorities;
 
     public FederationUser(String username, String password, boolean enabled, boolean accountNonExpired,
                           boolean credentialsNonExpired, boolean accountNonLocked,
@@ -43,6 +46,23 @@ public class FederationUser extends User {
         this.claims = claims;
     }
 
+    /**
+     * Create a user with the given immutable, sorted authorities, which are shared with the other users with the
+     * same roles (see GrantedAuthorityRegistry) instead of being copied into a new set for every user.
+     */
+    public static FederationUser withSharedAuthorities(String username, String password,
+                                                       SortedSet<GrantedAuthority> authorities,
+                                                       ClaimCollection claims) {
+        FederationUser user = new FederationUser(username, password, Collections.emptySet(), claims);
+        user.sharedAuthorities = authorities;
+        return user;
+    }
+
+    @Override
+    public Collection<GrantedAuthority> getAuthorities() {
+        return sharedAuthorities != null ? sharedAuthorities : super.getAuthorities();
+    }
+
     public ClaimCollection getClaims() {
         return this.claims;
     }
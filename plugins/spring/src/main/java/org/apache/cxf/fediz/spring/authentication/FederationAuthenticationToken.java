@@ -91,7 +91,7 @@ public class FederationAuthenticationToken extends AbstractAuthenticationToken
 
     @Override
     public ClaimCollection getClaims() {
-        return new ClaimCollection(response.getClaims());
+        return ClaimCollection.valueOf(response.getClaims());
     }
 
     @Override
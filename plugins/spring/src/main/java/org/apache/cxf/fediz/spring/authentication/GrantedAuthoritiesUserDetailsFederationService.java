@@ -18,13 +18,9 @@
  */
 package org.apache.cxf.fediz.spring.authentication;
 
-import java.util.*;
-
 import org.apache.cxf.fediz.core.ClaimCollection;
 import org.apache.cxf.fediz.core.processor.FedizResponse;
 import org.apache.cxf.fediz.spring.FederationUser;
-import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 /**
@@ -34,23 +30,13 @@ import org.springframework.security.core.userdetails.UserDetails;
 public class GrantedAuthoritiesUserDetailsFederationService
         extends AbstractFederationUserDetailsService {
 
-    private boolean convertToUpperCase = true;
+    private GrantedAuthorityRegistry authorityRegistry = new GrantedAuthorityRegistry();
 
     @Override
     protected UserDetails loadUserDetails(FedizResponse response) {
-
-        final List<GrantedAuthority> grantedAuthorities = new ArrayList<>();
-
-        if (response.getRoles() != null) {
-            for (final String role : response.getRoles()) {
-
-                grantedAuthorities.add(new SimpleGrantedAuthority("ROLE_"
-                                        + (this.convertToUpperCase ? role.toUpperCase() : role)));
-            }
-        }
-        return new FederationUser(response.getUsername(), "N/A",
-                        grantedAuthorities, new ClaimCollection(response.getClaims()));
-
+        return FederationUser.withSharedAuthorities(response.getUsername(), "N/A",
+                        authorityRegistry.getAuthorities(response.getRoles()),
+                        ClaimCollection.valueOf(response.getClaims()));
     }
 
 
@@ -60,6 +46,19 @@ public class GrantedAuthoritiesUserDetailsFederationService
      * @param convertToUpperCase true if it should convert, false otherwise.
      */
     public void setConvertToUpperCase(final boolean convertToUpperCase) {
-        this.convertToUpperCase = convertToUpperCase;
+        authorityRegistry.setRoleCase(convertToUpperCase
+            ? GrantedAuthorityRegistry.RoleCase.UPPER : GrantedAuthorityRegistry.RoleCase.UNCHANGED);
+    }
+
+    public GrantedAuthorityRegistry getAuthorityRegistry() {
+        return authorityRegistry;
+    }
+
+    /**
+     * The registry which maps the roles to (shared) authorities, e.g. to configure a prefix, role renames or a
+     * role hierarchy. It can be shared by several services.
+     */
+    public void setAuthorityRegistry(GrantedAuthorityRegistry authorityRegistry) {
+        this.authorityRegistry = authorityRegistry;
     }
 }
@@ -0,0 +1,309 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.spring.authentication;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Maps the roles of a FedizResponse to GrantedAuthorities. The same few roles are granted to a large number of
+ * users, so the authorities are interned and the mapped, immutable authority set is cached per distinct list of
+ * roles and shared by all the users (FederationUser.withSharedAuthorities) with the same roles.
+ *
+ * A role is mapped by the following rules, which are compiled once when the first role list is mapped:
+ * <ol>
+ * <li>it is renamed if there is an entry in the roleRenames map</li>
+ * <li>it is converted to upper or lower case (roleCase, upper case by default)</li>
+ * <li>the rolePrefix ("ROLE_" by default) is prepended</li>
+ * <li>the authorities reachable in the roleHierarchy (if any) are added</li>
+ * </ol>
+ * The number of interned authorities and cached role lists is bounded, further ones are mapped on every call.
+ */
+public class GrantedAuthorityRegistry {
+
+    public enum RoleCase {
+        UNCHANGED,
+        UPPER,
+        LOWER
+    }
+
+    public static final String DEFAULT_ROLE_PREFIX = "ROLE_";
+
+    private static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private static final Comparator<GrantedAuthority> AUTHORITY_ORDER = new AuthorityComparator();
+
+    private static final SortedSet<GrantedAuthority> NO_AUTHORITIES =
+        Collections.unmodifiableSortedSet(new TreeSet<>(AUTHORITY_ORDER));
+
+    private final ConcurrentMap<String, GrantedAuthority> authorities = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<String>, SortedSet<GrantedAuthority>> roleSets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<List<String>, SortedSet<GrantedAuthority>> authoritySets =
+        new ConcurrentHashMap<>();
+
+    private String rolePrefix = DEFAULT_ROLE_PREFIX;
+    private RoleCase roleCase = RoleCase.UPPER;
+    private Map<String, String> roleRenames = Collections.emptyMap();
+    private RoleHierarchy roleHierarchy;
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private volatile MappingRules mappingRules;
+
+    /**
+     * Returns the immutable, sorted authorities of the given roles. The returned set is shared, it must not be
+     * modified.
+     */
+    public SortedSet<GrantedAuthority> getAuthorities(List<String> roles) {
+        if (roles == null || roles.isEmpty()) {
+            return NO_AUTHORITIES;
+        }
+        SortedSet<GrantedAuthority> mapped = roleSets.get(roles);
+        if (mapped == null) {
+            MappingRules rules = mappingRules;
+            if (rules == null) {
+                rules = compileMappingRules();
+            }
+            mapped = rules.map(roles);
+            if (roleSets.size() < maxEntries) {
+                SortedSet<GrantedAuthority> existing = roleSets.putIfAbsent(new ArrayList<>(roles), mapped);
+                if (existing != null) {
+                    mapped = existing;
+                }
+            }
+        }
+        return mapped;
+    }
+
+    /**
+     * Returns the immutable, sorted and interned set of the given (already mapped) authorities, e.g. of the
+     * authorities of a pre-authenticated user, or null if not all of them are SimpleGrantedAuthorities.
+     */
+    public SortedSet<GrantedAuthority> internAuthorities(Collection<? extends GrantedAuthority> grantedAuthorities) {
+        if (grantedAuthorities == null || grantedAuthorities.isEmpty()) {
+            return NO_AUTHORITIES;
+        }
+        List<String> key = new ArrayList<>(grantedAuthorities.size());
+        for (GrantedAuthority authority : grantedAuthorities) {
+            if (!(authority instanceof SimpleGrantedAuthority)) {
+                return null;
+            }
+            key.add(authority.getAuthority());
+        }
+        SortedSet<GrantedAuthority> interned = authoritySets.get(key);
+        if (interned == null) {
+            SortedSet<GrantedAuthority> set = new TreeSet<>(AUTHORITY_ORDER);
+            for (String authority : key) {
+                set.add(intern(authority));
+            }
+            interned = Collections.unmodifiableSortedSet(set);
+            if (authoritySets.size() < maxEntries) {
+                SortedSet<GrantedAuthority> existing = authoritySets.putIfAbsent(key, interned);
+                if (existing != null) {
+                    interned = existing;
+                }
+            }
+        }
+        return interned;
+    }
+
+    /**
+     * Returns the interned SimpleGrantedAuthority of the given name.
+     */
+    public GrantedAuthority intern(String authority) {
+        GrantedAuthority interned = authorities.get(authority);
+        if (interned == null) {
+            interned = new SimpleGrantedAuthority(authority);
+            if (authorities.size() < maxEntries) {
+                GrantedAuthority existing = authorities.putIfAbsent(authority, interned);
+                if (existing != null) {
+                    interned = existing;
+                }
+            }
+        }
+        return interned;
+    }
+
+    private synchronized MappingRules compileMappingRules() {
+        if (mappingRules == null) {
+            mappingRules = new MappingRules(rolePrefix, roleCase, roleRenames, roleHierarchy);
+        }
+        return mappingRules;
+    }
+
+    private synchronized void rulesChanged() {
+        mappingRules = null;
+        roleSets.clear();
+    }
+
+    /**
+     * Clear the cached authority sets and the interned authorities.
+     */
+    public void clear() {
+        roleSets.clear();
+        authoritySets.clear();
+        authorities.clear();
+    }
+
+    /**
+     * The number of distinct role lists whose authorities are cached.
+     */
+    public int getCachedRoleSets() {
+        return roleSets.size();
+    }
+
+    public String getRolePrefix() {
+        return rolePrefix;
+    }
+
+    /**
+     * The prefix of the authority of a role, "ROLE_" by default.
+     */
+    public synchronized void setRolePrefix(String rolePrefix) {
+        this.rolePrefix = rolePrefix != null ? rolePrefix : "";
+        rulesChanged();
+    }
+
+    public RoleCase getRoleCase() {
+        return roleCase;
+    }
+
+    /**
+     * Whether a role is converted to upper case (the default), lower case or not at all.
+     */
+    public synchronized void setRoleCase(RoleCase roleCase) {
+        this.roleCase = roleCase != null ? roleCase : RoleCase.UNCHANGED;
+        rulesChanged();
+    }
+
+    public Map<String, String> getRoleRenames() {
+        return roleRenames;
+    }
+
+    /**
+     * Renames the roles received from the IdP (before the case conversion and the prefix), e.g. to map the
+     * roles of different IdPs to the same authority.
+     */
+    public synchronized void setRoleRenames(Map<String, String> roleRenames) {
+        this.roleRenames = roleRenames != null
+            ? Collections.unmodifiableMap(new HashMap<>(roleRenames)) : Collections.emptyMap();
+        rulesChanged();
+    }
+
+    public RoleHierarchy getRoleHierarchy() {
+        return roleHierarchy;
+    }
+
+    /**
+     * The hierarchy of the (mapped) authorities, e.g. a RoleHierarchyImpl with "ROLE_ADMIN > ROLE_USER". The
+     * reachable authorities are added once per distinct role list instead of on every access decision.
+     */
+    public synchronized void setRoleHierarchy(RoleHierarchy roleHierarchy) {
+        this.roleHierarchy = roleHierarchy;
+        rulesChanged();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * The maximum number of interned authorities and of cached authority sets, 1024 by default.
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * The mapping rules, compiled when the first role list is mapped
+     */
+    private final class MappingRules {
+        private final String rolePrefix;
+        private final RoleCase roleCase;
+        private final Map<String, String> roleRenames;
+        private final RoleHierarchy roleHierarchy;
+
+        MappingRules(String rolePrefix, RoleCase roleCase, Map<String, String> roleRenames,
+                     RoleHierarchy roleHierarchy) {
+            this.rolePrefix = rolePrefix;
+            this.roleCase = roleCase;
+            this.roleRenames = roleRenames;
+            this.roleHierarchy = roleHierarchy;
+        }
+
+        SortedSet<GrantedAuthority> map(List<String> roles) {
+            Set<GrantedAuthority> mapped = new LinkedHashSet<>();
+            for (String role : roles) {
+                mapped.add(intern(mapRole(role)));
+            }
+            SortedSet<GrantedAuthority> set = new TreeSet<>(AUTHORITY_ORDER);
+            if (roleHierarchy != null) {
+                for (GrantedAuthority reachable : roleHierarchy.getReachableGrantedAuthorities(mapped)) {
+                    set.add(intern(reachable.getAuthority()));
+                }
+            } else {
+                set.addAll(mapped);
+            }
+            return Collections.unmodifiableSortedSet(set);
+        }
+
+        private String mapRole(String role) {
+            String mapped = roleRenames.getOrDefault(role, role);
+            if (roleCase == RoleCase.UPPER) {
+                mapped = mapped.toUpperCase();
+            } else if (roleCase == RoleCase.LOWER) {
+                mapped = mapped.toLowerCase();
+            }
+            return rolePrefix.isEmpty() ? mapped : rolePrefix + mapped;
+        }
+    }
+
+    /**
+     * Orders the authorities by name. It must be serializable, as it is part of the authority sets of the users,
+     * which are serialized with the session.
+     */
+    private static final class AuthorityComparator implements Comparator<GrantedAuthority>, Serializable {
+
+        private static final long serialVersionUID = 3374215467239311436L;
+
+        @Override
+        public int compare(GrantedAuthority g1, GrantedAuthority g2) {
+            String a1 = g1.getAuthority();
+            String a2 = g2.getAuthority();
+            if (a1 == null) {
+                return a2 == null ? 0 : -1;
+            }
+            return a2 == null ? 1 : a1.compareTo(a2);
+        }
+    }
+}
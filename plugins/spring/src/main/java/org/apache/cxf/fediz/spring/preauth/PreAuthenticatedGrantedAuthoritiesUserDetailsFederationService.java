@@ -23,6 +23,7 @@ import java.util.*;
 import org.apache.cxf.fediz.core.ClaimCollection;
 import org.apache.cxf.fediz.core.FedizPrincipal;
 import org.apache.cxf.fediz.spring.FederationUser;
+import org.apache.cxf.fediz.spring.authentication.GrantedAuthorityRegistry;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.GrantedAuthoritiesContainer;
@@ -49,6 +50,9 @@ import org.springframework.util.Assert;
  */
 public class PreAuthenticatedGrantedAuthoritiesUserDetailsFederationService
         implements AuthenticationUserDetailsService<PreAuthenticatedAuthenticationToken> {
+
+    private GrantedAuthorityRegistry authorityRegistry = new GrantedAuthorityRegistry();
+
     /**
      * Get a UserDetails object based on the user name contained in the given
      * token, and the GrantedAuthorities as returned by the
@@ -73,6 +77,22 @@ public class PreAuthenticatedGrantedAuthoritiesUserDetailsFederationService
      */
     protected UserDetails createuserDetails(Authentication token,
         Collection<? extends GrantedAuthority> authorities, ClaimCollection claims) {
+        SortedSet<GrantedAuthority> sharedAuthorities = authorityRegistry.internAuthorities(authorities);
+        if (sharedAuthorities != null) {
+            return FederationUser.withSharedAuthorities(token.getName(), "N/A", sharedAuthorities, claims);
+        }
         return new FederationUser(token.getName(), "N/A", authorities, claims);
     }
+
+    public GrantedAuthorityRegistry getAuthorityRegistry() {
+        return authorityRegistry;
+    }
+
+    /**
+     * The registry which interns the pre-authenticated authorities, so users with the same authorities share
+     * them.
+     */
+    public void setAuthorityRegistry(GrantedAuthorityRegistry authorityRegistry) {
+        this.authorityRegistry = authorityRegistry;
+    }
 }
@@ -31,7 +31,7 @@ import javax.servlet.http.HttpSession;
 import org.apache.cxf.fediz.core.config.FedizContext;
 import org.apache.cxf.fediz.core.exception.ProcessingException;
 import org.apache.cxf.fediz.core.handler.RequestHandler;
-import org.apache.cxf.fediz.core.metadata.MetadataDocumentHandler;
+import org.apache.cxf.fediz.core.handler.RequestRouter;
 import org.apache.cxf.fediz.core.processor.FedizProcessor;
 import org.apache.cxf.fediz.core.processor.FedizProcessorFactory;
 import org.apache.cxf.fediz.core.processor.RedirectionResponse;
@@ -101,9 +101,9 @@ public class FederationAuthenticationEntryPoint implements AuthenticationEntryPo
         }
 
         // Check to see if it is a metadata request
-        MetadataDocumentHandler mdHandler = new MetadataDocumentHandler(fedContext);
-        if (mdHandler.canHandleRequest(servletRequest)) {
-            mdHandler.handleRequest(servletRequest, response);
+        RequestRouter router = fedContext.getRequestRouter();
+        if (router.isMetadataRequest(servletRequest)) {
+            router.getMetadataHandler().handleRequest(servletRequest, response);
             return;
         }
 
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.spring.authentication;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cxf.fediz.spring.FederationUser;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Reports the heap saved by the GrantedAuthorityRegistry for 100k sessions (by default) of users with the same
+ * roles: the users are created once with their own authorities (as the User constructor copies them) and once
+ * with the authorities shared by the registry. The heap is measured after System.gc(), so the numbers are an
+ * estimate, which is why this is a main class that Surefire doesn't pick up rather than a test. Run it after a
+ * test-compile of the module with
+ *
+ * mvn exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=org.apache.cxf.fediz.spring.authentication.GrantedAuthorityRegistryBenchmark
+ *     -Dexec.args="&lt;sessions&gt;"
+ */
+public final class GrantedAuthorityRegistryBenchmark {
+
+    private GrantedAuthorityRegistryBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        GrantedAuthorityRegistry registry = new GrantedAuthorityRegistry();
+        List<String> roles = Arrays.asList("User", "Manager", "Admin");
+
+        long start = usedHeap();
+        FederationUser[] copied = new FederationUser[sessions];
+        for (int i = 0; i < sessions; i++) {
+            List<GrantedAuthority> authorities = new ArrayList<>();
+            for (String role : roles) {
+                authorities.add(new SimpleGrantedAuthority("ROLE_" + role.toUpperCase()));
+            }
+            copied[i] = new FederationUser("alice" + i, "N/A", authorities, null);
+        }
+        long copiedBytes = usedHeap() - start;
+
+        start = usedHeap();
+        FederationUser[] shared = new FederationUser[sessions];
+        for (int i = 0; i < sessions; i++) {
+            shared[i] = FederationUser.withSharedAuthorities("alice" + i, "N/A", registry.getAuthorities(roles),
+                                                             null);
+        }
+        long sharedBytes = usedHeap() - start;
+
+        // Both arrays are still referenced here, so neither was collected while measuring
+        System.out.println("Heap of " + copied.length + " users with copied authorities: " + copiedBytes / 1024
+            + " KB, with shared authorities: " + sharedBytes / 1024 + " KB (" + shared.length + " users)");
+        System.out.println("Saved: " + (copiedBytes - sharedBytes) + " bytes, "
+            + (copiedBytes - sharedBytes) / sessions + " bytes per session");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.spring.authentication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+
+import org.apache.cxf.fediz.spring.FederationUser;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchyImpl;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import org.junit.jupiter.api.Assertions;
+
+public class GrantedAuthorityRegistryTest {
+
+    private static List<String> authorityNames(Collection<? extends GrantedAuthority> authorities) {
+        List<String> names = new ArrayList<>();
+        for (GrantedAuthority authority : authorities) {
+            names.add(authority.getAuthority());
+        }
+        return names;
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testDefaultMapping() {
+        GrantedAuthorityRegistry registry = new GrantedAuthorityRegistry();
+        SortedSet<GrantedAuthority> authorities = registry.getAuthorities(Arrays.asList("User", "Admin", "User"));
+        Assertions.assertEquals(Arrays.asList("ROLE_ADMIN", "ROLE_USER"), authorityNames(authorities));
+        Assertions.assertTrue(registry.getAuthorities(null).isEmpty());
+        Assertions.assertThrows(UnsupportedOperationException.class,
+            () -> authorities.add(new SimpleGrantedAuthority("ROLE_OTHER")));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testSharedAuthorities() {
+        GrantedAuthorityRegistry registry = new GrantedAuthorityRegistry();
+        SortedSet<GrantedAuthority> authorities = registry.getAuthorities(Arrays.asList("User", "Admin"));
+        Assertions.assertSame(authorities, registry.getAuthorities(new ArrayList<>(Arrays.asList("User", "Admin"))));
+        Assertions.assertSame(authorities.first(), registry.getAuthorities(Collections.singletonList("admin")).first());
+        Assertions.assertEquals(2, registry.getCachedRoleSets());
+
+        // A new rule invalidates the cached sets
+        registry.setRolePrefix("");
+        Assertions.assertEquals(Arrays.asList("ADMIN", "USER"),
+                                authorityNames(registry.getAuthorities(Arrays.asList("User", "Admin"))));
+        Assertions.assertEquals(1, registry.getCachedRoleSets());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testMappingRules() {
+        GrantedAuthorityRegistry registry = new GrantedAuthorityRegistry();
+        registry.setRolePrefix("GROUP_");
+        registry.setRoleCase(GrantedAuthorityRegistry.RoleCase.LOWER);
+        registry.setRoleRenames(Collections.singletonMap("Administrators", "Admin"));
+        RoleHierarchyImpl hierarchy = new RoleHierarchyImpl();
+        hierarchy.setHierarchy("GROUP_admin > GROUP_user");
+        registry.setRoleHierarchy(hierarchy);
+
+        Assertions.assertEquals(Arrays.asList("GROUP_admin", "GROUP_user"),
+                                authorityNames(registry.getAuthorities(Collections.singletonList("Administrators"))));
+        Assertions.assertEquals(Collections.singletonList("GROUP_user"),
+                                authorityNames(registry.getAuthorities(Collections.singletonList("USER"))));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testInternAuthorities() {
+        GrantedAuthorityRegistry registry = new GrantedAuthorityRegistry();
+        List<GrantedAuthority> authorities =
+            Arrays.asList(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN"));
+        SortedSet<GrantedAuthority> interned = registry.internAuthorities(authorities);
+        Assertions.assertEquals(Arrays.asList("ROLE_ADMIN", "ROLE_USER"), authorityNames(interned));
+        Assertions.assertSame(interned, registry.internAuthorities(
+            Arrays.asList(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN"))));
+        Assertions.assertNull(registry.internAuthorities(Collections.singletonList(() -> "ROLE_CUSTOM")));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testSerializeUserWithSharedAuthorities() throws Exception {
+        GrantedAuthorityRegistry registry = new GrantedAuthorityRegistry();
+        FederationUser user = FederationUser.withSharedAuthorities("alice", "N/A",
+            registry.getAuthorities(Arrays.asList("User", "Admin")), null);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(user);
+        }
+        FederationUser restored;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            restored = (FederationUser)in.readObject();
+        }
+        Assertions.assertEquals("alice", restored.getUsername());
+        Assertions.assertEquals(Arrays.asList("ROLE_ADMIN", "ROLE_USER"), authorityNames(restored.getAuthorities()));
+    }
+
+    /**
+     * The users with the same roles share one authority set, instead of a copy per user (as the User constructor
+     * does).
+     */
+    @org.junit.jupiter.api.Test
+    public void testAuthoritiesSharedBetweenUsers() {
+        GrantedAuthorityRegistry registry = new GrantedAuthorityRegistry();
+        List<String> roles = Arrays.asList("User", "Manager", "Admin");
+
+        FederationUser copied = new FederationUser("alice", "N/A", registry.getAuthorities(roles), null);
+        FederationUser alice = FederationUser.withSharedAuthorities("alice", "N/A", registry.getAuthorities(roles),
+                                                                    null);
+        FederationUser bob = FederationUser.withSharedAuthorities("bob", "N/A",
+                                                                  registry.getAuthorities(new ArrayList<>(roles)),
+                                                                  null);
+
+        Assertions.assertEquals(authorityNames(copied.getAuthorities()), authorityNames(alice.getAuthorities()));
+        Assertions.assertSame(alice.getAuthorities(), bob.getAuthorities());
+        Assertions.assertSame(registry.getAuthorities(roles), bob.getAuthorities());
+    }
+}
@@ -26,7 +26,9 @@ import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletionStage;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -44,17 +46,22 @@ import org.apache.catalina.connector.Response;
 import org.apache.cxf.fediz.core.FederationConstants;
 import org.apache.cxf.fediz.core.FedizPrincipal;
 import org.apache.cxf.fediz.core.RequestState;
+import org.apache.cxf.fediz.core.RequestStateCodec;
+import org.apache.cxf.fediz.core.config.FederationProtocol;
 import org.apache.cxf.fediz.core.config.FedizConfigurator;
 import org.apache.cxf.fediz.core.config.FedizContext;
 import org.apache.cxf.fediz.core.exception.ProcessingException;
 import org.apache.cxf.fediz.core.handler.LogoutHandler;
-import org.apache.cxf.fediz.core.metadata.MetadataDocumentHandler;
+import org.apache.cxf.fediz.core.handler.RequestRouter;
+import org.apache.cxf.fediz.core.handler.RequestRouter.Route;
 import org.apache.cxf.fediz.core.processor.FedizProcessor;
 import org.apache.cxf.fediz.core.processor.FedizProcessorFactory;
 import org.apache.cxf.fediz.core.processor.FedizResponse;
 import org.apache.cxf.fediz.core.processor.RedirectionResponse;
+import org.apache.cxf.fediz.core.servlet.SavedRequestStore;
 import org.apache.cxf.fediz.tomcat.handler.TomcatLogoutHandler;
 import org.apache.cxf.fediz.tomcat.handler.TomcatSigninHandler;
+import org.apache.tomcat.util.buf.ByteChunk;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,6 +69,7 @@ public class FederationAuthenticator extends FormAuthenticator {
 
     public static final String SESSION_SAVED_REQUEST_PREFIX = "SAVED_REQUEST_";
     public static final String SESSION_SAVED_URI_PREFIX = "SAVED_URI_";
+    public static final String SESSION_SAVED_BODY_PREFIX = "SAVED_BODY_";
     public static final String FEDERATION_NOTE = "org.apache.cxf.fediz.tomcat.FEDERATION";
     public static final String REQUEST_STATE = "org.apache.cxf.fediz.REQUEST_STATE";
     public static final String SECURITY_TOKEN = "org.apache.fediz.SECURITY_TOKEN";
@@ -80,6 +88,26 @@ public class FederationAuthenticator extends FormAuthenticator {
     protected String configFile;
     protected String encoding = "UTF-8";
 
+    /**
+     * Process the Sign-In-Response asynchronously (Servlet 3 async), so that the connector thread is not blocked
+     * by the validation of the token
+     */
+    protected boolean asyncSignin;
+    protected int asyncPoolSize = FedizContext.DEFAULT_ASYNC_POOL_SIZE;
+    protected int asyncQueueSize = FedizContext.DEFAULT_ASYNC_QUEUE_SIZE;
+
+    /**
+     * Initialize the Fediz context of the web application when the valve is started, instead of on its first
+     * request
+     */
+    protected boolean warmUp;
+
+    /**
+     * The bodies of the requests saved before redirecting to the IdP. Only the id of the entry is kept in the
+     * session, the store is bounded per session and in total and spills large bodies to temporary files.
+     */
+    protected final SavedRequestStore savedRequestStore = new SavedRequestStore();
+
     private FedizConfigurator configurator;
 
     public FederationAuthenticator() {
@@ -102,6 +130,70 @@ public class FederationAuthenticator extends FormAuthenticator {
         this.encoding = encoding;
     }
 
+    public boolean isAsyncSignin() {
+        return asyncSignin;
+    }
+
+    public void setAsyncSignin(boolean asyncSignin) {
+        this.asyncSignin = asyncSignin;
+    }
+
+    public int getAsyncPoolSize() {
+        return asyncPoolSize;
+    }
+
+    public void setAsyncPoolSize(int asyncPoolSize) {
+        this.asyncPoolSize = asyncPoolSize;
+    }
+
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
+    public void setAsyncQueueSize(int asyncQueueSize) {
+        this.asyncQueueSize = asyncQueueSize;
+    }
+
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    public void setWarmUp(boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    public long getMaxSavedRequestBytesPerSession() {
+        return savedRequestStore.getMaxBytesPerSession();
+    }
+
+    public void setMaxSavedRequestBytesPerSession(long maxBytesPerSession) {
+        savedRequestStore.setMaxBytesPerSession(maxBytesPerSession);
+    }
+
+    public long getMaxSavedRequestBytes() {
+        return savedRequestStore.getMaxTotalBytes();
+    }
+
+    public void setMaxSavedRequestBytes(long maxTotalBytes) {
+        savedRequestStore.setMaxTotalBytes(maxTotalBytes);
+    }
+
+    public int getSavedRequestSpillThreshold() {
+        return savedRequestStore.getSpillThreshold();
+    }
+
+    public void setSavedRequestSpillThreshold(int spillThreshold) {
+        savedRequestStore.setSpillThreshold(spillThreshold);
+    }
+
+    public long getSavedRequestTimeToLive() {
+        return savedRequestStore.getTimeToLive();
+    }
+
+    public void setSavedRequestTimeToLive(long timeToLive) {
+        savedRequestStore.setTimeToLive(timeToLive);
+    }
+
     @Override
     protected synchronized void startInternal() throws LifecycleException {
 
@@ -119,6 +211,23 @@ public class FederationAuthenticator extends FormAuthenticator {
         } catch (JAXBException | IOException e) {
             throw new LifecycleException("Failed to load Fediz configuration", e);
         }
+        if (asyncSignin && configurator.getFedizContextList() != null) {
+            for (FedizContext fedContext : configurator.getFedizContextList()) {
+                fedContext.setAsyncPoolSize(asyncPoolSize);
+                fedContext.setAsyncQueueSize(asyncQueueSize);
+            }
+        }
+        if (warmUp && configurator.getFedizContextList() != null) {
+            String catalinaBase = System.getProperty("catalina.base");
+            if (catalinaBase != null && catalinaBase.length() > 0) {
+                for (FedizContext fedContext : configurator.getFedizContextList()) {
+                    fedContext.setRelativePath(catalinaBase);
+                }
+            }
+            // Only the context of this web application, the configuration may be shared with others. The
+            // context path is the key of the lookup of a request, the name differs for versioned deployments
+            configurator.warmUpContext(getContext().getPath());
+        }
         super.startInternal();
 
     }
@@ -137,6 +246,7 @@ public class FederationAuthenticator extends FormAuthenticator {
                 }
             }
         }
+        savedRequestStore.clear();
         super.stopInternal();
     }
 
@@ -167,14 +277,15 @@ public class FederationAuthenticator extends FormAuthenticator {
         }
         FedizContext fedConfig = getContextConfiguration(contextName);
 
-        MetadataDocumentHandler mdHandler = new MetadataDocumentHandler(fedConfig);
-        if (mdHandler.canHandleRequest(request)) {
-            mdHandler.handleRequest(request, response);
+        RequestRouter router = fedConfig.getRequestRouter();
+        Route route = router.route(request, contextName);
+        if (route == Route.METADATA) {
+            router.getMetadataHandler().handleRequest(request, response);
             return;
         }
 
-        LogoutHandler logoutHandler = new TomcatLogoutHandler(fedConfig, contextName, request);
-        if (logoutHandler.canHandleRequest(request)) {
+        if (route == Route.LOGOUT || route == Route.LOGOUT_CLEANUP) {
+            LogoutHandler logoutHandler = new TomcatLogoutHandler(fedConfig, contextName, request);
             Element token = (Element)request.getSession().getAttribute(SECURITY_TOKEN);
             logoutHandler.setToken(token);
             logoutHandler.handleRequest(request, response);
@@ -197,9 +308,13 @@ public class FederationAuthenticator extends FormAuthenticator {
         FedizContext fedCtx = getContextConfiguration(contextName);
 
         // Handle Signin requests
-        TomcatSigninHandler signinHandler = new TomcatSigninHandler(fedCtx);
-        signinHandler.setLandingPage(landingPage);
-        if (signinHandler.canHandleRequest(request)) {
+        if (fedCtx.getRequestRouter().isSigninResponse(request)) {
+            TomcatSigninHandler signinHandler = new TomcatSigninHandler(fedCtx);
+            signinHandler.setLandingPage(landingPage);
+            if (asyncSignin && request.isAsyncSupported()) {
+                handleSigninAsync(signinHandler, request, response);
+                return false;
+            }
             FedizPrincipal principal = signinHandler.handleRequest(request, response);
             if (principal != null) {
                 // Register the authenticated Principal
@@ -229,6 +344,41 @@ public class FederationAuthenticator extends FormAuthenticator {
         return false;
     }
 
+    /**
+     * Validate the token of the Sign-In-Response on the asynchronous executor of the FedizContext. The request is
+     * put into asynchronous mode, so the connector thread is released, and completed after the principal has been
+     * registered and the original request resumed.
+     */
+    protected void handleSigninAsync(final TomcatSigninHandler signinHandler, final Request request,
+                                     final HttpServletResponse response) {
+        final AsyncContext asyncContext = request.startAsync();
+        final CompletionStage<FedizPrincipal> signin;
+        try {
+            signin = signinHandler.handleRequestAsync(request, response);
+        } catch (RuntimeException ex) {
+            asyncContext.complete();
+            throw ex;
+        }
+        signin.whenComplete((principal, ex) -> {
+            try {
+                if (principal != null) {
+                    register(request, response, principal, FederationConstants.WSFED_METHOD, null, null);
+                    LOG.debug("Authentication of '{}' was successful", principal);
+                    resumeRequest(signinHandler.getContextParameter(request), request, response);
+                } else {
+                    if (ex != null) {
+                        LOG.warn("Asynchronous sign-in failed: {}", ex.getMessage());
+                    }
+                    response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+                }
+            } catch (Exception e) {
+                LOG.error("Failed to complete the asynchronous sign-in: {}", e.getMessage());
+            } finally {
+                asyncContext.complete();
+            }
+        });
+    }
+
     public boolean doAuthenticate(Request request, HttpServletResponse response) throws IOException {
         return authenticate(request, response);
     }
@@ -242,6 +392,9 @@ public class FederationAuthenticator extends FormAuthenticator {
             Session session = ((Request)request).getSessionInternal();
             String originalURL = (String)session.getNote(FederationAuthenticator.SESSION_SAVED_URI_PREFIX + contextId);
             session.removeNote(FederationAuthenticator.SESSION_SAVED_URI_PREFIX + contextId); // Cleanup session
+            if (originalURL == null) {
+                originalURL = getStatelessTargetAddress(contextId, request);
+            }
 
             SavedRequest saved = (SavedRequest) session.getNote(SESSION_SAVED_REQUEST_PREFIX
                     + ((Request)request).getDecodedRequestURI());
@@ -272,6 +425,23 @@ public class FederationAuthenticator extends FormAuthenticator {
         }
     }
 
+    /**
+     * Returns the original URL carried in the wctx request state token, or null if there is none.
+     */
+    protected String getStatelessTargetAddress(String contextId, HttpServletRequest request) {
+        String contextName = request.getServletContext().getContextPath();
+        if (contextName == null || contextName.isEmpty()) {
+            contextName = "/";
+        }
+        FedizContext fedCtx = getContextConfiguration(contextName);
+        RequestStateCodec codec = fedCtx.getRequestStateCodec();
+        if (codec == null || !(fedCtx.getProtocol() instanceof FederationProtocol)) {
+            return null;
+        }
+        RequestState requestState = codec.decode(contextId);
+        return requestState != null ? requestState.getTargetAddress() : null;
+    }
+
     protected boolean restoreRequest(Request request, HttpServletResponse response) throws IOException {
 
         Session session = request.getSessionInternal();
@@ -302,13 +472,17 @@ public class FederationAuthenticator extends FormAuthenticator {
                     }
                 }
 
-                // Save original request in our session
-                try {
-                    saveRequest(request, redirectionResponse.getRequestState());
-                } catch (IOException ioe) {
-                    LOG.debug("Request body too big to save during authentication");
-                    response.sendError(HttpServletResponse.SC_FORBIDDEN, sm
-                        .getString("authenticator.requestBodyTooBig"));
+                if (isStatelessRedirect(request, fedCtx)) {
+                    LOG.debug("Request state carried in wctx, no session created");
+                } else {
+                    // Save original request in our session
+                    try {
+                        saveRequest(request, redirectionResponse.getRequestState());
+                    } catch (IOException ioe) {
+                        LOG.debug("Request body too big to save during authentication");
+                        response.sendError(HttpServletResponse.SC_FORBIDDEN, sm
+                            .getString("authenticator.requestBodyTooBig"));
+                    }
                 }
 
                 response.sendRedirect(redirectURL);
@@ -322,6 +496,16 @@ public class FederationAuthenticator extends FormAuthenticator {
         }
     }
 
+    /**
+     * Whether the original request doesn't need to be saved in the session, as its URL is carried in the
+     * request state token of the WS-Federation wctx parameter and it has no body. The target address of the SAML
+     * request state is the assertion consumer URL, so the original request is always saved for SAML.
+     */
+    protected boolean isStatelessRedirect(Request request, FedizContext fedCtx) {
+        return fedCtx.getRequestStateCodec() != null && fedCtx.getProtocol() instanceof FederationProtocol
+            && "GET".equalsIgnoreCase(request.getMethod());
+    }
+
     @Override
     protected boolean matchRequest(Request request) {
         Session session = request.getSessionInternal(false);
@@ -351,6 +535,7 @@ public class FederationAuthenticator extends FormAuthenticator {
                 super.saveRequest(request, session);
                 saved = (SavedRequest) session.getNote(Constants.FORM_REQUEST_NOTE);
             }
+            saveRequestBody(session, uri, saved, requestState);
             session.setNote(SESSION_SAVED_REQUEST_PREFIX + uri, saved);
             StringBuilder sb = new StringBuilder(saved.getRequestURI());
             if (saved.getQueryString() != null) {
@@ -364,6 +549,44 @@ public class FederationAuthenticator extends FormAuthenticator {
         }
     }
 
+    /**
+     * Move the body of the saved request from the session to the SavedRequestStore.
+     */
+    protected void saveRequestBody(Session session, String uri, SavedRequest saved, RequestState requestState)
+        throws IOException {
+        ByteChunk body = saved.getBody();
+        // A previous attempt to access the same URI is replaced
+        savedRequestStore.remove((String)session.getNote(SESSION_SAVED_BODY_PREFIX + uri));
+        session.removeNote(SESSION_SAVED_BODY_PREFIX + uri);
+        if (body != null && body.getLength() > 0) {
+            saved.setBody(null);
+            String id = savedRequestStore.save(session.getIdInternal(), body.getBytes(), body.getStart(),
+                                               body.getLength(), requestState.getCreatedAt());
+            session.setNote(SESSION_SAVED_BODY_PREFIX + uri, id);
+        }
+    }
+
+    /**
+     * Put the body of the saved request back from the SavedRequestStore. Returns false if the body has been
+     * saved but is no longer available, e.g. because it has expired.
+     */
+    protected boolean restoreRequestBody(Session session, String uri, SavedRequest saved) throws IOException {
+        String id = (String)session.getNote(SESSION_SAVED_BODY_PREFIX + uri);
+        if (id == null) {
+            return true;
+        }
+        session.removeNote(SESSION_SAVED_BODY_PREFIX + uri);
+        byte[] body = savedRequestStore.restore(id);
+        if (body == null) {
+            LOG.warn("The body of the saved request is no longer available");
+            return false;
+        }
+        ByteChunk chunk = new ByteChunk();
+        chunk.setBytes(body, 0, body.length);
+        saved.setBody(chunk);
+        return true;
+    }
+
     protected boolean restoreRequest(Request request) throws IOException {
         Session session = request.getSessionInternal(false);
         String uri = request.getDecodedRequestURI();
@@ -371,6 +594,9 @@ public class FederationAuthenticator extends FormAuthenticator {
             SavedRequest saved = (SavedRequest)session.getNote(SESSION_SAVED_REQUEST_PREFIX + uri);
             if (saved != null) {
                 session.removeNote(SESSION_SAVED_REQUEST_PREFIX + uri); // cleanup session
+                if (!restoreRequestBody(session, uri, saved)) {
+                    return false;
+                }
                 synchronized (session) {
                     session.setNote(Constants.FORM_REQUEST_NOTE, saved);
                     return super.restoreRequest(request, session);
@@ -38,7 +38,7 @@ public class FederationPrincipalImpl extends GenericPrincipal implements FedizPr
     public FederationPrincipalImpl(String username, List<String> roles,
             List<Claim> claims, Element loginToken) {
         super(username, null, roles);
-        this.claims = new ClaimCollection(claims);
+        this.claims = ClaimCollection.valueOf(claims);
         this.loginToken = loginToken;
         if (roles != null) {
             this.roles = roles;
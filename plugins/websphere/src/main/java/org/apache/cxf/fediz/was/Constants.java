@@ -70,6 +70,29 @@ public interface Constants {
      */
     String PROPERTY_KEY_DIRECT_GROUP_MAPPING = "directGroupMapping";
 
+    /**
+     * The number of seconds a GroupUID resolved by the User Registry is cached. The default is 600, 0 disables
+     * the cache.
+     */
+    String PROPERTY_KEY_GROUP_ID_CACHE_TTL = "groupIdCacheTimeToLive";
+
+    /**
+     * The number of seconds a group name unknown to the User Registry is cached. The default is 60.
+     */
+    String PROPERTY_KEY_GROUP_ID_CACHE_NEGATIVE_TTL = "groupIdCacheNegativeTimeToLive";
+
+    /**
+     * The maximum number of cached GroupUIDs (and unknown group names). The default is 10000.
+     */
+    String PROPERTY_KEY_GROUP_ID_CACHE_SIZE = "groupIdCacheSize";
+
+    /**
+     * The JNDI name of a managed executor (e.g. "java:comp/DefaultManagedExecutorService" or a WebSphere work
+     * manager exposed as ManagedExecutorService) which resolves the GroupUIDs missing in the cache in parallel.
+     * By default no executor is used and the GroupUIDs are resolved one after the other on the login thread.
+     */
+    String PROPERTY_KEY_GROUP_ID_RESOLUTION_EXECUTOR = "groupIdResolutionExecutor";
+
     /**
      * The session cookie name can be renamed in WebSphere. If it is renamed, it is required to change it in the
      * interceptor configuration too. A misconfiguration would lead to performance loss.
@@ -19,17 +19,22 @@
 package org.apache.cxf.fediz.was.mapper;
 
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
@@ -41,6 +46,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Reference implementation for a Federation Claim to local WAS Group Mapper
+ *
+ * The mapping file is parsed into an immutable snapshot, which is replaced atomically when the file changes, so
+ * a lookup never waits for a reload. Changes are detected by a WatchService on the directory of the file, with a
+ * check of the modification date every refresh timeout as fallback (e.g. on file systems which don't support
+ * watching). If the changed file can't be parsed, the previous mappings are kept.
  */
 public class FileBasedRoleToGroupMapper implements RoleToGroupMapper {
 
@@ -71,9 +81,11 @@ public class FileBasedRoleToGroupMapper implements RoleToGroupMapper {
 
     private String groupMappingFilename = "./mapping.xml";
     private int refreshRateMillisec = 30 * 1000;
-    private boolean doLoop = true;
-    private Map<String, List<String>> mappings = new HashMap<>(10);
+    private volatile boolean doLoop = true;
+    private volatile Map<String, List<String>> mappings = Collections.emptyMap();
     private long mappingFileLastModificationDate = -1;
+    private Thread refresherThread;
+    private volatile WatchService watchService;
 
     @Override
     public List<String> groupsFromRoles(List<String> roles) {
@@ -81,9 +93,10 @@ public class FileBasedRoleToGroupMapper implements RoleToGroupMapper {
             return null;
         }
 
+        Map<String, List<String>> currentMappings = mappings;
         List<String> groups = new ArrayList<>(20);
         for (String key : roles) {
-            List<String> groupList = mappings.get(key);
+            List<String> groupList = currentMappings.get(key);
             if (groupList != null) {
                 groups.addAll(groupList);
             } else {
@@ -112,82 +125,152 @@ public class FileBasedRoleToGroupMapper implements RoleToGroupMapper {
             }
         }
 
-        // start the internal initialization thread
-        Thread initializationThread = new Thread() {
+        // The first logins shouldn't wait for the refresher thread
+        reloadIfModified();
+
+        final Path mappingFile = Paths.get(groupMappingFilename).toAbsolutePath();
+        watchService = createWatchService(mappingFile.getParent());
+
+        // start the internal refresher thread
+        refresherThread = new Thread() {
             @Override
             public void run() {
                 while (doLoop) {
-                    internalInit();
                     try {
-                        sleep(refreshRateMillisec);
+                        waitForChange(mappingFile);
                     } catch (InterruptedException e) {
-                        // nothing we can do here
+                        // cleanup() interrupts the thread
+                        continue;
                     }
+                    reloadIfModified();
                 }
             }
         };
-        initializationThread.setName(INITIALIZATION_THREAD_NAME);
-        initializationThread.setPriority(Thread.MIN_PRIORITY);
-        initializationThread.start();
+        refresherThread.setName(INITIALIZATION_THREAD_NAME);
+        refresherThread.setPriority(Thread.MIN_PRIORITY);
+        refresherThread.setDaemon(true);
+        refresherThread.start();
         LOG.info("Mapping file refresher thread started");
     }
 
-    private void internalInit() {
-        synchronized (mappings) {
-            try {
-                File mappingFile = new File(groupMappingFilename);
-                if (!mappingFile.exists()) {
-                    throw new FileNotFoundException(groupMappingFilename);
-                }
-                boolean update = false;
-                if (mappings.isEmpty()) {
-                    mappingFileLastModificationDate = mappingFile.lastModified();
-                    update = true;
-                } else {
-                    long currentFileModificationDate = mappingFile.lastModified();
-                    if (currentFileModificationDate > mappingFileLastModificationDate) {
-                        update = true;
-                        mappingFileLastModificationDate = currentFileModificationDate;
-                    }
+    private static WatchService createWatchService(Path directory) {
+        if (directory == null || !Files.isDirectory(directory)) {
+            return null;
+        }
+        WatchService service = null;
+        try {
+            service = directory.getFileSystem().newWatchService();
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            return service;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.info("Unable to watch the mapping file directory, polling every refresh timeout: {}",
+                     e.getMessage());
+            if (service != null) {
+                try {
+                    service.close();
+                } catch (IOException ex) {
+                    // ignore
                 }
-                if (update) {
-                    LOG.info("Mapping file has changed. Reloading...");
-                    Map<String, List<String>> newMap = loadMappingFile();
+            }
+            return null;
+        }
+    }
 
-                    mappings.clear();
-                    mappings.putAll(newMap);
-                    LOG.info("Mapping file reloaded.");
+    /**
+     * Wait until a file of the directory of the mapping file has changed (any event, the modification date is
+     * compared afterwards) or the refresh timeout has elapsed.
+     */
+    private void waitForChange(Path mappingFile) throws InterruptedException {
+        WatchService service = watchService;
+        if (service == null) {
+            Thread.sleep(refreshRateMillisec);
+            return;
+        }
+        try {
+            WatchKey key = service.poll(refreshRateMillisec, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                // Wait for the writer to finish, several events are usually fired for one change
+                Thread.sleep(100L);
+                key.pollEvents();
+                for (WatchKey next = service.poll(); next != null; next = service.poll()) {
+                    next.pollEvents();
+                    next.reset();
+                }
+                if (!key.reset()) {
+                    LOG.info("The directory of {} is no longer watched, polling every refresh timeout",
+                             mappingFile);
+                    watchService = null;
                 }
-            } catch (IOException e) {
-                LOG.warn("Unable to load mappings due to: " + e.getMessage());
-            } catch (JAXBException e) {
-                LOG.warn("Unable to parse mappings due to: " + e.getMessage());
             }
+        } catch (ClosedWatchServiceException e) {
+            watchService = null;
         }
     }
 
-    private Map<String, List<String>> loadMappingFile() throws JAXBException, IOException {
+    /**
+     * Reload the mapping file if its modification date has changed. Returns true if new mappings are in place.
+     */
+    synchronized boolean reloadIfModified() {
+        Path mappingFile = Paths.get(groupMappingFilename);
+        long currentFileModificationDate;
+        try {
+            currentFileModificationDate = Files.getLastModifiedTime(mappingFile).toMillis();
+        } catch (IOException e) {
+            LOG.warn("Unable to load mappings due to: " + e.getMessage());
+            return false;
+        }
+        if (currentFileModificationDate == mappingFileLastModificationDate) {
+            return false;
+        }
+
+        LOG.info("Mapping file has changed. Reloading...");
+        try {
+            mappings = loadMappingFile(mappingFile);
+            // Only after a successful parse, so that a file read while it was written is read again
+            mappingFileLastModificationDate = currentFileModificationDate;
+            LOG.info("Mapping file reloaded.");
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Unable to load mappings due to: " + e.getMessage());
+        } catch (JAXBException | RuntimeException e) {
+            LOG.warn("Unable to parse mappings, keeping the previous mappings: " + e.getMessage());
+        }
+        return false;
+    }
+
+    private static Map<String, List<String>> loadMappingFile(Path mappingFile) throws JAXBException, IOException {
         Map<String, List<String>> map = new HashMap<>(10);
 
-        try (InputStream input = new FileInputStream(groupMappingFilename)) {
+        try (InputStream input = Files.newInputStream(mappingFile)) {
             JAXBContext context = JAXBContext.newInstance(Mapping.class);
             Mapping localmappings = (Mapping) context.createUnmarshaller().unmarshal(input);
 
-            Iterator<SamlToJ2EE> i = localmappings.getSamlToJ2EE().iterator();
-            while (i.hasNext()) {
-                SamlToJ2EE mapping = i.next();
-                LOG.debug("{} mapped to {} entries", mapping.getClaim(), mapping.getGroups().getJ2EeGroup().size());
-                map.put(mapping.getClaim(), mapping.getGroups().getJ2EeGroup());
+            for (SamlToJ2EE mapping : localmappings.getSamlToJ2EE()) {
+                List<String> groups = mapping.getGroups().getJ2EeGroup();
+                LOG.debug("{} mapped to {} entries", mapping.getClaim(), groups.size());
+                map.put(mapping.getClaim(), Collections.unmodifiableList(new ArrayList<>(groups)));
             }
         }
 
-        return map;
+        return Collections.unmodifiableMap(map);
     }
 
     @Override
     public void cleanup() {
         LOG.info("Stopping the mapping file refresher loop");
         doLoop = false;
+        WatchService service = watchService;
+        watchService = null;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                LOG.debug("Failed to close the watch service: {}", e.getMessage());
+            }
+        }
+        if (refresherThread != null) {
+            refresherThread.interrupt();
+        }
     }
 
 }
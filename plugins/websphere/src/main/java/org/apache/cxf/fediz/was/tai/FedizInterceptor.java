@@ -20,7 +20,6 @@ package org.apache.cxf.fediz.was.tai;
 
 import java.io.File;
 import java.io.IOException;
-import java.rmi.RemoteException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Hashtable;
@@ -28,7 +27,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
-import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.security.auth.Subject;
 import javax.servlet.ServletException;
@@ -37,9 +35,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
-import com.ibm.websphere.security.CustomRegistryException;
-import com.ibm.websphere.security.EntryNotFoundException;
-import com.ibm.websphere.security.UserRegistry;
 import com.ibm.websphere.security.WebTrustAssociationException;
 import com.ibm.websphere.security.WebTrustAssociationFailedException;
 import com.ibm.wsspi.security.tai.TAIResult;
@@ -52,8 +47,9 @@ import org.apache.cxf.fediz.core.config.FedizConfigurator;
 import org.apache.cxf.fediz.core.config.FedizContext;
 import org.apache.cxf.fediz.core.exception.ProcessingException;
 import org.apache.cxf.fediz.core.handler.LogoutHandler;
+import org.apache.cxf.fediz.core.handler.RequestRouter;
+import org.apache.cxf.fediz.core.handler.RequestRouter.Route;
 import org.apache.cxf.fediz.core.handler.SigninHandler;
-import org.apache.cxf.fediz.core.metadata.MetadataDocumentHandler;
 import org.apache.cxf.fediz.core.processor.FederationProcessorImpl;
 import org.apache.cxf.fediz.core.processor.FedizProcessor;
 import org.apache.cxf.fediz.core.processor.FedizResponse;
@@ -84,6 +80,8 @@ public class FedizInterceptor implements TrustAssociationInterceptor {
      */
     private boolean directGroupMapping;
 
+    private GroupIdResolver groupIdResolver = new GroupIdResolver();
+
     public String getConfigFile() {
         return configFile;
     }
@@ -100,6 +98,7 @@ public class FedizInterceptor implements TrustAssociationInterceptor {
     public void cleanup() {
         configurator = null;
         mapper = null;
+        groupIdResolver.close();
     }
 
     /*
@@ -190,6 +189,17 @@ public class FedizInterceptor implements TrustAssociationInterceptor {
                 directGroupMapping = Boolean.valueOf(props
                     .getProperty(Constants.PROPERTY_KEY_DIRECT_GROUP_MAPPING));
 
+                String executorName = props.getProperty(Constants.PROPERTY_KEY_GROUP_ID_RESOLUTION_EXECUTOR);
+                groupIdResolver.close();
+                groupIdResolver = new GroupIdResolver(
+                    getSecondsProperty(props, Constants.PROPERTY_KEY_GROUP_ID_CACHE_TTL,
+                                       GroupIdResolver.DEFAULT_TIME_TO_LIVE),
+                    getSecondsProperty(props, Constants.PROPERTY_KEY_GROUP_ID_CACHE_NEGATIVE_TTL,
+                                       GroupIdResolver.DEFAULT_NEGATIVE_TIME_TO_LIVE),
+                    Integer.parseInt(props.getProperty(Constants.PROPERTY_KEY_GROUP_ID_CACHE_SIZE,
+                                                       String.valueOf(GroupIdResolver.DEFAULT_MAX_ENTRIES))),
+                    executorName != null ? GroupIdResolver.lookupExecutor(executorName) : null);
+
                 cookieName = props.getProperty(Constants.PROPERTY_SESSION_COOKIE_NAME);
                 if (cookieName == null) {
                     cookieName = Constants.SESSION_COOKIE_DEFAULT_NAME;
@@ -202,6 +212,11 @@ public class FedizInterceptor implements TrustAssociationInterceptor {
         return 0;
     }
 
+    private static long getSecondsProperty(Properties props, String key, long defaultMillis) {
+        String value = props.getProperty(key);
+        return value != null ? Long.parseLong(value) * 1000L : defaultMillis;
+    }
+
     protected FedizContext getFederationContext(HttpServletRequest req) {
         String contextPath = req.getContextPath();
         if (contextPath == null || contextPath.isEmpty()) {
@@ -230,23 +245,14 @@ public class FedizInterceptor implements TrustAssociationInterceptor {
                 return true;
             }
 
-            // Handle Metadata Document requests
-            MetadataDocumentHandler mddHandler = new MetadataDocumentHandler(fedCtx);
-            if (mddHandler.canHandleRequest(req)) {
+            Route route = fedCtx.getRequestRouter().route(req, req.getContextPath());
+            if (route == Route.METADATA) {
                 LOG.debug("MetadataDocument request detected");
                 return true;
-            }
-
-            // Handle Logout requests
-            LogoutHandler logoutHandler = new LogoutHandler(fedCtx, req.getContextPath());
-            if (logoutHandler.canHandleRequest(req)) {
+            } else if (route == Route.LOGOUT || route == Route.LOGOUT_CLEANUP) {
                 LOG.debug("Logout URL request detected");
                 return true;
-            }
-
-            // Handle Signin requests
-            SigninHandler<TAIResult> signinHandler = new SigninHandler<>(fedCtx);
-            if (signinHandler.canHandleRequest(req)) {
+            } else if (route == Route.SIGNIN_RESPONSE) {
                 LOG.debug("SignIn request detected");
                 return true;
             }
@@ -300,74 +306,25 @@ public class FedizInterceptor implements TrustAssociationInterceptor {
         }
 
         try {
+            RequestRouter router = fedCtx.getRequestRouter();
+            Route route = router.route(req, req.getContextPath());
+
             // Handle Metadata Document requests
-            MetadataDocumentHandler mddHandler = new MetadataDocumentHandler(fedCtx);
-            if (mddHandler.canHandleRequest(req)) {
-                return TAIResult.create(mddHandler.handleRequest(req, resp)
+            if (route == Route.METADATA) {
+                return TAIResult.create(router.getMetadataHandler().handleRequest(req, resp)
                     ? HttpServletResponse.SC_OK : HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             }
 
             // Handle Logout requests
-            LogoutHandler logoutHandler = new LogoutHandler(fedCtx, req.getContextPath()) {
-
-                @Override
-                protected boolean signoutCleanup(HttpServletRequest request, HttpServletResponse response) {
-                    terminateSession(request);
-                    Cookie cookie = new Cookie(Constants.PROPERTY_SESSION_COOKIE_NAME, "");
-                    cookie.setMaxAge(0);
-                    response.addCookie(cookie);
-                    try {
-                        request.logout();
-                    } catch (ServletException e) {
-                        LOG.error("Could not logout users");
-                    }
-                    return super.signoutCleanup(request, response);
-                }
-
-                @Override
-                protected boolean signout(HttpServletRequest request, HttpServletResponse response) {
-                    terminateSession(request);
-                    try {
-                        request.logout();
-                    } catch (ServletException e) {
-                        LOG.error("Could not logout users");
-                    }
-                    return super.signout(request, response);
-                }
-            };
-            if (logoutHandler.canHandleRequest(req)) {
+            if (route == Route.LOGOUT || route == Route.LOGOUT_CLEANUP) {
+                LogoutHandler logoutHandler = createLogoutHandler(fedCtx, req.getContextPath());
                 return TAIResult.create(logoutHandler.handleRequest(req, resp)
                     ? HttpServletResponse.SC_OK : HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             }
 
             // Handle Signin requests
-            SigninHandler<TAIResult> signinHandler = new SigninHandler<>(fedCtx) {
-
-                @Override
-                protected TAIResult createPrincipal(HttpServletRequest request, HttpServletResponse response,
-                                                    FedizResponse federationResponse) {
-                    // proceed creating the JAAS Subject
-                    HttpSession session = request.getSession(true);
-                    session.setAttribute(Constants.SECURITY_TOKEN_SESSION_ATTRIBUTE_KEY, federationResponse);
-                    String username = federationResponse.getUsername();
-                    // List<String> groupsIds =
-                    // groupIdsFromTokenRoles(federationResponse);
-                    // Subject subject = createSubject(federationResponse,
-                    // groupsIds, session.getId());
-                    // LOG.info("UserPrincipal was created successfully for {}",
-                    // username);
-                    try {
-                        // return TAIResult.create(HttpServletResponse.SC_FOUND,
-                        // username, subject);
-                        return TAIResult.create(HttpServletResponse.SC_FOUND);
-                    } catch (WebTrustAssociationFailedException e) {
-                        LOG.error("TAIResult for user '" + username + "' could not be created", e);
-                        return null;
-                    }
-                }
-            };
-            if (signinHandler.canHandleRequest(req)) {
-                TAIResult taiResult = signinHandler.handleRequest(req, resp);
+            if (route == Route.SIGNIN_RESPONSE) {
+                TAIResult taiResult = createSigninHandler(fedCtx).handleRequest(req, resp);
                 if (taiResult != null) {
                     resumeRequest(req, resp);
                 }
@@ -391,6 +348,70 @@ public class FedizInterceptor implements TrustAssociationInterceptor {
         }
     }
 
+    /**
+     * Create the handler of a logout request, which also terminates the WebSphere session.
+     */
+    protected LogoutHandler createLogoutHandler(FedizContext fedCtx, String contextPath) {
+        return new LogoutHandler(fedCtx, contextPath) {
+
+            @Override
+            protected boolean signoutCleanup(HttpServletRequest request, HttpServletResponse response) {
+                terminateSession(request);
+                Cookie cookie = new Cookie(Constants.PROPERTY_SESSION_COOKIE_NAME, "");
+                cookie.setMaxAge(0);
+                response.addCookie(cookie);
+                try {
+                    request.logout();
+                } catch (ServletException e) {
+                    LOG.error("Could not logout users");
+                }
+                return super.signoutCleanup(request, response);
+            }
+
+            @Override
+            protected boolean signout(HttpServletRequest request, HttpServletResponse response) {
+                terminateSession(request);
+                try {
+                    request.logout();
+                } catch (ServletException e) {
+                    LOG.error("Could not logout users");
+                }
+                return super.signout(request, response);
+            }
+        };
+    }
+
+    /**
+     * Create the handler of a sign-in response, which stores the validated token in the session.
+     */
+    protected SigninHandler<TAIResult> createSigninHandler(FedizContext fedCtx) {
+        return new SigninHandler<>(fedCtx) {
+
+            @Override
+            protected TAIResult createPrincipal(HttpServletRequest request, HttpServletResponse response,
+                                                FedizResponse federationResponse) {
+                // proceed creating the JAAS Subject
+                HttpSession session = request.getSession(true);
+                session.setAttribute(Constants.SECURITY_TOKEN_SESSION_ATTRIBUTE_KEY, federationResponse);
+                String username = federationResponse.getUsername();
+                // List<String> groupsIds =
+                // groupIdsFromTokenRoles(federationResponse);
+                // Subject subject = createSubject(federationResponse,
+                // groupsIds, session.getId());
+                // LOG.info("UserPrincipal was created successfully for {}",
+                // username);
+                try {
+                    // return TAIResult.create(HttpServletResponse.SC_FOUND,
+                    // username, subject);
+                    return TAIResult.create(HttpServletResponse.SC_FOUND);
+                } catch (WebTrustAssociationFailedException e) {
+                    LOG.error("TAIResult for user '" + username + "' could not be created", e);
+                    return null;
+                }
+            }
+        };
+    }
+
     protected void terminateSession(HttpServletRequest request) {
         HttpSession session = request.getSession();
         session.removeAttribute(Constants.SECURITY_TOKEN_SESSION_ATTRIBUTE_KEY);
@@ -510,43 +531,13 @@ public class FedizInterceptor implements TrustAssociationInterceptor {
                           + "GrouUID");
                 groupIds.addAll(localGroups);
             } else {
-                InitialContext ctx = null;
                 try {
-                    ctx = new InitialContext();
-                    UserRegistry userRegistry = (UserRegistry)ctx.lookup(Constants.USER_REGISTRY_JNDI_NAME);
-
-                    if (localGroups != null) {
-                        LOG.debug("Converting {} group names to uids", size);
-                        for (String localGroup : localGroups) {
-                            try {
-                                String guid = convertGroupNameToUniqueId(userRegistry, localGroup);
-                                LOG.debug("Group '{}' maps to guid: {}", localGroup, guid);
-                                groupIds.add(guid);
-                            } catch (EntryNotFoundException e) {
-                                LOG.warn("Group entry '{}' could not be found in UserRegistry for user '{}'",
-                                         localGroup, federationResponse.getUsername());
-                            }
-                        }
-                    }
+                    groupIds.addAll(groupIdResolver.resolve(localGroups, federationResponse.getUsername()));
                 } catch (NamingException ex) {
                     LOG.error("User Registry could not be loaded via JNDI context.");
                     LOG.warn("Group mapping failed for user '{}'", federationResponse.getUsername());
                     LOG.info("To switch to direct GroupUID Mapping without UserRegistry being involved set "
                              + "fedizDirectGroupMapping=\"true\"  in TAI Interceptor properties.");
-                } catch (RemoteException e) {
-                    LOG.error("RemoteException in UserRegistry", e);
-                    LOG.warn("Group mapping failed for user '{}'", federationResponse.getUsername());
-                } catch (CustomRegistryException e) {
-                    LOG.error("CustomRegistryException in UserRegistry", e);
-                    LOG.warn("Group mapping failed for user '{}'", federationResponse.getUsername());
-                } finally {
-                    if (ctx != null) {
-                        try {
-                            ctx.close();
-                        } catch (NamingException e) {
-                            // Ignore
-                        }
-                    }
                 }
             }
         }
@@ -580,19 +571,4 @@ public class FedizInterceptor implements TrustAssociationInterceptor {
         LOG.debug("Subject credentials: {}", map.toString());
         return subject;
     }
-
-    /**
-     * Convenience method for converting a list of group names to their unique group IDs
-     *
-     * @param reg
-     * @param group
-     * @return
-     * @throws EntryNotFoundException
-     * @throws CustomRegistryException
-     * @throws RemoteException
-     */
-    private String convertGroupNameToUniqueId(UserRegistry reg, String group) throws EntryNotFoundException,
-        CustomRegistryException, RemoteException {
-        return reg.getUniqueGroupId(group);
-    }
 }
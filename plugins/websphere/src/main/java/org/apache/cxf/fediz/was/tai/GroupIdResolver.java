@@ -0,0 +1,241 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.was.tai;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+
+import com.ibm.websphere.security.CustomRegistryException;
+import com.ibm.websphere.security.EntryNotFoundException;
+import com.ibm.websphere.security.UserRegistry;
+
+import org.apache.cxf.fediz.was.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the unique ids (GroupUIDs) of local group names with the WebSphere User Registry. The User Registry
+ * is looked up once and kept, the resolved GroupUIDs and the unknown group names are cached for a limited time.
+ * The groups missing in the cache are resolved on the calling thread, unless a container managed executor is
+ * configured: a user often has dozens of groups and every resolution is a call to the registry (e.g. an LDAP
+ * search), which may then run in parallel. Only a managed executor propagates the J2EE context the User Registry
+ * relies on, so the resolver never creates its own threads.
+ */
+public class GroupIdResolver {
+
+    public static final long DEFAULT_TIME_TO_LIVE = 600L * 1000L;
+    public static final long DEFAULT_NEGATIVE_TIME_TO_LIVE = 60L * 1000L;
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final Logger LOG = LoggerFactory.getLogger(GroupIdResolver.class);
+
+    private final ConcurrentMap<String, CachedGroupId> cache = new ConcurrentHashMap<>();
+    private final long timeToLive;
+    private final long negativeTimeToLive;
+    private final int maxEntries;
+    private final Executor executor;
+    private volatile UserRegistry userRegistry;
+
+    public GroupIdResolver() {
+        this(DEFAULT_TIME_TO_LIVE, DEFAULT_NEGATIVE_TIME_TO_LIVE, DEFAULT_MAX_ENTRIES, null);
+    }
+
+    /**
+     * @param timeToLive how long (in milliseconds) a GroupUID is cached, 0 disables the cache
+     * @param negativeTimeToLive how long (in milliseconds) an unknown group name is cached
+     * @param maxEntries the maximum number of cached group names
+     * @param executor the container managed executor resolving the missing GroupUIDs in parallel, or null to
+     *        resolve them on the calling thread. The executor is owned by the container and never shut down here.
+     */
+    public GroupIdResolver(long timeToLive, long negativeTimeToLive, int maxEntries, Executor executor) {
+        this.timeToLive = timeToLive;
+        this.negativeTimeToLive = negativeTimeToLive;
+        this.maxEntries = maxEntries;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the GroupUIDs of the given group names, in the same order. Unknown groups are left out.
+     *
+     * @throws NamingException if the User Registry can't be looked up
+     */
+    public List<String> resolve(List<String> groups, String username) throws NamingException {
+        Map<String, CompletableFuture<String>> resolutions = new LinkedHashMap<>();
+        List<String> misses = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (String group : groups) {
+            if (!resolutions.containsKey(group)) {
+                CachedGroupId cached = cache.get(group);
+                if (cached != null && cached.expires > now) {
+                    resolutions.put(group, CompletableFuture.completedFuture(cached.groupId));
+                } else {
+                    resolutions.put(group, null);
+                    misses.add(group);
+                }
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            LOG.debug("Converting {} group names to uids", misses.size());
+            UserRegistry registry = getUserRegistry();
+            boolean parallel = misses.size() > 1 && executor != null;
+            for (String group : misses) {
+                resolutions.put(group, parallel
+                    ? resolveAsync(registry, group, username)
+                    : CompletableFuture.completedFuture(resolveGroup(registry, group, username)));
+            }
+        }
+
+        List<String> groupIds = new ArrayList<>(groups.size());
+        for (String group : groups) {
+            String groupId = resolutions.get(group).join();
+            if (groupId != null) {
+                LOG.debug("Group '{}' maps to guid: {}", group, groupId);
+                groupIds.add(groupId);
+            }
+        }
+        return groupIds;
+    }
+
+    private CompletableFuture<String> resolveAsync(UserRegistry registry, String group, String username) {
+        try {
+            return CompletableFuture.supplyAsync(() -> resolveGroup(registry, group, username), executor);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Resolving group '{}' on the calling thread, the executor rejected it", group);
+            return CompletableFuture.completedFuture(resolveGroup(registry, group, username));
+        }
+    }
+
+    private String resolveGroup(UserRegistry registry, String group, String username) {
+        try {
+            String groupId = registry.getUniqueGroupId(group);
+            put(group, new CachedGroupId(groupId, System.currentTimeMillis() + timeToLive));
+            return groupId;
+        } catch (EntryNotFoundException e) {
+            LOG.warn("Group entry '{}' could not be found in UserRegistry for user '{}'", group, username);
+            put(group, new CachedGroupId(null, System.currentTimeMillis() + negativeTimeToLive));
+        } catch (RemoteException e) {
+            LOG.error("RemoteException in UserRegistry", e);
+            LOG.warn("Group mapping of '{}' failed for user '{}'", group, username);
+        } catch (CustomRegistryException e) {
+            LOG.error("CustomRegistryException in UserRegistry", e);
+            LOG.warn("Group mapping of '{}' failed for user '{}'", group, username);
+        }
+        return null;
+    }
+
+    private void put(String group, CachedGroupId cached) {
+        long now = System.currentTimeMillis();
+        if (cached.expires <= now) {
+            return;
+        }
+        if (cache.size() >= maxEntries) {
+            for (Iterator<CachedGroupId> it = cache.values().iterator(); it.hasNext();) {
+                if (it.next().expires <= now) {
+                    it.remove();
+                }
+            }
+        }
+        if (cache.size() < maxEntries) {
+            cache.put(group, cached);
+        }
+    }
+
+    /**
+     * Returns the User Registry, which is looked up via JNDI on first use.
+     */
+    protected UserRegistry getUserRegistry() throws NamingException {
+        UserRegistry registry = userRegistry;
+        if (registry == null) {
+            registry = lookupUserRegistry();
+            userRegistry = registry;
+        }
+        return registry;
+    }
+
+    protected UserRegistry lookupUserRegistry() throws NamingException {
+        InitialContext ctx = new InitialContext();
+        try {
+            return (UserRegistry)ctx.lookup(Constants.USER_REGISTRY_JNDI_NAME);
+        } finally {
+            try {
+                ctx.close();
+            } catch (NamingException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Looks up the container managed executor with the given JNDI name.
+     */
+    public static Executor lookupExecutor(String jndiName) throws NamingException {
+        InitialContext ctx = new InitialContext();
+        try {
+            return (Executor)ctx.lookup(jndiName);
+        } finally {
+            try {
+                ctx.close();
+            } catch (NamingException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Remove all cached GroupUIDs.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Release the User Registry. A resolution still running keeps the registry it started with.
+     */
+    public void close() {
+        userRegistry = null;
+        cache.clear();
+    }
+
+    private static final class CachedGroupId {
+        private final String groupId;
+        private final long expires;
+
+        CachedGroupId(String groupId, long expires) {
+            this.groupId = groupId;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.was.mapper;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FileBasedRoleToGroupMapperTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FileBasedRoleToGroupMapper createMapper(Path mappingFile) throws Exception {
+        try (InputStream is = getClass().getResourceAsStream("/mappingSample.xml")) {
+            Files.copy(is, mappingFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        FileBasedRoleToGroupMapper mapper = new FileBasedRoleToGroupMapper();
+        Properties props = new Properties();
+        props.put(FileBasedRoleToGroupMapper.PROPERTY_KEY_ROLE_MAPPING_LOCATION, mappingFile.toString());
+        props.put(FileBasedRoleToGroupMapper.PROPERTY_KEY_ROLE_MAPPING_REFRESH_TIMEOUT, "3600");
+        mapper.initialize(props);
+        return mapper;
+    }
+
+    private static void write(Path file, String content, long lastModified) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(lastModified));
+    }
+
+    @Test
+    public void testMappingsLoadedOnInitialize() throws Exception {
+        FileBasedRoleToGroupMapper mapper = createMapper(tempDir.resolve("mapping.xml"));
+        try {
+            assertEquals(Arrays.asList("Authenticated", "Users", "Admin", "Authenticated"),
+                         mapper.groupsFromRoles(Arrays.asList("User", "Unknown", "Admin")));
+        } finally {
+            mapper.cleanup();
+        }
+    }
+
+    @Test
+    public void testMalformedFileKeepsMappings() throws Exception {
+        Path mappingFile = tempDir.resolve("mapping.xml");
+        FileBasedRoleToGroupMapper mapper = createMapper(mappingFile);
+        long lastModified = Files.getLastModifiedTime(mappingFile).toMillis();
+        try {
+            write(mappingFile, "<mapping><samlToJ2EE><claim>User", lastModified + 2000L);
+            mapper.reloadIfModified();
+            assertEquals(Arrays.asList("Authenticated", "Users"), mapper.groupsFromRoles(Arrays.asList("User")));
+
+            // The malformed file is read again, even if the fixed one has the same modification date
+            write(mappingFile, "<mapping><samlToJ2EE><claim>User</claim><groups><j2eeGroup>Staff</j2eeGroup>"
+                + "</groups></samlToJ2EE></mapping>", lastModified + 2000L);
+            mapper.reloadIfModified();
+            assertEquals(Arrays.asList("Staff"), mapper.groupsFromRoles(Arrays.asList("User", "Admin")));
+        } finally {
+            mapper.cleanup();
+        }
+    }
+}
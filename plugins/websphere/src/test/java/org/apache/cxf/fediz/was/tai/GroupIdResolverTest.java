@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.was.tai;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.ibm.websphere.security.EntryNotFoundException;
+import com.ibm.websphere.security.UserRegistry;
+
+import org.easymock.EasyMock;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class GroupIdResolverTest {
+
+    private static GroupIdResolver createResolver(final UserRegistry registry, long timeToLive,
+                                                  Executor executor) {
+        return new GroupIdResolver(timeToLive, timeToLive, 100, executor) {
+            @Override
+            protected UserRegistry lookupUserRegistry() {
+                return registry;
+            }
+        };
+    }
+
+    @Test
+    public void testCachedResolution() throws Exception {
+        UserRegistry registry = EasyMock.createMock(UserRegistry.class);
+        EasyMock.expect(registry.getUniqueGroupId("Admin")).andReturn("group:realm/cn=Admin");
+        EasyMock.expect(registry.getUniqueGroupId("Users")).andReturn("group:realm/cn=Users");
+        EasyMock.expect(registry.getUniqueGroupId("Unknown")).andThrow(new EntryNotFoundException("Unknown"));
+        EasyMock.replay(registry);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        GroupIdResolver resolver = createResolver(registry, 60000L, executor);
+        try {
+            List<String> groups = Arrays.asList("Admin", "Unknown", "Users", "Admin");
+            List<String> expected =
+                Arrays.asList("group:realm/cn=Admin", "group:realm/cn=Users", "group:realm/cn=Admin");
+            assertEquals(expected, resolver.resolve(groups, "alice"));
+            // The second login is served from the (positive and negative) cache
+            assertEquals(expected, resolver.resolve(groups, "bob"));
+            assertEquals(3, resolver.size());
+            EasyMock.verify(registry);
+        } finally {
+            resolver.close();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSequentialResolutionWithoutCache() throws Exception {
+        UserRegistry registry = EasyMock.createMock(UserRegistry.class);
+        EasyMock.expect(registry.getUniqueGroupId("Admin")).andReturn("group:realm/cn=Admin").times(2);
+        EasyMock.replay(registry);
+
+        GroupIdResolver resolver = createResolver(registry, 0L, null);
+        assertEquals(Arrays.asList("group:realm/cn=Admin"), resolver.resolve(Arrays.asList("Admin"), "alice"));
+        assertEquals(Arrays.asList("group:realm/cn=Admin"), resolver.resolve(Arrays.asList("Admin"), "alice"));
+        assertEquals(0, resolver.size());
+        EasyMock.verify(registry);
+        resolver.close();
+    }
+
+    @Test
+    public void testRejectedResolutionOnCallingThread() throws Exception {
+        UserRegistry registry = EasyMock.createMock(UserRegistry.class);
+        EasyMock.expect(registry.getUniqueGroupId("Admin")).andReturn("group:realm/cn=Admin");
+        EasyMock.expect(registry.getUniqueGroupId("Users")).andReturn("group:realm/cn=Users");
+        EasyMock.replay(registry);
+
+        GroupIdResolver resolver = createResolver(registry, 60000L, command -> {
+            throw new RejectedExecutionException("Shut down");
+        });
+        assertEquals(Arrays.asList("group:realm/cn=Admin", "group:realm/cn=Users"),
+                     resolver.resolve(Arrays.asList("Admin", "Users"), "alice"));
+        EasyMock.verify(registry);
+        resolver.close();
+    }
+}
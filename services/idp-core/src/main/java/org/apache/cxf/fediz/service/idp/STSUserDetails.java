@@ -46,6 +46,13 @@ public class STSUserDetails extends User {
         return this.token;
     }
 
+    /**
+     * Release the token once it is cached, as the user details are kept in the session.
+     */
+    public void clearSecurityToken() {
+        this.token = null;
+    }
+
     @Override
     public boolean equals(Object object) {
         if (!(object instanceof STSUserDetails)) {
@@ -0,0 +1,113 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.idp;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.filter.GenericFilterBean;
+
+/**
+ * Log the (serialized) size of the IdP session after each request, per session attribute, if debug logging is
+ * enabled for this class. The serialized size is what a session store or session replication has to handle.
+ */
+public class SessionSizeFilter extends GenericFilterBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionSizeFilter.class);
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+        throws IOException, ServletException {
+
+        chain.doFilter(request, response);
+
+        if (LOG.isDebugEnabled() && request instanceof HttpServletRequest) {
+            HttpServletRequest httpRequest = (HttpServletRequest)request;
+            HttpSession session = httpRequest.getSession(false);
+            if (session != null) {
+                try {
+                    Map<String, Long> sizes = getAttributeSizes(session);
+                    long total = 0;
+                    for (Long size : sizes.values()) {
+                        total += size;
+                    }
+                    LOG.debug("Session [{}] of user [{}]: {} bytes {}", session.getId(), httpRequest.getRemoteUser(),
+                              total, sizes);
+                } catch (IllegalStateException ex) {
+                    // The session was invalidated, e.g. on logout
+                    LOG.debug("Session [{}] invalidated", session.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the serialized size (in bytes) of each attribute of the session, or -1 if the attribute is not
+     * serializable.
+     */
+    public static Map<String, Long> getAttributeSizes(HttpSession session) {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        for (String name : Collections.list(session.getAttributeNames())) {
+            sizes.put(name, getSerializedSize(session.getAttribute(name)));
+        }
+        return sizes;
+    }
+
+    /**
+     * Return the serialized size (in bytes) of the object, or -1 if it is not serializable.
+     */
+    public static long getSerializedSize(Object object) {
+        CountingOutputStream counter = new CountingOutputStream();
+        try (ObjectOutputStream os = new ObjectOutputStream(counter)) {
+            os.writeObject(object);
+        } catch (IOException ex) {
+            LOG.debug("Object of type {} is not serializable: {}",
+                      object == null ? null : object.getClass().getName(), ex.getMessage());
+            return -1L;
+        }
+        return counter.count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
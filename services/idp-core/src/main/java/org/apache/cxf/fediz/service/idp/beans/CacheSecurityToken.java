@@ -20,10 +20,12 @@ package org.apache.cxf.fediz.service.idp.beans;
 
 import org.apache.cxf.fediz.service.idp.STSUserDetails;
 import org.apache.cxf.fediz.service.idp.domain.Idp;
+import org.apache.cxf.fediz.service.idp.util.SerializedSecurityToken;
 import org.apache.cxf.fediz.service.idp.util.WebUtils;
 import org.apache.cxf.ws.security.tokenstore.SecurityToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
@@ -31,7 +33,8 @@ import org.springframework.util.Assert;
 import org.springframework.webflow.execution.RequestContext;
 
 /**
- * This class is responsible to cache the IDP token.
+ * This class is responsible to cache the IDP token. The token is cached in the IdP session store in its compact
+ * (SerializedSecurityToken) form.
  */
 @Component
 public class CacheSecurityToken {
@@ -39,18 +42,41 @@ public class CacheSecurityToken {
     private static final String IDP_CONFIG = "idpConfig";
     private static final Logger LOG = LoggerFactory.getLogger(CacheSecurityToken.class);
 
+    @Autowired
+    private IdpSessionAction idpSessionAction;
+
     public void submit(RequestContext context) {
 
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         Assert.isInstanceOf(STSUserDetails.class, auth.getDetails());
         final STSUserDetails stsUserDetails = (STSUserDetails) auth.getDetails();
         SecurityToken securityToken = stsUserDetails.getSecurityToken();
+        Assert.notNull(securityToken, "No IDP token in the security context");
 
         Idp idpConfig = (Idp)WebUtils.getAttributeFromFlowScope(context, IDP_CONFIG);
 
-        WebUtils.putAttributeInExternalContext(context, idpConfig.getRealm(), securityToken);
+        cache(context, idpConfig.getRealm(), securityToken);
+        // The token is cached, don't keep (the DOM of) it in the security context of the session as well
+        stsUserDetails.clearSecurityToken();
+    }
+
+    /**
+     * Cache the token issued for the given (home) realm.
+     */
+    public void cache(RequestContext context, String realm, SecurityToken securityToken) {
+        SerializedSecurityToken serializedToken = SerializedSecurityToken.serialize(securityToken);
+        idpSessionAction.putToken(context, realm, serializedToken);
         LOG.info("Token [IDP_TOKEN=" + securityToken.getId()
                 + "] for realm ["
-                + idpConfig.getRealm() + "] successfully cached.");
+                + realm + "] successfully cached.");
+        LOG.debug("Cached token size: {} bytes", serializedToken.getSize());
+    }
+
+    public IdpSessionAction getIdpSessionAction() {
+        return idpSessionAction;
+    }
+
+    public void setIdpSessionAction(IdpSessionAction idpSessionAction) {
+        this.idpSessionAction = idpSessionAction;
     }
 }
@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.idp.beans;
+
+import java.util.Map;
+import java.util.UUID;
+
+import javax.servlet.http.Cookie;
+
+import org.apache.cxf.fediz.service.idp.session.IdpSession;
+import org.apache.cxf.fediz.service.idp.session.IdpSessionStore;
+import org.apache.cxf.fediz.service.idp.util.SerializedSecurityToken;
+import org.apache.cxf.fediz.service.idp.util.WebUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.webflow.execution.RequestContext;
+
+/**
+ * This class is responsible to access the SSO session of the user (the cached IdP tokens and the active
+ * applications) in the IdpSessionStore, by the FEDIZ_IDP_SESSION cookie.
+ */
+@Component
+public class IdpSessionAction {
+
+    public static final String FEDIZ_IDP_SESSION = "FEDIZ_IDP_SESSION";
+
+    private static final String IDP_SESSION_ID = "idpSessionId";
+    private static final String IDP_SESSION = "idpSession";
+
+    private static final Logger LOG = LoggerFactory.getLogger(IdpSessionAction.class);
+
+    @Autowired
+    private IdpSessionStore idpSessionStore;
+
+    /**
+     * Return the SSO session of the user, or null if there is none. The session is read once per request.
+     */
+    public IdpSession getSession(RequestContext context) {
+        IdpSession session = (IdpSession)WebUtils.getAttributeFromRequestScope(context, IDP_SESSION);
+        if (session == null) {
+            String sessionId = getSessionId(context);
+            if (sessionId != null) {
+                session = idpSessionStore.getSession(sessionId);
+                if (session != null) {
+                    WebUtils.putAttributeInRequestScope(context, IDP_SESSION, session);
+                }
+            }
+        }
+        return session;
+    }
+
+    /**
+     * Return the IdP token cached for the given (home) realm, or null if there is none.
+     */
+    public SerializedSecurityToken getToken(RequestContext context, String realm) {
+        IdpSession session = getSession(context);
+        return session == null ? null : session.getToken(realm);
+    }
+
+    /**
+     * Cache the IdP token of the given (home) realm. As the user authenticated, the session gets a new id (to
+     * prevent session fixation).
+     */
+    public void putToken(RequestContext context, String realm, SerializedSecurityToken token) {
+        IdpSession session = getSession(context);
+        String oldSessionId = getSessionId(context);
+        if (session == null) {
+            session = new IdpSession();
+        }
+        String sessionId = UUID.randomUUID().toString();
+        putSession(context, sessionId, session.withToken(realm, token));
+        if (oldSessionId != null) {
+            idpSessionStore.removeSession(oldSessionId);
+        }
+    }
+
+    /**
+     * Return the active applications (realm to passive requestor endpoint), or null if there is no session.
+     */
+    public Map<String, String> getActiveApplications(RequestContext context) {
+        IdpSession session = getSession(context);
+        return session == null ? null : session.getActiveApplications();
+    }
+
+    public void addActiveApplication(RequestContext context, String realm, String passiveRequestorEndpoint) {
+        IdpSession session = getSession(context);
+        String sessionId = getSessionId(context);
+        if (session == null || sessionId == null) {
+            session = new IdpSession();
+            sessionId = UUID.randomUUID().toString();
+        }
+        IdpSession newSession = session.withActiveApplication(realm, passiveRequestorEndpoint);
+        if (newSession != session) {
+            putSession(context, sessionId, newSession);
+        }
+    }
+
+    /**
+     * Remove the SSO session of the user.
+     */
+    public void invalidate(RequestContext context) {
+        String sessionId = getSessionId(context);
+        if (sessionId != null) {
+            idpSessionStore.removeSession(sessionId);
+            WebUtils.removeCookie(context, FEDIZ_IDP_SESSION);
+            LOG.info("IdP session has been removed.");
+        }
+        WebUtils.removeAttributeFromRequestScope(context, IDP_SESSION_ID);
+        WebUtils.removeAttributeFromRequestScope(context, IDP_SESSION);
+    }
+
+    private void putSession(RequestContext context, String sessionId, IdpSession session) {
+        idpSessionStore.putSession(sessionId, session);
+        if (!sessionId.equals(getSessionId(context))) {
+            WebUtils.addCookie(context, FEDIZ_IDP_SESSION, sessionId);
+            WebUtils.putAttributeInRequestScope(context, IDP_SESSION_ID, sessionId);
+        }
+        WebUtils.putAttributeInRequestScope(context, IDP_SESSION, session);
+    }
+
+    /**
+     * The id of the session is the value of the cookie, or the id of the session created in this request.
+     */
+    private String getSessionId(RequestContext context) {
+        String sessionId = (String)WebUtils.getAttributeFromRequestScope(context, IDP_SESSION_ID);
+        if (sessionId == null) {
+            Cookie cookie = WebUtils.readCookie(context, FEDIZ_IDP_SESSION);
+            if (cookie != null && cookie.getValue() != null && !cookie.getValue().isEmpty()) {
+                sessionId = cookie.getValue();
+            }
+        }
+        return sessionId;
+    }
+
+    public IdpSessionStore getIdpSessionStore() {
+        return idpSessionStore;
+    }
+
+    public void setIdpSessionStore(IdpSessionStore idpSessionStore) {
+        this.idpSessionStore = idpSessionStore;
+    }
+}
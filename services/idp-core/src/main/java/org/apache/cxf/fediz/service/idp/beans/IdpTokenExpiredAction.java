@@ -18,10 +18,10 @@
  */
 package org.apache.cxf.fediz.service.idp.beans;
 
-import org.apache.cxf.fediz.service.idp.util.WebUtils;
-import org.apache.cxf.ws.security.tokenstore.SecurityToken;
+import org.apache.cxf.fediz.service.idp.util.SerializedSecurityToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.webflow.execution.RequestContext;
 
@@ -35,11 +35,13 @@ public class IdpTokenExpiredAction {
             .getLogger(IdpTokenExpiredAction.class);
     private boolean tokenExpirationValidation = true;
 
+    @Autowired
+    private IdpSessionAction idpSessionAction;
+
     public boolean isTokenExpired(String homeRealm, RequestContext context)
         throws Exception {
 
-        SecurityToken idpToken =
-            (SecurityToken) WebUtils.getAttributeFromExternalContext(context, homeRealm);
+        SerializedSecurityToken idpToken = idpSessionAction.getToken(context, homeRealm);
         if (idpToken == null) {
             return true;
         }
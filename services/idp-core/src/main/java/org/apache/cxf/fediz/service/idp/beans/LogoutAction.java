@@ -23,19 +23,25 @@ import javax.servlet.http.HttpSession;
 import org.apache.cxf.fediz.service.idp.util.WebUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.webflow.execution.RequestContext;
 
 /**
- * This class is responsible to clear security context and invalidate the IDP session.
+ * This class is responsible to clear security context and invalidate the IDP session, and to remove the SSO
+ * session of the user from the IdP session store.
  */
 @Component
 public class LogoutAction {
 
     private static final Logger LOG = LoggerFactory.getLogger(LogoutAction.class);
 
+    @Autowired
+    private IdpSessionAction idpSessionAction;
+
     public void submit(RequestContext requestContext) {
+        idpSessionAction.invalidate(requestContext);
         SecurityContextHolder.clearContext();
         LOG.info("Security context has been cleared.");
         HttpSession session = WebUtils.getHttpSession(requestContext);
@@ -45,6 +45,7 @@ import org.apache.cxf.fediz.service.idp.domain.Application;
 import org.apache.cxf.fediz.service.idp.domain.Idp;
 import org.apache.cxf.fediz.service.idp.domain.RequestClaim;
 import org.apache.cxf.fediz.service.idp.util.LocalServerResolver;
+import org.apache.cxf.fediz.service.idp.util.SerializedSecurityToken;
 import org.apache.cxf.fediz.service.idp.util.WebUtils;
 import org.apache.cxf.staxutils.W3CDOMStreamWriter;
 import org.apache.cxf.ws.security.tokenstore.SecurityToken;
@@ -53,6 +54,7 @@ import org.apache.cxf.ws.security.trust.STSUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.webflow.execution.RequestContext;
 
 /**
@@ -106,6 +108,9 @@ public class STSClientAction {
 
     private String customSTSParameter;
 
+    @Autowired(required = false)
+    private IdpSessionAction idpSessionAction;
+
     public String getWsdlLocation() {
         return wsdlLocation;
     }
@@ -175,6 +180,17 @@ public class STSClientAction {
         this.customSTSParameter = customSTSParameter;
     }
 
+    public IdpSessionAction getIdpSessionAction() {
+        return idpSessionAction;
+    }
+
+    /**
+     * The IdP session store access, to read the IdP token if it was not passed in the flow scope ("idpToken").
+     */
+    public void setIdpSessionAction(IdpSessionAction idpSessionAction) {
+        this.idpSessionAction = idpSessionAction;
+    }
+
     /**
      * @param context the webflow request context
      * @param realm The client/application realm
@@ -335,7 +351,21 @@ public class STSClientAction {
     private SecurityToken getSecurityToken(RequestContext context, String homeRealm)
         throws ProcessingException {
 
-        SecurityToken idpToken = (SecurityToken)WebUtils.getAttributeFromFlowScope(context, "idpToken");
+        Object cachedToken = WebUtils.getAttributeFromFlowScope(context, "idpToken");
+        if (cachedToken == null && idpSessionAction != null) {
+            cachedToken = idpSessionAction.getToken(context, homeRealm);
+        }
+        SecurityToken idpToken = null;
+        if (cachedToken instanceof SerializedSecurityToken) {
+            try {
+                idpToken = ((SerializedSecurityToken)cachedToken).toSecurityToken();
+            } catch (XMLStreamException | IOException e) {
+                LOG.error("Error in parsing the cached IDP_TOKEN", e);
+                throw new ProcessingException(TYPE.BAD_REQUEST);
+            }
+        } else if (cachedToken instanceof SecurityToken) {
+            idpToken = (SecurityToken)cachedToken;
+        }
         if (idpToken != null) {
             LOG.debug("[IDP_TOKEN={} successfully retrieved from cache for home realm [{}]", idpToken.getId(),
                       homeRealm);
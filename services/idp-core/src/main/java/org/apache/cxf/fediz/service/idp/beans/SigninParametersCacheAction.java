@@ -19,9 +19,10 @@
 package org.apache.cxf.fediz.service.idp.beans;
 
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 import org.apache.cxf.fediz.core.FederationConstants;
 import org.apache.cxf.fediz.core.exception.ProcessingException;
@@ -32,19 +33,35 @@ import org.apache.cxf.fediz.service.idp.samlsso.SAMLAuthnRequest;
 import org.apache.cxf.fediz.service.idp.util.WebUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.webflow.execution.RequestContext;
 
+/**
+ * The sign in parameters of a request redirected to a trusted IdP are kept in the SigninParametersStore (a
+ * bounded attribute of the session) until the trusted IdP redirects the user back. The IdP session only holds the
+ * realms (and the passive requestor endpoints) of the applications the user signed in to, and not a copy of the
+ * application configuration.
+ */
 @Component
 public class SigninParametersCacheAction {
 
+    /**
+     * The request attribute with the realms of the applications the user signed in to, mapped to their
+     * passive requestor endpoint (see IdpSessionAction.getActiveApplications), for the sign out pages.
+     */
     public static final String ACTIVE_APPLICATIONS = "realmConfigMap";
 
     private static final Logger LOG = LoggerFactory.getLogger(SigninParametersCacheAction.class);
 
+    @Autowired
+    private SigninParametersStore signinParametersStore;
+
+    @Autowired
+    private IdpSessionAction idpSessionAction;
+
     public void store(RequestContext context, String protocol) {
         Map<String, Object> signinParams = new HashMap<>();
-        String uuidKey = UUID.randomUUID().toString();
 
         Object value = WebUtils.getAttributeFromFlowScope(context, IdpConstants.HOME_REALM);
         if (value != null) {
@@ -70,7 +87,7 @@ public class SigninParametersCacheAction {
             }
         }
 
-        WebUtils.putAttributeInExternalContext(context, uuidKey, signinParams);
+        String uuidKey = signinParametersStore.put(context, signinParams);
 
         LOG.debug("SignIn parameters cached: {}", signinParams.toString());
         WebUtils.putAttributeInFlowScope(context, IdpConstants.TRUSTED_IDP_CONTEXT, uuidKey);
@@ -81,8 +98,7 @@ public class SigninParametersCacheAction {
 
         if (contextKey != null) {
             @SuppressWarnings("unchecked")
-            Map<String, Object> signinParams =
-                (Map<String, Object>)WebUtils.getAttributeFromExternalContext(context, contextKey);
+            Map<String, Object> signinParams = signinParametersStore.remove(context, contextKey);
 
             if (signinParams != null) {
                 LOG.debug("SignIn parameters restored: {}", signinParams.toString());
@@ -121,8 +137,6 @@ public class SigninParametersCacheAction {
             }  else {
                 LOG.debug("Error in restoring security context");
             }
-
-            WebUtils.removeAttributeFromFlowScope(context, contextKey);
         } else {
             LOG.debug("Error in restoring security context");
         }
@@ -146,20 +160,44 @@ public class SigninParametersCacheAction {
                 serviceConfig.setPassiveRequestorEndpoint(url);
             }
 
-            @SuppressWarnings("unchecked")
-            Map<String, Application> realmConfigMap =
-                    (Map<String, Application>)WebUtils
-                            .getAttributeFromExternalContext(context, ACTIVE_APPLICATIONS);
-
-            if (realmConfigMap == null) {
-                realmConfigMap = new HashMap<>();
-                WebUtils.putAttributeInExternalContext(context, ACTIVE_APPLICATIONS, realmConfigMap);
-            }
+            idpSessionAction.addActiveApplication(context, realm, serviceConfig.getPassiveRequestorEndpoint());
+        }
+    }
 
-            if (realmConfigMap.get(realm) == null) {
-                realmConfigMap.put(realm, serviceConfig);
+    /**
+     * Resolve the active applications (the ACTIVE_APPLICATIONS request attribute) against the IdP
+     * configuration. Applications that are no longer configured are skipped.
+     */
+    public static List<Application> getActiveApplications(Idp idpConfig, Map<String, String> activeApplications) {
+        List<Application> applications = new ArrayList<>();
+        if (idpConfig != null && activeApplications != null) {
+            for (Map.Entry<String, String> entry : activeApplications.entrySet()) {
+                Application application = idpConfig.findApplication(entry.getKey());
+                if (application != null) {
+                    if (application.getPassiveRequestorEndpoint() == null) {
+                        application.setPassiveRequestorEndpoint(entry.getValue());
+                    }
+                    applications.add(application);
+                }
             }
         }
+        return applications;
+    }
+
+    public SigninParametersStore getSigninParametersStore() {
+        return signinParametersStore;
+    }
+
+    public void setSigninParametersStore(SigninParametersStore signinParametersStore) {
+        this.signinParametersStore = signinParametersStore;
+    }
+
+    public IdpSessionAction getIdpSessionAction() {
+        return idpSessionAction;
+    }
+
+    public void setIdpSessionAction(IdpSessionAction idpSessionAction) {
+        this.idpSessionAction = idpSessionAction;
     }
 
     protected String guessPassiveRequestorURL(RequestContext context, String replyAddress,
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.idp.beans;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.cxf.fediz.service.idp.util.LruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.webflow.core.collection.SharedAttributeMap;
+import org.springframework.webflow.execution.RequestContext;
+
+/**
+ * Keeps the sign in parameters of the requests that are redirected to a trusted IdP in the session of the user,
+ * until the trusted IdP redirects the user back. The parameters are removed when they are restored, the ones
+ * of abandoned sign ins expire after the time to live. The number of pending sign ins per session is bounded,
+ * if it is reached the least recent sign in of the same user is evicted, never the one of another user.
+ */
+@Component
+public class SigninParametersStore {
+
+    /**
+     * The session attribute with the pending sign in parameters of the user.
+     */
+    public static final String SESSION_ATTRIBUTE = "fediz.signin.parameters";
+
+    private static final Logger LOG = LoggerFactory.getLogger(SigninParametersStore.class);
+
+    private static final long DEFAULT_TIME_TO_LIVE = 10L * 60L * 1000L;
+    private static final int DEFAULT_MAX_ENTRIES = 10;
+
+    private long timeToLive = DEFAULT_TIME_TO_LIVE;
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    /**
+     * Store the sign in parameters, and return the (random) key to restore them.
+     */
+    public String put(RequestContext context, Map<String, Object> signinParams) {
+        SharedAttributeMap<Object> sessionMap = context.getExternalContext().getSessionMap();
+        String key = UUID.randomUUID().toString();
+        synchronized (sessionMap.getMutex()) {
+            LruCache<String, Entry> entries = getEntries(sessionMap, true);
+            long now = System.currentTimeMillis();
+            entries.removeExpired(entry -> entry.expires <= now);
+            if (entries.put(key, new Entry(Collections.unmodifiableMap(signinParams), now + timeToLive))) {
+                LOG.warn("{} pending sign ins in the session, the least recent one evicted", maxEntries);
+            }
+            // Put it again, so that a replicated session is updated
+            sessionMap.put(SESSION_ATTRIBUTE, entries);
+        }
+        return key;
+    }
+
+    /**
+     * Remove and return the sign in parameters, or null if they are unknown or expired.
+     */
+    public Map<String, Object> remove(RequestContext context, String key) {
+        SharedAttributeMap<Object> sessionMap = context.getExternalContext().getSessionMap();
+        Entry entry;
+        synchronized (sessionMap.getMutex()) {
+            LruCache<String, Entry> entries = getEntries(sessionMap, false);
+            if (entries == null) {
+                return null;
+            }
+            entry = entries.remove(key);
+            if (entries.size() == 0) {
+                sessionMap.remove(SESSION_ATTRIBUTE);
+            } else {
+                sessionMap.put(SESSION_ATTRIBUTE, entries);
+            }
+        }
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expires <= System.currentTimeMillis()) {
+            LOG.debug("SignIn parameters [{}] expired", key);
+            return null;
+        }
+        return entry.signinParams;
+    }
+
+    /**
+     * The number of pending sign ins in the session of the user.
+     */
+    public int size(RequestContext context) {
+        SharedAttributeMap<Object> sessionMap = context.getExternalContext().getSessionMap();
+        synchronized (sessionMap.getMutex()) {
+            LruCache<String, Entry> entries = getEntries(sessionMap, false);
+            return entries == null ? 0 : entries.size();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private LruCache<String, Entry> getEntries(SharedAttributeMap<Object> sessionMap, boolean create) {
+        LruCache<String, Entry> entries = (LruCache<String, Entry>)sessionMap.get(SESSION_ATTRIBUTE);
+        if (entries == null && create) {
+            entries = new LruCache<>(maxEntries);
+        }
+        return entries;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * How long (in milliseconds) the sign in parameters are kept. The default is 10 minutes.
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * The maximum number of pending sign ins per session. The default is 10.
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    private static final class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Map<String, Object> signinParams;
+        private final long expires;
+
+        Entry(Map<String, Object> signinParams, long expires) {
+            this.signinParams = signinParams;
+            this.expires = expires;
+        }
+    }
+}
@@ -20,10 +20,11 @@ package org.apache.cxf.fediz.service.idp.beans.wsfed;
 
 import java.time.Instant;
 
-import org.apache.cxf.fediz.service.idp.util.WebUtils;
-import org.apache.cxf.ws.security.tokenstore.SecurityToken;
+import org.apache.cxf.fediz.service.idp.beans.IdpSessionAction;
+import org.apache.cxf.fediz.service.idp.util.SerializedSecurityToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.webflow.execution.RequestContext;
 
@@ -35,11 +36,13 @@ public class WfreshParser {
 
     private static final Logger LOG = LoggerFactory.getLogger(WfreshParser.class);
 
+    @Autowired
+    private IdpSessionAction idpSessionAction;
+
     public boolean authenticationRequired(String wfresh, String whr, RequestContext context)
         throws Exception {
 
-        SecurityToken idpToken =
-            (SecurityToken) WebUtils.getAttributeFromExternalContext(context, whr);
+        SerializedSecurityToken idpToken = idpSessionAction.getToken(context, whr);
         if (idpToken == null) {
             return true;
         }
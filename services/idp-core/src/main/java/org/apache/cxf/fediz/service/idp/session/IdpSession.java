@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.idp.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.cxf.fediz.service.idp.util.SerializedSecurityToken;
+
+/**
+ * The SSO state of a user of the IdP: the IdP tokens cached per (home) realm, and the applications the user signed
+ * in to (mapped to their passive requestor endpoint, for the sign out cleanup).
+ *
+ * An IdpSession is immutable, so that a store can share it between requests (and nodes can cache it). A changed
+ * IdpSession is put into the store again.
+ */
+public final class IdpSession implements Serializable {
+
+    private static final long serialVersionUID = 4630946427710738432L;
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private final Map<String, SerializedSecurityToken> tokens;
+    private final Map<String, String> activeApplications;
+
+    public IdpSession() {
+        this(Collections.<String, SerializedSecurityToken>emptyMap(), Collections.<String, String>emptyMap());
+    }
+
+    private IdpSession(Map<String, SerializedSecurityToken> tokens, Map<String, String> activeApplications) {
+        this.tokens = tokens;
+        this.activeApplications = activeApplications;
+    }
+
+    public SerializedSecurityToken getToken(String realm) {
+        return tokens.get(realm);
+    }
+
+    public Map<String, SerializedSecurityToken> getTokens() {
+        return tokens;
+    }
+
+    public Map<String, String> getActiveApplications() {
+        return activeApplications;
+    }
+
+    /**
+     * Return a copy of this session with the token cached for the given realm.
+     */
+    public IdpSession withToken(String realm, SerializedSecurityToken token) {
+        Map<String, SerializedSecurityToken> newTokens = new LinkedHashMap<>(tokens);
+        newTokens.put(realm, token);
+        return new IdpSession(Collections.unmodifiableMap(newTokens), activeApplications);
+    }
+
+    /**
+     * Return a copy of this session with the given application, or this session if the application is active.
+     */
+    public IdpSession withActiveApplication(String realm, String passiveRequestorEndpoint) {
+        if (activeApplications.containsKey(realm)) {
+            return this;
+        }
+        Map<String, String> newActiveApplications = new LinkedHashMap<>(activeApplications);
+        newActiveApplications.put(realm, passiveRequestorEndpoint);
+        return new IdpSession(tokens, Collections.unmodifiableMap(newActiveApplications));
+    }
+
+    /**
+     * Return the compact binary form of this session (without the class descriptors of Java serialization).
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(tokens.size());
+            for (Map.Entry<String, SerializedSecurityToken> entry : tokens.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().writeTo(out);
+            }
+            out.writeInt(activeApplications.size());
+            for (Map.Entry<String, String> entry : activeApplications.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeBoolean(entry.getValue() != null);
+                if (entry.getValue() != null) {
+                    out.writeUTF(entry.getValue());
+                }
+            }
+        } catch (IOException ex) {
+            // Can't happen with a ByteArrayOutputStream
+            throw new IllegalStateException(ex);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Read a session from its compact binary form.
+     */
+    public static IdpSession fromBytes(byte[] bytes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte formatVersion = in.readByte();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported IdP session format " + formatVersion);
+            }
+            Map<String, SerializedSecurityToken> tokens = new LinkedHashMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                tokens.put(in.readUTF(), SerializedSecurityToken.readFrom(in));
+            }
+            Map<String, String> activeApplications = new LinkedHashMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                String realm = in.readUTF();
+                activeApplications.put(realm, in.readBoolean() ? in.readUTF() : null);
+            }
+            return new IdpSession(Collections.unmodifiableMap(tokens),
+                                  Collections.unmodifiableMap(activeApplications));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IdpSession[tokens=" + tokens.keySet() + ", activeApplications=" + activeApplications.keySet() + "]";
+    }
+}
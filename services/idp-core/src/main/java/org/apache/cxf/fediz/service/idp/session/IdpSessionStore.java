@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.idp.session;
+
+/**
+ * Stores the SSO sessions of the IdP (outside of the servlet session), by the id of the FEDIZ_IDP_SESSION cookie.
+ * A store that is shared by the nodes of a cluster allows SSO across the nodes without sticky sessions.
+ *
+ * A session expires if it is not accessed within the max inactive interval of the store.
+ */
+public interface IdpSessionStore {
+
+    /**
+     * Return the session, or null if it is unknown or expired.
+     */
+    IdpSession getSession(String sessionId);
+
+    void putSession(String sessionId, IdpSession session);
+
+    void removeSession(String sessionId);
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.idp.session;
+
+import org.apache.cxf.fediz.service.idp.util.LruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An IdpSessionStore local to the IdP instance (which needs sticky sessions in a cluster). If the store is full,
+ * the least recently used session is evicted.
+ */
+public class InMemoryIdpSessionStore implements IdpSessionStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InMemoryIdpSessionStore.class);
+
+    private static final int DEFAULT_MAX_INACTIVE_INTERVAL = 30 * 60;
+    private static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    private final LruCache<String, StoredSession> sessions = new LruCache<>(DEFAULT_MAX_ENTRIES);
+    private int maxInactiveInterval = DEFAULT_MAX_INACTIVE_INTERVAL;
+
+    @Override
+    public IdpSession getSession(String sessionId) {
+        StoredSession entry = sessions.get(sessionId);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (entry.expires <= now) {
+            sessions.remove(sessionId, entry);
+            return null;
+        }
+        entry.expires = now + maxInactiveInterval * 1000L;
+        return entry.session;
+    }
+
+    @Override
+    public void putSession(String sessionId, IdpSession session) {
+        long now = System.currentTimeMillis();
+        sessions.removeExpired(entry -> entry.expires <= now);
+        if (sessions.put(sessionId, new StoredSession(session, now + maxInactiveInterval * 1000L))) {
+            LOG.warn("IdP session store is full ({} sessions), the least recently used session evicted",
+                     sessions.getMaxEntries());
+        }
+    }
+
+    @Override
+    public void removeSession(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public int getMaxInactiveInterval() {
+        return maxInactiveInterval;
+    }
+
+    /**
+     * The time (in seconds) after which a session that is not accessed expires. The default is 30 minutes.
+     */
+    public void setMaxInactiveInterval(int maxInactiveInterval) {
+        this.maxInactiveInterval = maxInactiveInterval;
+    }
+
+    public int getMaxEntries() {
+        return sessions.getMaxEntries();
+    }
+
+    /**
+     * The maximum number of sessions. The default is 100000.
+     */
+    public void setMaxEntries(int maxEntries) {
+        sessions.setMaxEntries(maxEntries);
+    }
+
+    private static final class StoredSession {
+        private final IdpSession session;
+        private volatile long expires;
+
+        StoredSession(IdpSession session, long expires) {
+            this.session = session;
+            this.expires = expires;
+        }
+    }
+}
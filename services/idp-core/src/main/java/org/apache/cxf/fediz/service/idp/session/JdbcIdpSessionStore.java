@@ -0,0 +1,333 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.idp.session;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.cxf.fediz.service.idp.util.LruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An IdpSessionStore in a database, to share the sessions between the nodes of a cluster. The sessions are stored
+ * in their compact binary form (see IdpSession.toBytes()), with a random version that changes with every update.
+ *
+ * Each node keeps the most recently used sessions in a near-cache, bounded by evicting the least recently used
+ * one. A cached session is only used if its version in the database is unchanged, i.e. a read costs a query of the
+ * version (and the expiry), and not the transfer and parsing of the session data. A session updated or removed on
+ * another node is therefore never used.
+ *
+ * The table is created on startup if it does not exist, and a background sweeper deletes the expired sessions.
+ * If the database is not available, getSession returns null (i.e. the user has to authenticate again), while
+ * putSession and removeSession fail.
+ */
+public class JdbcIdpSessionStore implements IdpSessionStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcIdpSessionStore.class);
+
+    public static final String DEFAULT_TABLE_NAME = "FEDIZ_IDP_SESSION";
+
+    private static final int DEFAULT_MAX_INACTIVE_INTERVAL = 30 * 60;
+    private static final int DEFAULT_NEAR_CACHE_MAX_ENTRIES = 10000;
+    private static final long DEFAULT_SWEEP_INTERVAL = 60L;
+
+    private final LruCache<String, CachedSession> nearCache = new LruCache<>(DEFAULT_NEAR_CACHE_MAX_ENTRIES);
+    private DataSource dataSource;
+    private String tableName = DEFAULT_TABLE_NAME;
+    private boolean createSchema = true;
+    private int maxInactiveInterval = DEFAULT_MAX_INACTIVE_INTERVAL;
+    private long sweepInterval = DEFAULT_SWEEP_INTERVAL;
+    private ScheduledExecutorService sweeper;
+
+    private String selectVersionSql;
+    private String selectSql;
+    private String insertSql;
+    private String updateSql;
+    private String touchSql;
+    private String deleteSql;
+    private String sweepSql;
+
+    public void init() {
+        if (dataSource == null) {
+            throw new IllegalStateException("No DataSource configured");
+        }
+        selectVersionSql = "SELECT VERSION, EXPIRES FROM " + tableName + " WHERE SESSION_ID = ?";
+        selectSql = "SELECT VERSION, EXPIRES, SESSION_DATA FROM " + tableName + " WHERE SESSION_ID = ?";
+        insertSql = "INSERT INTO " + tableName + " (SESSION_ID, VERSION, EXPIRES, SESSION_DATA) VALUES (?, ?, ?, ?)";
+        updateSql = "UPDATE " + tableName + " SET VERSION = ?, EXPIRES = ?, SESSION_DATA = ? WHERE SESSION_ID = ?";
+        touchSql = "UPDATE " + tableName + " SET EXPIRES = ? WHERE SESSION_ID = ?";
+        deleteSql = "DELETE FROM " + tableName + " WHERE SESSION_ID = ?";
+        sweepSql = "DELETE FROM " + tableName + " WHERE EXPIRES <= ?";
+
+        if (createSchema) {
+            createSchema();
+        }
+
+        if (sweepInterval > 0) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "fediz-idp-session-sweeper");
+                t.setDaemon(true);
+                return t;
+            });
+            sweeper.scheduleWithFixedDelay(this::sweepQuietly, sweepInterval, sweepInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+    }
+
+    private void createSchema() {
+        try (Connection con = dataSource.getConnection()) {
+            DatabaseMetaData metaData = con.getMetaData();
+            try (ResultSet rs = metaData.getTables(null, null, tableName, null)) {
+                if (rs.next()) {
+                    return;
+                }
+            }
+            try (Statement st = con.createStatement()) {
+                st.execute("CREATE TABLE " + tableName + " ("
+                    + "SESSION_ID VARCHAR(64) NOT NULL PRIMARY KEY, "
+                    + "VERSION BIGINT NOT NULL, "
+                    + "EXPIRES BIGINT NOT NULL, "
+                    + "SESSION_DATA VARBINARY(32000) NOT NULL)");
+                st.execute("CREATE INDEX " + tableName + "_EXP ON " + tableName + " (EXPIRES)");
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Error creating the IdP session table " + tableName, ex);
+        }
+    }
+
+    @Override
+    public IdpSession getSession(String sessionId) {
+        long now = System.currentTimeMillis();
+        try (Connection con = dataSource.getConnection()) {
+            CachedSession cached = nearCache.get(sessionId);
+            if (cached != null) {
+                try (PreparedStatement ps = con.prepareStatement(selectVersionSql)) {
+                    ps.setString(1, sessionId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next() || rs.getLong(2) <= now) {
+                            nearCache.remove(sessionId);
+                            return null;
+                        }
+                        if (rs.getLong(1) == cached.version) {
+                            touch(con, sessionId, rs.getLong(2), now);
+                            return cached.session;
+                        }
+                    }
+                }
+            }
+
+            try (PreparedStatement ps = con.prepareStatement(selectSql)) {
+                ps.setString(1, sessionId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next() || rs.getLong(2) <= now) {
+                        nearCache.remove(sessionId);
+                        return null;
+                    }
+                    IdpSession session = IdpSession.fromBytes(rs.getBytes(3));
+                    cache(sessionId, session, rs.getLong(1));
+                    touch(con, sessionId, rs.getLong(2), now);
+                    return session;
+                }
+            }
+        } catch (SQLException | IOException ex) {
+            LOG.error("Failed to read the IdP session: {}", ex.getMessage());
+            nearCache.remove(sessionId);
+            return null;
+        }
+    }
+
+    /**
+     * Extend the expiry of an accessed session, but only if half of the max inactive interval has passed, so that
+     * not every read is a write.
+     */
+    private void touch(Connection con, String sessionId, long expires, long now) throws SQLException {
+        long newExpires = now + maxInactiveInterval * 1000L;
+        if (newExpires - expires > maxInactiveInterval * 500L) {
+            try (PreparedStatement ps = con.prepareStatement(touchSql)) {
+                ps.setLong(1, newExpires);
+                ps.setString(2, sessionId);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    @Override
+    public void putSession(String sessionId, IdpSession session) {
+        long now = System.currentTimeMillis();
+        long version = ThreadLocalRandom.current().nextLong();
+        long expires = now + maxInactiveInterval * 1000L;
+        byte[] data = session.toBytes();
+        try (Connection con = dataSource.getConnection()) {
+            if (update(con, sessionId, version, expires, data) == 0) {
+                try (PreparedStatement ps = con.prepareStatement(insertSql)) {
+                    ps.setString(1, sessionId);
+                    ps.setLong(2, version);
+                    ps.setLong(3, expires);
+                    ps.setBytes(4, data);
+                    ps.executeUpdate();
+                } catch (SQLException ex) {
+                    // The session was inserted concurrently
+                    if (update(con, sessionId, version, expires, data) == 0) {
+                        throw ex;
+                    }
+                }
+            }
+            LOG.debug("IdP session stored: {} bytes", data.length);
+        } catch (SQLException ex) {
+            nearCache.remove(sessionId);
+            throw new IllegalStateException("Failed to store the IdP session", ex);
+        }
+        cache(sessionId, session, version);
+    }
+
+    private int update(Connection con, String sessionId, long version, long expires, byte[] data)
+        throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(updateSql)) {
+            ps.setLong(1, version);
+            ps.setLong(2, expires);
+            ps.setBytes(3, data);
+            ps.setString(4, sessionId);
+            return ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Delete the expired sessions.
+     *
+     * @return the number of deleted sessions
+     */
+    public int sweep() throws SQLException {
+        try (Connection con = dataSource.getConnection(); PreparedStatement ps = con.prepareStatement(sweepSql)) {
+            ps.setLong(1, System.currentTimeMillis());
+            return ps.executeUpdate();
+        }
+    }
+
+    private void sweepQuietly() {
+        try {
+            int deleted = sweep();
+            if (deleted > 0) {
+                LOG.debug("Deleted {} expired IdP sessions from {}", deleted, tableName);
+            }
+        } catch (Exception ex) {
+            LOG.warn("Error deleting expired IdP sessions from " + tableName, ex);
+        }
+    }
+
+    @Override
+    public void removeSession(String sessionId) {
+        nearCache.remove(sessionId);
+        try (Connection con = dataSource.getConnection(); PreparedStatement ps = con.prepareStatement(deleteSql)) {
+            ps.setString(1, sessionId);
+            ps.executeUpdate();
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Failed to remove the IdP session", ex);
+        }
+    }
+
+    private void cache(String sessionId, IdpSession session, long version) {
+        if (nearCache.getMaxEntries() > 0 && nearCache.put(sessionId, new CachedSession(session, version))) {
+            LOG.debug("IdP session near-cache is full ({} sessions), the least recently used session evicted",
+                      nearCache.getMaxEntries());
+        }
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    /**
+     * Whether to create the session table and its index on startup if the table doesn't exist yet. The default is
+     * true.
+     */
+    public void setCreateSchema(boolean createSchema) {
+        this.createSchema = createSchema;
+    }
+
+    public int getMaxInactiveInterval() {
+        return maxInactiveInterval;
+    }
+
+    /**
+     * The time (in seconds) after which a session that is not accessed expires. The default is 30 minutes.
+     */
+    public void setMaxInactiveInterval(int maxInactiveInterval) {
+        this.maxInactiveInterval = maxInactiveInterval;
+    }
+
+    public int getNearCacheMaxEntries() {
+        return nearCache.getMaxEntries();
+    }
+
+    /**
+     * The maximum number of sessions in the near-cache of this node, 0 disables the near-cache. The default is
+     * 10000.
+     */
+    public void setNearCacheMaxEntries(int nearCacheMaxEntries) {
+        nearCache.setMaxEntries(nearCacheMaxEntries);
+    }
+
+    /**
+     * The delay in seconds between two runs of the expired session sweeper. The default is 60 seconds, a value of
+     * 0 disables the sweeper.
+     */
+    public void setSweepInterval(long sweepInterval) {
+        this.sweepInterval = sweepInterval;
+    }
+
+    private static final class CachedSession {
+        private final IdpSession session;
+        private final long version;
+
+        CachedSession(IdpSession session, long version) {
+            this.session = session;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.idp.util;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A map bounded to a maximum number of entries. If it is full, the least recently used entry is evicted, which
+ * takes constant time. All methods are synchronized.
+ *
+ * With a sliding expiry (i.e. an entry expires a fixed time after it was last used) the least recently used
+ * entries are also the ones that expire first, so removeExpired only visits the expired entries.
+ */
+public class LruCache<K, V> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final EvictingMap<K, V> entries;
+
+    public LruCache(int maxEntries) {
+        entries = new EvictingMap<>(maxEntries);
+    }
+
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Put the entry as the most recently used one.
+     *
+     * @return true if the least recently used entry was evicted to make room for it
+     */
+    public synchronized boolean put(K key, V value) {
+        int size = entries.size();
+        boolean added = entries.put(key, value) == null;
+        return added && entries.size() == size;
+    }
+
+    public synchronized V remove(K key) {
+        return entries.remove(key);
+    }
+
+    public synchronized boolean remove(K key, V value) {
+        return entries.remove(key, value);
+    }
+
+    /**
+     * Remove the least recently used entries as long as they are expired.
+     *
+     * @return the number of removed entries
+     */
+    public synchronized int removeExpired(Predicate<? super V> expired) {
+        int removed = 0;
+        for (Iterator<V> it = entries.values().iterator(); it.hasNext() && expired.test(it.next());) {
+            it.remove();
+            removed++;
+        }
+        return removed;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int getMaxEntries() {
+        return entries.maxEntries;
+    }
+
+    /**
+     * Change the maximum number of entries, the least recently used entries above it are evicted.
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        entries.maxEntries = maxEntries;
+        for (Iterator<V> it = entries.values().iterator(); it.hasNext() && entries.size() > maxEntries;) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static final class EvictingMap<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private int maxEntries;
+
+        EvictingMap(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.idp.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.w3c.dom.Element;
+
+import org.apache.cxf.staxutils.StaxUtils;
+import org.apache.cxf.ws.security.tokenstore.SecurityToken;
+import org.apache.wss4j.common.util.DOM2Writer;
+
+/**
+ * The compact form of an IdP token (SecurityToken) cached in the IdP session. A SecurityToken holds the DOM of
+ * the token, which takes many times the memory of the token itself, so the session only holds the deflated XML
+ * of the token and the properties needed to check whether the token is still valid. The SecurityToken is parsed
+ * again when a token for a relying party is requested on behalf of it.
+ */
+public final class SerializedSecurityToken implements Serializable {
+
+    private static final long serialVersionUID = -2851934377281638329L;
+
+    private static final long NOT_SET = Long.MIN_VALUE;
+
+    private final String id;
+    private final long created;
+    private final long expires;
+    private final byte[] token;
+
+    private SerializedSecurityToken(String id, long created, long expires, byte[] token) {
+        this.id = id;
+        this.created = created;
+        this.expires = expires;
+        this.token = token;
+    }
+
+    public static SerializedSecurityToken serialize(SecurityToken securityToken) {
+        byte[] token = null;
+        if (securityToken.getToken() != null) {
+            String xml = DOM2Writer.nodeToString(securityToken.getToken());
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(xml.length() / 4);
+            try (OutputStream os = new DeflaterOutputStream(bos)) {
+                os.write(xml.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException ex) {
+                // Can't happen with a ByteArrayOutputStream
+                throw new IllegalStateException(ex);
+            }
+            token = bos.toByteArray();
+        }
+        return new SerializedSecurityToken(securityToken.getId(),
+                                           toMillis(securityToken.getCreated()),
+                                           toMillis(securityToken.getExpires()),
+                                           token);
+    }
+
+    /**
+     * Parse the token again.
+     */
+    public SecurityToken toSecurityToken() throws XMLStreamException, IOException {
+        SecurityToken securityToken = new SecurityToken(id, getCreated(), getExpires());
+        if (token != null) {
+            try (InputStream is = new InflaterInputStream(new ByteArrayInputStream(token))) {
+                Element element = StaxUtils.read(is).getDocumentElement();
+                securityToken.setToken(element);
+            }
+        }
+        return securityToken;
+    }
+
+    /**
+     * Write this token in a compact binary form (without the class descriptors of Java serialization), e.g. to
+     * store it in a database.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null) {
+            out.writeUTF(id);
+        }
+        out.writeLong(created);
+        out.writeLong(expires);
+        if (token == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(token.length);
+            out.write(token);
+        }
+    }
+
+    /**
+     * Read a token written by writeTo.
+     */
+    public static SerializedSecurityToken readFrom(DataInput in) throws IOException {
+        String id = in.readBoolean() ? in.readUTF() : null;
+        long created = in.readLong();
+        long expires = in.readLong();
+        int length = in.readInt();
+        byte[] token = null;
+        if (length >= 0) {
+            token = new byte[length];
+            in.readFully(token);
+        }
+        return new SerializedSecurityToken(id, created, expires, token);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Instant getCreated() {
+        return created == NOT_SET ? null : Instant.ofEpochMilli(created);
+    }
+
+    public Instant getExpires() {
+        return expires == NOT_SET ? null : Instant.ofEpochMilli(expires);
+    }
+
+    /**
+     * Return whether this token has expired, like SecurityToken.isExpired().
+     */
+    public boolean isExpired() {
+        return expires != NOT_SET && System.currentTimeMillis() > expires;
+    }
+
+    /**
+     * The size (in bytes) of the deflated token.
+     */
+    public int getSize() {
+        return token == null ? 0 : token.length;
+    }
+
+    private static long toMillis(Instant instant) {
+        return instant == null ? NOT_SET : instant.toEpochMilli();
+    }
+
+    @Override
+    public String toString() {
+        return "SerializedSecurityToken[" + id + ", " + getSize() + " bytes]";
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.idp.beans;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cxf.fediz.service.idp.IdpConstants;
+import org.apache.cxf.fediz.service.idp.domain.Application;
+import org.apache.cxf.fediz.service.idp.domain.Idp;
+import org.apache.cxf.fediz.service.idp.session.InMemoryIdpSessionStore;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.webflow.test.MockRequestContext;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SigninParametersCacheActionTest {
+
+    private static final String REALM = "urn:org:apache:cxf:fediz:fedizhelloworld";
+    private static final String RETURN_ADDRESS = "https://localhost:8443/fedizhelloworld/secure/fedservlet";
+
+    @Test
+    public void testStoreAndRestore() throws Exception {
+        SigninParametersCacheAction action = new SigninParametersCacheAction();
+        action.setSigninParametersStore(new SigninParametersStore());
+
+        MockRequestContext requestContext = new MockRequestContext();
+        requestContext.getFlowScope().put(IdpConstants.REALM, REALM);
+        requestContext.getFlowScope().put(IdpConstants.RETURN_ADDRESS, RETURN_ADDRESS);
+        requestContext.getFlowScope().put(IdpConstants.CONTEXT, "abc");
+        action.store(requestContext, "wsfed");
+
+        String contextKey = requestContext.getFlowScope().getString(IdpConstants.TRUSTED_IDP_CONTEXT);
+        assertNotNull(contextKey);
+        // The sign in parameters are kept in a single session attribute
+        assertEquals(Collections.singleton(SigninParametersStore.SESSION_ATTRIBUTE),
+                     requestContext.getExternalContext().getSessionMap().asMap().keySet());
+        assertEquals(1, action.getSigninParametersStore().size(requestContext));
+
+        MockRequestContext responseContext = createContext(requestContext);
+        action.restore(responseContext, contextKey, "wsfed");
+        assertEquals(REALM, responseContext.getFlowScope().get(IdpConstants.REALM));
+        assertEquals(RETURN_ADDRESS, responseContext.getFlowScope().get(IdpConstants.RETURN_ADDRESS));
+        assertEquals("abc", responseContext.getFlowScope().get(IdpConstants.CONTEXT));
+
+        // The sign in parameters can only be restored once, and are removed from the session
+        assertEquals(0, action.getSigninParametersStore().size(responseContext));
+        assertTrue(responseContext.getExternalContext().getSessionMap().isEmpty());
+        responseContext = createContext(requestContext);
+        action.restore(responseContext, contextKey, "wsfed");
+        assertNull(responseContext.getFlowScope().get(IdpConstants.REALM));
+    }
+
+    @Test
+    public void testExpiredSigninParameters() throws Exception {
+        SigninParametersStore store = new SigninParametersStore();
+        store.setTimeToLive(-1L);
+
+        MockRequestContext context = new MockRequestContext();
+        String key = store.put(context, Collections.<String, Object>singletonMap(IdpConstants.REALM, REALM));
+        assertNull(store.remove(context, key));
+    }
+
+    @Test
+    public void testMaxEntriesPerSession() throws Exception {
+        SigninParametersStore store = new SigninParametersStore();
+        store.setMaxEntries(2);
+
+        MockRequestContext alice = new MockRequestContext();
+        MockRequestContext bob = new MockRequestContext();
+        String bobsKey = store.put(bob, Collections.<String, Object>singletonMap(IdpConstants.REALM, "bob"));
+
+        String first = store.put(alice, Collections.<String, Object>singletonMap(IdpConstants.REALM, "first"));
+        store.put(alice, Collections.<String, Object>singletonMap(IdpConstants.REALM, "second"));
+        String third = store.put(alice, Collections.<String, Object>singletonMap(IdpConstants.REALM, "third"));
+        assertEquals(2, store.size(alice));
+        assertEquals("third", store.remove(alice, third).get(IdpConstants.REALM));
+        // The least recent sign in of the same session was evicted
+        assertNull(store.remove(alice, first));
+        // The sign ins of another session are not affected
+        assertEquals("bob", store.remove(bob, bobsKey).get(IdpConstants.REALM));
+        assertNull(store.remove(alice, bobsKey));
+    }
+
+    @Test
+    public void testActiveApplications() throws Exception {
+        Application application = new Application();
+        application.setRealm(REALM);
+        Idp idpConfig = new Idp();
+        idpConfig.setApplications(Collections.singletonList(application));
+
+        IdpSessionAction idpSessionAction = new IdpSessionAction();
+        idpSessionAction.setIdpSessionStore(new InMemoryIdpSessionStore());
+        SigninParametersCacheAction action = new SigninParametersCacheAction();
+        action.setIdpSessionAction(idpSessionAction);
+
+        MockRequestContext requestContext = new MockRequestContext();
+        requestContext.getMockExternalContext().setNativeRequest(new MockHttpServletRequest());
+        requestContext.getMockExternalContext().setNativeResponse(new MockHttpServletResponse());
+        requestContext.getFlowScope().put(IdpConstants.REALM, REALM);
+        requestContext.getFlowScope().put(IdpConstants.IDP_CONFIG, idpConfig);
+        action.storeRPConfigInSession(requestContext, RETURN_ADDRESS);
+
+        // The active applications are kept in the IdP session, not in the servlet session
+        assertTrue(requestContext.getExternalContext().getSessionMap().isEmpty());
+        Map<String, String> activeApplications = idpSessionAction.getActiveApplications(requestContext);
+        assertEquals(Collections.singletonMap(REALM, RETURN_ADDRESS), activeApplications);
+
+        // The application configuration is resolved again, e.g. after the session was restored
+        Application reloaded = new Application();
+        reloaded.setRealm(REALM);
+        idpConfig.setApplications(Collections.singletonList(reloaded));
+        List<Application> applications =
+            SigninParametersCacheAction.getActiveApplications(idpConfig, activeApplications);
+        assertEquals(1, applications.size());
+        assertEquals(RETURN_ADDRESS, applications.get(0).getPassiveRequestorEndpoint());
+    }
+
+    private static MockRequestContext createContext(MockRequestContext sameSession) {
+        MockRequestContext context = new MockRequestContext();
+        context.getMockExternalContext().setSessionMap(sameSession.getExternalContext().getSessionMap());
+        return context;
+    }
+}
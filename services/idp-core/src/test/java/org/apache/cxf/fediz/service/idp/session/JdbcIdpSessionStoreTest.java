@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.idp.session;
+
+import java.io.StringReader;
+import java.time.Instant;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+import org.apache.cxf.fediz.service.idp.util.SerializedSecurityToken;
+import org.apache.cxf.ws.security.tokenstore.SecurityToken;
+import org.hsqldb.jdbc.JDBCDataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Some tests for the JdbcIdpSessionStore using an embedded HSQLDB database. Two stores on the same database stand
+ * for two IdP instances behind a load balancer without sticky sessions.
+ */
+public class JdbcIdpSessionStoreTest {
+
+    private static final String REALM = "urn:org:apache:cxf:fediz:idp:realm-A";
+    private static final String RP_REALM = "urn:org:apache:cxf:fediz:fedizhelloworld";
+    private static final String RP_ENDPOINT = "https://localhost:8443/fedizhelloworld/secure/fedservlet";
+
+    private static int dbCount;
+
+    private JdbcIdpSessionStore storeA;
+    private JdbcIdpSessionStore storeB;
+
+    @BeforeEach
+    public void setUp() {
+        JDBCDataSource dataSource = new JDBCDataSource();
+        dataSource.setUrl("jdbc:hsqldb:mem:idpsessions" + dbCount++);
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+
+        storeA = createStore(dataSource);
+        storeB = createStore(dataSource);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        storeA.close();
+        storeB.close();
+    }
+
+    @Test
+    public void testSessionSharedBetweenInstances() throws Exception {
+        IdpSession session = new IdpSession().withToken(REALM, createToken("token-1"));
+        storeA.putSession("session1", session);
+
+        IdpSession shared = storeB.getSession("session1");
+        assertNotNull(shared);
+        assertEquals("token-1", shared.getToken(REALM).getId());
+        assertEquals("token-1", shared.getToken(REALM).toSecurityToken().getId());
+        assertNull(storeB.getSession("session2"));
+    }
+
+    @Test
+    public void testUpdateSeenDespiteNearCache() throws Exception {
+        storeA.putSession("session1", new IdpSession().withToken(REALM, createToken("token-1")));
+        assertNotNull(storeB.getSession("session1"));
+        assertEquals(0, storeB.getSession("session1").getActiveApplications().size());
+
+        IdpSession updated = storeA.getSession("session1").withActiveApplication(RP_REALM, RP_ENDPOINT);
+        storeA.putSession("session1", updated);
+
+        IdpSession shared = storeB.getSession("session1");
+        assertEquals(RP_ENDPOINT, shared.getActiveApplications().get(RP_REALM));
+        assertEquals("token-1", shared.getToken(REALM).getId());
+    }
+
+    @Test
+    public void testRemoveSeenDespiteNearCache() throws Exception {
+        storeA.putSession("session1", new IdpSession().withToken(REALM, createToken("token-1")));
+        assertNotNull(storeB.getSession("session1"));
+
+        storeA.removeSession("session1");
+        assertNull(storeA.getSession("session1"));
+        assertNull(storeB.getSession("session1"));
+    }
+
+    @Test
+    public void testExpiredSession() throws Exception {
+        storeA.setMaxInactiveInterval(0);
+        storeA.putSession("session1", new IdpSession().withActiveApplication(RP_REALM, RP_ENDPOINT));
+
+        assertNull(storeA.getSession("session1"));
+        assertNull(storeB.getSession("session1"));
+        assertEquals(1, storeA.sweep());
+    }
+
+    @Test
+    public void testNearCacheEvictsLeastRecentlyUsed() throws Exception {
+        storeB.setNearCacheMaxEntries(1);
+        storeA.putSession("session1", new IdpSession().withActiveApplication(RP_REALM, RP_ENDPOINT));
+        storeA.putSession("session2", new IdpSession().withActiveApplication(RP_REALM, RP_ENDPOINT));
+
+        // Only the session read last is kept in the near-cache of B, the other one is read from the database
+        IdpSession session1 = storeB.getSession("session1");
+        IdpSession session2 = storeB.getSession("session2");
+        assertSame(session2, storeB.getSession("session2"));
+        assertNotSame(session1, storeB.getSession("session1"));
+        assertEquals(RP_ENDPOINT, storeB.getSession("session1").getActiveApplications().get(RP_REALM));
+    }
+
+    private static JdbcIdpSessionStore createStore(JDBCDataSource dataSource) {
+        JdbcIdpSessionStore store = new JdbcIdpSessionStore();
+        store.setDataSource(dataSource);
+        store.setSweepInterval(0);
+        store.init();
+        return store;
+    }
+
+    private static SerializedSecurityToken createToken(String id) throws Exception {
+        String xml = "<saml2:Assertion xmlns:saml2=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"" + id + "\">"
+            + "<saml2:Issuer>" + REALM + "</saml2:Issuer></saml2:Assertion>";
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Element element = factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)))
+            .getDocumentElement();
+        Instant now = Instant.now();
+        SecurityToken token = new SecurityToken(id, now, now.plusSeconds(3600L));
+        token.setToken(element);
+        return SerializedSecurityToken.serialize(token);
+    }
+}
@@ -1,6 +1,7 @@
 <%@ page import="java.util.Map" %>
 <%@ page import="org.apache.cxf.fediz.service.idp.beans.SigninParametersCacheAction" %>
 <%@ page import="org.apache.cxf.fediz.service.idp.domain.Application" %>
+<%@ page import="org.apache.cxf.fediz.service.idp.domain.Idp" %>
 <%@ page import="org.apache.cxf.fediz.core.FederationConstants" %>
 <%@ page import="java.util.List" %>
 <%@ page import="java.util.Iterator" %>
@@ -14,8 +15,10 @@
 <body>
     <%
         @SuppressWarnings("unchecked")
-        Map<String, Application> rcm =
-        (Map<String, Application>) request.getSession().getAttribute(SigninParametersCacheAction.ACTIVE_APPLICATIONS);
+        Map<String, String> realms =
+            (Map<String, String>) request.getAttribute(SigninParametersCacheAction.ACTIVE_APPLICATIONS);
+        List<Application> rcm = realms == null ? null
+            : SigninParametersCacheAction.getActiveApplications((Idp) request.getAttribute("idpConfig"), realms);
     	String wreply = (String) request.getAttribute("wreply");
     	String samlAction = (String) request.getAttribute("SAMLRequest");
 
@@ -28,10 +31,10 @@
 	        <h1>Logout from the following Applications?</h1>
 			<div>	   
     <%
-            Iterator<Map.Entry<String, Application>> iterator = rcm.entrySet().iterator();
+            Iterator<Application> iterator = rcm.iterator();
                 
             while (iterator.hasNext()) {
-                Application next = iterator.next().getValue();
+                Application next = iterator.next();
                 if (next != null) {
     %>
                     <%= next.getServiceDisplayName() %>
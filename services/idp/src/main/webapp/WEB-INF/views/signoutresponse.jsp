@@ -2,6 +2,7 @@
 <%@ page import="java.util.Map" %>
 <%@ page import="org.apache.cxf.fediz.service.idp.beans.SigninParametersCacheAction" %>
 <%@ page import="org.apache.cxf.fediz.service.idp.domain.Application" %>
+<%@ page import="org.apache.cxf.fediz.service.idp.domain.Idp" %>
 <%@ page import="org.apache.cxf.fediz.core.FederationConstants" %>
 <%@ page import="java.util.List" %>
 <%@ page import="java.util.Iterator" %>
@@ -15,8 +16,10 @@
 <body>
     <%
         @SuppressWarnings("unchecked")
-        Map<String, Application> apps =
-                (Map<String, Application>) request.getAttribute(SigninParametersCacheAction.ACTIVE_APPLICATIONS);
+        Map<String, String> realms =
+            (Map<String, String>) request.getAttribute(SigninParametersCacheAction.ACTIVE_APPLICATIONS);
+        List<Application> apps = realms == null ? null
+            : SigninParametersCacheAction.getActiveApplications((Idp) request.getAttribute("idpConfig"), realms);
     	String wreply = (String) request.getAttribute("wreply");
 
         if (apps == null) {
@@ -29,11 +32,12 @@
         
             <p>
     <%
-            Iterator<Map.Entry<String, Application>> iterator = apps.entrySet().iterator();
+            Iterator<Application> iterator = apps.iterator();
             
             while (iterator.hasNext()) {
-                Application next = iterator.next().getValue();
-                if (next != null && "http://docs.oasis-open.org/wsfed/federation/200706".equals(next.getProtocol())) {
+                Application next = iterator.next();
+                if ("http://docs.oasis-open.org/wsfed/federation/200706".equals(next.getProtocol())
+                    && next.getPassiveRequestorEndpoint() != null) {
     %>
                     <%= next.getServiceDisplayName() %> 
                     <img src="<%=next.getPassiveRequestorEndpoint() + "?" + FederationConstants.PARAM_ACTION 
@@ -23,8 +23,12 @@ import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.http.HttpSession;
 import javax.ws.rs.core.MultivaluedMap;
@@ -49,17 +53,21 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.joda.time.DateTime;
 import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Conditions;
 import org.opensaml.saml.saml2.core.Issuer;
 
 
 public class FedizSubjectCreator implements SubjectCreator {
 
     private static final long DEFAULT_TIME_TO_LIVE = 3600L;
+    private static final int DEFAULT_LOGIN_TOKEN_CACHE_SIZE = 10000;
     private static final String ROLES_SCOPE = "roles";
     private boolean stripPathFromIssuerUri;
     private String issuer;
     private Map<String, String> supportedClaims = Collections.emptyMap();
     private long timeToLive;
+    private int loginTokenCacheSize = DEFAULT_LOGIN_TOKEN_CACHE_SIZE;
+    private final ConcurrentMap<String, ConvertedLoginToken> loginTokenCache = new ConcurrentHashMap<>();
 
     @Override
     public OidcUserSubject createUserSubject(MessageContext mc, MultivaluedMap<String, String> params) {
@@ -101,11 +109,10 @@ public class FedizSubjectCreator implements SubjectCreator {
         idToken.setPreferredUserName(subjectName);
         idToken.setSubject(subjectId);
 
-        Assertion saml2Assertion = getSaml2Assertion(samlToken);
+        ConvertedLoginToken loginToken = getConvertedLoginToken(samlToken, claims);
         // authInstant
-        if (saml2Assertion != null && !saml2Assertion.getAuthnStatements().isEmpty()) {
-            DateTime authInstant = saml2Assertion.getAuthnStatements().get(0).getAuthnInstant();
-            idToken.setAuthenticationTime(authInstant.getMillis() / 1000L);
+        if (loginToken.authTime != null) {
+            idToken.setAuthenticationTime(loginToken.authTime);
         }
         // Check if default issuer, issuedAt values have to be set
         if (issuer != null) {
@@ -127,11 +134,8 @@ public class FedizSubjectCreator implements SubjectCreator {
                 realIssuer = issuer;
             }
             idToken.setIssuer(realIssuer);
-        } else if (saml2Assertion != null) {
-            Issuer assertionIssuer = saml2Assertion.getIssuer();
-            if (assertionIssuer != null) {
-                idToken.setIssuer(assertionIssuer.getValue());
-            }
+        } else if (loginToken.issuer != null) {
+            idToken.setIssuer(loginToken.issuer);
         }
 
         idToken.setTokenId(OAuthUtils.generateRandomTokenKey());
@@ -169,29 +173,21 @@ public class FedizSubjectCreator implements SubjectCreator {
         }
 
         // Map claims
-        if (claims != null) {
-            String firstName = null;
-            String lastName = null;
-            for (Claim c : claims) {
-                if (!(c.getValue() instanceof String)) {
-                    continue;
-                }
-                if (ClaimTypes.FIRSTNAME.equals(c.getClaimType())) {
-                    idToken.setGivenName((String) c.getValue());
-                    firstName = (String) c.getValue();
-                } else if (ClaimTypes.LASTNAME.equals(c.getClaimType())) {
-                    idToken.setFamilyName((String) c.getValue());
-                    lastName = (String) c.getValue();
-                } else if (ClaimTypes.EMAILADDRESS.equals(c.getClaimType())) {
-                    idToken.setEmail((String) c.getValue());
-                } else if (supportedClaims.containsKey(c.getClaimType().toString())
-                        && requestedClaimsList.contains(supportedClaims.get(c.getClaimType().toString()))) {
-                    idToken.setClaim(supportedClaims.get(c.getClaimType().toString()), c.getValue());
-                }
-
-            }
-            if (firstName != null && lastName != null) {
-                idToken.setName(firstName + " " + lastName);
+        if (loginToken.givenName != null) {
+            idToken.setGivenName(loginToken.givenName);
+        }
+        if (loginToken.familyName != null) {
+            idToken.setFamilyName(loginToken.familyName);
+        }
+        if (loginToken.email != null) {
+            idToken.setEmail(loginToken.email);
+        }
+        if (loginToken.givenName != null && loginToken.familyName != null) {
+            idToken.setName(loginToken.givenName + " " + loginToken.familyName);
+        }
+        for (Map.Entry<String, Object> entry : loginToken.supportedClaimValues.entrySet()) {
+            if (requestedClaimsList.contains(entry.getKey())) {
+                idToken.setClaim(entry.getKey(), entry.getValue());
             }
         }
 
@@ -219,6 +215,102 @@ public class FedizSubjectCreator implements SubjectCreator {
 
     }
 
+    /**
+     * Get the client independent part of the IdToken for the given login token. The conversion result
+     * is cached per login token id until the login token expires, so that users re-authorizing
+     * several clients with the same login token do not pay for the SAML parsing and claims walk again.
+     */
+    private ConvertedLoginToken getConvertedLoginToken(Element samlToken, ClaimCollection claims) {
+        String tokenId = getLoginTokenId(samlToken);
+        if (tokenId == null || loginTokenCacheSize <= 0) {
+            return convertLoginToken(samlToken, claims);
+        }
+
+        final long now = System.currentTimeMillis();
+        ConvertedLoginToken loginToken = loginTokenCache.get(tokenId);
+        if (loginToken != null && loginToken.expires > now) {
+            return loginToken;
+        }
+
+        loginToken = convertLoginToken(samlToken, claims);
+        if (loginTokenCache.size() >= loginTokenCacheSize) {
+            purgeExpiredLoginTokens(now);
+        }
+        if (loginTokenCache.size() < loginTokenCacheSize) {
+            loginTokenCache.put(tokenId, loginToken);
+        }
+        return loginToken;
+    }
+
+    private static String getStringClaimValue(ClaimCollection claims, String claimType) {
+        Claim c = claims.getClaim(claimType);
+        return c != null && c.getValue() instanceof String ? (String) c.getValue() : null;
+    }
+
+    private void purgeExpiredLoginTokens(long now) {
+        for (Iterator<ConvertedLoginToken> it = loginTokenCache.values().iterator(); it.hasNext();) {
+            if (it.next().expires <= now) {
+                it.remove();
+            }
+        }
+    }
+
+    private static String getLoginTokenId(Element samlToken) {
+        if (samlToken == null) {
+            return null;
+        }
+        // SAML 2.0 uses "ID", SAML 1.1 uses "AssertionID"
+        String id = samlToken.getAttributeNS(null, "ID");
+        if (id.isEmpty()) {
+            id = samlToken.getAttributeNS(null, "AssertionID");
+        }
+        return id.isEmpty() ? null : id;
+    }
+
+    private ConvertedLoginToken convertLoginToken(Element samlToken, ClaimCollection claims) {
+        ConvertedLoginToken loginToken = new ConvertedLoginToken();
+
+        Assertion saml2Assertion = getSaml2Assertion(samlToken);
+        if (saml2Assertion != null) {
+            if (!saml2Assertion.getAuthnStatements().isEmpty()) {
+                DateTime authInstant = saml2Assertion.getAuthnStatements().get(0).getAuthnInstant();
+                loginToken.authTime = authInstant.getMillis() / 1000L;
+            }
+            Issuer assertionIssuer = saml2Assertion.getIssuer();
+            if (assertionIssuer != null) {
+                loginToken.issuer = assertionIssuer.getValue();
+            }
+        }
+
+        if (claims != null) {
+            loginToken.givenName = getStringClaimValue(claims, ClaimTypes.FIRSTNAME.toString());
+            loginToken.familyName = getStringClaimValue(claims, ClaimTypes.LASTNAME.toString());
+            loginToken.email = getStringClaimValue(claims, ClaimTypes.EMAILADDRESS.toString());
+            for (Map.Entry<String, String> supportedClaim : supportedClaims.entrySet()) {
+                String claimType = supportedClaim.getKey();
+                if (ClaimTypes.FIRSTNAME.toString().equals(claimType)
+                    || ClaimTypes.LASTNAME.toString().equals(claimType)
+                    || ClaimTypes.EMAILADDRESS.toString().equals(claimType)) {
+                    continue;
+                }
+                String value = getStringClaimValue(claims, claimType);
+                if (value != null) {
+                    loginToken.supportedClaimValues.put(supportedClaim.getValue(), value);
+                }
+            }
+        }
+
+        // The converted claims are valid as long as the login token itself
+        final long now = System.currentTimeMillis();
+        Conditions conditions = saml2Assertion != null ? saml2Assertion.getConditions() : null;
+        if (conditions != null && conditions.getNotOnOrAfter() != null) {
+            loginToken.expires = conditions.getNotOnOrAfter().getMillis();
+        } else {
+            loginToken.expires = now + (timeToLive > 0 ? timeToLive : DEFAULT_TIME_TO_LIVE) * 1000L;
+        }
+        return loginToken;
+    }
+
     private Assertion getSaml2Assertion(Element samlToken) {
         // Should a null assertion lead to the exception ?
         try {
@@ -243,6 +335,7 @@ public class FedizSubjectCreator implements SubjectCreator {
      */
     public void setSupportedClaims(Map<String, String> supportedClaims) {
         this.supportedClaims = supportedClaims;
+        loginTokenCache.clear();
     }
 
     public void setStripPathFromIssuerUri(boolean stripPathFromIssuerUri) {
@@ -263,4 +356,30 @@ public class FedizSubjectCreator implements SubjectCreator {
     public void setTimeToLive(long timeToLive) {
         this.timeToLive = timeToLive;
     }
+
+    /**
+     * Maximum number of converted login tokens to keep in memory. The claims derived from a login token
+     * are cached per token id for the lifetime of the token. A value of 0 disables the cache.
+     *
+     * @param loginTokenCacheSize the maximum number of cached login tokens
+     */
+    public void setLoginTokenCacheSize(int loginTokenCacheSize) {
+        this.loginTokenCacheSize = loginTokenCacheSize;
+        if (loginTokenCacheSize <= 0) {
+            loginTokenCache.clear();
+        }
+    }
+
+    /**
+     * The client independent claims derived from a login token.
+     */
+    private static final class ConvertedLoginToken {
+        private Long authTime;
+        private String issuer;
+        private String givenName;
+        private String familyName;
+        private String email;
+        private final Map<String, Object> supportedClaimValues = new LinkedHashMap<>();
+        private long expires;
+    }
 }
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.oidc;
+
+import java.util.List;
+
+import org.apache.cxf.fediz.service.oidc.JdbcTokenStore.TokenType;
+import org.apache.cxf.rs.security.oauth2.common.Client;
+import org.apache.cxf.rs.security.oauth2.common.ServerAccessToken;
+import org.apache.cxf.rs.security.oauth2.common.UserSubject;
+import org.apache.cxf.rs.security.oauth2.grants.code.ServerAuthorizationCodeGrant;
+import org.apache.cxf.rs.security.oauth2.provider.OAuthServiceException;
+import org.apache.cxf.rs.security.oauth2.tokens.refresh.RefreshToken;
+
+/**
+ * An OAuthDataProviderImpl which keeps authorization codes, access tokens and refresh tokens in a
+ * database (see {@link JdbcTokenStore}) rather than in JVM local caches, so that they survive a restart
+ * and are shared by all nodes using the same database. Clients are still managed by the JCache provider.
+ */
+public class JdbcOAuthDataProviderImpl extends OAuthDataProviderImpl {
+
+    private JdbcTokenStore tokenStore;
+
+    @Override
+    protected void saveCodeGrant(ServerAuthorizationCodeGrant grant) {
+        tokenStore.store(TokenType.CODE, grant.getCode(), getClientId(grant.getClient()),
+                         getLogin(grant.getSubject()), getExpiresAt(grant.getIssuedAt(), grant.getExpiresIn()),
+                         grant);
+    }
+
+    @Override
+    public ServerAuthorizationCodeGrant removeCodeGrant(String code) throws OAuthServiceException {
+        return tokenStore.remove(TokenType.CODE, code, ServerAuthorizationCodeGrant.class);
+    }
+
+    @Override
+    public List<ServerAuthorizationCodeGrant> getCodeGrants(Client c, UserSubject sub) {
+        return tokenStore.list(TokenType.CODE, getClientId(c), getLogin(sub), ServerAuthorizationCodeGrant.class);
+    }
+
+    @Override
+    protected void saveAccessToken(ServerAccessToken serverToken) {
+        tokenStore.store(TokenType.ACCESS, serverToken.getTokenKey(), getClientId(serverToken.getClient()),
+                         getLogin(serverToken.getSubject()),
+                         getExpiresAt(serverToken.getIssuedAt(), serverToken.getExpiresIn()), serverToken);
+    }
+
+    @Override
+    public ServerAccessToken getAccessToken(String accessToken) throws OAuthServiceException {
+        return tokenStore.get(TokenType.ACCESS, accessToken, ServerAccessToken.class);
+    }
+
+    @Override
+    protected void doRevokeAccessToken(ServerAccessToken at) {
+        tokenStore.remove(TokenType.ACCESS, at.getTokenKey(), ServerAccessToken.class);
+    }
+
+    @Override
+    public List<ServerAccessToken> getAccessTokens(Client c, UserSubject sub) {
+        return tokenStore.list(TokenType.ACCESS, getClientId(c), getLogin(sub), ServerAccessToken.class);
+    }
+
+    @Override
+    protected void saveRefreshToken(RefreshToken refreshToken) {
+        tokenStore.store(TokenType.REFRESH, refreshToken.getTokenKey(), getClientId(refreshToken.getClient()),
+                         getLogin(refreshToken.getSubject()),
+                         getExpiresAt(refreshToken.getIssuedAt(), refreshToken.getExpiresIn()), refreshToken);
+    }
+
+    @Override
+    protected RefreshToken getRefreshToken(String refreshTokenKey) {
+        return tokenStore.get(TokenType.REFRESH, refreshTokenKey, RefreshToken.class);
+    }
+
+    @Override
+    protected void doRevokeRefreshToken(RefreshToken rt) {
+        tokenStore.remove(TokenType.REFRESH, rt.getTokenKey(), RefreshToken.class);
+    }
+
+    @Override
+    public List<RefreshToken> getRefreshTokens(Client c, UserSubject sub) {
+        return tokenStore.list(TokenType.REFRESH, getClientId(c), getLogin(sub), RefreshToken.class);
+    }
+
+    private static String getClientId(Client c) {
+        return c != null ? c.getClientId() : null;
+    }
+
+    private static String getLogin(UserSubject sub) {
+        return sub != null ? sub.getLogin() : null;
+    }
+
+    /**
+     * Artifacts with a non-positive lifetime never expire.
+     */
+    private static long getExpiresAt(long issuedAt, long expiresIn) {
+        return expiresIn > 0 ? (issuedAt + expiresIn) * 1000L : Long.MAX_VALUE;
+    }
+
+    public JdbcTokenStore getTokenStore() {
+        return tokenStore;
+    }
+
+    public void setTokenStore(JdbcTokenStore tokenStore) {
+        this.tokenStore = tokenStore;
+    }
+}
@@ -0,0 +1,559 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.oidc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.rs.security.oauth2.provider.OAuthServiceException;
+
+/**
+ * A JDBC store for OAuth artifacts (authorization codes, access and refresh tokens).
+ *
+ * Writes issued concurrently are grouped into a single JDBC batch ("group commit"): every writer enqueues
+ * its row and the first writer to get hold of the write lock flushes up to batchSize queued rows in one
+ * transaction. A write is committed when the call returns, so the artifact is immediately visible to other
+ * nodes sharing the database. If the batch fails, its rows are inserted one at a time, so that a bad row (e.g. a
+ * duplicate key) only fails its own write.
+ *
+ * All rows carry their expiry time in an indexed column. A background sweeper deletes expired rows in
+ * chunks, oldest first, in its own transactions so that the request path is never blocked by it.
+ */
+public class JdbcTokenStore {
+
+    public static final String DEFAULT_TABLE_NAME = "FEDIZ_OIDC_TOKENS";
+
+    public enum TokenType {
+        CODE,
+        ACCESS,
+        REFRESH
+    }
+
+    private static final Logger LOG = LogUtils.getL7dLogger(JdbcTokenStore.class);
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_SWEEP_CHUNK_SIZE = 500;
+    private static final long DEFAULT_SWEEP_INTERVAL = 60L;
+
+    private final Queue<PendingWrite> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final Object writeLock = new Object();
+
+    private DataSource dataSource;
+    private String tableName = DEFAULT_TABLE_NAME;
+    private boolean createSchema = true;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int sweepChunkSize = DEFAULT_SWEEP_CHUNK_SIZE;
+    private long sweepInterval = DEFAULT_SWEEP_INTERVAL;
+    private ScheduledExecutorService sweeper;
+
+    private String insertSql;
+    private String selectSql;
+    private String deleteSql;
+    private String selectByClientSql;
+    private String selectBySubjectSql;
+    private String selectByClientAndSubjectSql;
+    private String selectExpiredSql;
+
+    public void init() {
+        if (dataSource == null) {
+            throw new IllegalStateException("No DataSource configured");
+        }
+        insertSql = "INSERT INTO " + tableName
+            + " (TOKEN_TYPE, TOKEN_KEY, CLIENT_ID, SUBJECT, EXPIRES_AT, TOKEN_DATA) VALUES (?, ?, ?, ?, ?, ?)";
+        selectSql = "SELECT TOKEN_DATA FROM " + tableName
+            + " WHERE TOKEN_TYPE = ? AND TOKEN_KEY = ? AND EXPIRES_AT > ?";
+        deleteSql = "DELETE FROM " + tableName + " WHERE TOKEN_TYPE = ? AND TOKEN_KEY = ?";
+        String selectList = "SELECT TOKEN_DATA FROM " + tableName + " WHERE TOKEN_TYPE = ? AND EXPIRES_AT > ?";
+        selectByClientSql = selectList + " AND CLIENT_ID = ?";
+        selectBySubjectSql = selectList + " AND SUBJECT = ?";
+        selectByClientAndSubjectSql = selectList + " AND CLIENT_ID = ? AND SUBJECT = ?";
+        selectExpiredSql = "SELECT TOKEN_TYPE, TOKEN_KEY FROM " + tableName
+            + " WHERE EXPIRES_AT <= ? ORDER BY EXPIRES_AT";
+
+        if (createSchema) {
+            createSchema();
+        }
+
+        if (sweepInterval > 0) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "fediz-oidc-token-sweeper");
+                t.setDaemon(true);
+                return t;
+            });
+            sweeper.scheduleWithFixedDelay(this::sweepQuietly, sweepInterval, sweepInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+            sweeper = null;
+        }
+    }
+
+    /**
+     * Store an artifact. The expiry time is in milliseconds since the epoch.
+     */
+    public void store(TokenType type, String key, String clientId, String subject, long expiresAt,
+                      Serializable data) {
+        PendingWrite write = new PendingWrite(type, key, clientId, subject, expiresAt, serialize(data));
+        pendingWrites.add(write);
+        while (!write.done) {
+            synchronized (writeLock) {
+                if (!write.done) {
+                    flushPendingWrites();
+                }
+            }
+        }
+        if (write.failure != null) {
+            throw new OAuthServiceException("Error storing the " + type + " token", write.failure);
+        }
+    }
+
+    public <T> T get(TokenType type, String key, Class<T> cls) {
+        try (Connection con = dataSource.getConnection();
+            PreparedStatement ps = con.prepareStatement(selectSql)) {
+            ps.setString(1, type.name());
+            ps.setString(2, key);
+            ps.setLong(3, System.currentTimeMillis());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? deserialize(rs.getBytes(1), cls) : null;
+            }
+        } catch (SQLException ex) {
+            throw new OAuthServiceException("Error reading the " + type + " token", ex);
+        }
+    }
+
+    /**
+     * Remove an artifact and return it. Only one of several concurrent callers (also across nodes)
+     * gets the artifact back, which makes it safe to use for one-time artifacts such as authorization codes.
+     */
+    public <T> T remove(TokenType type, String key, Class<T> cls) {
+        try (Connection con = dataSource.getConnection()) {
+            T data = null;
+            try (PreparedStatement ps = con.prepareStatement(selectSql)) {
+                ps.setString(1, type.name());
+                ps.setString(2, key);
+                ps.setLong(3, System.currentTimeMillis());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        data = deserialize(rs.getBytes(1), cls);
+                    }
+                }
+            }
+            try (PreparedStatement ps = con.prepareStatement(deleteSql)) {
+                ps.setString(1, type.name());
+                ps.setString(2, key);
+                return ps.executeUpdate() > 0 ? data : null;
+            }
+        } catch (SQLException ex) {
+            throw new OAuthServiceException("Error removing the " + type + " token", ex);
+        }
+    }
+
+    /**
+     * List the unexpired artifacts of the given type, optionally restricted to a client and/or a subject.
+     */
+    public <T> List<T> list(TokenType type, String clientId, String subject, Class<T> cls) {
+        final String sql;
+        if (clientId != null && subject != null) {
+            sql = selectByClientAndSubjectSql;
+        } else if (clientId != null) {
+            sql = selectByClientSql;
+        } else if (subject != null) {
+            sql = selectBySubjectSql;
+        } else {
+            sql = "SELECT TOKEN_DATA FROM " + tableName + " WHERE TOKEN_TYPE = ? AND EXPIRES_AT > ?";
+        }
+
+        List<T> result = new ArrayList<>();
+        try (Connection con = dataSource.getConnection();
+            PreparedStatement ps = con.prepareStatement(sql)) {
+            int index = 1;
+            ps.setString(index++, type.name());
+            ps.setLong(index++, System.currentTimeMillis());
+            if (clientId != null) {
+                ps.setString(index++, clientId);
+            }
+            if (subject != null) {
+                ps.setString(index, subject);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    result.add(deserialize(rs.getBytes(1), cls));
+                }
+            }
+        } catch (SQLException ex) {
+            throw new OAuthServiceException("Error reading the " + type + " tokens", ex);
+        }
+        return result;
+    }
+
+    /**
+     * Delete the expired rows, oldest first, in transactions of at most sweepChunkSize rows.
+     *
+     * @return the number of deleted rows
+     */
+    public int sweep() throws SQLException {
+        int deleted = 0;
+        final long now = System.currentTimeMillis();
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            try {
+                int chunk;
+                do {
+                    chunk = sweepChunk(con, now);
+                    con.commit();
+                    deleted += chunk;
+                } while (chunk == sweepChunkSize && !Thread.currentThread().isInterrupted());
+            } catch (SQLException ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        }
+        return deleted;
+    }
+
+    private int sweepChunk(Connection con, long now) throws SQLException {
+        List<String[]> expired = new ArrayList<>();
+        try (PreparedStatement ps = con.prepareStatement(selectExpiredSql)) {
+            ps.setLong(1, now);
+            ps.setMaxRows(sweepChunkSize);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    expired.add(new String[] {rs.getString(1), rs.getString(2)});
+                }
+            }
+        }
+        if (expired.isEmpty()) {
+            return 0;
+        }
+        try (PreparedStatement ps = con.prepareStatement(deleteSql)) {
+            for (String[] row : expired) {
+                ps.setString(1, row[0]);
+                ps.setString(2, row[1]);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        return expired.size();
+    }
+
+    private void sweepQuietly() {
+        try {
+            int deleted = sweep();
+            if (deleted > 0 && LOG.isLoggable(Level.FINE)) {
+                LOG.fine("Deleted " + deleted + " expired tokens from " + tableName);
+            }
+        } catch (Exception ex) {
+            LOG.log(Level.WARNING, "Error deleting expired tokens from " + tableName, ex);
+        }
+    }
+
+    private void flushPendingWrites() {
+        List<PendingWrite> batch = new ArrayList<>();
+        PendingWrite write;
+        while (batch.size() < batchSize && (write = pendingWrites.poll()) != null) {
+            batch.add(write);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try (Connection con = dataSource.getConnection()) {
+            SQLException failure = insertBatch(con, batch);
+            if (failure != null && batch.size() > 1) {
+                // A single bad row (e.g. a duplicate key) fails the whole batch, so the rows are inserted one at a
+                // time and only the offending writes fail
+                for (PendingWrite w : batch) {
+                    w.failure = insert(con, w);
+                }
+            } else {
+                for (PendingWrite w : batch) {
+                    w.failure = failure;
+                }
+            }
+        } catch (SQLException ex) {
+            for (PendingWrite w : batch) {
+                w.failure = ex;
+            }
+        }
+
+        for (PendingWrite w : batch) {
+            w.done = true;
+        }
+    }
+
+    /**
+     * Insert the rows in a single transaction.
+     *
+     * @return the failure of the batch, or null if all rows were committed
+     */
+    private SQLException insertBatch(Connection con, List<PendingWrite> batch) throws SQLException {
+        con.setAutoCommit(false);
+        try (PreparedStatement ps = con.prepareStatement(insertSql)) {
+            for (PendingWrite w : batch) {
+                setParameters(ps, w);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            con.commit();
+            return null;
+        } catch (SQLException ex) {
+            con.rollback();
+            return ex;
+        } finally {
+            con.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Insert a single row (with auto-commit).
+     *
+     * @return the failure of the insert, or null if the row was committed
+     */
+    private SQLException insert(Connection con, PendingWrite write) {
+        try (PreparedStatement ps = con.prepareStatement(insertSql)) {
+            setParameters(ps, write);
+            ps.executeUpdate();
+            return null;
+        } catch (SQLException ex) {
+            return ex;
+        }
+    }
+
+    private static void setParameters(PreparedStatement ps, PendingWrite write) throws SQLException {
+        ps.setString(1, write.type.name());
+        ps.setString(2, write.key);
+        ps.setString(3, write.clientId);
+        ps.setString(4, write.subject);
+        ps.setLong(5, write.expiresAt);
+        ps.setBytes(6, write.data);
+    }
+
+    private void createSchema() {
+        try (Connection con = dataSource.getConnection()) {
+            DatabaseMetaData metaData = con.getMetaData();
+            try (ResultSet rs = metaData.getTables(null, null, tableName, null)) {
+                if (rs.next()) {
+                    return;
+                }
+            }
+            try (Statement st = con.createStatement()) {
+                st.execute("CREATE TABLE " + tableName + " ("
+                    + "TOKEN_TYPE VARCHAR(16) NOT NULL, "
+                    + "TOKEN_KEY VARCHAR(255) NOT NULL, "
+                    + "CLIENT_ID VARCHAR(255), "
+                    + "SUBJECT VARCHAR(255), "
+                    + "EXPIRES_AT BIGINT NOT NULL, "
+                    + "TOKEN_DATA VARBINARY(32000) NOT NULL, "
+                    + "PRIMARY KEY (TOKEN_TYPE, TOKEN_KEY))");
+                st.execute("CREATE INDEX " + tableName + "_EXP ON " + tableName + " (EXPIRES_AT)");
+                st.execute("CREATE INDEX " + tableName + "_CLIENT ON " + tableName + " (CLIENT_ID)");
+                st.execute("CREATE INDEX " + tableName + "_SUBJECT ON " + tableName + " (SUBJECT)");
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Error creating the token table " + tableName, ex);
+        }
+    }
+
+    private static byte[] serialize(Serializable data) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(data);
+        } catch (IOException ex) {
+            throw new OAuthServiceException("Error serializing the token", ex);
+        }
+        return bos.toByteArray();
+    }
+
+    private static <T> T deserialize(byte[] data, Class<T> cls) {
+        try (ObjectInputStream ois = new TokenObjectInputStream(new ByteArrayInputStream(data))) {
+            return cls.cast(ois.readObject());
+        } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            throw new OAuthServiceException("Error deserializing the token", ex);
+        }
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
+    /**
+     * Whether to create the token table and its indexes on startup if the table doesn't exist yet.
+     * The default is true.
+     */
+    public void setCreateSchema(boolean createSchema) {
+        this.createSchema = createSchema;
+    }
+
+    /**
+     * The maximum number of queued writes committed in a single JDBC batch. The default is 100.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * The maximum number of expired rows deleted per sweeper transaction. The default is 500.
+     */
+    public void setSweepChunkSize(int sweepChunkSize) {
+        this.sweepChunkSize = sweepChunkSize;
+    }
+
+    /**
+     * The delay in seconds between two runs of the expired token sweeper. The default is 60 seconds,
+     * a value of 0 disables the sweeper.
+     */
+    public void setSweepInterval(long sweepInterval) {
+        this.sweepInterval = sweepInterval;
+    }
+
+    private static final class PendingWrite {
+        private final TokenType type;
+        private final String key;
+        private final String clientId;
+        private final String subject;
+        private final long expiresAt;
+        private final byte[] data;
+        private volatile SQLException failure;
+        private volatile boolean done;
+
+        PendingWrite(TokenType type, String key, String clientId, String subject, long expiresAt, byte[] data) {
+            this.type = type;
+            this.key = key;
+            this.clientId = clientId;
+            this.subject = subject;
+            this.expiresAt = expiresAt;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Only resolves the classes that make up the stored OAuth artifacts (grants, access and refresh tokens with
+     * their client, subject, permissions and OIDC claims), and the collection and value classes they hold.
+     */
+    private static final class TokenObjectInputStream extends ObjectInputStream {
+
+        private static final Set<String> ALLOWED_CLASSES = new HashSet<>(Arrays.asList(
+            // OAuth artifacts
+            "org.apache.cxf.rs.security.oauth2.common.AccessToken",
+            "org.apache.cxf.rs.security.oauth2.common.ServerAccessToken",
+            "org.apache.cxf.rs.security.oauth2.tokens.bearer.BearerAccessToken",
+            "org.apache.cxf.rs.security.oauth2.tokens.refresh.RefreshToken",
+            "org.apache.cxf.rs.security.oauth2.grants.code.AuthorizationCodeGrant",
+            "org.apache.cxf.rs.security.oauth2.grants.code.ServerAuthorizationCodeGrant",
+            "org.apache.cxf.rs.security.oauth2.common.Client",
+            "org.apache.cxf.rs.security.oauth2.common.UserSubject",
+            "org.apache.cxf.rs.security.oauth2.common.AuthenticationMethod",
+            "org.apache.cxf.rs.security.oauth2.common.Permission",
+            "org.apache.cxf.rs.security.oauth2.common.OAuthPermission",
+            "org.apache.cxf.rs.security.oidc.idp.OidcUserSubject",
+            "org.apache.cxf.rs.security.oidc.common.IdToken",
+            "org.apache.cxf.rs.security.oidc.common.AbstractUserInfo",
+            "org.apache.cxf.rs.security.oidc.common.UserInfo",
+            "org.apache.cxf.rs.security.jose.jwt.JwtClaims",
+            "org.apache.cxf.jaxrs.json.basic.JsonMapObject",
+            // Values and collections
+            "java.lang.Boolean",
+            "java.lang.Double",
+            "java.lang.Enum",
+            "java.lang.Integer",
+            "java.lang.Long",
+            "java.lang.Number",
+            "java.util.ArrayList",
+            "java.util.Arrays$ArrayList",
+            "java.util.Collections$EmptyList",
+            "java.util.Collections$EmptyMap",
+            "java.util.Collections$SingletonList",
+            "java.util.Collections$UnmodifiableCollection",
+            "java.util.Collections$UnmodifiableList",
+            "java.util.Collections$UnmodifiableMap",
+            "java.util.Collections$UnmodifiableRandomAccessList",
+            "java.util.HashMap",
+            "java.util.HashSet",
+            "java.util.LinkedHashMap",
+            "java.util.LinkedHashSet",
+            "java.util.LinkedList",
+            "java.util.TreeMap",
+            // The backing arrays of Arrays.asList(...)
+            "[Ljava.lang.Object;",
+            "[Ljava.lang.String;"));
+
+        TokenObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            if (!ALLOWED_CLASSES.contains(name)) {
+                throw new InvalidClassException(name, "Unexpected class in a stored token");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("Unexpected proxy class in a stored token");
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.oidc;
+
+import java.io.StringReader;
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.SecurityContext;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+import org.apache.cxf.fediz.core.Claim;
+import org.apache.cxf.fediz.core.ClaimCollection;
+import org.apache.cxf.fediz.core.ClaimTypes;
+import org.apache.cxf.fediz.core.FedizPrincipal;
+import org.apache.cxf.jaxrs.ext.MessageContext;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Some tests for the cache of the claims converted from a login token in the FedizSubjectCreator. A cache hit is
+ * detected by changing the claims of the principal while the login token stays the same.
+ */
+public class FedizSubjectCreatorTest {
+
+    private static final String ISSUER = "urn:org:apache:cxf:fediz:idp:realm-A";
+
+    @Test
+    public void testCachedLoginToken() throws Exception {
+        FedizSubjectCreator subjectCreator = new FedizSubjectCreator();
+        Element loginToken = createLoginToken("_token1", Instant.now().plusSeconds(3600L));
+
+        assertEquals("Alice", getGivenName(subjectCreator, loginToken, "Alice"));
+        // Converted once, the claims of the same login token come from the cache
+        assertEquals("Alice", getGivenName(subjectCreator, loginToken, "Bob"));
+        Element otherLoginToken = createLoginToken("_token2", Instant.now().plusSeconds(3600L));
+        assertEquals("Bob", getGivenName(subjectCreator, otherLoginToken, "Bob"));
+    }
+
+    @Test
+    public void testExpiredLoginTokenNotCached() throws Exception {
+        FedizSubjectCreator subjectCreator = new FedizSubjectCreator();
+        Element loginToken = createLoginToken("_token1", Instant.now().minusSeconds(60L));
+
+        assertEquals("Alice", getGivenName(subjectCreator, loginToken, "Alice"));
+        assertEquals("Bob", getGivenName(subjectCreator, loginToken, "Bob"));
+    }
+
+    @Test
+    public void testLoginTokenCacheSize() throws Exception {
+        FedizSubjectCreator subjectCreator = new FedizSubjectCreator();
+        subjectCreator.setLoginTokenCacheSize(1);
+        Element loginToken1 = createLoginToken("_token1", Instant.now().plusSeconds(3600L));
+        Element loginToken2 = createLoginToken("_token2", Instant.now().plusSeconds(3600L));
+
+        assertEquals("Alice", getGivenName(subjectCreator, loginToken1, "Alice"));
+        // The cache is full, so the second login token is converted every time
+        assertEquals("Alice", getGivenName(subjectCreator, loginToken2, "Alice"));
+        assertEquals("Bob", getGivenName(subjectCreator, loginToken2, "Bob"));
+        assertEquals("Alice", getGivenName(subjectCreator, loginToken1, "Bob"));
+
+        // A size of 0 disables the cache
+        subjectCreator.setLoginTokenCacheSize(0);
+        assertEquals("Bob", getGivenName(subjectCreator, loginToken1, "Bob"));
+    }
+
+    private static String getGivenName(FedizSubjectCreator subjectCreator, Element loginToken, String givenName) {
+        Claim claim = new Claim();
+        claim.setClaimType(ClaimTypes.FIRSTNAME);
+        claim.setValue(givenName);
+        ClaimCollection claims = new ClaimCollection(Collections.singletonList(claim));
+
+        FedizPrincipal principal = new FedizPrincipal() {
+            @Override
+            public String getName() {
+                return "alice";
+            }
+
+            @Override
+            public ClaimCollection getClaims() {
+                return claims;
+            }
+
+            @Override
+            public Element getLoginToken() {
+                return loginToken;
+            }
+
+            @Override
+            public List<String> getRoleClaims() {
+                return Collections.emptyList();
+            }
+        };
+
+        return subjectCreator.createUserSubject(createMessageContext(principal), new MultivaluedHashMap<>())
+            .getIdToken().getGivenName();
+    }
+
+    private static MessageContext createMessageContext(FedizPrincipal principal) {
+        SecurityContext securityContext = proxy(SecurityContext.class, "getUserPrincipal", principal);
+        HttpServletRequest request = proxy(HttpServletRequest.class, "getSession", null);
+        return proxy(MessageContext.class, "getSecurityContext", securityContext, "getHttpServletRequest", request);
+    }
+
+    /**
+     * A proxy of the interface that returns the given values of the methods (name, value pairs) and null otherwise.
+     */
+    private static <T> T proxy(Class<T> cls, Object... methodValues) {
+        return cls.cast(Proxy.newProxyInstance(FedizSubjectCreatorTest.class.getClassLoader(), new Class<?>[] {cls},
+            (p, method, args) -> {
+                for (int i = 0; i < methodValues.length; i += 2) {
+                    if (method.getName().equals(methodValues[i])) {
+                        return methodValues[i + 1];
+                    }
+                }
+                return null;
+            }));
+    }
+
+    private static Element createLoginToken(String id, Instant notOnOrAfter) throws Exception {
+        Instant issueInstant = notOnOrAfter.minusSeconds(3600L);
+        String xml = "<saml2:Assertion xmlns:saml2=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"" + id
+            + "\" IssueInstant=\"" + issueInstant + "\" Version=\"2.0\">"
+            + "<saml2:Issuer>" + ISSUER + "</saml2:Issuer>"
+            + "<saml2:Conditions NotBefore=\"" + issueInstant + "\" NotOnOrAfter=\"" + notOnOrAfter + "\"/>"
+            + "<saml2:AuthnStatement AuthnInstant=\"" + issueInstant + "\">"
+            + "<saml2:AuthnContext><saml2:AuthnContextClassRef>"
+            + "urn:oasis:names:tc:SAML:2.0:ac:classes:PasswordProtectedTransport"
+            + "</saml2:AuthnContextClassRef></saml2:AuthnContext></saml2:AuthnStatement>"
+            + "</saml2:Assertion>";
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml))).getDocumentElement();
+    }
+}
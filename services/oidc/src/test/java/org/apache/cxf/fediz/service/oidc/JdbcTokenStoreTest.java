@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.oidc;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.cxf.fediz.service.oidc.JdbcTokenStore.TokenType;
+import org.apache.cxf.rs.security.oauth2.common.Client;
+import org.apache.cxf.rs.security.oauth2.common.ServerAccessToken;
+import org.apache.cxf.rs.security.oauth2.common.UserSubject;
+import org.apache.cxf.rs.security.oauth2.provider.OAuthServiceException;
+import org.apache.cxf.rs.security.oauth2.tokens.bearer.BearerAccessToken;
+import org.hsqldb.jdbc.JDBCDataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some tests for the JdbcTokenStore using an embedded HSQLDB database.
+ */
+public class JdbcTokenStoreTest {
+
+    private static int dbCount;
+
+    private JdbcTokenStore store;
+
+    @BeforeEach
+    public void setUp() {
+        JDBCDataSource dataSource = new JDBCDataSource();
+        dataSource.setUrl("jdbc:hsqldb:mem:oidctokens" + dbCount++);
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+
+        store = new JdbcTokenStore();
+        store.setDataSource(dataSource);
+        store.setSweepInterval(0);
+        store.setSweepChunkSize(2);
+        store.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void testStoreAndGet() {
+        ServerAccessToken token = createToken("alice", 3600L);
+        store.store(TokenType.ACCESS, token.getTokenKey(), "client1", "alice", expiresAt(token), token);
+
+        ServerAccessToken stored = store.get(TokenType.ACCESS, token.getTokenKey(), ServerAccessToken.class);
+        assertNotNull(stored);
+        assertEquals(token.getTokenKey(), stored.getTokenKey());
+        assertEquals("alice", stored.getSubject().getLogin());
+        assertEquals("client1", stored.getClient().getClientId());
+
+        // Same key, but a different artifact type
+        assertNull(store.get(TokenType.REFRESH, token.getTokenKey(), ServerAccessToken.class));
+    }
+
+    @Test
+    public void testRemoveOnlyOnce() {
+        ServerAccessToken token = createToken("alice", 3600L);
+        store.store(TokenType.CODE, token.getTokenKey(), "client1", "alice", expiresAt(token), token);
+
+        assertNotNull(store.remove(TokenType.CODE, token.getTokenKey(), ServerAccessToken.class));
+        assertNull(store.remove(TokenType.CODE, token.getTokenKey(), ServerAccessToken.class));
+        assertNull(store.get(TokenType.CODE, token.getTokenKey(), ServerAccessToken.class));
+    }
+
+    @Test
+    public void testList() {
+        for (String user : new String[] {"alice", "bob", "alice"}) {
+            ServerAccessToken token = createToken(user, 3600L);
+            store.store(TokenType.ACCESS, token.getTokenKey(), "client1", user, expiresAt(token), token);
+        }
+
+        assertEquals(3, store.list(TokenType.ACCESS, null, null, ServerAccessToken.class).size());
+        assertEquals(3, store.list(TokenType.ACCESS, "client1", null, ServerAccessToken.class).size());
+        assertEquals(2, store.list(TokenType.ACCESS, null, "alice", ServerAccessToken.class).size());
+        assertEquals(1, store.list(TokenType.ACCESS, "client1", "bob", ServerAccessToken.class).size());
+        assertTrue(store.list(TokenType.ACCESS, "client2", null, ServerAccessToken.class).isEmpty());
+    }
+
+    @Test
+    public void testSweepExpiredTokens() throws Exception {
+        long past = System.currentTimeMillis() - 1000L;
+        for (int i = 0; i < 5; i++) {
+            ServerAccessToken token = createToken("alice", 3600L);
+            store.store(TokenType.ACCESS, token.getTokenKey(), "client1", "alice", past, token);
+        }
+        ServerAccessToken valid = createToken("alice", 3600L);
+        store.store(TokenType.ACCESS, valid.getTokenKey(), "client1", "alice", expiresAt(valid), valid);
+
+        // Expired tokens are not returned even before they are swept
+        assertEquals(1, store.list(TokenType.ACCESS, null, null, ServerAccessToken.class).size());
+
+        // Deleted in chunks of 2
+        assertEquals(5, store.sweep());
+        assertEquals(0, store.sweep());
+        assertNotNull(store.get(TokenType.ACCESS, valid.getTokenKey(), ServerAccessToken.class));
+    }
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(() -> {
+                    ServerAccessToken token = createToken("alice", 3600L);
+                    store.store(TokenType.ACCESS, token.getTokenKey(), "client1", "alice", expiresAt(token),
+                                token);
+                    return token.getTokenKey();
+                }));
+            }
+            for (Future<String> future : futures) {
+                // Each write is visible once store returns
+                assertNotNull(store.get(TokenType.ACCESS, future.get(), ServerAccessToken.class));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(200, store.list(TokenType.ACCESS, "client1", "alice", ServerAccessToken.class).size());
+    }
+
+    @Test
+    public void testDuplicateKeyOnlyFailsItsWrite() throws Exception {
+        ServerAccessToken duplicate = createToken("alice", 3600L);
+        store.store(TokenType.ACCESS, duplicate.getTokenKey(), "client1", "alice", expiresAt(duplicate), duplicate);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                ServerAccessToken token = i % 10 == 0 ? duplicate : createToken("alice", 3600L);
+                futures.add(executor.submit(() -> {
+                    store.store(TokenType.ACCESS, token.getTokenKey(), "client1", "alice", expiresAt(token),
+                                token);
+                    return token.getTokenKey();
+                }));
+            }
+            int failed = 0;
+            for (Future<String> future : futures) {
+                try {
+                    assertNotNull(store.get(TokenType.ACCESS, future.get(), ServerAccessToken.class));
+                } catch (ExecutionException ex) {
+                    assertTrue(ex.getCause() instanceof OAuthServiceException);
+                    failed++;
+                }
+            }
+            // Only the writes of the duplicate key fail, and not the other writes of their batch
+            assertEquals(20, failed);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(181, store.list(TokenType.ACCESS, "client1", "alice", ServerAccessToken.class).size());
+    }
+
+    @Test
+    public void testUnexpectedClassRejected() {
+        long expiresAt = System.currentTimeMillis() + 3600000L;
+        store.store(TokenType.ACCESS, "date", "client1", "alice", expiresAt, new Date());
+
+        assertThrows(OAuthServiceException.class, () -> store.get(TokenType.ACCESS, "date", Object.class));
+    }
+
+    private static ServerAccessToken createToken(String user, long lifetime) {
+        Client client = new Client("client1", "secret", true);
+        ServerAccessToken token = new BearerAccessToken(client, lifetime);
+        token.setSubject(new UserSubject(user));
+        return token;
+    }
+
+    private static long expiresAt(ServerAccessToken token) {
+        return (token.getIssuedAt() + token.getExpiresIn()) * 1000L;
+    }
+}
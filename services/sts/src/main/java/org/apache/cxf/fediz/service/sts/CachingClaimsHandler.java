@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.sts;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.rt.security.claims.Claim;
+import org.apache.cxf.rt.security.claims.ClaimCollection;
+import org.apache.cxf.sts.claims.ClaimsHandler;
+import org.apache.cxf.sts.claims.ClaimsParameters;
+import org.apache.cxf.sts.claims.ProcessedClaim;
+import org.apache.cxf.sts.claims.ProcessedClaimCollection;
+import org.apache.cxf.sts.token.realm.RealmSupport;
+
+/**
+ * A ClaimsHandler which wraps another ClaimsHandler (for example the LdapClaimsHandler) and caches its
+ * results per principal for a short time.
+ *
+ * On a cache miss the wrapped handler is asked for all the claim types it supports, so that a single
+ * backend lookup serves any subsequent request for the same principal, whatever claims it asks for. The cache
+ * key is the principal name, the realm and the AppliesTo address (some handlers, like the
+ * LdapGroupClaimsHandler, scope the claims by AppliesTo).
+ */
+public class CachingClaimsHandler implements ClaimsHandler, RealmSupport {
+
+    private static final Logger LOG = LogUtils.getL7dLogger(CachingClaimsHandler.class);
+
+    private static final long DEFAULT_TIME_TO_LIVE = 60L;
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final ConcurrentMap<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private ClaimsHandler claimsHandler;
+    private long timeToLive = DEFAULT_TIME_TO_LIVE;
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    @Override
+    public List<String> getSupportedClaimTypes() {
+        return claimsHandler.getSupportedClaimTypes();
+    }
+
+    @Override
+    public ProcessedClaimCollection retrieveClaimValues(ClaimCollection claims, ClaimsParameters parameters) {
+        if (claims == null || claims.isEmpty() || parameters.getPrincipal() == null) {
+            return claimsHandler.retrieveClaimValues(claims, parameters);
+        }
+
+        String key = getCacheKey(parameters);
+        long now = System.currentTimeMillis();
+        CacheEntry entry = cache.get(key);
+        if (entry == null || entry.expires <= now) {
+            entry = new CacheEntry(retrieveAllClaimValues(parameters), now + timeToLive * 1000L);
+            if (cache.size() >= maxEntries) {
+                purgeExpiredEntries(now);
+            }
+            if (cache.size() < maxEntries) {
+                cache.put(key, entry);
+            }
+        } else {
+            LOG.fine("Claims found in cache for principal '" + parameters.getPrincipal().getName() + "'");
+        }
+
+        ProcessedClaimCollection claimCollection = new ProcessedClaimCollection();
+        for (Claim requestClaim : claims) {
+            ProcessedClaim claim = entry.claims.get(requestClaim.getClaimType().toString());
+            if (claim != null) {
+                // The cached claims are shared, hand out a copy
+                claimCollection.add(claim.clone());
+            }
+        }
+        return claimCollection;
+    }
+
+    private Map<String, ProcessedClaim> retrieveAllClaimValues(ClaimsParameters parameters) {
+        ClaimCollection allClaims = new ClaimCollection();
+        for (String claimType : claimsHandler.getSupportedClaimTypes()) {
+            Claim claim = new Claim();
+            claim.setClaimType(claimType);
+            allClaims.add(claim);
+        }
+
+        ProcessedClaimCollection retrievedClaims = claimsHandler.retrieveClaimValues(allClaims, parameters);
+        if (retrievedClaims == null || retrievedClaims.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, ProcessedClaim> claimMap = new HashMap<>();
+        for (ProcessedClaim claim : retrievedClaims) {
+            claimMap.put(claim.getClaimType().toString(), claim);
+        }
+        return claimMap;
+    }
+
+    private void purgeExpiredEntries(long now) {
+        for (Iterator<CacheEntry> it = cache.values().iterator(); it.hasNext();) {
+            if (it.next().expires <= now) {
+                it.remove();
+            }
+        }
+    }
+
+    private static String getCacheKey(ClaimsParameters parameters) {
+        StringBuilder sb = new StringBuilder(parameters.getPrincipal().getName());
+        sb.append('\n').append(parameters.getRealm());
+        sb.append('\n').append(parameters.getAppliesToAddress());
+        return sb.toString();
+    }
+
+    /**
+     * Remove all cached claims, for example after changes in the backend.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public List<String> getSupportedRealms() {
+        if (claimsHandler instanceof RealmSupport) {
+            return ((RealmSupport) claimsHandler).getSupportedRealms();
+        }
+        return null;
+    }
+
+    @Override
+    public String getHandlerRealm() {
+        if (claimsHandler instanceof RealmSupport) {
+            return ((RealmSupport) claimsHandler).getHandlerRealm();
+        }
+        return null;
+    }
+
+    public ClaimsHandler getClaimsHandler() {
+        return claimsHandler;
+    }
+
+    public void setClaimsHandler(ClaimsHandler claimsHandler) {
+        this.claimsHandler = claimsHandler;
+    }
+
+    /**
+     * How long (in seconds) the claims of a principal are cached. The default is 60 seconds.
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * The maximum number of cached principals. The default is 10000.
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    private static final class CacheEntry {
+        private final Map<String, ProcessedClaim> claims;
+        private final long expires;
+
+        CacheEntry(Map<String, ProcessedClaim> claims, long expires) {
+            this.claims = claims;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.sts;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.apache.cxf.helpers.DOMUtils;
+import org.apache.cxf.rt.security.claims.Claim;
+import org.apache.cxf.rt.security.claims.ClaimCollection;
+import org.apache.cxf.sts.STSConstants;
+import org.apache.cxf.sts.request.KeyRequirements;
+import org.apache.cxf.sts.request.Lifetime;
+import org.apache.cxf.sts.request.ReceivedToken;
+import org.apache.cxf.sts.request.TokenRequirements;
+import org.apache.cxf.sts.token.provider.TokenProvider;
+import org.apache.cxf.sts.token.provider.TokenProviderParameters;
+import org.apache.cxf.sts.token.provider.TokenProviderResponse;
+import org.apache.wss4j.common.WSS4JConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A TokenProvider which wraps another TokenProvider (typically the SAMLTokenProvider) and reuses the token
+ * it issued for an identical request for a fraction of the token lifetime. This saves the claims retrieval
+ * and the XML signature when the IdP asks for the same RP token several times in a short period.
+ *
+ * Two requests are identical if they have the same principal, AppliesTo address, realm, claims (dialect,
+ * types and values), key type, token type, requested lifetime and OnBehalfOf/ActAs tokens (by their identifier).
+ * Only Bearer tokens are cached, holder-of-key tokens are bound to a key of the requestor and are always issued
+ * by the wrapped provider, as are requests with an OnBehalfOf or ActAs token without an identifier.
+ *
+ * Note that a cached token is handed out several times with the same token identifier. This must only be
+ * enabled if the relying parties don't enforce one-time use of tokens (token replay detection) for sign-ins
+ * happening within the cache lifetime.
+ */
+public class CachingTokenProvider implements TokenProvider {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingTokenProvider.class);
+
+    private static final double DEFAULT_LIFETIME_FRACTION = 0.1;
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final ConcurrentMap<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private TokenProvider tokenProvider;
+    private double lifetimeFraction = DEFAULT_LIFETIME_FRACTION;
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    @Override
+    public boolean canHandleToken(String tokenType) {
+        return tokenProvider.canHandleToken(tokenType);
+    }
+
+    @Override
+    public boolean canHandleToken(String tokenType, String realm) {
+        return tokenProvider.canHandleToken(tokenType, realm);
+    }
+
+    @Override
+    public TokenProviderResponse createToken(TokenProviderParameters tokenParameters) {
+        String key = getCacheKey(tokenParameters);
+        if (key == null) {
+            return tokenProvider.createToken(tokenParameters);
+        }
+
+        Instant now = Instant.now();
+        CacheEntry entry = cache.get(key);
+        if (entry != null && entry.cacheExpires.isAfter(now)) {
+            LOG.debug("Reusing cached token {} for principal '{}'", entry.response.getTokenId(),
+                      tokenParameters.getPrincipal().getName());
+            return entry.copyResponse();
+        }
+
+        TokenProviderResponse response = tokenProvider.createToken(tokenParameters);
+        if (response != null && response.getToken() instanceof Element
+            && response.getCreated() != null && response.getExpires() != null) {
+            Duration lifetime = Duration.between(response.getCreated(), response.getExpires());
+            Instant cacheExpires = now.plusMillis((long)(lifetime.toMillis() * lifetimeFraction));
+            if (cacheExpires.isAfter(now)) {
+                if (cache.size() >= maxEntries) {
+                    purgeExpiredEntries(now);
+                }
+                if (cache.size() < maxEntries) {
+                    entry = new CacheEntry(response, cacheExpires);
+                    cache.put(key, entry);
+                    // The response is handed out to the STS, keep an untouched copy in the cache
+                    return entry.copyResponse();
+                }
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Returns null if the request must not be cached.
+     */
+    private static String getCacheKey(TokenProviderParameters tokenParameters) {
+        TokenRequirements tokenRequirements = tokenParameters.getTokenRequirements();
+        KeyRequirements keyRequirements = tokenParameters.getKeyRequirements();
+        if (tokenParameters.getPrincipal() == null || tokenRequirements == null || keyRequirements == null
+            || !STSConstants.BEARER_KEY_KEYTYPE.equals(keyRequirements.getKeyType())) {
+            return null;
+        }
+        String onBehalfOf = getTokenId(tokenRequirements.getOnBehalfOf());
+        String actAs = getTokenId(tokenRequirements.getActAs());
+        if (onBehalfOf == null || actAs == null) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(tokenParameters.getPrincipal().getName());
+        sb.append('\n').append(tokenParameters.getAppliesToAddress());
+        sb.append('\n').append(tokenParameters.getRealm());
+        sb.append('\n').append(keyRequirements.getKeyType());
+        sb.append('\n').append(tokenRequirements.getTokenType());
+        Lifetime lifetime = tokenRequirements.getLifetime();
+        if (lifetime != null) {
+            sb.append('\n').append(lifetime.getCreated()).append('|').append(lifetime.getExpires());
+        } else {
+            sb.append('\n');
+        }
+        sb.append('\n').append(onBehalfOf);
+        sb.append('\n').append(actAs);
+        appendClaims(sb, tokenParameters.getRequestedPrimaryClaims());
+        appendClaims(sb, tokenParameters.getRequestedSecondaryClaims());
+        return sb.toString();
+    }
+
+    /**
+     * Returns the identifier of an OnBehalfOf/ActAs token, an empty String if there is no such token, and null
+     * if the token has no identifier (e.g. a UsernameToken).
+     */
+    private static String getTokenId(ReceivedToken token) {
+        if (token == null) {
+            return "";
+        }
+        if (token.getToken() instanceof Element) {
+            Element element = (Element)token.getToken();
+            // SAML 2.0 uses "ID", SAML 1.1 uses "AssertionID"
+            for (String name : new String[] {"ID", "AssertionID"}) {
+                String id = element.getAttributeNS(null, name);
+                if (!id.isEmpty()) {
+                    return element.getLocalName() + ':' + id;
+                }
+            }
+            String id = element.getAttributeNS(WSS4JConstants.WSU_NS, "Id");
+            if (!id.isEmpty()) {
+                return element.getLocalName() + ':' + id;
+            }
+        }
+        return null;
+    }
+
+    private static void appendClaims(StringBuilder sb, ClaimCollection claims) {
+        sb.append('\n');
+        if (claims != null) {
+            sb.append(claims.getDialect());
+            for (Claim claim : claims) {
+                sb.append('|').append(claim.getClaimType());
+                if (claim.getValues() != null) {
+                    sb.append(claim.getValues());
+                }
+            }
+        }
+    }
+
+    private void purgeExpiredEntries(Instant now) {
+        for (Iterator<CacheEntry> it = cache.values().iterator(); it.hasNext();) {
+            if (!it.next().cacheExpires.isAfter(now)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all cached tokens.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    public TokenProvider getTokenProvider() {
+        return tokenProvider;
+    }
+
+    public void setTokenProvider(TokenProvider tokenProvider) {
+        this.tokenProvider = tokenProvider;
+    }
+
+    /**
+     * The fraction (between 0 and 1) of the token lifetime during which an issued token is reused.
+     * The default is 0.1, i.e. 2 minutes for a token valid for 20 minutes.
+     */
+    public void setLifetimeFraction(double lifetimeFraction) {
+        if (lifetimeFraction < 0 || lifetimeFraction > 1) {
+            throw new IllegalArgumentException("The lifetime fraction must be between 0 and 1");
+        }
+        this.lifetimeFraction = lifetimeFraction;
+    }
+
+    /**
+     * The maximum number of cached tokens. The default is 10000.
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    private static final class CacheEntry {
+        private final TokenProviderResponse response;
+        private final Element token;
+        private final Instant cacheExpires;
+
+        CacheEntry(TokenProviderResponse response, Instant cacheExpires) {
+            this.response = response;
+            this.token = (Element)response.getToken();
+            this.cacheExpires = cacheExpires;
+        }
+
+        TokenProviderResponse copyResponse() {
+            Document doc = DOMUtils.createDocument();
+            // DOM implementations are not thread-safe, even for reads
+            synchronized (this) {
+                doc.appendChild(doc.importNode(token, true));
+            }
+
+            TokenProviderResponse copy = new TokenProviderResponse();
+            copy.setToken(doc.getDocumentElement());
+            copy.setTokenId(response.getTokenId());
+            copy.setCreated(response.getCreated());
+            copy.setExpires(response.getExpires());
+            copy.setAttachedReference(response.getAttachedReference());
+            copy.setUnattachedReference(response.getUnattachedReference());
+            return copy;
+        }
+    }
+}
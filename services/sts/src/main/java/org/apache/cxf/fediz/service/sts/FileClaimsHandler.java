@@ -22,11 +22,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.cxf.rt.security.claims.Claim;
 import org.apache.cxf.rt.security.claims.ClaimCollection;
 import org.apache.cxf.sts.claims.ClaimsHandler;
 import org.apache.cxf.sts.claims.ClaimsParameters;
-import org.apache.cxf.sts.claims.ProcessedClaim;
 import org.apache.cxf.sts.claims.ProcessedClaimCollection;
 
 /**
@@ -36,15 +34,30 @@ public class FileClaimsHandler implements ClaimsHandler {
 
     private Map<String, Map<String, String>> userClaims;
     private List<String> supportedClaims;
+    private UserClaimsStore claimsStore;
 
     public void setUserClaims(Map<String, Map<String, String>> userClaims) {
         this.userClaims = userClaims;
+        UserClaimsStore store = new UserClaimsStore();
+        store.setUserClaims(null, userClaims);
+        this.claimsStore = store;
     }
 
     public Map<String, Map<String, String>> getUserClaims() {
         return userClaims;
     }
 
+    /**
+     * Use the given claims store (for example loaded from a claims file) instead of the userClaims Map.
+     */
+    public void setClaimsStore(UserClaimsStore claimsStore) {
+        this.claimsStore = claimsStore;
+    }
+
+    public UserClaimsStore getClaimsStore() {
+        return claimsStore;
+    }
+
     public void setSupportedClaims(List<String> supportedClaims) {
         this.supportedClaims = supportedClaims;
     }
@@ -59,7 +72,7 @@ public class FileClaimsHandler implements ClaimsHandler {
     public ProcessedClaimCollection retrieveClaimValues(ClaimCollection claims,
             ClaimsParameters parameters) {
 
-        if (getUserClaims() == null || parameters.getPrincipal() == null) {
+        if (claimsStore == null || parameters.getPrincipal() == null) {
             return new ProcessedClaimCollection();
         }
 
@@ -67,28 +80,7 @@ public class FileClaimsHandler implements ClaimsHandler {
             return new ProcessedClaimCollection();
         }
 
-        Map<String, String> claimMap = getUserClaims().get(parameters.getPrincipal().getName());
-        if (claimMap == null || claimMap.isEmpty()) {
-            return new ProcessedClaimCollection();
-        }
-
-        if (!claims.isEmpty()) {
-            ProcessedClaimCollection claimCollection = new ProcessedClaimCollection();
-            for (Claim requestClaim : claims) {
-                String claimValue = claimMap.get(requestClaim.getClaimType().toString());
-                if (claimValue != null) {
-                    ProcessedClaim claim = new ProcessedClaim();
-                    claim.setClaimType(requestClaim.getClaimType());
-                    claim.setIssuer("Test Issuer");
-                    claim.setOriginalIssuer("Original Issuer");
-                    claim.addValue(claimValue);
-                    claimCollection.add(claim);
-                }
-            }
-            return claimCollection;
-        }
-        return null;
-
+        return claimsStore.retrieveClaimValues(null, parameters.getPrincipal().getName(), claims);
     }
 
 
@@ -0,0 +1,316 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.service.sts;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.rt.security.claims.Claim;
+import org.apache.cxf.rt.security.claims.ClaimCollection;
+import org.apache.cxf.sts.claims.ProcessedClaim;
+import org.apache.cxf.sts.claims.ProcessedClaimCollection;
+import org.springframework.core.io.Resource;
+
+/**
+ * An in-memory index of user claims, partitioned by realm.
+ *
+ * The claims are either loaded from a file (see below) or set as a Map as loaded from Spring XML. Each
+ * distinct (claim type, value) pair is turned into a single pre-built ProcessedClaim instance which is shared
+ * by all users having this claim, so that a lookup is a couple of hash lookups plus a shallow copy of the
+ * matching claims. When a claims file is configured, it is checked for modifications every reloadInterval
+ * seconds and the whole index is swapped atomically. If the new file can't be parsed the previous index is
+ * kept.
+ *
+ * The file format is line based, fields are separated by a tab character:
+ * <pre>
+ * # A comment
+ * [REALMA]
+ * &#64;http://schemas.xmlsoap.org/ws/2005/05/identity/claims/givenname    http://.../claims/role
+ * alice    Alice    User
+ * bob      Bob      User,Manager,Admin
+ * </pre>
+ * A "[realm]" line starts a realm partition, claims listed before the first realm line apply to any realm.
+ * A line starting with '&#64;' lists the claim types of the columns of the following principal lines. A
+ * principal line starts with the principal name followed by one value per claim type column, an empty
+ * value means the principal doesn't have this claim.
+ */
+public class UserClaimsStore {
+
+    public static final String DEFAULT_ISSUER = "Test Issuer";
+    public static final String DEFAULT_ORIGINAL_ISSUER = "Original Issuer";
+
+    private static final Logger LOG = LogUtils.getL7dLogger(UserClaimsStore.class);
+
+    private static final String ANY_REALM = "";
+
+    private volatile Map<String, Map<String, Map<String, ProcessedClaim>>> realms = Collections.emptyMap();
+
+    private Resource claimsFile;
+    private long reloadInterval;
+    private String issuer = DEFAULT_ISSUER;
+    private String originalIssuer = DEFAULT_ORIGINAL_ISSUER;
+    private long lastModified;
+    private ScheduledExecutorService reloader;
+
+    public void init() throws IOException {
+        if (claimsFile == null) {
+            return;
+        }
+        long modified = claimsFile.lastModified();
+        load();
+        lastModified = modified;
+
+        if (reloadInterval > 0) {
+            reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "fediz-sts-user-claims-reloader");
+                t.setDaemon(true);
+                return t;
+            });
+            reloader.scheduleWithFixedDelay(this::reloadIfModified, reloadInterval, reloadInterval,
+                                            TimeUnit.SECONDS);
+        }
+    }
+
+    public void close() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+            reloader = null;
+        }
+    }
+
+    /**
+     * Get the requested claims of the given principal in the given realm. Claims of the principal
+     * which are not bound to a realm are returned if the principal isn't found in the realm partition.
+     */
+    public ProcessedClaimCollection retrieveClaimValues(String realm, String principal, ClaimCollection claims) {
+        ProcessedClaimCollection claimCollection = new ProcessedClaimCollection();
+        Map<String, ProcessedClaim> userClaims = getUserClaims(realm, principal);
+        if (userClaims.isEmpty() || claims == null) {
+            return claimCollection;
+        }
+        for (Claim requestClaim : claims) {
+            ProcessedClaim claim = userClaims.get(requestClaim.getClaimType().toString());
+            if (claim != null) {
+                // The pre-built claims are shared, hand out a copy
+                claimCollection.add(claim.clone());
+            }
+        }
+        return claimCollection;
+    }
+
+    /**
+     * Get the pre-built claims of the given principal, keyed by claim type. The returned claims must not
+     * be modified.
+     */
+    public Map<String, ProcessedClaim> getUserClaims(String realm, String principal) {
+        if (principal == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Map<String, Map<String, ProcessedClaim>>> current = realms;
+        if (realm != null) {
+            Map<String, Map<String, ProcessedClaim>> users = current.get(realm.toUpperCase(Locale.ENGLISH));
+            if (users != null && users.containsKey(principal)) {
+                return users.get(principal);
+            }
+        }
+        Map<String, Map<String, ProcessedClaim>> users = current.get(ANY_REALM);
+        if (users != null) {
+            Map<String, ProcessedClaim> userClaims = users.get(principal);
+            if (userClaims != null) {
+                return userClaims;
+            }
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Set the claims of a realm as loaded from Spring XML: principal -> (claim type -> claim value).
+     * A null realm makes the claims apply to any realm.
+     */
+    public void setUserClaims(String realm, Map<String, Map<String, String>> userClaims) {
+        Builder builder = new Builder(issuer, originalIssuer);
+        builder.realms.putAll(realms);
+        String realmKey = realm != null ? realm.toUpperCase(Locale.ENGLISH) : ANY_REALM;
+        builder.realms.remove(realmKey);
+        if (userClaims != null) {
+            for (Map.Entry<String, Map<String, String>> user : userClaims.entrySet()) {
+                for (Map.Entry<String, String> claim : user.getValue().entrySet()) {
+                    builder.addClaim(realmKey, user.getKey(), claim.getKey(), claim.getValue());
+                }
+            }
+        }
+        realms = builder.build();
+    }
+
+    public synchronized void reloadIfModified() {
+        try {
+            long modified = claimsFile.lastModified();
+            if (modified != lastModified) {
+                load();
+                // Only after a successful parse, so that a broken file is read again on the next check
+                lastModified = modified;
+            }
+        } catch (Exception ex) {
+            LOG.log(Level.WARNING, "Error reloading the user claims from " + claimsFile
+                    + ", keeping the previous claims", ex);
+        }
+    }
+
+    private void load() throws IOException {
+        long start = System.currentTimeMillis();
+        try (Reader reader = new InputStreamReader(claimsFile.getInputStream(), StandardCharsets.UTF_8)) {
+            realms = parse(reader, issuer, originalIssuer);
+        }
+        if (LOG.isLoggable(Level.FINE)) {
+            int users = 0;
+            for (Map<String, Map<String, ProcessedClaim>> realmUsers : realms.values()) {
+                users += realmUsers.size();
+            }
+            LOG.fine("Loaded the claims of " + users + " principals from " + claimsFile + " in "
+                     + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    static Map<String, Map<String, Map<String, ProcessedClaim>>> parse(Reader reader, String issuer,
+                                                                        String originalIssuer) throws IOException {
+        Builder builder = new Builder(issuer, originalIssuer);
+        BufferedReader br = new BufferedReader(reader);
+        String realm = ANY_REALM;
+        String[] claimTypes = null;
+        String line;
+        int lineNumber = 0;
+        while ((line = br.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("[") && line.trim().endsWith("]")) {
+                String trimmed = line.trim();
+                realm = trimmed.substring(1, trimmed.length() - 1).trim().toUpperCase(Locale.ENGLISH);
+                claimTypes = null;
+            } else if (line.startsWith("@")) {
+                claimTypes = line.substring(1).split("\t");
+                for (int i = 0; i < claimTypes.length; i++) {
+                    claimTypes[i] = claimTypes[i].trim();
+                }
+            } else {
+                if (claimTypes == null) {
+                    throw new IOException("No claim types defined before line " + lineNumber);
+                }
+                String[] values = line.split("\t", -1);
+                if (values.length - 1 > claimTypes.length) {
+                    throw new IOException("Too many values in line " + lineNumber);
+                }
+                String principal = values[0].trim();
+                for (int i = 1; i < values.length; i++) {
+                    builder.addClaim(realm, principal, claimTypes[i - 1], values[i]);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    public Resource getClaimsFile() {
+        return claimsFile;
+    }
+
+    public void setClaimsFile(Resource claimsFile) {
+        this.claimsFile = claimsFile;
+    }
+
+    /**
+     * How often (in seconds) the claims file is checked for modifications. The default is 0 which
+     * disables reloading.
+     */
+    public void setReloadInterval(long reloadInterval) {
+        this.reloadInterval = reloadInterval;
+    }
+
+    public void setIssuer(String issuer) {
+        this.issuer = issuer;
+    }
+
+    public void setOriginalIssuer(String originalIssuer) {
+        this.originalIssuer = originalIssuer;
+    }
+
+    /**
+     * Builds an index where equal claim types, values and claims are the same instance.
+     */
+    private static final class Builder {
+        private final Map<String, Map<String, Map<String, ProcessedClaim>>> realms = new HashMap<>();
+        private final Map<String, String> strings = new HashMap<>();
+        private final Map<String, Map<String, ProcessedClaim>> claims = new HashMap<>();
+        private final String issuer;
+        private final String originalIssuer;
+
+        Builder(String issuer, String originalIssuer) {
+            this.issuer = issuer;
+            this.originalIssuer = originalIssuer;
+        }
+
+        void addClaim(String realm, String principal, String claimType, String value) {
+            if (value == null || value.isEmpty()) {
+                return;
+            }
+            String type = intern(claimType);
+            String claimValue = intern(value);
+            ProcessedClaim claim = claims.computeIfAbsent(type, k -> new HashMap<>()).computeIfAbsent(claimValue,
+                v -> {
+                    ProcessedClaim c = new ProcessedClaim();
+                    c.setClaimType(type);
+                    c.setIssuer(issuer);
+                    c.setOriginalIssuer(originalIssuer);
+                    c.addValue(v);
+                    return c;
+                });
+            realms.computeIfAbsent(intern(realm), k -> new HashMap<>())
+                .computeIfAbsent(principal, k -> new HashMap<>(4)).put(type, claim);
+        }
+
+        Map<String, Map<String, Map<String, ProcessedClaim>>> build() {
+            Map<String, Map<String, Map<String, ProcessedClaim>>> result = new HashMap<>(realms.size());
+            for (Map.Entry<String, Map<String, Map<String, ProcessedClaim>>> realm : realms.entrySet()) {
+                Map<String, Map<String, ProcessedClaim>> users = new HashMap<>(realm.getValue().size() * 4 / 3 + 1);
+                for (Map.Entry<String, Map<String, ProcessedClaim>> user : realm.getValue().entrySet()) {
+                    users.put(user.getKey(), Collections.unmodifiableMap(user.getValue()));
+                }
+                result.put(realm.getKey(), Collections.unmodifiableMap(users));
+            }
+            return Collections.unmodifiableMap(result);
+        }
+
+        private String intern(String s) {
+            return strings.computeIfAbsent(s, k -> k);
+        }
+    }
+}
@@ -24,7 +24,7 @@ import java.util.Map;
 import java.util.logging.Logger;
 
 import org.apache.cxf.common.logging.LogUtils;
-import org.apache.cxf.rt.security.claims.Claim;
+import org.apache.cxf.fediz.service.sts.UserClaimsStore;
 import org.apache.cxf.rt.security.claims.ClaimCollection;
 import org.apache.cxf.sts.claims.ClaimsHandler;
 import org.apache.cxf.sts.claims.ClaimsParameters;
@@ -41,15 +41,31 @@ public class RealmFileClaimsHandler implements ClaimsHandler {
     private Map<String, Map<String, String>> userClaims;
     private List<String> supportedClaims;
     private String realm;
+    private UserClaimsStore claimsStore;
 
     public void setUserClaims(Map<String, Map<String, String>> userClaims) {
         this.userClaims = userClaims;
+        UserClaimsStore store = new UserClaimsStore();
+        store.setUserClaims(null, userClaims);
+        this.claimsStore = store;
     }
 
     public Map<String, Map<String, String>> getUserClaims() {
         return userClaims;
     }
 
+    /**
+     * Use the given claims store instead of the userClaims Map. The store may be shared by the handlers
+     * of several realms, in which case the claims of the realm partition of this handler are used.
+     */
+    public void setClaimsStore(UserClaimsStore claimsStore) {
+        this.claimsStore = claimsStore;
+    }
+
+    public UserClaimsStore getClaimsStore() {
+        return claimsStore;
+    }
+
     public void setSupportedClaims(List<String> supportedClaims) {
         this.supportedClaims = supportedClaims;
     }
@@ -76,7 +92,7 @@ public class RealmFileClaimsHandler implements ClaimsHandler {
             LOG.fine("Realm '" + parameters.getRealm() + "' doesn't match with configured realm '" + getRealm() + "'");
             return new ProcessedClaimCollection();
         }
-        if (getUserClaims() == null || parameters.getPrincipal() == null) {
+        if (claimsStore == null || parameters.getPrincipal() == null) {
             return new ProcessedClaimCollection();
         }
 
@@ -85,31 +101,15 @@ public class RealmFileClaimsHandler implements ClaimsHandler {
             return new ProcessedClaimCollection();
         }
 
-        Map<String, String> claimMap = getUserClaims().get(parameters.getPrincipal().getName());
-        if (claimMap == null || claimMap.isEmpty()) {
-            LOG.fine("Claims requested for principal '" + parameters.getPrincipal().getName()
-                     + "' but not found");
+        String principal = parameters.getPrincipal().getName();
+        Map<String, ProcessedClaim> claimMap = claimsStore.getUserClaims(getRealm(), principal);
+        if (claimMap.isEmpty()) {
+            LOG.fine("Claims requested for principal '" + principal + "' but not found");
             return new ProcessedClaimCollection();
         }
-        LOG.fine("Claims found for principal '" + parameters.getPrincipal().getName() + "'");
-
-        if (!claims.isEmpty()) {
-            ProcessedClaimCollection claimCollection = new ProcessedClaimCollection();
-            for (Claim requestClaim : claims) {
-                String claimValue = claimMap.get(requestClaim.getClaimType().toString());
-                if (claimValue != null) {
-                    ProcessedClaim claim = new ProcessedClaim();
-                    claim.setClaimType(requestClaim.getClaimType());
-                    claim.setIssuer("Test Issuer");
-                    claim.setOriginalIssuer("Original Issuer");
-                    claim.addValue(claimValue);
-                    claimCollection.add(claim);
-                }
-            }
-            return claimCollection;
-        }
-        return null;
+        LOG.fine("Claims found for principal '" + principal + "'");
 
+        return claimsStore.retrieveClaimValues(getRealm(), principal, claims);
     }
 
 
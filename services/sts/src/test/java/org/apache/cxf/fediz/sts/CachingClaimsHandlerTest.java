@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.sts;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cxf.fediz.service.sts.CachingClaimsHandler;
+import org.apache.cxf.rt.security.claims.Claim;
+import org.apache.cxf.rt.security.claims.ClaimCollection;
+import org.apache.cxf.sts.claims.ClaimsHandler;
+import org.apache.cxf.sts.claims.ClaimsParameters;
+import org.apache.cxf.sts.claims.ProcessedClaim;
+import org.apache.cxf.sts.claims.ProcessedClaimCollection;
+import org.apache.wss4j.common.principal.CustomTokenPrincipal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Some tests for the CachingClaimsHandler.
+ */
+public class CachingClaimsHandlerTest {
+
+    private static final String GIVENNAME = "http://schemas.xmlsoap.org/ws/2005/05/identity/claims/givenname";
+    private static final String SURNAME = "http://schemas.xmlsoap.org/ws/2005/05/identity/claims/surname";
+
+    @Test
+    public void testAllClaimsFetchedOnce() {
+        CountingClaimsHandler delegate = new CountingClaimsHandler();
+        CachingClaimsHandler handler = new CachingClaimsHandler();
+        handler.setClaimsHandler(delegate);
+
+        ClaimsParameters parameters = createParameters("alice", "urn:app1");
+        ProcessedClaimCollection result = handler.retrieveClaimValues(createClaims(GIVENNAME), parameters);
+        assertEquals(1, result.size());
+        assertEquals("alice-" + GIVENNAME, result.get(0).getValues().get(0));
+
+        // Other claims of the same principal come from the cache
+        result = handler.retrieveClaimValues(createClaims(GIVENNAME, SURNAME), parameters);
+        assertEquals(2, result.size());
+        assertEquals(1, delegate.calls.get());
+
+        // Different principal or AppliesTo
+        handler.retrieveClaimValues(createClaims(GIVENNAME), createParameters("bob", "urn:app1"));
+        handler.retrieveClaimValues(createClaims(GIVENNAME), createParameters("alice", "urn:app2"));
+        assertEquals(3, delegate.calls.get());
+
+        handler.clear();
+        handler.retrieveClaimValues(createClaims(GIVENNAME), parameters);
+        assertEquals(4, delegate.calls.get());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        CountingClaimsHandler delegate = new CountingClaimsHandler();
+        CachingClaimsHandler handler = new CachingClaimsHandler();
+        handler.setClaimsHandler(delegate);
+        handler.setTimeToLive(0L);
+
+        ClaimsParameters parameters = createParameters("alice", "urn:app1");
+        handler.retrieveClaimValues(createClaims(GIVENNAME), parameters);
+        handler.retrieveClaimValues(createClaims(GIVENNAME), parameters);
+        assertEquals(2, delegate.calls.get());
+    }
+
+    @Test
+    public void testCachedClaimsNotModified() {
+        CachingClaimsHandler handler = new CachingClaimsHandler();
+        handler.setClaimsHandler(new CountingClaimsHandler());
+
+        ClaimsParameters parameters = createParameters("alice", "urn:app1");
+        handler.retrieveClaimValues(createClaims(GIVENNAME), parameters).get(0).addValue("other");
+        ProcessedClaimCollection result = handler.retrieveClaimValues(createClaims(GIVENNAME), parameters);
+        assertEquals(1, result.get(0).getValues().size());
+    }
+
+    private static ClaimsParameters createParameters(String principal, String appliesTo) {
+        ClaimsParameters parameters = new ClaimsParameters();
+        parameters.setPrincipal(new CustomTokenPrincipal(principal));
+        parameters.setAppliesToAddress(appliesTo);
+        return parameters;
+    }
+
+    private static ClaimCollection createClaims(String... claimTypes) {
+        ClaimCollection claims = new ClaimCollection();
+        for (String claimType : claimTypes) {
+            Claim claim = new Claim();
+            claim.setClaimType(claimType);
+            claims.add(claim);
+        }
+        return claims;
+    }
+
+    private static final class CountingClaimsHandler implements ClaimsHandler {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public List<String> getSupportedClaimTypes() {
+            return Arrays.asList(GIVENNAME, SURNAME);
+        }
+
+        @Override
+        public ProcessedClaimCollection retrieveClaimValues(ClaimCollection claims, ClaimsParameters parameters) {
+            calls.incrementAndGet();
+            ProcessedClaimCollection result = new ProcessedClaimCollection();
+            for (Claim requestClaim : claims) {
+                ProcessedClaim claim = new ProcessedClaim();
+                claim.setClaimType(requestClaim.getClaimType());
+                claim.addValue(parameters.getPrincipal().getName() + "-" + requestClaim.getClaimType());
+                result.add(claim);
+            }
+            return result;
+        }
+    }
+}
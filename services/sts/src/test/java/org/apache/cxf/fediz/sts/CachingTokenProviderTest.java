@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.sts;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import org.apache.cxf.fediz.service.sts.CachingTokenProvider;
+import org.apache.cxf.helpers.DOMUtils;
+import org.apache.cxf.sts.STSConstants;
+import org.apache.cxf.sts.request.KeyRequirements;
+import org.apache.cxf.sts.request.Lifetime;
+import org.apache.cxf.sts.request.ReceivedToken;
+import org.apache.cxf.sts.request.TokenRequirements;
+import org.apache.cxf.sts.token.provider.TokenProvider;
+import org.apache.cxf.sts.token.provider.TokenProviderParameters;
+import org.apache.cxf.sts.token.provider.TokenProviderResponse;
+import org.apache.wss4j.common.principal.CustomTokenPrincipal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+/**
+ * Some tests for the CachingTokenProvider.
+ */
+public class CachingTokenProviderTest {
+
+    private static final String PUBLIC_KEY_KEYTYPE =
+        "http://docs.oasis-open.org/ws-sx/ws-trust/200512/PublicKey";
+
+    @Test
+    public void testIdenticalRequestsReuseToken() {
+        CountingTokenProvider delegate = new CountingTokenProvider();
+        CachingTokenProvider provider = new CachingTokenProvider();
+        provider.setTokenProvider(delegate);
+
+        TokenProviderResponse first = provider.createToken(createParameters("alice", "urn:app1",
+            STSConstants.BEARER_KEY_KEYTYPE));
+        TokenProviderResponse second = provider.createToken(createParameters("alice", "urn:app1",
+            STSConstants.BEARER_KEY_KEYTYPE));
+        assertEquals(1, delegate.calls.get());
+        assertEquals(first.getTokenId(), second.getTokenId());
+        assertNotSame(first.getToken(), second.getToken());
+        assertEquals(first.getExpires(), second.getExpires());
+
+        provider.createToken(createParameters("bob", "urn:app1", STSConstants.BEARER_KEY_KEYTYPE));
+        provider.createToken(createParameters("alice", "urn:app2", STSConstants.BEARER_KEY_KEYTYPE));
+        assertEquals(3, delegate.calls.get());
+    }
+
+    @Test
+    public void testHolderOfKeyNotCached() {
+        CountingTokenProvider delegate = new CountingTokenProvider();
+        CachingTokenProvider provider = new CachingTokenProvider();
+        provider.setTokenProvider(delegate);
+
+        TokenProviderResponse first = provider.createToken(createParameters("alice", "urn:app1",
+            PUBLIC_KEY_KEYTYPE));
+        TokenProviderResponse second = provider.createToken(createParameters("alice", "urn:app1",
+            PUBLIC_KEY_KEYTYPE));
+        assertEquals(2, delegate.calls.get());
+        assertNotEquals(first.getTokenId(), second.getTokenId());
+    }
+
+    @Test
+    public void testZeroLifetimeFraction() {
+        CountingTokenProvider delegate = new CountingTokenProvider();
+        CachingTokenProvider provider = new CachingTokenProvider();
+        provider.setTokenProvider(delegate);
+        provider.setLifetimeFraction(0);
+
+        provider.createToken(createParameters("alice", "urn:app1", STSConstants.BEARER_KEY_KEYTYPE));
+        provider.createToken(createParameters("alice", "urn:app1", STSConstants.BEARER_KEY_KEYTYPE));
+        assertEquals(2, delegate.calls.get());
+    }
+
+    @Test
+    public void testOnBehalfOfAndActAsInCacheKey() throws Exception {
+        CountingTokenProvider delegate = new CountingTokenProvider();
+        CachingTokenProvider provider = new CachingTokenProvider();
+        provider.setTokenProvider(delegate);
+
+        TokenProviderParameters parameters = createParameters("alice", "urn:app1", STSConstants.BEARER_KEY_KEYTYPE);
+        parameters.getTokenRequirements().setOnBehalfOf(new ReceivedToken(createToken("_idp1")));
+        provider.createToken(parameters);
+        parameters.getTokenRequirements().setOnBehalfOf(new ReceivedToken(createToken("_idp1")));
+        provider.createToken(parameters);
+        assertEquals(1, delegate.calls.get());
+
+        parameters.getTokenRequirements().setOnBehalfOf(new ReceivedToken(createToken("_idp2")));
+        provider.createToken(parameters);
+        assertEquals(2, delegate.calls.get());
+
+        parameters.getTokenRequirements().setActAs(new ReceivedToken(createToken("_actas1")));
+        provider.createToken(parameters);
+        assertEquals(3, delegate.calls.get());
+
+        // A token without an identifier is never cached
+        parameters.getTokenRequirements().setActAs(new ReceivedToken(createToken(null)));
+        provider.createToken(parameters);
+        provider.createToken(parameters);
+        assertEquals(5, delegate.calls.get());
+    }
+
+    @Test
+    public void testRequestedLifetimeInCacheKey() {
+        CountingTokenProvider delegate = new CountingTokenProvider();
+        CachingTokenProvider provider = new CachingTokenProvider();
+        provider.setTokenProvider(delegate);
+
+        provider.createToken(createParameters("alice", "urn:app1", STSConstants.BEARER_KEY_KEYTYPE));
+        TokenProviderParameters parameters = createParameters("alice", "urn:app1", STSConstants.BEARER_KEY_KEYTYPE);
+        Lifetime lifetime = new Lifetime();
+        Instant now = Instant.now();
+        lifetime.setCreated(now.toString());
+        lifetime.setExpires(now.plusSeconds(60L).toString());
+        parameters.getTokenRequirements().setLifetime(lifetime);
+        provider.createToken(parameters);
+        assertEquals(2, delegate.calls.get());
+        provider.createToken(parameters);
+        assertEquals(2, delegate.calls.get());
+    }
+
+    private static Element createToken(String id) {
+        Document doc = DOMUtils.createDocument();
+        Element token = doc.createElementNS("urn:oasis:names:tc:SAML:2.0:assertion", "saml2:Assertion");
+        if (id != null) {
+            token.setAttributeNS(null, "ID", id);
+        }
+        doc.appendChild(token);
+        return token;
+    }
+
+    private static TokenProviderParameters createParameters(String principal, String appliesTo, String keyType) {
+        TokenProviderParameters parameters = new TokenProviderParameters();
+        parameters.setPrincipal(new CustomTokenPrincipal(principal));
+        parameters.setAppliesToAddress(appliesTo);
+        parameters.setRealm("REALMA");
+        TokenRequirements tokenRequirements = new TokenRequirements();
+        tokenRequirements.setTokenType(AbstractSTSTest.SAML2_TOKEN_TYPE);
+        parameters.setTokenRequirements(tokenRequirements);
+        KeyRequirements keyRequirements = new KeyRequirements();
+        keyRequirements.setKeyType(keyType);
+        parameters.setKeyRequirements(keyRequirements);
+        return parameters;
+    }
+
+    private static final class CountingTokenProvider implements TokenProvider {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public boolean canHandleToken(String tokenType) {
+            return true;
+        }
+
+        @Override
+        public boolean canHandleToken(String tokenType, String realm) {
+            return true;
+        }
+
+        @Override
+        public TokenProviderResponse createToken(TokenProviderParameters tokenParameters) {
+            String id = "_" + calls.incrementAndGet();
+            Document doc = DOMUtils.createDocument();
+            Element token = doc.createElementNS("urn:oasis:names:tc:SAML:2.0:assertion", "saml2:Assertion");
+            token.setAttributeNS(null, "ID", id);
+            doc.appendChild(token);
+
+            TokenProviderResponse response = new TokenProviderResponse();
+            response.setToken(token);
+            response.setTokenId(id);
+            Instant now = Instant.now();
+            response.setCreated(now);
+            response.setExpires(now.plusSeconds(1200L));
+            return response;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.sts;
+
+import java.io.File;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.Principal;
+
+import org.apache.cxf.fediz.service.sts.UserClaimsStore;
+import org.apache.cxf.fediz.service.sts.realms.RealmFileClaimsHandler;
+import org.apache.cxf.rt.security.claims.Claim;
+import org.apache.cxf.rt.security.claims.ClaimCollection;
+import org.apache.cxf.sts.claims.ClaimsParameters;
+import org.apache.wss4j.common.principal.CustomTokenPrincipal;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Loads a claims file of 100k users (by default) into a UserClaimsStore and times retrieveClaimValues of a
+ * RealmFileClaimsHandler backed by it. This is a command line benchmark, not a unit test: Surefire skips it
+ * and it only prints the load time and the time per call. After a test-compile of the module, run
+ *
+ * mvn exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.apache.cxf.fediz.sts.UserClaimsStoreBenchmark
+ *     -Dexec.args="&lt;users&gt; &lt;lookups&gt;"
+ */
+public final class UserClaimsStoreBenchmark {
+
+    private static final String GIVENNAME = "http://schemas.xmlsoap.org/ws/2005/05/identity/claims/givenname";
+    private static final String ROLE = "http://schemas.xmlsoap.org/ws/2005/05/identity/claims/role";
+
+    private UserClaimsStoreBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        StringBuilder sb = new StringBuilder("[REALMA]\n@").append(GIVENNAME).append('\t').append(ROLE).append('\n');
+        for (int i = 0; i < users; i++) {
+            sb.append("user").append(i).append("\tUser ").append(i).append('\t')
+                .append(i % 10 == 0 ? "Admin" : "User").append('\n');
+        }
+        File file = File.createTempFile("userClaims", ".txt");
+        file.deleteOnExit();
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(sb.toString());
+        }
+
+        UserClaimsStore store = new UserClaimsStore();
+        store.setClaimsFile(new FileSystemResource(file));
+        long start = System.nanoTime();
+        store.init();
+        long loadTime = System.nanoTime() - start;
+
+        ClaimCollection claims = new ClaimCollection();
+        for (String claimType : new String[] {GIVENNAME, ROLE}) {
+            Claim claim = new Claim();
+            claim.setClaimType(claimType);
+            claims.add(claim);
+        }
+        ClaimsParameters parameters = new ClaimsParameters();
+        parameters.setRealm("REALMA");
+        RealmFileClaimsHandler handler = new RealmFileClaimsHandler();
+        handler.setRealm("REALMA");
+        handler.setClaimsStore(store);
+
+        Principal[] principals = new Principal[users];
+        for (int i = 0; i < users; i++) {
+            principals[i] = new CustomTokenPrincipal("user" + i);
+        }
+
+        // Warm up
+        int found = lookup(handler, claims, parameters, principals, users);
+
+        start = System.nanoTime();
+        found += lookup(handler, claims, parameters, principals, lookups);
+        long lookupTime = System.nanoTime() - start;
+        store.close();
+
+        System.out.println("Loaded " + users + " users in " + loadTime / 1000000L + " ms, "
+            + lookups + " retrieveClaimValues calls took " + lookupTime / 1000000L + " ms ("
+            + lookupTime / lookups + " ns/call, " + found + " claims)");
+    }
+
+    private static int lookup(RealmFileClaimsHandler handler, ClaimCollection claims, ClaimsParameters parameters,
+                              Principal[] principals, int lookups) {
+        int found = 0;
+        for (int i = 0; i < lookups; i++) {
+            parameters.setPrincipal(principals[i % principals.length]);
+            found += handler.retrieveClaimValues(claims, parameters).size();
+        }
+        return found;
+    }
+}
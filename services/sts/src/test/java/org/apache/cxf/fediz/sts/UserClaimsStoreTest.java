@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.fediz.sts;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.security.Principal;
+
+import org.apache.cxf.fediz.service.sts.UserClaimsStore;
+import org.apache.cxf.fediz.service.sts.realms.RealmFileClaimsHandler;
+import org.apache.cxf.rt.security.claims.Claim;
+import org.apache.cxf.rt.security.claims.ClaimCollection;
+import org.apache.cxf.sts.claims.ClaimsParameters;
+import org.apache.cxf.sts.claims.ProcessedClaim;
+import org.apache.cxf.sts.claims.ProcessedClaimCollection;
+import org.apache.wss4j.common.principal.CustomTokenPrincipal;
+import org.springframework.core.io.FileSystemResource;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some tests for the UserClaimsStore.
+ */
+public class UserClaimsStoreTest {
+
+    private static final String GIVENNAME = "http://schemas.xmlsoap.org/ws/2005/05/identity/claims/givenname";
+    private static final String ROLE = "http://schemas.xmlsoap.org/ws/2005/05/identity/claims/role";
+
+    private static final String CLAIMS_FILE =
+        "# Test claims\n"
+        + "[REALMA]\n"
+        + "@" + GIVENNAME + "\t" + ROLE + "\n"
+        + "alice\tAlice\tUser\n"
+        + "bob\tBob\tUser,Manager,Admin\n"
+        + "ted\t\tSecretary\n"
+        + "[REALMB]\n"
+        + "@" + ROLE + "\n"
+        + "ALICE\tUser\n";
+
+    @Test
+    public void testRealmPartitions() throws Exception {
+        UserClaimsStore store = createStore(CLAIMS_FILE);
+        ClaimCollection claims = createClaims(GIVENNAME, ROLE);
+
+        ProcessedClaimCollection result = store.retrieveClaimValues("REALMA", "alice", claims);
+        assertEquals(2, result.size());
+        assertEquals("Alice", result.get(0).getValues().get(0));
+        assertEquals("User", result.get(1).getValues().get(0));
+        assertEquals(UserClaimsStore.DEFAULT_ISSUER, result.get(0).getIssuer());
+
+        // Empty values are skipped
+        assertEquals(1, store.retrieveClaimValues("REALMA", "ted", claims).size());
+
+        // Realms are case insensitive, principals are not
+        assertEquals(1, store.retrieveClaimValues("realmb", "ALICE", claims).size());
+        assertTrue(store.retrieveClaimValues("REALMB", "alice", claims).isEmpty());
+        assertTrue(store.retrieveClaimValues("REALMB", "bob", claims).isEmpty());
+    }
+
+    @Test
+    public void testSharedClaims() throws Exception {
+        UserClaimsStore store = createStore(CLAIMS_FILE);
+
+        ProcessedClaim aliceRole = store.getUserClaims("REALMA", "alice").get(ROLE);
+        ProcessedClaim aliceBRole = store.getUserClaims("REALMB", "ALICE").get(ROLE);
+        assertSame(aliceRole, aliceBRole);
+
+        // Callers get a copy of the shared claim
+        ProcessedClaim claim = store.retrieveClaimValues("REALMA", "alice", createClaims(ROLE)).get(0);
+        assertNotSame(aliceRole, claim);
+        claim.addValue("Admin");
+        assertEquals(1, aliceRole.getValues().size());
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        File file = writeClaimsFile(CLAIMS_FILE);
+        UserClaimsStore store = new UserClaimsStore();
+        store.setClaimsFile(new FileSystemResource(file));
+        store.init();
+        ClaimCollection claims = createClaims(GIVENNAME);
+        assertEquals("Alice", store.retrieveClaimValues("REALMA", "alice", claims).get(0).getValues().get(0));
+
+        write(file, CLAIMS_FILE.replace("\tAlice\t", "\tAlicia\t"));
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(file.lastModified() + 2000L));
+        store.reloadIfModified();
+        assertEquals("Alicia", store.retrieveClaimValues("REALMA", "alice", claims).get(0).getValues().get(0));
+
+        // A broken file keeps the previous claims
+        write(file, "alice\tAlice\n");
+        FileTime brokenTime = FileTime.fromMillis(file.lastModified() + 4000L);
+        Files.setLastModifiedTime(file.toPath(), brokenTime);
+        store.reloadIfModified();
+        assertEquals("Alicia", store.retrieveClaimValues("REALMA", "alice", claims).get(0).getValues().get(0));
+
+        // The broken file is read again, even if the fixed one has the same modification time
+        write(file, CLAIMS_FILE.replace("\tAlice\t", "\tAli\t"));
+        Files.setLastModifiedTime(file.toPath(), brokenTime);
+        store.reloadIfModified();
+        assertEquals("Ali", store.retrieveClaimValues("REALMA", "alice", claims).get(0).getValues().get(0));
+    }
+
+    @Test
+    public void testRealmFileClaimsHandler() throws Exception {
+        RealmFileClaimsHandler handler = new RealmFileClaimsHandler();
+        handler.setRealm("REALMA");
+        handler.setClaimsStore(createStore(CLAIMS_FILE));
+
+        ClaimsParameters parameters = new ClaimsParameters();
+        parameters.setRealm("REALMA");
+        parameters.setPrincipal(new CustomTokenPrincipal("bob"));
+        ProcessedClaimCollection result = handler.retrieveClaimValues(createClaims(ROLE), parameters);
+        assertEquals(1, result.size());
+        assertEquals("User,Manager,Admin", result.get(0).getValues().get(0));
+
+        parameters.setRealm("REALMB");
+        assertTrue(handler.retrieveClaimValues(createClaims(ROLE), parameters).isEmpty());
+    }
+
+    @Test
+    public void testRetrieveClaimValuesOfManyUsers() throws Exception {
+        final int users = 100;
+        StringBuilder sb = new StringBuilder("[REALMA]\n@").append(GIVENNAME).append('\t').append(ROLE).append('\n');
+        for (int i = 0; i < users; i++) {
+            sb.append("user").append(i).append("\tUser ").append(i).append('\t')
+                .append(i % 10 == 0 ? "Admin" : "User").append('\n');
+        }
+
+        ClaimCollection claims = createClaims(GIVENNAME, ROLE);
+        ClaimsParameters parameters = new ClaimsParameters();
+        parameters.setRealm("REALMA");
+        RealmFileClaimsHandler handler = new RealmFileClaimsHandler();
+        handler.setRealm("REALMA");
+        handler.setClaimsStore(createStore(sb.toString()));
+
+        for (int i = 0; i < users; i++) {
+            parameters.setPrincipal(principal(i));
+            ProcessedClaimCollection result = handler.retrieveClaimValues(claims, parameters);
+            assertEquals(2, result.size());
+            assertEquals("User " + i, result.get(0).getValues().get(0));
+            assertEquals(i % 10 == 0 ? "Admin" : "User", result.get(1).getValues().get(0));
+        }
+        parameters.setPrincipal(principal(users));
+        assertTrue(handler.retrieveClaimValues(claims, parameters).isEmpty());
+    }
+
+    private static Principal principal(int i) {
+        return new CustomTokenPrincipal("user" + i);
+    }
+
+    private static ClaimCollection createClaims(String... claimTypes) {
+        ClaimCollection claims = new ClaimCollection();
+        for (String claimType : claimTypes) {
+            Claim claim = new Claim();
+            claim.setClaimType(claimType);
+            claims.add(claim);
+        }
+        return claims;
+    }
+
+    private static UserClaimsStore createStore(String content) throws IOException {
+        UserClaimsStore store = new UserClaimsStore();
+        store.setClaimsFile(new FileSystemResource(writeClaimsFile(content)));
+        store.init();
+        return store;
+    }
+
+    private static File writeClaimsFile(String content) throws IOException {
+        File file = File.createTempFile("userClaims", ".txt");
+        file.deleteOnExit();
+        write(file, content);
+        return file;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+}
@@ -34,6 +34,9 @@ import org.apache.catalina.startup.Tomcat;
 import org.apache.cxf.fediz.core.ClaimTypes;
 import org.apache.cxf.fediz.systests.common.HTTPTestUtils;
 import org.apache.cxf.fediz.tomcat.FederationAuthenticator;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.server.annotations.CreateLdapServer;
 import org.apache.directory.server.annotations.CreateTransport;
 import org.apache.directory.server.core.annotations.ApplyLdifFiles;
@@ -261,5 +264,37 @@ public class LDAPTest extends AbstractLdapTestUnit {
 
     }
 
+    @Test
+    public void testLDAPCachedClaims() throws Exception {
+        String url = "https://localhost:" + getRpHttpsPort() + "/" + getServletContextName()
+            + "/secure/fedservlet";
+        String user = "alice";
+        String password = "ecila";
+        String claim = ClaimTypes.FIRSTNAME.toString();
+
+        String bodyTextContent =
+            HTTPTestUtils.login(url, user, password, getIdpHttpsPort(), "signinresponseform");
+        Assertions.assertTrue(bodyTextContent.contains("userPrincipal=" + user), "Principal not " + user);
+        Assertions.assertTrue(bodyTextContent.contains(claim + "=Alice"),
+                "User " + user + " claim " + claim + " is not 'Alice'");
+
+        // Change the claim in LDAP: the second login is served from the claims cache of the STS
+        Dn dn = new Dn("cn=alice,ou=users,dc=fediz,dc=org");
+        getService().getAdminSession().modify(dn,
+            new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, "givenname", "Alicia"));
+        try {
+            bodyTextContent =
+                HTTPTestUtils.login(url, user, password, getIdpHttpsPort(), "signinresponseform");
+            Assertions.assertTrue(bodyTextContent.contains("userPrincipal=" + user), "Principal not " + user);
+            Assertions.assertTrue(bodyTextContent.contains("role:User=true"),
+                    "User " + user + " must have role User");
+            Assertions.assertTrue(bodyTextContent.contains(claim + "=Alice"),
+                    "User " + user + " claim " + claim + " was not read from the cache");
+        } finally {
+            getService().getAdminSession().modify(dn,
+                new DefaultModification(ModificationOperation.REPLACE_ATTRIBUTE, "givenname", "Alice"));
+        }
+    }
+
 
 }
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.systests.load;
+
+import java.nio.file.Paths;
+import java.util.Map;
+
+import org.apache.cxf.fediz.systests.load.LoadClient.Response;
+import org.apache.cxf.fediz.systests.load.LoadReport.StepStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The common configuration of the load tests. The load is configured with the system properties
+ * load.users (concurrent virtual users), load.iterations (measured flows per user) and load.warmup (flows per
+ * user before the measurement). If load.maxP95 is set (milliseconds), a test fails if the 95th percentile of
+ * one of the steps of its flow exceeds it, so that the module can be used as a performance regression gate.
+ */
+abstract class AbstractLoadTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractLoadTest.class);
+
+    private static final int USERS = Integer.getInteger("load.users", 8);
+    private static final int ITERATIONS = Integer.getInteger("load.iterations", 50);
+    private static final int WARMUP = Integer.getInteger("load.warmup", 5);
+    private static final long MAX_P95 = Long.getLong("load.maxP95", 0L);
+    private static final String REPORT_DIR = System.getProperty("load.reportDir", "target/load-reports");
+
+    private static final String[][] CREDENTIALS = {{"alice", "ecila"}, {"bob", "bob"}, {"ted", "det"}};
+
+    protected static String rpUrl(String path) {
+        return "https://localhost:" + LoadTestLauncher.getRpHttpsPort() + path;
+    }
+
+    /**
+     * The user name of a virtual user, the users of the IdP are used in turn.
+     */
+    protected static String getUser(int user) {
+        return CREDENTIALS[user % CREDENTIALS.length][0];
+    }
+
+    /**
+     * Send the credentials of the virtual user to the IdP.
+     */
+    protected static void login(LoadClient client, int user) {
+        String[] credentials = CREDENTIALS[user % CREDENTIALS.length];
+        client.setCredentials("localhost:" + LoadTestLauncher.getIdpHttpsPort(), credentials[0], credentials[1]);
+    }
+
+    /**
+     * The passive (WS-Federation or SAML SSO) login of a virtual user at the relying party, and a request
+     * within the established session.
+     */
+    protected static void passiveLogin(LoadClient client, int user, String url) throws Exception {
+        login(client, user);
+        String principal = "userPrincipal=" + getUser(user);
+
+        Response response = client.get("rp-signin-request", url);
+        response.check(response.isRedirect(), "No redirect to the IdP");
+
+        response = client.followRedirects("idp-signin", response);
+        response.check("IDP SignIn Response Form".equals(response.getTitle()), "No IdP sign in response form");
+
+        response = client.submitForm("rp-signin-response", response);
+        response.check(response.getBody().contains(principal), "Not logged in at the RP");
+
+        response = client.get("rp-session", url);
+        response.check(response.getBody().contains(principal), "No session at the RP");
+    }
+
+    protected static LoadReport runLoad(String name, LoadRunner.Flow flow) throws Exception {
+        LoadReport report = LoadRunner.run(name, flow, USERS, ITERATIONS, WARMUP);
+        LOG.info(report.format());
+        report.write(Paths.get(REPORT_DIR));
+
+        assertEquals(0, report.getFailedFlows(), () -> "Failed flows: " + report.getFailures());
+        assertEquals((long) USERS * ITERATIONS, report.getCompletedFlows());
+        if (MAX_P95 > 0) {
+            for (Map.Entry<String, StepStatistics> step : report.getSteps().entrySet()) {
+                if (LoadReport.FLOW.equals(step.getKey())) {
+                    continue;
+                }
+                double p95 = step.getValue().getPercentile(95.0);
+                assertTrue(p95 <= MAX_P95,
+                    () -> name + " step " + step.getKey() + ": p95 " + p95 + " ms exceeds " + MAX_P95 + " ms");
+            }
+        }
+        return report;
+    }
+}
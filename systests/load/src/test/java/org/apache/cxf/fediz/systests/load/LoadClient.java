@@ -0,0 +1,468 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.systests.load;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpCookie;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * A lightweight browser for the load tests. It keeps the cookies of one virtual user, sends the (preemptive)
+ * basic authentication to the IdP, follows redirects and submits the auto-posting forms of the IdP and the
+ * RPs, without building a DOM or running any script. Every exchange is timed as a step of the flow in the
+ * LoadReport.
+ *
+ * An instance is not thread-safe, every virtual user has its own.
+ */
+public class LoadClient {
+
+    private static final int MAX_REDIRECTS = 20;
+
+    private static final Pattern FORM = Pattern.compile("<form\\b([^>]*)>(.*?)</form>",
+                                                        Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern INPUT = Pattern.compile("<input\\b([^>]*)>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ATTRIBUTE =
+        Pattern.compile("([\\w:-]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')", Pattern.DOTALL);
+    private static final Pattern ENTITY = Pattern.compile("&(#[xX][0-9a-fA-F]+|#[0-9]+|amp|lt|gt|quot|apos);");
+    private static final Pattern TITLE = Pattern.compile("<title>(.*?)</title>",
+                                                         Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final SSLSocketFactory SSL_SOCKET_FACTORY = createSSLSocketFactory();
+    private static final HostnameVerifier HOSTNAME_VERIFIER = (hostname, session) -> "localhost".equals(hostname);
+
+    private final LoadReport report;
+    private final Map<String, List<HttpCookie>> cookies = new HashMap<>();
+    private final Map<String, String> authorizations = new HashMap<>();
+    private String currentStep;
+
+    /**
+     * @param report the report to record the timings in, or null to record nothing (e.g. during warm up)
+     */
+    public LoadClient(LoadReport report) {
+        this.report = report;
+    }
+
+    /**
+     * Send the basic authentication credentials with every request to the given authority (host:port).
+     */
+    public void setCredentials(String authority, String user, String password) {
+        String credentials = user + ':' + password;
+        authorizations.put(authority,
+            "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * The step of the current (or the failed) exchange.
+     */
+    public String getCurrentStep() {
+        return currentStep;
+    }
+
+    /**
+     * A single GET, redirects are not followed.
+     */
+    public Response get(String step, String url) throws IOException {
+        long start = begin(step);
+        Response response = exchange("GET", new URL(url), null);
+        end(step, start);
+        return response;
+    }
+
+    /**
+     * A single POST of the given form parameters, redirects are not followed.
+     */
+    public Response post(String step, String url, Map<String, String> parameters) throws IOException {
+        long start = begin(step);
+        Response response = exchange("POST", new URL(url), encode(parameters));
+        end(step, start);
+        return response;
+    }
+
+    /**
+     * Follow the redirects of the given response with GETs, as a browser does for 301, 302 and 303. All the
+     * hops are timed as one step.
+     */
+    public Response followRedirects(String step, Response response) throws IOException {
+        long start = begin(step);
+        Response current = follow(response);
+        end(step, start);
+        return current;
+    }
+
+    /**
+     * Submit the first form of the page and follow the redirects of the response, timed as one step.
+     */
+    public Response submitForm(String step, Response page) throws IOException {
+        return submitForm(step, page, null, null);
+    }
+
+    /**
+     * Submit the form with the given name (or the first form if null) and follow the redirects of the
+     * response, timed as one step. The given values replace or add to the inputs of the form.
+     */
+    public Response submitForm(String step, Response page, String formName, Map<String, String> values)
+        throws IOException {
+        long start = begin(step);
+        Form form = page.getForm(formName);
+        if (form == null) {
+            throw new IOException("No form " + (formName == null ? "" : formName + " ") + "on " + page.getUrl());
+        }
+        Map<String, String> parameters = new LinkedHashMap<>(form.getInputs());
+        if (values != null) {
+            parameters.putAll(values);
+        }
+        URL action = form.getAction() == null ? page.getUrl() : new URL(page.getUrl(), form.getAction());
+        Response response;
+        if ("GET".equalsIgnoreCase(form.getMethod())) {
+            String query = encode(parameters);
+            response = exchange("GET", new URL(action, action.getPath() + '?' + query), null);
+        } else {
+            response = exchange("POST", action, encode(parameters));
+        }
+        response = follow(response);
+        end(step, start);
+        return response;
+    }
+
+    private long begin(String step) {
+        currentStep = step;
+        return System.nanoTime();
+    }
+
+    private void end(String step, long start) {
+        if (report != null) {
+            report.record(step, System.nanoTime() - start);
+        }
+    }
+
+    private Response follow(Response response) throws IOException {
+        Response current = response;
+        for (int i = 0; current.isRedirect(); i++) {
+            if (i == MAX_REDIRECTS) {
+                throw new IOException("Too many redirects, last one to " + current.getLocation());
+            }
+            current = exchange("GET", new URL(current.getUrl(), current.getLocation()), null);
+        }
+        return current;
+    }
+
+    private Response exchange(String method, URL url, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (connection instanceof HttpsURLConnection) {
+            HttpsURLConnection https = (HttpsURLConnection) connection;
+            https.setSSLSocketFactory(SSL_SOCKET_FACTORY);
+            https.setHostnameVerifier(HOSTNAME_VERIFIER);
+        }
+        connection.setRequestMethod(method);
+        connection.setInstanceFollowRedirects(false);
+        connection.setUseCaches(false);
+        String authority = url.getAuthority();
+        String authorization = authorizations.get(authority);
+        if (authorization != null) {
+            connection.setRequestProperty("Authorization", authorization);
+        }
+        String cookieHeader = getCookieHeader(authority, url.getPath());
+        if (cookieHeader != null) {
+            connection.setRequestProperty("Cookie", cookieHeader);
+        }
+        if (body != null) {
+            byte[] content = body.getBytes(StandardCharsets.UTF_8);
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            connection.setFixedLengthStreamingMode(content.length);
+            try (OutputStream os = connection.getOutputStream()) {
+                os.write(content);
+            }
+        }
+
+        int status = connection.getResponseCode();
+        storeCookies(authority, url.getPath(), connection.getHeaderFields());
+        String content = read(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+        Response response = new Response(url, status, connection.getHeaderField("Location"), content);
+        if (status >= 400) {
+            throw new IOException("Status " + status + " on " + method + ' ' + url);
+        }
+        return response;
+    }
+
+    private static String read(InputStream is) throws IOException {
+        // Always read the body, so that the connection is kept alive
+        if (is == null) {
+            return "";
+        }
+        try (InputStream in = is) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bos.write(buffer, 0, read);
+            }
+            return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private String getCookieHeader(String authority, String path) {
+        List<HttpCookie> stored = cookies.get(authority);
+        if (stored == null) {
+            return null;
+        }
+        StringBuilder header = new StringBuilder();
+        for (Iterator<HttpCookie> it = stored.iterator(); it.hasNext();) {
+            HttpCookie cookie = it.next();
+            if (cookie.hasExpired()) {
+                it.remove();
+            } else if (path.startsWith(cookie.getPath())) {
+                if (header.length() > 0) {
+                    header.append("; ");
+                }
+                header.append(cookie.getName()).append('=').append(cookie.getValue());
+            }
+        }
+        return header.length() == 0 ? null : header.toString();
+    }
+
+    private void storeCookies(String authority, String path, Map<String, List<String>> headers) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!"Set-Cookie".equalsIgnoreCase(header.getKey())) {
+                continue;
+            }
+            List<HttpCookie> stored = cookies.computeIfAbsent(authority, k -> new ArrayList<>());
+            for (String value : header.getValue()) {
+                for (HttpCookie cookie : HttpCookie.parse(value)) {
+                    if (cookie.getPath() == null) {
+                        int index = path.lastIndexOf('/');
+                        cookie.setPath(index > 0 ? path.substring(0, index) : "/");
+                    }
+                    stored.removeIf(c -> c.getName().equals(cookie.getName())
+                        && c.getPath().equals(cookie.getPath()));
+                    if (!cookie.hasExpired()) {
+                        stored.add(cookie);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String encode(Map<String, String> parameters) throws UnsupportedEncodingException {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append('&');
+            }
+            sb.append(URLEncoder.encode(parameter.getKey(), "UTF-8")).append('=')
+                .append(URLEncoder.encode(parameter.getValue(), "UTF-8"));
+        }
+        return sb.toString();
+    }
+
+    static String decodeEntities(String value) {
+        if (value.indexOf('&') < 0) {
+            return value;
+        }
+        Matcher matcher = ENTITY.matcher(value);
+        StringBuffer sb = new StringBuffer(value.length());
+        while (matcher.find()) {
+            String entity = matcher.group(1);
+            String replacement;
+            if (entity.startsWith("#x") || entity.startsWith("#X")) {
+                replacement = new String(Character.toChars(Integer.parseInt(entity.substring(2), 16)));
+            } else if (entity.startsWith("#")) {
+                replacement = new String(Character.toChars(Integer.parseInt(entity.substring(1))));
+            } else if ("amp".equals(entity)) {
+                replacement = "&";
+            } else if ("lt".equals(entity)) {
+                replacement = "<";
+            } else if ("gt".equals(entity)) {
+                replacement = ">";
+            } else if ("quot".equals(entity)) {
+                replacement = "\"";
+            } else {
+                replacement = "'";
+            }
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    static Map<String, String> parseAttributes(String tag) {
+        Map<String, String> attributes = new HashMap<>();
+        Matcher matcher = ATTRIBUTE.matcher(tag);
+        while (matcher.find()) {
+            String value = matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+            attributes.put(matcher.group(1).toLowerCase(), decodeEntities(value));
+        }
+        return attributes;
+    }
+
+    private static SSLSocketFactory createSSLSocketFactory() {
+        // The test servers use a self-signed certificate, like WebClient.getOptions().setUseInsecureSSL(true)
+        TrustManager trustAll = new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[] {trustAll}, new java.security.SecureRandom());
+            return context.getSocketFactory();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * The response of a single exchange.
+     */
+    public static final class Response {
+        private final URL url;
+        private final int status;
+        private final String location;
+        private final String body;
+
+        Response(URL url, int status, String location, String body) {
+            this.url = url;
+            this.status = status;
+            this.location = location;
+            this.body = body;
+        }
+
+        public URL getUrl() {
+            return url;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public boolean isRedirect() {
+            return (status == 301 || status == 302 || status == 303) && location != null;
+        }
+
+        public String getTitle() {
+            Matcher matcher = TITLE.matcher(body);
+            return matcher.find() ? matcher.group(1).trim() : null;
+        }
+
+        /**
+         * Returns the form with the given name or id, the first form if the name is null, or null if there
+         * is no such form.
+         */
+        public Form getForm(String name) {
+            Matcher matcher = FORM.matcher(body);
+            while (matcher.find()) {
+                Map<String, String> attributes = parseAttributes(matcher.group(1));
+                if (name == null || name.equals(attributes.get("name")) || name.equals(attributes.get("id"))) {
+                    Map<String, String> inputs = new LinkedHashMap<>();
+                    Matcher input = INPUT.matcher(matcher.group(2));
+                    while (input.find()) {
+                        Map<String, String> inputAttributes = parseAttributes(input.group(1));
+                        String inputName = inputAttributes.get("name");
+                        if (inputName != null && !inputs.containsKey(inputName)) {
+                            String value = inputAttributes.get("value");
+                            inputs.put(inputName, value == null ? "" : value);
+                        }
+                    }
+                    return new Form(attributes.get("action"), attributes.get("method"), inputs);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Fail the flow with the given message if the condition doesn't hold.
+         */
+        public Response check(boolean condition, String message) throws IOException {
+            if (!condition) {
+                throw new IOException(message + " (" + status + " on " + url + ')');
+            }
+            return this;
+        }
+    }
+
+    /**
+     * The action, method and inputs of an HTML form.
+     */
+    public static final class Form {
+        private final String action;
+        private final String method;
+        private final Map<String, String> inputs;
+
+        Form(String action, String method, Map<String, String> inputs) {
+            this.action = action;
+            this.method = method;
+            this.inputs = inputs;
+        }
+
+        public String getAction() {
+            return action;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public Map<String, String> getInputs() {
+            return inputs;
+        }
+    }
+}
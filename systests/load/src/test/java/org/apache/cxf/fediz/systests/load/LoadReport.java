@@ -0,0 +1,205 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.systests.load;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.cxf.fediz.core.metrics.LatencyHistogram;
+
+/**
+ * The latencies of the steps of a flow, recorded by the virtual users of a load run, and the resulting
+ * throughput. The steps are reported in the order they were first recorded, followed by the whole flow.
+ */
+public class LoadReport {
+
+    /**
+     * The name of the "step" that times a whole flow.
+     */
+    public static final String FLOW = "flow";
+
+    private static final int MAX_RECORDED_FAILURES = 10;
+
+    private final String name;
+    private final int users;
+    private final Map<String, StepStatistics> steps = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final StepStatistics flow = new StepStatistics();
+    private final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+    private volatile long started;
+    private volatile long stopped;
+
+    public LoadReport(String name, int users) {
+        this.name = name;
+        this.users = users;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    void start() {
+        started = System.nanoTime();
+    }
+
+    void stop() {
+        stopped = System.nanoTime();
+    }
+
+    /**
+     * Record the latency of a step of the flow.
+     */
+    public void record(String step, long nanos) {
+        steps.computeIfAbsent(step, k -> new StepStatistics()).histogram.record(nanos);
+    }
+
+    void flowCompleted(long nanos) {
+        flow.histogram.record(nanos);
+    }
+
+    void flowFailed(String step, Exception ex) {
+        flow.errors.increment();
+        if (step != null) {
+            steps.computeIfAbsent(step, k -> new StepStatistics()).errors.increment();
+        }
+        if (failures.size() < MAX_RECORDED_FAILURES) {
+            failures.add(step + ": " + ex);
+        }
+    }
+
+    public long getCompletedFlows() {
+        return flow.histogram.getCount();
+    }
+
+    public long getFailedFlows() {
+        return flow.errors.sum();
+    }
+
+    /**
+     * The first failures, for the test output.
+     */
+    public List<String> getFailures() {
+        return new ArrayList<>(failures);
+    }
+
+    /**
+     * The completed flows per second, over the time between the start of the first and the end of the last
+     * virtual user.
+     */
+    public double getThroughput() {
+        long elapsed = stopped - started;
+        return elapsed <= 0 ? 0.0 : getCompletedFlows() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    /**
+     * The steps and their statistics, followed by the whole flow.
+     */
+    public Map<String, StepStatistics> getSteps() {
+        Map<String, StepStatistics> result;
+        synchronized (steps) {
+            result = new LinkedHashMap<>(steps);
+        }
+        result.put(FLOW, flow);
+        return result;
+    }
+
+    /**
+     * A table of the latencies (milliseconds) of every step, as written to the test output.
+     */
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ENGLISH, "%n%s: %d users, %d flows, %d failed, %.1f flows/s%n",
+                                name, users, getCompletedFlows(), getFailedFlows(), getThroughput()));
+        sb.append(String.format(Locale.ENGLISH, "%-28s %8s %8s %10s %10s %10s %10s %10s%n",
+                                "step", "count", "errors", "mean", "p50", "p95", "p99", "max"));
+        long elapsed = stopped - started;
+        for (Map.Entry<String, StepStatistics> step : getSteps().entrySet()) {
+            StepStatistics statistics = step.getValue();
+            sb.append(String.format(Locale.ENGLISH, "%-28s %8d %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                                    step.getKey(), statistics.getCount(), statistics.getErrors(),
+                                    statistics.getMean(), statistics.getPercentile(50.0),
+                                    statistics.getPercentile(95.0), statistics.getPercentile(99.0),
+                                    statistics.getMax()));
+        }
+        if (elapsed > 0) {
+            sb.append(String.format(Locale.ENGLISH, "elapsed %.1f s%n", elapsed / 1.0e9));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the report as CSV to [dir]/[name].csv, so that the runs of a CI job can be compared.
+     */
+    public Path write(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        List<String> lines = new ArrayList<>();
+        lines.add("step,count,errors,throughput,mean_ms,p50_ms,p95_ms,p99_ms,max_ms");
+        double throughput = getThroughput();
+        for (Map.Entry<String, StepStatistics> step : getSteps().entrySet()) {
+            StepStatistics statistics = step.getValue();
+            lines.add(String.format(Locale.ENGLISH, "%s,%d,%d,%.2f,%.3f,%.3f,%.3f,%.3f,%.3f",
+                                    step.getKey(), statistics.getCount(), statistics.getErrors(), throughput,
+                                    statistics.getMean(), statistics.getPercentile(50.0),
+                                    statistics.getPercentile(95.0), statistics.getPercentile(99.0),
+                                    statistics.getMax()));
+        }
+        Path file = dir.resolve(name + ".csv");
+        Files.write(file, lines, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    /**
+     * The latencies (milliseconds) and the errors of a step.
+     */
+    public static final class StepStatistics {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public double getMean() {
+            return histogram.getMean() / 1000.0;
+        }
+
+        public double getPercentile(double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1.0e6;
+        }
+
+        public double getMax() {
+            return histogram.getMax() / 1000.0;
+        }
+    }
+}
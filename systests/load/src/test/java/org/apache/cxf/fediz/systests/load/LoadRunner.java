@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.systests.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a flow with a number of concurrent virtual users. Every virtual user first runs the flow a few times
+ * to warm up the servers (not recorded), then all the users start the measured iterations at the same time.
+ * Every iteration uses a new LoadClient, i.e. a new browser without any cookies, so that every flow is a
+ * complete login.
+ */
+public final class LoadRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadRunner.class);
+
+    private LoadRunner() {
+        // complete
+    }
+
+    /**
+     * A flow of a virtual user, e.g. a WS-Federation login.
+     */
+    public interface Flow {
+        void run(LoadClient client, int user) throws Exception;
+    }
+
+    public static LoadReport run(String name, Flow flow, int users, int iterations, int warmup)
+        throws InterruptedException, ExecutionException {
+        LoadReport report = new LoadReport(name, users);
+        CyclicBarrier barrier = new CyclicBarrier(users, report::start);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(users, r -> {
+            Thread thread = new Thread(r, "load-" + name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(users);
+            for (int i = 0; i < users; i++) {
+                final int user = i;
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < warmup; j++) {
+                        try {
+                            flow.run(new LoadClient(null), user);
+                        } catch (Exception ex) {
+                            LOG.warn("Warm up of {} failed: {}", name, ex.toString());
+                        }
+                    }
+                    barrier.await();
+                    for (int j = 0; j < iterations; j++) {
+                        LoadClient client = new LoadClient(report);
+                        long start = System.nanoTime();
+                        try {
+                            flow.run(client, user);
+                            report.flowCompleted(System.nanoTime() - start);
+                        } catch (Exception ex) {
+                            LOG.debug("Flow {} failed in step {}", name, client.getCurrentStep(), ex);
+                            report.flowFailed(client.getCurrentStep(), ex);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            report.stop();
+        } finally {
+            executor.shutdownNow();
+        }
+        return report;
+    }
+}
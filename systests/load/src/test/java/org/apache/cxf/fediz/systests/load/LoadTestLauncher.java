@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.systests.load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import javax.servlet.GenericServlet;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleState;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.cxf.fediz.tomcat.FederationAuthenticator;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Starts the IdP and the STS, and a relying party, in embedded Tomcat servers. The WS-Federation and the
+ * SAML SSO flows need a differently configured IdP (realm), which is selected with the realm.properties of
+ * the IdP webapp before it is started.
+ */
+public abstract class LoadTestLauncher {
+
+    public static final String CALLBACK_CONTEXT = "/callback";
+
+    private static final String IDP_HTTPS_PORT = System.getProperty("idp.https.port");
+    private static final String RP_HTTPS_PORT = System.getProperty("rp.https.port");
+
+    private static Tomcat idpServer;
+    private static Tomcat rpServer;
+
+    /**
+     * @param realmProperties the realm.properties of the IdP, e.g. realma/realm-saml.properties
+     * @param servletContextName the context of the relying party, e.g. /fedizhelloworld
+     * @param webapp the (unpacked) webapp of the relying party in target/tomcat/rp/webapps
+     */
+    public static void startServer(String realmProperties, String servletContextName, String webapp)
+        throws Exception {
+        assertNotNull(IDP_HTTPS_PORT, "Property 'idp.https.port' null");
+        assertNotNull(RP_HTTPS_PORT, "Property 'rp.https.port' null");
+
+        idpServer = startIdpServer(realmProperties);
+        rpServer = startRpServer(servletContextName, webapp);
+    }
+
+    private static Tomcat createServer(String port) {
+        Tomcat server = new Tomcat();
+        server.setPort(0);
+        server.setBaseDir(Paths.get("target").toAbsolutePath().toString());
+
+        server.getHost().setAutoDeploy(true);
+        server.getHost().setDeployOnStartup(true);
+
+        Connector httpsConnector = new Connector();
+        httpsConnector.setPort(Integer.parseInt(port));
+        httpsConnector.setSecure(true);
+        httpsConnector.setScheme("https");
+        httpsConnector.setProperty("sslProtocol", "TLS");
+        httpsConnector.setProperty("SSLEnabled", "true");
+        httpsConnector.setProperty("keystoreFile", "test-classes/server.jks");
+        httpsConnector.setProperty("keystorePass", "tompass");
+        httpsConnector.setProperty("truststoreFile", "test-classes/server.jks");
+        httpsConnector.setProperty("truststorePass", "tompass");
+        httpsConnector.setProperty("clientAuth", "want");
+        // Enough threads for the virtual users, which would otherwise queue in the connector
+        httpsConnector.setProperty("maxThreads", "200");
+        server.getService().addConnector(httpsConnector);
+        return server;
+    }
+
+    private static Tomcat startIdpServer(String realmProperties)
+        throws ServletException, LifecycleException, IOException {
+        Tomcat server = createServer(IDP_HTTPS_PORT);
+        Path targetDir = Paths.get("target").toAbsolutePath();
+        server.getHost().setAppBase("tomcat/idp/webapps");
+
+        Path stsWebapp = targetDir.resolve(server.getHost().getAppBase()).resolve("fediz-idp-sts");
+        server.addWebapp("/fediz-idp-sts", stsWebapp.toString());
+
+        Path idpWebapp = targetDir.resolve(server.getHost().getAppBase()).resolve("fediz-idp");
+        try (InputStream is = LoadTestLauncher.class.getResourceAsStream('/' + realmProperties)) {
+            Files.copy(is, idpWebapp.resolve("WEB-INF/classes/realm.properties"),
+                       StandardCopyOption.REPLACE_EXISTING);
+        }
+        server.addWebapp("/fediz-idp", idpWebapp.toString());
+
+        server.start();
+        return server;
+    }
+
+    private static Tomcat startRpServer(String servletContextName, String webapp)
+        throws ServletException, LifecycleException, IOException {
+        Tomcat server = createServer(RP_HTTPS_PORT);
+        Path targetDir = Paths.get("target").toAbsolutePath();
+        server.getHost().setAppBase("tomcat/rp/webapps");
+
+        Path rpWebapp = targetDir.resolve(server.getHost().getAppBase()).resolve(webapp);
+        Context ctx = server.addWebapp(servletContextName, rpWebapp.toString());
+
+        // Substitute the IDP port. Necessary if running the test in eclipse where port filtering doesn't seem
+        // to work
+        Path fedizConfig = targetDir.resolve("tomcat").resolve("fediz_config.xml");
+        try (InputStream is = LoadTestLauncher.class.getResourceAsStream("/fediz_config.xml")) {
+            byte[] content = new byte[is.available()];
+            is.read(content);
+            Files.write(fedizConfig, new String(content).replace("${idp.https.port}", IDP_HTTPS_PORT).getBytes());
+        }
+
+        FederationAuthenticator fa = new FederationAuthenticator();
+        fa.setConfigFile(fedizConfig.toString());
+        ctx.getPipeline().addValve(fa);
+
+        // The redirect URI of the OIDC clients
+        Context callbackCtx = server.addContext("", null);
+        Tomcat.addServlet(callbackCtx, "callback", new CallbackServlet());
+        callbackCtx.addServletMappingDecoded(CALLBACK_CONTEXT, "callback");
+
+        server.start();
+        return server;
+    }
+
+    public static void shutdownServer() throws Exception {
+        shutdownServer(idpServer);
+        shutdownServer(rpServer);
+    }
+
+    private static void shutdownServer(Tomcat server) throws LifecycleException {
+        if (server != null && server.getServer() != null
+            && server.getServer().getState() != LifecycleState.DESTROYED) {
+            if (server.getServer().getState() != LifecycleState.STOPPED) {
+                server.stop();
+            }
+            server.destroy();
+        }
+    }
+
+    public static String getIdpHttpsPort() {
+        return IDP_HTTPS_PORT;
+    }
+
+    public static String getRpHttpsPort() {
+        return RP_HTTPS_PORT;
+    }
+
+    @SuppressWarnings("serial")
+    public static class CallbackServlet extends GenericServlet {
+        @Override
+        public void service(ServletRequest req, ServletResponse res) throws ServletException, IOException {
+            final String code = req.getParameter("code");
+            if (null != code) {
+                res.getWriter().write(code);
+            }
+        }
+    }
+}
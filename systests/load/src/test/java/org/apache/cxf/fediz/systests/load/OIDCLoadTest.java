@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.systests.load;
+
+import java.net.URLEncoder;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.cxf.fediz.systests.load.LoadClient.Response;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * OIDC authorization code flows of concurrent users: the OIDC provider logs the user in with WS-Federation at
+ * the IdP, issues the code to the redirect URI of a (public) client, and the client exchanges it for an
+ * IdToken.
+ */
+public class OIDCLoadTest extends AbstractLoadTest {
+
+    private static final String SERVLET_CONTEXT_NAME = "/fediz-oidc";
+    private static final String HOME_REALM = "urn:org:apache:cxf:fediz:idp:realm-A";
+    private static final String CLIENT_NAME = "load-client";
+
+    private static final Pattern CLIENT_ID =
+        Pattern.compile("clients/([^\"/]+)\"\\s*>\\s*" + CLIENT_NAME + "\\s*<");
+
+    private static String redirectUrl;
+    private static String clientId;
+
+    @BeforeAll
+    public static void init() throws Exception {
+        LoadTestLauncher.startServer("realma/realm.properties", SERVLET_CONTEXT_NAME, "fediz-oidc");
+        redirectUrl = rpUrl(LoadTestLauncher.CALLBACK_CONTEXT);
+        clientId = registerClient();
+    }
+
+    @AfterAll
+    public static void cleanup() throws Exception {
+        LoadTestLauncher.shutdownServer();
+    }
+
+    // Login to the OIDC Clients page and register a public client
+    private static String registerClient() throws Exception {
+        LoadClient client = new LoadClient(null);
+        login(client, 0);
+
+        Response response = client.get("console", rpUrl(SERVLET_CONTEXT_NAME + "/console/clients/register?login_hint="
+            + URLEncoder.encode("blabla@" + HOME_REALM, "UTF-8")));
+        response = client.followRedirects("console", response);
+        response = client.submitForm("console", response);
+
+        Map<String, String> values = new HashMap<>();
+        values.put("client_name", CLIENT_NAME);
+        values.put("client_type", "public");
+        values.put("client_redirectURI", redirectUrl);
+        values.put("client_audience", "https://cxf.apache.org");
+        values.put("client_logoutURI", rpUrl("/logout"));
+        values.put("client_homeRealm", "");
+        response = client.submitForm("console", response, null, values);
+
+        Matcher matcher = CLIENT_ID.matcher(response.getBody());
+        assertTrue(matcher.find(), "Client not registered");
+        return matcher.group(1);
+    }
+
+    @Test
+    public void testOIDCLogin() throws Exception {
+        String authorizationUrl = rpUrl(SERVLET_CONTEXT_NAME + "/idp/authorize?client_id=" + clientId
+            + "&response_type=code&scope=openid&redirect_uri=" + URLEncoder.encode(redirectUrl, "UTF-8")
+            + "&login_hint=" + URLEncoder.encode("blabla@" + HOME_REALM, "UTF-8"));
+        String tokenUrl = rpUrl(SERVLET_CONTEXT_NAME + "/oauth2/token");
+
+        runLoad("oidc-login", (client, user) -> {
+            login(client, user);
+
+            Response response = client.get("oidc-authorize", authorizationUrl);
+            response.check(response.isRedirect(), "No redirect to the IdP");
+
+            response = client.followRedirects("idp-signin", response);
+            response.check("IDP SignIn Response Form".equals(response.getTitle()), "No IdP sign in response form");
+
+            // The provider validates the token, and redirects to the client with the code
+            response = client.submitForm("oidc-signin-response", response);
+            String code = response.getBody().trim();
+            response.check(response.getUrl().getPath().equals(LoadTestLauncher.CALLBACK_CONTEXT)
+                && !code.isEmpty(), "No authorization code");
+
+            Map<String, String> parameters = new LinkedHashMap<>();
+            parameters.put("client_id", clientId);
+            parameters.put("grant_type", "authorization_code");
+            parameters.put("code", code);
+            parameters.put("redirect_uri", redirectUrl);
+            response = client.post("oidc-token", tokenUrl, parameters);
+            response.check(response.getBody().contains("\"id_token\""), "No IdToken");
+        });
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.cxf.fediz.systests.load;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * SAML SSO logins of concurrent users at the Tomcat plugin.
+ */
+public class SAMLSSOLoadTest extends AbstractLoadTest {
+
+    private static final String SERVLET_CONTEXT_NAME = "/fedizhelloworldsaml";
+
+    @BeforeAll
+    public static void init() throws Exception {
+        LoadTestLauncher.startServer("realma/realm-saml.properties", SERVLET_CONTEXT_NAME, "simpleWebapp");
+    }
+
+    @AfterAll
+    public static void cleanup() throws Exception {
+        LoadTestLauncher.shutdownServer();
+    }
+
+    @Test
+    public void testSAMLSSOLogin() throws Exception {
+        String url = rpUrl(SERVLET_CONTEXT_NAME + "/secure/fedservlet");
+        runLoad("samlsso-login", (client, user) -> passiveLogin(client, user, url));
+    }
+
+}